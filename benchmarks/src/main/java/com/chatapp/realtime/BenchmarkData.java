@@ -0,0 +1,85 @@
+package com.chatapp.realtime;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+// Dữ liệu mẫu dùng chung cho các benchmark: câu tiếng Việt có dấu (kèm emoji, số, dấu câu) sinh ngẫu nhiên theo seed cố định
+final class BenchmarkData {
+
+    private static final String[] WORDS = {
+            "anh", "em", "ơi", "đang", "làm", "gì", "đấy", "tối", "nay", "đi", "ăn", "phở", "không", "nhé",
+            "được", "rồi", "mình", "gặp", "nhau", "ở", "quán", "cà", "phê", "đường", "Nguyễn", "Huệ", "lúc",
+            "mấy", "giờ", "hả", "trời", "mưa", "to", "quá", "nhớ", "mang", "áo", "mưa", "theo", "điện", "thoại",
+            "sắp", "hết", "pin", "chiều", "mai", "họp", "dự", "án", "báo", "cáo", "tuần", "này", "xong", "chưa",
+            "cảm", "ơn", "nhiều", "hihi", "ừ", "ok", "để", "tớ", "xem", "đã", "chúc", "mừng", "sinh", "nhật",
+            "vui", "vẻ", "hạnh", "phúc", "ngủ", "ngon", "mệt", "thật", "đấy", "bạn", "ấy", "nói", "sẽ", "đến",
+            "😂", "❤️", "👍", "12h30", "2026", "!", "?", "..."
+    };
+
+    static final String ROOM_ID = "nguyenvana_tranthib";
+    static final String[] PARTICIPANTS = {"nguyenvana", "tranthib"};
+
+    private BenchmarkData() {
+    }
+
+    // Câu gần đúng số ký tự yêu cầu (tin chat thường: 20-200 ký tự)
+    static String sentence(Random random, int approxLength) {
+        StringBuilder sb = new StringBuilder(approxLength + 16);
+        while (sb.length() < approxLength) {
+            if (sb.length() > 0) sb.append(' ');
+            String word = WORDS[random.nextInt(WORDS.length)];
+            sb.append(sb.length() == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+        }
+        return sb.toString();
+    }
+
+    static List<String> sentences(int count, int approxLength, long seed) {
+        Random random = new Random(seed);
+        List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(sentence(random, approxLength / 2 + random.nextInt(approxLength)));
+        }
+        return result;
+    }
+
+    // Lịch sử 1 phòng 1-1, mới nhất trước (cùng thứ tự với MessageRepository.findRecentInRoom); 1/20 là tin ảnh
+    static List<ChatMessageView> history(int size, long seed) {
+        Random random = new Random(seed);
+        LocalDateTime start = LocalDateTime.of(2026, 1, 1, 8, 0);
+        List<ChatMessageView> result = new ArrayList<>(size);
+        for (int i = size; i >= 1; i--) {
+            boolean image = random.nextInt(20) == 0;
+            result.add(new ChatMessageView((long) i * 1000, ROOM_ID, PARTICIPANTS[random.nextInt(2)],
+                    image ? "/api/blobs/" + Long.toHexString(random.nextLong()) : sentence(random, 20 + random.nextInt(120)),
+                    image ? "IMAGE" : "CHAT", start.plusSeconds(i * 30L), "SENT", (long) i));
+        }
+        return result;
+    }
+
+    // Repository giả: chỉ trả lời các phương thức benchmark dùng tới, còn lại trả null / 0
+    @SuppressWarnings("unchecked")
+    static <T> T stub(Class<T> type, Map<String, Function<Object[], Object>> answers) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> type.getSimpleName() + "Stub";
+                };
+            }
+            Function<Object[], Object> answer = answers.get(method.getName());
+            if (answer != null) return answer.apply(args);
+            // Kiểu nguyên thủy (số dòng cập nhật của @Modifying...) không được trả null
+            Class<?> returnType = method.getReturnType();
+            if (returnType == int.class) return 0;
+            if (returnType == long.class) return 0L;
+            if (returnType == boolean.class) return false;
+            return null;
+        });
+    }
+}
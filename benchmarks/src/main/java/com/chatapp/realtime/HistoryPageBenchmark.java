@@ -0,0 +1,75 @@
+package com.chatapp.realtime;
+
+import org.openjdk.jmh.annotations.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// Đọc trang lịch sử từ RecentMessageCache: lọc tin đã "Gỡ ở phía bạn" / trước mốc xóa đoạn chat và gán status theo mốc đã xem
+// (phần việc trước đây do filterDeletedMessages làm trong bộ nhớ trên toàn bộ lịch sử)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryPageBenchmark {
+
+    private static final int PAGE = 51; // ChatController lấy dư 1 dòng
+
+    // Số tin bộ đệm giữ cho phòng
+    @Param({"100", "1000", "5000"})
+    public int historySize;
+
+    private RecentMessageCache cache;
+    private String viewer;
+    private long middleId;
+    private long afterId;
+
+    @Setup
+    public void setup() {
+        List<ChatMessageView> history = BenchmarkData.history(historySize, 42);
+        viewer = BenchmarkData.PARTICIPANTS[0];
+
+        // 1/25 tin bị người xem gỡ ở phía mình, mốc xóa đoạn chat ở 10% tin cũ nhất
+        List<MessageHidden> hidden = new ArrayList<>();
+        for (int i = 0; i < history.size(); i += 25) {
+            hidden.add(new MessageHidden(history.get(i).getId(), viewer));
+        }
+        LocalDateTime clearedAt = history.get(history.size() - 1 - historySize / 10).getTimestamp();
+        List<ChatClearRecord> clears = List.of(new ChatClearRecord(1L, viewer, BenchmarkData.ROOM_ID, clearedAt));
+        List<ReadReceipt> receipts = List.of(
+                new ReadReceipt(1L, BenchmarkData.ROOM_ID, BenchmarkData.PARTICIPANTS[0], history.get(0).getId(), clearedAt),
+                new ReadReceipt(2L, BenchmarkData.ROOM_ID, BenchmarkData.PARTICIPANTS[1], history.get(historySize / 20).getId(), clearedAt));
+
+        cache = new RecentMessageCache(
+                BenchmarkData.stub(MessageRepository.class, Map.of("findRecentInRoom", args -> history)),
+                BenchmarkData.stub(MessageHiddenRepository.class, Map.of("findByMessageIdIn", args -> hidden)),
+                BenchmarkData.stub(ChatClearRecordRepository.class, Map.of("findByRoomId", args -> clears)),
+                BenchmarkData.stub(ReadReceiptRepository.class, Map.of("findByRoomId", args -> receipts)),
+                new MessageWriteBehindQueue(null, false, 1, 1, 1, 1, false),
+                true, historySize, Long.MAX_VALUE, "simple");
+        cache.pageBefore(BenchmarkData.ROOM_ID, viewer, null, PAGE).orElseThrow(); // Nạp phòng
+
+        middleId = history.get(historySize / 2).getId();
+        afterId = history.get(historySize * 3 / 4).getId();
+    }
+
+    @Benchmark
+    public Optional<List<ChatMessageView>> latestPage() {
+        return cache.pageBefore(BenchmarkData.ROOM_ID, viewer, null, PAGE);
+    }
+
+    @Benchmark
+    public Optional<List<ChatMessageView>> olderPage() {
+        return cache.pageBefore(BenchmarkData.ROOM_ID, viewer, middleId, PAGE);
+    }
+
+    @Benchmark
+    public Optional<List<ChatMessageView>> pageAfter() {
+        return cache.pageAfter(BenchmarkData.ROOM_ID, viewer, afterId, PAGE);
+    }
+}
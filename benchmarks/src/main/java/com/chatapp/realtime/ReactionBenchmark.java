@@ -0,0 +1,72 @@
+package com.chatapp.realtime;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.PlatformTransactionManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Gộp số lượt cảm xúc theo emoji (thay cho việc đọc/ghi lại cột JSON reactions trên từng tin trước đây):
+// gán cho 1 trang lịch sử khi cache đã có / phải dựng lại từ các dòng đếm, và đường thả cảm xúc
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReactionBenchmark {
+
+    private static final String[] EMOJIS = {"👍", "❤️", "😂", "😮", "😢", "😡"};
+
+    private ReactionService warm;
+    private ReactionService cold;
+    private List<ChatMessageView> page;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        page = BenchmarkData.history(50, 42);
+        MessageReactionRepository reactions = BenchmarkData.stub(MessageReactionRepository.class,
+                Map.of("insertIgnore", args -> 1));
+        MessageReactionCountRepository counts = BenchmarkData.stub(MessageReactionCountRepository.class,
+                Map.of("findPositive", args -> rows((Collection<?>) args[0])));
+        // Giao dịch giả (không có DB) và không có ClusterFanout (chế độ 1 node)
+        PlatformTransactionManager transactions = BenchmarkData.stub(PlatformTransactionManager.class, Map.of());
+        ObjectProvider<ClusterFanout> noFanout = BenchmarkData.stub(ObjectProvider.class, Map.of());
+        warm = new ReactionService(reactions, counts, transactions, noFanout, 10000);
+        cold = new ReactionService(reactions, counts, transactions, noFanout, 0); // Không giữ gì trong cache -> luôn đọc lại các dòng đếm
+        warm.applyViewReactions(page);
+    }
+
+    // Mỗi tin có 3 loại emoji, số lượt khác nhau
+    private static List<MessageReactionCount> rows(Collection<?> messageIds) {
+        List<MessageReactionCount> rows = new ArrayList<>(messageIds.size() * 3);
+        for (Object id : messageIds) {
+            long messageId = (Long) id;
+            for (int i = 0; i < 3; i++) {
+                rows.add(new MessageReactionCount(messageId, EMOJIS[(int) ((messageId / 1000 + i) % EMOJIS.length)], i + 1));
+            }
+        }
+        return rows;
+    }
+
+    @Benchmark
+    public List<ChatMessageView> applyPageCached() {
+        warm.applyViewReactions(page);
+        return page;
+    }
+
+    @Benchmark
+    public List<ChatMessageView> applyPageLoaded() {
+        cold.applyViewReactions(page);
+        return page;
+    }
+
+    @Benchmark
+    public Map<String, Long> react() {
+        return warm.react(page.get(0).getId(), BenchmarkData.PARTICIPANTS[1], EMOJIS[0]);
+    }
+}
@@ -0,0 +1,68 @@
+package com.chatapp.realtime;
+
+import org.openjdk.jmh.annotations.*;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Tách roomId: suy ra đối phương từ khóa phòng 1-1 "user1_user2" khi tạo phòng ở tin đầu tiên (RoomService)
+// và đọc roomId từ nội dung khung STOMP để chia làn (chạy trên mọi khung gửi lên)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoomIdBenchmark {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final JsonFactory CBOR_FACTORY = new CBORFactory();
+
+    private byte[] jsonFrame;
+    private byte[] cborFrame;
+    private byte[] jsonFrameRoomLast;
+
+    @Setup
+    public void setup() throws Exception {
+        String content = BenchmarkData.sentence(new Random(7), 120);
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("roomId", BenchmarkData.ROOM_ID);
+        payload.put("sender", BenchmarkData.PARTICIPANTS[0]);
+        payload.put("content", content);
+        payload.put("type", "CHAT");
+        jsonFrame = new ObjectMapper().writeValueAsBytes(payload);
+        cborFrame = new ObjectMapper(new CBORFactory()).writeValueAsBytes(payload);
+
+        // Trường hợp xấu: roomId nằm sau nội dung dài
+        Map<String, Object> reordered = new LinkedHashMap<>();
+        reordered.put("content", content);
+        reordered.put("sender", BenchmarkData.PARTICIPANTS[0]);
+        reordered.put("type", "CHAT");
+        reordered.put("roomId", BenchmarkData.ROOM_ID);
+        jsonFrameRoomLast = new ObjectMapper().writeValueAsBytes(reordered);
+    }
+
+    @Benchmark
+    public String partnerOf() {
+        return RoomService.directPartner(BenchmarkData.ROOM_ID, BenchmarkData.PARTICIPANTS[1]);
+    }
+
+    @Benchmark
+    public String laneKeyJson() {
+        return RoomLaneExecutor.readRoomId(JSON_FACTORY, jsonFrame);
+    }
+
+    @Benchmark
+    public String laneKeyJsonRoomLast() {
+        return RoomLaneExecutor.readRoomId(JSON_FACTORY, jsonFrameRoomLast);
+    }
+
+    @Benchmark
+    public String laneKeyCbor() {
+        return RoomLaneExecutor.readRoomId(CBOR_FACTORY, cborFrame);
+    }
+}
@@ -0,0 +1,120 @@
+package com.chatapp.realtime;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Jackson trên đường broadcast / REST: ChatMessage và các sự kiện gọn sang JSON/CBOR (bộ chuyển đổi của broker),
+// chuyển mã khung JSON -> CBOR cho phiên CBOR, và 1 trang lịch sử cho API phân trang
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private static final String SESSION_ID = "bench-session";
+
+    @Param({"32", "512"})
+    public int contentLength;
+
+    private MessageConverter jsonConverter;
+    private MessageConverter cborConverter;
+    private MessageHeaders cborHeaders;
+    private ChannelInterceptor outbound;
+    private ObjectMapper restMapper;
+
+    private ChatMessage chatMessage;
+    private ReadEvent readEvent;
+    private ReactionEvent reactionEvent;
+    private List<ChatMessageView> page;
+    private Message<byte[]> jsonFrame;
+
+    @Setup
+    public void setup() {
+        CborWireFormat wireFormat = new CborWireFormat(Jackson2ObjectMapperBuilder.json());
+        jsonConverter = wireFormat.jsonConverter();
+        cborConverter = wireFormat.cborConverter();
+        cborHeaders = new MessageHeaders(Map.of(MessageHeaders.CONTENT_TYPE, CborWireFormat.CBOR_FRAME));
+        outbound = wireFormat.outboundInterceptor();
+        restMapper = Jackson2ObjectMapperBuilder.json().build();
+
+        String content = BenchmarkData.sentence(new Random(7), contentLength);
+        chatMessage = new ChatMessage(361588043526144L, BenchmarkData.ROOM_ID, BenchmarkData.PARTICIPANTS[0], content,
+                "CHAT", LocalDateTime.of(2026, 1, 1, 8, 0, 0, 123456000), "SENT", 1024L, null, true);
+        readEvent = new ReadEvent(BenchmarkData.ROOM_ID, BenchmarkData.PARTICIPANTS[1], chatMessage.getId());
+        reactionEvent = new ReactionEvent(chatMessage.getId(), BenchmarkData.ROOM_ID, BenchmarkData.PARTICIPANTS[1], "👍",
+                Map.of("👍", 2L, "❤️", 1L));
+        page = BenchmarkData.history(50, 42);
+
+        // Phiên CBOR: CONNECT qua WebSocket thuần với "accept: application/cbor"
+        StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+        connect.setSessionId(SESSION_ID);
+        connect.addNativeHeader(CborWireFormat.ACCEPT_HEADER, CborWireFormat.CBOR.toString());
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("chatRawWebSocket", true);
+        connect.setSessionAttributes(attributes);
+        wireFormat.inboundInterceptor().preSend(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()), null);
+
+        @SuppressWarnings("unchecked")
+        Message<byte[]> json = (Message<byte[]>) jsonConverter.toMessage(chatMessage, null);
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(SESSION_ID);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        jsonFrame = MessageBuilder.createMessage(json.getPayload(), accessor.getMessageHeaders());
+    }
+
+    @Benchmark
+    public Message<?> chatMessageJson() {
+        return jsonConverter.toMessage(chatMessage, null);
+    }
+
+    @Benchmark
+    public Message<?> chatMessageCbor() {
+        return cborConverter.toMessage(chatMessage, cborHeaders);
+    }
+
+    @Benchmark
+    public Message<?> readEventJson() {
+        return jsonConverter.toMessage(readEvent, null);
+    }
+
+    @Benchmark
+    public Message<?> reactionEventJson() {
+        return jsonConverter.toMessage(reactionEvent, null);
+    }
+
+    // Cùng 1 khung gửi tới nhiều phiên CBOR trong phòng: chỉ chuyển mã lần đầu
+    @Benchmark
+    public Message<?> transcodeFanout() {
+        return outbound.preSend(jsonFrame, null);
+    }
+
+    // Khung mới mỗi lần: đọc JSON + ghi CBOR
+    @Benchmark
+    public Message<?> transcodeFresh() {
+        return outbound.preSend(MessageBuilder.createMessage(jsonFrame.getPayload().clone(), jsonFrame.getHeaders()), null);
+    }
+
+    @Benchmark
+    public byte[] historyPageJson() throws Exception {
+        return restMapper.writeValueAsBytes(page);
+    }
+}
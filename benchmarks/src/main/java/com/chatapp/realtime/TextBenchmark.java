@@ -0,0 +1,54 @@
+package com.chatapp.realtime;
+
+import org.openjdk.jmh.annotations.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Xử lý chuỗi tiếng Việt trên đường gửi tin / tìm kiếm: bỏ dấu, tách từ cho chỉ mục, cắt đoạn xem trước
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextBenchmark {
+
+    @Param({"32", "128", "512"})
+    public int length;
+
+    private List<String> texts;
+    private int next;
+
+    @Setup
+    public void setup() {
+        texts = BenchmarkData.sentences(256, length, 42);
+    }
+
+    private String text() {
+        next = (next + 1) & 255;
+        return texts.get(next);
+    }
+
+    @Benchmark
+    public String normalize() {
+        return MessageSearchIndex.normalize(text());
+    }
+
+    // Chạy mỗi lần gửi tin CHAT (MessageSearchIndex.indexAll)
+    @Benchmark
+    public List<String> tokenize() {
+        return MessageSearchIndex.tokenize(text());
+    }
+
+    // Chạy mỗi lần tìm kiếm
+    @Benchmark
+    public String selectiveTerm() {
+        return MessageSearchIndex.selectiveTerm(MessageSearchIndex.tokenize(text()));
+    }
+
+    // Đoạn xem trước cho danh sách chat / thông báo
+    @Benchmark
+    public String preview() {
+        return ConversationSummaryService.preview(text(), 100);
+    }
+}
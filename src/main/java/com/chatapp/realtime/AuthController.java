@@ -1,13 +1,21 @@
 package com.chatapp.realtime;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import lombok.RequiredArgsConstructor;
 import java.util.Optional;
 import java.util.List;
 import java.util.Map;
-import java.time.LocalDateTime;
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Objects;
 
 @RestController
 @RequestMapping("/api/auth")
@@ -15,42 +23,64 @@ import java.time.LocalDateTime;
 public class AuthController {
 
     private final UserRepository userRepository;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final PresenceService presenceService;
+    private final BlobStore blobStore;
+    private final UserProfileCache userProfileCache;
+    private final PasswordHasher passwordHasher;
+    private final AuthTokenService authTokenService;
+
+    private static final int MAX_DIRECTORY_PAGE_SIZE = 500;
 
     // API Đăng ký tài khoản
     @PostMapping("/register")
     public String register(@RequestBody User user) {
+        // Khóa nhóm (group-<id>) dùng chung cột partner với username trong bảng tóm tắt hội thoại
+        if (RoomService.isGroupKey(user.getUsername())) {
+            return "Tên đăng nhập không hợp lệ!";
+        }
+        // Dấu _ dùng để nối 2 username thành khóa phòng 1-1
+        if (!RoomService.isValidUsername(user.getUsername())) {
+            return "Tên đăng nhập không được để trống hoặc chứa dấu _!";
+        }
+        if (!PasswordHasher.acceptable(user.getPassword())) {
+            return "Mật khẩu không hợp lệ (tối đa 72 byte)!";
+        }
         if (userRepository.findByUsername(user.getUsername()).isPresent()) {
             return "Tên đăng nhập đã tồn tại!";
         }
+        user.setPassword(passwordHasher.hash(user.getPassword())); // Băm trên pool riêng, luồng request chỉ chờ
         userRepository.save(user); // Lưu vào bảng users
+        userProfileCache.changed(user.getUsername());
         return "Đăng ký thành công!";
     }
 
-    // API Đăng nhập
+    // API Đăng nhập: lần băm mật khẩu duy nhất của phiên, token trả về ở header X-Auth-Token dùng cho REST + khung CONNECT
     @PostMapping("/login")
     public ResponseEntity<?> login(@RequestBody User user) {
-        Optional<User> dbUser = userRepository.findByUsername(user.getUsername());
-        if (dbUser.isPresent() && dbUser.get().getPassword().equals(user.getPassword())) {
+        Optional<User> dbUser = userProfileCache.find(user.getUsername()); // Bản sao, sửa không ảnh hưởng cache
+        PasswordHasher.Result result = passwordHasher.verify(user.getPassword(), dbUser.map(User::getPassword).orElse(null));
+        if (dbUser.isPresent() && result != PasswordHasher.Result.MISMATCH) {
             User loggedInUser = dbUser.get();
-            loggedInUser.setStatus("ONLINE");
-            userRepository.save(loggedInUser);
-
-            // Thông báo cho mọi người biết user này đã Online
-            ChatMessage statusMsg = new ChatMessage();
-            statusMsg.setSender(loggedInUser.getUsername());
-            statusMsg.setType("STATUS");
-            statusMsg.setContent("ONLINE");
-            messagingTemplate.convertAndSend("/topic/presence", statusMsg);
+            if (result == PasswordHasher.Result.MATCH_NEEDS_REHASH) {
+                // Mật khẩu cũ dạng văn bản thường (hoặc cost BCrypt cũ): băm lại 1 lần, các lần sau đi đường bình thường
+                loggedInUser.setPassword(passwordHasher.hash(user.getPassword()));
+                userRepository.updatePassword(loggedInUser.getUsername(), loggedInUser.getPassword());
+                userProfileCache.invalidate(loggedInUser.getUsername());
+            }
+            // Trạng thái Online do PresenceService tính theo phiên WebSocket (client kết nối ngay sau khi đăng nhập)
+            presenceService.applyPresence(loggedInUser);
 
-            return ResponseEntity.ok(loggedInUser);
+            return ResponseEntity.ok()
+                    .header(AuthTokenService.RESPONSE_HEADER, authTokenService.issue(loggedInUser))
+                    .body(loggedInUser);
         }
         return ResponseEntity.status(401).body("Sai tài khoản hoặc mật khẩu!");
     }
 
-    // API Cập nhật hồ sơ
+    // API Cập nhật hồ sơ: có token của chính người này thì không cần nhập lại mật khẩu
     @PutMapping("/update")
-    public ResponseEntity<?> updateProfile(@RequestBody Map<String, String> request) {
+    public ResponseEntity<?> updateProfile(@RequestBody Map<String, String> request,
+                                           @RequestAttribute(name = AuthTokenInterceptor.AUTH_USER, required = false) String authUser) {
         String username = request.get("username");
         String displayName = request.get("displayName");
         String avatar = request.get("avatar");
@@ -60,8 +90,9 @@ public class AuthController {
         if (dbUser.isPresent()) {
             User user = dbUser.get();
             
-            // Kiểm tra mật khẩu xác nhận
-            if (currentPassword == null || !user.getPassword().equals(currentPassword)) {
+            // Client cũ không gửi token: kiểm tra mật khẩu xác nhận như trước
+            if (!username.equals(authUser)
+                    && passwordHasher.verify(currentPassword, user.getPassword()) == PasswordHasher.Result.MISMATCH) {
                 return ResponseEntity.status(401).body("Mật khẩu không đúng! Vui lòng nhập mật khẩu để xác nhận.");
             }
 
@@ -69,61 +100,124 @@ public class AuthController {
                 user.setDisplayName(displayName);
             }
             if (avatar != null) {
+                // Ảnh đã tải lên kho blob thì chỉ lưu đường dẫn; client cũ gửi base64 thì chuyển vào kho trước
+                if (avatar.startsWith("data:")) {
+                    try {
+                        avatar = blobStore.storeDataUrl(avatar);
+                    } catch (IOException | IllegalArgumentException e) {
+                        return ResponseEntity.badRequest().body("Ảnh đại diện không hợp lệ");
+                    }
+                } else if (!avatar.isEmpty() && !BlobStore.isBlobUrl(avatar)) {
+                    return ResponseEntity.badRequest().body("Ảnh đại diện không hợp lệ");
+                }
                 user.setAvatar(avatar);
             }
             userRepository.save(user);
+            userProfileCache.changed(username);
             return ResponseEntity.ok(user);
         }
         return ResponseEntity.badRequest().body("User not found");
     }
 
-    // API Đổi mật khẩu (Mới - Có kiểm tra mật khẩu cũ)
+    // API Đổi mật khẩu (Mới - Có kiểm tra mật khẩu cũ). Token cũ hết hiệu lực, token mới trả về ở header X-Auth-Token
     @PostMapping("/change-password")
-    public ResponseEntity<?> changePassword(@RequestBody Map<String, String> request) {
+    public ResponseEntity<?> changePassword(@RequestBody Map<String, String> request,
+                                            @RequestAttribute(name = AuthTokenInterceptor.AUTH_USER, required = false) String authUser) {
         String username = request.get("username");
         String oldPassword = request.get("oldPassword");
         String newPassword = request.get("newPassword");
 
+        if (authUser != null && !authUser.equals(username)) {
+            return ResponseEntity.status(403).body("Token không thuộc người dùng này");
+        }
+        if (!PasswordHasher.acceptable(newPassword)) {
+            return ResponseEntity.badRequest().body("Mật khẩu mới không hợp lệ (tối đa 72 byte)!");
+        }
         Optional<User> dbUser = userRepository.findByUsername(username);
         if (dbUser.isPresent()) {
             User user = dbUser.get();
-            if (!user.getPassword().equals(oldPassword)) {
+            if (passwordHasher.verify(oldPassword, user.getPassword()) == PasswordHasher.Result.MISMATCH) {
                 return ResponseEntity.status(400).body("Mật khẩu hiện tại không đúng!");
             }
-            user.setPassword(newPassword);
+            user.setPassword(passwordHasher.hash(newPassword));
             userRepository.save(user);
-            return ResponseEntity.ok("Đổi mật khẩu thành công!");
+            userProfileCache.invalidate(username);
+            return ResponseEntity.ok()
+                    .header(AuthTokenService.RESPONSE_HEADER, authTokenService.issue(user))
+                    .body("Đổi mật khẩu thành công!");
         }
         return ResponseEntity.badRequest().body("User not found");
     }
 
-    // API Đăng xuất
+    // API Đăng xuất: client tự ngắt WebSocket, PresenceService báo Offline khi người dùng không còn phiên nào
+    // (đóng 1 trong nhiều tab không làm người dùng bị Offline)
     @PostMapping("/logout")
     public ResponseEntity<?> logout(@RequestBody User user) {
-        Optional<User> dbUser = userRepository.findByUsername(user.getUsername());
-        if (dbUser.isPresent()) {
-            User u = dbUser.get();
-            u.setStatus("OFFLINE");
-            u.setLastActive(LocalDateTime.now());
-            userRepository.save(u);
-
-            // Thông báo Offline kèm thời gian
-            ChatMessage statusMsg = new ChatMessage();
-            statusMsg.setSender(u.getUsername());
-            statusMsg.setType("STATUS");
-            statusMsg.setContent("OFFLINE");
-            statusMsg.setTimestamp(u.getLastActive());
-            messagingTemplate.convertAndSend("/topic/presence", statusMsg);
-        }
         return ResponseEntity.ok("Đăng xuất thành công");
     }
 
-    // API Lấy danh sách tất cả người dùng
+    // API Danh bạ người dùng: phân trang, lọc theo tiền tố (username / tên hiển thị), trả về dạng mảng như cũ
+    // Tổng số dòng nằm ở header X-Total-Count. ETag ghép từ phiên bản danh bạ + phiên bản trạng thái Online + tham số:
+    // danh bạ không đổi thì trả 304 mà không cần truy vấn DB
     @GetMapping("/users")
-    public ResponseEntity<List<User>> getAllUsers() {
-        List<User> users = userRepository.findAll();
-        // Xóa mật khẩu trước khi trả về client để bảo mật
-        users.forEach(u -> u.setPassword(null));
-        return ResponseEntity.ok(users);
+    public ResponseEntity<List<UserDirectoryEntry>> getAllUsers(@RequestParam(required = false) String q,
+                                                                @RequestParam(defaultValue = "0") int page,
+                                                                @RequestParam(defaultValue = "" + MAX_DIRECTORY_PAGE_SIZE) int size,
+                                                                @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        int pageSize = Math.max(1, Math.min(size, MAX_DIRECTORY_PAGE_SIZE));
+        int pageIndex = Math.max(0, page);
+        String prefix = q == null || q.isBlank() ? null : q.trim();
+        String etag = "\"" + userProfileCache.directoryVersion() + "-" + presenceService.version() + "-"
+                + Integer.toHexString(Objects.hash(prefix, pageIndex, pageSize)) + "\"";
+        if (ifNoneMatch != null && ifNoneMatch.contains(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache()).build();
+        }
+
+        Page<UserDirectoryEntry> result = userRepository.findDirectory(prefix == null ? null : likePrefix(prefix), PageRequest.of(pageIndex, pageSize));
+        result.forEach(presenceService::applyPresence);
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache()) // Trình duyệt luôn hỏi lại bằng If-None-Match
+                .header("X-Total-Count", String.valueOf(result.getTotalElements()))
+                .body(result.getContent());
+    }
+
+    // API Ảnh đại diện theo username (đường dẫn trong danh bạ): chuyển hướng tới blob bất biến
+    @GetMapping("/users/{username}/avatar")
+    public ResponseEntity<?> getAvatar(@PathVariable String username) {
+        String avatar = userProfileCache.find(username).map(User::getAvatar).orElse(null);
+        if (avatar == null || avatar.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (BlobStore.isBlobUrl(avatar)) {
+            return ResponseEntity.status(HttpStatus.FOUND)
+                    .location(URI.create(avatar))
+                    .cacheControl(CacheControl.maxAge(Duration.ofMinutes(1)))
+                    .build();
+        }
+        // Dữ liệu cũ còn dạng base64 (chưa chạy BlobMigration)
+        int comma = avatar.indexOf(',');
+        if (avatar.startsWith("data:") && comma > 0) {
+            try {
+                return BlobController.legacyImage(avatar.substring(5, comma).split(";")[0])
+                        .body(Base64.getMimeDecoder().decode(avatar.substring(comma + 1)));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.notFound().build();
+            }
+        }
+        return ResponseEntity.notFound().build();
+    }
+
+    // Pool băm mật khẩu đầy: báo client thử lại thay vì xếp hàng vô hạn
+    @ExceptionHandler(PasswordHasher.BusyException.class)
+    public ResponseEntity<String> onHasherBusy(PasswordHasher.BusyException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(e.getMessage());
+    }
+
+    // Thoát ký tự đại diện của LIKE trong chuỗi người dùng nhập (ký tự thoát '!' - dấu \ bị MySQL hiểu trong chuỗi)
+    private static String likePrefix(String prefix) {
+        return prefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
     }
-}
\ No newline at end of file
+}
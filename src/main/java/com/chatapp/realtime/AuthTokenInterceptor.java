@@ -0,0 +1,77 @@
+package com.chatapp.realtime;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Optional;
+
+// Kiểm tra token trên /api/** (header Authorization: Bearer <token>; riêng GET ảnh tin nhắn cũ nhận thêm ?token= cho
+// thẻ <img>, vốn không gửi được header - các API khác bắt buộc header để token không lọt vào log truy cập / Referer). Token hợp lệ -> gắn username vào request (AUTH_USER)
+// và tham số ?username= nếu có phải khớp người giữ token. Không có token: require-token=true thì 401, false thì cho qua
+// như trước (client đời cũ, kiểm thử tải). Đăng nhập / đăng ký và ảnh (thẻ <img> không gửi được header) không cần token.
+// Số liệu vận hành chỉ có ở /actuator (Micrometer), không nằm dưới /api.
+@Component
+public class AuthTokenInterceptor implements HandlerInterceptor, WebMvcConfigurer {
+
+    public static final String AUTH_USER = "chat.auth.user";
+    private static final String TOKEN_PARAM = "token";
+    // Đường dẫn duy nhất được gửi token qua query
+    static final String TOKEN_QUERY_PATH = "/api/messages/single/*/image";
+    private static final PathMatcher PATH_MATCHER = new AntPathMatcher();
+
+    private final AuthTokenService authTokenService;
+    private final boolean requireToken;
+
+    public AuthTokenInterceptor(AuthTokenService authTokenService,
+                                @Value("${chat.auth.require-token:true}") boolean requireToken) {
+        this.authTokenService = authTokenService;
+        this.requireToken = requireToken;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(this)
+                .addPathPatterns("/api/**")
+                .excludePathPatterns("/api/auth/login", "/api/auth/register", "/api/auth/users/*/avatar", "/api/blobs/*");
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        String token = AuthTokenService.bearer(request.getHeader(HttpHeaders.AUTHORIZATION));
+        if (token == null && acceptsQueryToken(request)) {
+            token = request.getParameter(TOKEN_PARAM);
+        }
+        if (token == null) {
+            if (!requireToken) return true;
+            response.sendError(HttpStatus.UNAUTHORIZED.value(), "Thiếu token đăng nhập");
+            return false;
+        }
+        Optional<String> username = authTokenService.verify(token);
+        if (username.isEmpty()) {
+            response.sendError(HttpStatus.UNAUTHORIZED.value(), "Token không hợp lệ hoặc đã hết hạn");
+            return false;
+        }
+        String claimed = request.getParameter("username");
+        if (claimed != null && !claimed.equals(username.get())) {
+            response.sendError(HttpStatus.FORBIDDEN.value(), "Token không thuộc người dùng này");
+            return false;
+        }
+        request.setAttribute(AUTH_USER, username.get());
+        return true;
+    }
+
+    static boolean acceptsQueryToken(HttpServletRequest request) {
+        if (!"GET".equals(request.getMethod())) return false;
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return PATH_MATCHER.match(TOKEN_QUERY_PATH, path);
+    }
+}
@@ -0,0 +1,143 @@
+package com.chatapp.realtime;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import lombok.extern.slf4j.Slf4j;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+// Token phiên không trạng thái, cấp 1 lần khi đăng nhập: base64url("username|hết-hạn|dấu-mật-khẩu") + "." + base64url(HMAC-SHA256).
+// Kiểm tra chỉ tốn 1 lần HMAC + 1 lần tra UserProfileCache (không băm mật khẩu, không truy vấn DB khi cache trúng)
+// nên dùng được cho mọi request REST và khung CONNECT. Dấu mật khẩu (8 byte đầu SHA-256 của chuỗi đã băm) đổi theo mật khẩu
+// -> đổi mật khẩu là token cũ hết hiệu lực, không cần lưu danh sách thu hồi.
+// Bí mật để trống: sinh ngẫu nhiên lúc khởi động (khởi động lại là phải đăng nhập lại; nhiều node phải cấu hình chung bí mật).
+@Slf4j
+@Service
+public class AuthTokenService implements MeterBinder {
+
+    public static final String RESPONSE_HEADER = "X-Auth-Token"; // Token trả về khi đăng nhập / đổi mật khẩu
+    public static final String STOMP_HEADER = "token";           // Header của khung CONNECT
+    private static final String BEARER = "Bearer ";
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final UserProfileCache userProfileCache;
+    private final SecretKeySpec key;
+    private final long ttlSeconds;
+
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public AuthTokenService(UserProfileCache userProfileCache,
+                            @Value("${chat.auth.token-secret:}") String secret,
+                            @Value("${chat.auth.token-ttl-minutes:720}") long ttlMinutes) {
+        this.userProfileCache = userProfileCache;
+        this.ttlSeconds = ttlMinutes * 60;
+        byte[] secretBytes;
+        if (secret == null || secret.isBlank()) {
+            secretBytes = new byte[32];
+            new SecureRandom().nextBytes(secretBytes);
+            log.warn("Chưa cấu hình chat.auth.token-secret: dùng bí mật ngẫu nhiên, token mất hiệu lực khi khởi động lại");
+        } else {
+            secretBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(secretBytes, ALGORITHM);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("chat.auth.tokens", issued, LongAdder::sum).tag("result", "issued").register(registry);
+        FunctionCounter.builder("chat.auth.tokens", accepted, LongAdder::sum).tag("result", "accepted").register(registry);
+        FunctionCounter.builder("chat.auth.tokens", rejected, LongAdder::sum).tag("result", "rejected").register(registry);
+    }
+
+    // user: bản đã lưu (password là chuỗi đã băm hiện tại)
+    public String issue(User user) {
+        long expiresAt = Instant.now().getEpochSecond() + ttlSeconds;
+        String payload = user.getUsername() + "|" + expiresAt + "|" + stamp(user.getPassword());
+        byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+        issued.increment();
+        return ENCODER.encodeToString(payloadBytes) + "." + ENCODER.encodeToString(sign(payloadBytes));
+    }
+
+    // Username của token; rỗng nếu sai chữ ký, hết hạn hoặc mật khẩu đã đổi
+    public Optional<String> verify(String token) {
+        Optional<String> username = parse(token);
+        if (username.isPresent()) accepted.increment();
+        else rejected.increment();
+        return username;
+    }
+
+    private Optional<String> parse(String token) {
+        if (token == null) return Optional.empty();
+        int dot = token.indexOf('.');
+        if (dot <= 0) return Optional.empty();
+        byte[] payloadBytes;
+        byte[] signature;
+        try {
+            payloadBytes = DECODER.decode(token.substring(0, dot));
+            signature = DECODER.decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        if (!MessageDigest.isEqual(sign(payloadBytes), signature)) return Optional.empty();
+
+        // Username có thể chứa '|' -> tách 2 trường cuối từ phải sang
+        String payload = new String(payloadBytes, StandardCharsets.UTF_8);
+        int stampSep = payload.lastIndexOf('|');
+        int expirySep = stampSep > 0 ? payload.lastIndexOf('|', stampSep - 1) : -1;
+        if (expirySep <= 0) return Optional.empty();
+        String username = payload.substring(0, expirySep);
+        try {
+            if (Long.parseLong(payload.substring(expirySep + 1, stampSep)) < Instant.now().getEpochSecond()) return Optional.empty();
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+        String tokenStamp = payload.substring(stampSep + 1);
+        return userProfileCache.find(username)
+                .filter(user -> tokenStamp.equals(stamp(user.getPassword())))
+                .map(User::getUsername);
+    }
+
+    // Header "Authorization: Bearer <token>" -> token
+    public static String bearer(String authorization) {
+        if (authorization == null || !authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) return null;
+        String token = authorization.substring(BEARER.length()).trim();
+        return token.isEmpty() ? null : token;
+    }
+
+    private byte[] sign(byte[] payload) {
+        try {
+            // Mac không an toàn đa luồng; tạo mới rẻ hơn nhiều so với 1 lần băm mật khẩu
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String stamp(String storedPassword) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(storedPassword.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(Arrays.copyOf(digest, 8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.chatapp.realtime;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/blobs")
+@RequiredArgsConstructor
+public class BlobController {
+
+    // Thuộc tính request của Tomcat để gửi file bằng sendfile (zero-copy, không đi qua heap của JVM)
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final BlobStore blobStore;
+
+    // API tải ảnh lên: body là nội dung file thô (không multipart), Content-Type là loại ảnh
+    // Trả về đường dẫn tham chiếu để gửi qua STOMP / lưu làm avatar
+    @PostMapping
+    public ResponseEntity<?> upload(HttpServletRequest request) throws IOException {
+        try {
+            StoredBlob blob = blobStore.store(request.getInputStream(), request.getContentType());
+            Map<String, Object> result = new HashMap<>();
+            result.put("id", blob.getSha256());
+            result.put("url", BlobStore.urlOf(blob.getSha256()));
+            result.put("size", blob.getSize());
+            result.put("contentType", blob.getContentType());
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // API tải ảnh xuống: hỗ trợ ETag (304) và Range (206), gửi file bằng sendfile/FileChannel.transferTo
+    @GetMapping("/{key}")
+    public void download(@PathVariable String key, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Optional<StoredBlob> blobOpt = blobStore.find(key);
+        Path file = blobOpt.map(b -> blobStore.pathOf(b.getSha256())).orElse(null);
+        if (file == null || !Files.isRegularFile(file)) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        // Ảnh cũ lưu trước khi kho chỉ nhận ảnh raster (ví dụ SVG) chỉ được tải về dạng file, không hiển thị inline
+        String contentType = blobOpt.get().getContentType();
+        boolean inline = BlobStore.isRasterType(contentType);
+        response.setHeader(BlobStore.NOSNIFF_HEADER, BlobStore.NOSNIFF);
+        response.setHeader(BlobStore.CSP_HEADER, BlobStore.CSP_SANDBOX);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, inline ? "inline" : "attachment");
+
+        // Nội dung không bao giờ đổi với cùng một khóa -> ETag chính là khóa, cache vĩnh viễn
+        String etag = "\"" + key + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable");
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        long length = Files.size(file);
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            long[] bounds = parseRange(range, length);
+            if (bounds == UNSATISFIABLE) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                return;
+            }
+            // null: header không hiểu được (nhiều khoảng, sai cú pháp) -> bỏ qua, trả cả file 200
+            if (bounds != null) {
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long count = end - start + 1;
+        response.setContentType(inline ? contentType : MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        response.setContentLengthLong(count);
+        if ("HEAD".equals(request.getMethod()) || count == 0) {
+            return;
+        }
+
+        // Tomcat NIO hỗ trợ sendfile: giao file cho connector, kernel copy thẳng ra socket
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toRealPath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        // Không có sendfile: FileChannel.transferTo sang kênh ghi của response
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, out);
+                if (sent <= 0) break;
+                position += sent;
+                remaining -= sent;
+            }
+        }
+    }
+
+    // Ảnh base64 cũ (chưa chuyển vào kho) trả thẳng từ DB: cùng các header an toàn như ảnh trong kho,
+    // loại không phải ảnh raster thì chỉ tải về dạng file
+    static ResponseEntity.BodyBuilder legacyImage(String mediaType) {
+        boolean inline = BlobStore.isRasterType(mediaType);
+        return ResponseEntity.ok()
+                .contentType(inline ? MediaType.parseMediaType(mediaType) : MediaType.APPLICATION_OCTET_STREAM)
+                .header(BlobStore.NOSNIFF_HEADER, BlobStore.NOSNIFF)
+                .header(BlobStore.CSP_HEADER, BlobStore.CSP_SANDBOX)
+                .header(HttpHeaders.CONTENT_DISPOSITION, inline ? "inline" : "attachment");
+    }
+
+    // Kết quả của parseRange khi khoảng đúng cú pháp nhưng bắt đầu từ/sau cuối file -> 416
+    static final long[] UNSATISFIABLE = new long[0];
+
+    // Chỉ hỗ trợ 1 khoảng: "bytes=a-b", "bytes=a-", "bytes=-n". Nhiều khoảng hoặc sai cú pháp trả về null
+    // (bỏ qua header như RFC 9110 cho phép), khoảng bắt đầu từ/sau cuối file trả về UNSATISFIABLE
+    static long[] parseRange(String header, long length) {
+        if (!header.startsWith("bytes=") || header.contains(",")) return null;
+        String spec = header.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) return null;
+        try {
+            String from = spec.substring(0, dash).trim();
+            String to = spec.substring(dash + 1).trim();
+            if (from.isEmpty()) {
+                long suffix = Long.parseLong(to);
+                if (suffix < 0) return null;
+                // Hậu tố 0 byte (hoặc file rỗng): không có byte nào để trả
+                if (suffix == 0 || length == 0) return UNSATISFIABLE;
+                return new long[]{Math.max(0, length - suffix), length - 1};
+            }
+            long start = Long.parseLong(from);
+            long end = to.isEmpty() ? Long.MAX_VALUE : Long.parseLong(to);
+            if (start < 0 || start > end) return null;
+            if (start >= length) return UNSATISFIABLE;
+            return new long[]{start, Math.min(end, length - 1)};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
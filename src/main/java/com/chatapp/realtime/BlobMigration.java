@@ -0,0 +1,63 @@
+package com.chatapp.realtime;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import java.util.List;
+import java.util.Map;
+
+// Chuyển ảnh base64 cũ (chat_messages.content của tin IMAGE và users.avatar) sang kho blob,
+// trong DB chỉ còn lại đường dẫn /api/blobs/<sha256>. Dòng đã chuyển không còn khớp điều kiện nên chạy lại không sao.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BlobMigration {
+
+    private static final int BATCH_SIZE = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BlobStore blobStore;
+
+    @Value("${chat.blobs.migrate-inline:true}")
+    private boolean enabled;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateInlineImages() {
+        if (!enabled) return;
+        int messages = migrate("SELECT id, content AS data FROM chat_messages "
+                        + "WHERE id > ? AND type = 'IMAGE' AND content LIKE 'data:%' ORDER BY id LIMIT " + BATCH_SIZE,
+                "UPDATE chat_messages SET content = ? WHERE id = ?");
+        int avatars = migrate("SELECT id, avatar AS data FROM users "
+                        + "WHERE id > ? AND avatar LIKE 'data:%' ORDER BY id LIMIT " + BATCH_SIZE,
+                "UPDATE users SET avatar = ? WHERE id = ?");
+        if (messages + avatars > 0) {
+            log.info("Đã chuyển {} ảnh tin nhắn và {} avatar sang kho blob", messages, avatars);
+        }
+    }
+
+    // Duyệt theo khóa id tăng dần, mỗi lần một lô nhỏ để không kéo cả bảng LONGTEXT lên RAM
+    private int migrate(String selectSql, String updateSql) {
+        int migrated = 0;
+        long lastId = 0;
+        while (true) {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(selectSql, lastId);
+            if (rows.isEmpty()) break;
+            for (Map<String, Object> row : rows) {
+                long id = ((Number) row.get("id")).longValue();
+                lastId = id;
+                try {
+                    String url = blobStore.storeDataUrl((String) row.get("data"));
+                    jdbcTemplate.update(updateSql, url, id);
+                    migrated++;
+                } catch (Exception e) {
+                    log.warn("Không thể chuyển ảnh của dòng id={} sang kho blob: {}", id, e.getMessage());
+                }
+            }
+        }
+        return migrated;
+    }
+}
@@ -0,0 +1,180 @@
+package com.chatapp.realtime;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import lombok.extern.slf4j.Slf4j;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+// Kho ảnh định danh theo nội dung (content-addressed): khóa = SHA-256, cùng một ảnh chỉ lưu 1 lần.
+// File nằm ở <dir>/ab/cd/<sha256>, ghi qua file tạm rồi move nguyên tử nên không bao giờ đọc phải file dở dang.
+// Chỉ nhận ảnh raster (PNG / JPEG / GIF / WebP), loại ảnh xác định từ các byte đầu file chứ không tin Content-Type của
+// client: SVG / HTML phục vụ cùng origin chạy được script và đọc được token phiên trong trang.
+@Slf4j
+@Service
+public class BlobStore {
+
+    public static final String URL_PREFIX = "/api/blobs/";
+    private static final Pattern KEY_PATTERN = Pattern.compile("[0-9a-f]{64}");
+    private static final Set<String> RASTER_TYPES = Set.of("image/png", "image/jpeg", "image/gif", "image/webp");
+    private static final int SNIFF_BYTES = 12;
+
+    // Header gửi kèm mọi lần trả nội dung ảnh do người dùng tải lên: trình duyệt không được đoán lại loại file,
+    // và nếu bị mở trực tiếp thì trang chạy trong sandbox (không script, origin riêng)
+    public static final String NOSNIFF_HEADER = "X-Content-Type-Options";
+    public static final String NOSNIFF = "nosniff";
+    public static final String CSP_HEADER = "Content-Security-Policy";
+    public static final String CSP_SANDBOX = "sandbox";
+
+    private final StoredBlobRepository storedBlobRepository;
+    private final Path root;
+    private final long maxSizeBytes;
+
+    public BlobStore(StoredBlobRepository storedBlobRepository,
+                     @Value("${chat.blobs.dir:./data/blobs}") String dir,
+                     @Value("${chat.blobs.max-size-bytes:20971520}") long maxSizeBytes) {
+        this.storedBlobRepository = storedBlobRepository;
+        this.root = Paths.get(dir).toAbsolutePath().normalize();
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+    // Ghi luồng dữ liệu vào kho (vừa ghi vừa tính SHA-256, không giữ cả file trong RAM)
+    // contentType của client chỉ dùng để từ chối sớm; loại lưu lại là loại đọc được từ nội dung
+    public StoredBlob store(InputStream in, String contentType) throws IOException {
+        if (contentType == null || !contentType.startsWith("image/")) {
+            throw new IllegalArgumentException("Chỉ hỗ trợ tải lên file ảnh");
+        }
+        byte[] header = in.readNBytes(SNIFF_BYTES);
+        String sniffedType = sniffImageType(header);
+        if (sniffedType == null) {
+            throw new IllegalArgumentException("Chỉ hỗ trợ ảnh PNG, JPEG, GIF hoặc WebP");
+        }
+        in = new SequenceInputStream(new ByteArrayInputStream(header), in);
+        Path tmpDir = root.resolve("tmp");
+        Files.createDirectories(tmpDir);
+        Path tmp = Files.createTempFile(tmpDir, "upload-", ".part");
+
+        MessageDigest digest = newDigest();
+        long size = 0;
+        try (InputStream din = new DigestInputStream(in, digest); OutputStream out = Files.newOutputStream(tmp)) {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = din.read(buffer)) != -1) {
+                size += n;
+                if (size > maxSizeBytes) {
+                    throw new IllegalArgumentException("Ảnh vượt quá dung lượng cho phép (" + (maxSizeBytes / 1024 / 1024) + "MB)");
+                }
+                out.write(buffer, 0, n);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+
+        String key = HexFormat.of().formatHex(digest.digest());
+        Path target = pathOf(key);
+        if (Files.exists(target)) {
+            Files.delete(tmp); // Đã có ảnh giống hệt -> dùng lại
+        } else {
+            Files.createDirectories(target.getParent());
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                Files.deleteIfExists(tmp); // Upload song song cùng nội dung
+            }
+        }
+
+        Optional<StoredBlob> existing = storedBlobRepository.findById(key);
+        if (existing.isPresent()) return existing.get();
+        try {
+            return storedBlobRepository.save(new StoredBlob(key, sniffedType, size, LocalDateTime.now()));
+        } catch (DataIntegrityViolationException e) {
+            return storedBlobRepository.findById(key).orElseThrow(() -> e);
+        }
+    }
+
+    // Chuyển data URL base64 (client cũ / dữ liệu cũ) thành blob, trả về đường dẫn tham chiếu
+    public String storeDataUrl(String dataUrl) throws IOException {
+        int comma = dataUrl.indexOf(',');
+        if (!dataUrl.startsWith("data:") || comma < 0) {
+            throw new IllegalArgumentException("Không phải data URL");
+        }
+        String contentType = dataUrl.substring(5, comma).split(";")[0];
+        byte[] bytes = Base64.getMimeDecoder().decode(dataUrl.substring(comma + 1));
+        return urlOf(store(new ByteArrayInputStream(bytes), contentType).getSha256());
+    }
+
+    public Optional<StoredBlob> find(String key) {
+        if (!isValidKey(key)) return Optional.empty();
+        return storedBlobRepository.findById(key);
+    }
+
+    public Path pathOf(String key) {
+        if (!isValidKey(key)) {
+            throw new IllegalArgumentException("Khóa blob không hợp lệ");
+        }
+        return root.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+    }
+
+    // Loại ảnh theo chữ ký đầu file; null nếu không phải ảnh raster được hỗ trợ
+    static String sniffImageType(byte[] header) {
+        if (startsWith(header, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) return "image/png";
+        if (startsWith(header, 0, 0xFF, 0xD8, 0xFF)) return "image/jpeg";
+        if (startsWith(header, 0, 'G', 'I', 'F', '8') && header.length >= 6 && (header[4] == '7' || header[4] == '9') && header[5] == 'a') {
+            return "image/gif";
+        }
+        if (startsWith(header, 0, 'R', 'I', 'F', 'F') && startsWith(header, 8, 'W', 'E', 'B', 'P')) return "image/webp";
+        return null;
+    }
+
+    // Loại ảnh được phép trả về nguyên dạng (inline) cho trình duyệt
+    public static boolean isRasterType(String contentType) {
+        return contentType != null && RASTER_TYPES.contains(contentType.toLowerCase());
+    }
+
+    private static boolean startsWith(byte[] data, int offset, int... signature) {
+        if (data.length < offset + signature.length) return false;
+        for (int i = 0; i < signature.length; i++) {
+            if ((data[offset + i] & 0xFF) != signature[i]) return false;
+        }
+        return true;
+    }
+
+    public static String urlOf(String key) {
+        return URL_PREFIX + key;
+    }
+
+    public static boolean isBlobUrl(String value) {
+        return value != null && value.startsWith(URL_PREFIX) && KEY_PATTERN.matcher(value.substring(URL_PREFIX.length())).matches();
+    }
+
+    private static boolean isValidKey(String key) {
+        return key != null && KEY_PATTERN.matcher(key).matches();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.chatapp.realtime;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import lombok.extern.slf4j.Slf4j;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Định dạng khung STOMP theo từng phiên: mặc định JSON (bỏ trường null); client kết nối WebSocket thuần (/ws/websocket,
+// không qua SockJS) có thể gửi header "accept: application/cbor" trong khung CONNECT để nhận khung nhị phân CBOR.
+// - Tin broadcast vẫn được serialize JSON một lần; phiên CBOR nhận bản chuyển mã, bản chuyển mã được dùng chung cho mọi
+//   phiên CBOR cùng nhận tin đó (broker dùng chung một mảng byte payload cho tất cả subscriber).
+// - Spring chỉ gửi khung WebSocket nhị phân khi content-type là application/octet-stream, nên khung CBOR gửi xuống mang
+//   content-type "application/octet-stream;codec=cbor"; client gửi khung CBOR lên cũng dùng content-type này
+//   (hoặc application/cbor nếu thư viện client cho phép gửi nhị phân với loại đó).
+@Slf4j
+@Component
+public class CborWireFormat implements HandshakeInterceptor, MeterBinder {
+
+    public static final MimeType CBOR = new MimeType("application", "cbor");
+    public static final MimeType CBOR_FRAME = new MimeType("application", "octet-stream", Map.of("codec", "cbor"));
+    public static final String ACCEPT_HEADER = "accept";
+    private static final String RAW_WEBSOCKET_ATTR = "chatRawWebSocket";
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper cborMapper;
+    private final Set<String> cborSessions = ConcurrentHashMap.newKeySet();
+    // Payload JSON (so sánh theo định danh mảng) -> bản CBOR; tự dọn khi broker không còn giữ payload
+    private final Map<byte[], byte[]> transcoded = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final LongAdder cborFrames = new LongAdder();
+    private final LongAdder jsonBytes = new LongAdder();
+    private final LongAdder cborBytes = new LongAdder();
+
+    private final ChannelInterceptor inbound = new ChannelInterceptor() {
+        @Override
+        public Message<?> preSend(Message<?> message, MessageChannel channel) {
+            onInbound(message);
+            return message;
+        }
+    };
+
+    private final ChannelInterceptor outbound = new ChannelInterceptor() {
+        @Override
+        public Message<?> preSend(Message<?> message, MessageChannel channel) {
+            return onOutbound(message);
+        }
+    };
+
+    public CborWireFormat(Jackson2ObjectMapperBuilder builder) {
+        // Cùng module / định dạng ngày giờ với REST, chỉ bỏ trường null để khung gọn hơn
+        this.jsonMapper = builder.serializationInclusion(JsonInclude.Include.NON_NULL).build();
+        this.cborMapper = jsonMapper.copyWith(new CBORFactory());
+    }
+
+    // Bộ chuyển đổi cho broker: JSON là mặc định, CBOR chỉ dùng khi content-type khớp đúng (tin client gửi lên)
+    public MessageConverter jsonConverter() {
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(jsonMapper);
+        return converter;
+    }
+
+    public MessageConverter cborConverter() {
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter(CBOR, CBOR_FRAME) {
+            @Override
+            protected boolean supportsMimeType(MessageHeaders headers) {
+                return isCbor(getMimeType(headers));
+            }
+        };
+        converter.setObjectMapper(cborMapper);
+        converter.setStrictContentTypeMatch(true);
+        return converter;
+    }
+
+    // So khớp cả tham số codec: application/octet-stream thường (ảnh, file) không phải CBOR
+    public static boolean isCbor(MimeType mimeType) {
+        if (mimeType == null) return false;
+        return CBOR.equalsTypeAndSubtype(mimeType)
+                || (CBOR_FRAME.equalsTypeAndSubtype(mimeType) && "cbor".equals(mimeType.getParameter("codec")));
+    }
+
+    public ChannelInterceptor inboundInterceptor() {
+        return inbound;
+    }
+
+    public ChannelInterceptor outboundInterceptor() {
+        return outbound;
+    }
+
+    // SockJS chỉ truyền được văn bản -> chỉ phiên WebSocket thuần mới được chọn CBOR
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler,
+                                   Map<String, Object> attributes) {
+        attributes.put(RAW_WEBSOCKET_ATTR, request.getURI().getPath().endsWith("/ws/websocket"));
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    private void onInbound(Message<?> message) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+        if (!StompCommand.CONNECT.equals(accessor.getCommand())) return;
+        String accept = accessor.getFirstNativeHeader(ACCEPT_HEADER);
+        if (accept == null || !accept.contains(CBOR.toString())) return;
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (attributes != null && Boolean.TRUE.equals(attributes.get(RAW_WEBSOCKET_ATTR))) {
+            cborSessions.add(accessor.getSessionId());
+        } else {
+            log.debug("Phiên {} yêu cầu CBOR qua SockJS, tiếp tục dùng JSON", accessor.getSessionId());
+        }
+    }
+
+    private Message<?> onOutbound(Message<?> message) {
+        if (cborSessions.isEmpty()) return message;
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        if (accessor.getMessageType() != SimpMessageType.MESSAGE || !cborSessions.contains(accessor.getSessionId())) return message;
+        MimeType contentType = accessor.getContentType();
+        if (contentType == null || !MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(contentType)
+                || !(message.getPayload() instanceof byte[] json)) {
+            return message;
+        }
+        byte[] cbor = transcoded.computeIfAbsent(json, this::toCbor);
+        if (cbor == null) return message;
+        cborFrames.increment();
+        jsonBytes.add(json.length);
+        cborBytes.add(cbor.length);
+        accessor.setContentType(CBOR_FRAME);
+        return MessageBuilder.createMessage(cbor, accessor.getMessageHeaders());
+    }
+
+    private byte[] toCbor(byte[] json) {
+        try {
+            return cborMapper.writeValueAsBytes(jsonMapper.readTree(json));
+        } catch (IOException e) {
+            log.warn("Không chuyển được khung JSON sang CBOR, gửi nguyên JSON", e);
+            return null;
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        cborSessions.remove(event.getSessionId());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("chat.wire.cbor.sessions", cborSessions, Set::size).register(registry);
+        FunctionCounter.builder("chat.wire.cbor.frames", cborFrames, LongAdder::sum).register(registry);
+        FunctionCounter.builder("chat.wire.cbor.bytes", jsonBytes, LongAdder::sum).baseUnit("bytes").tag("format", "json").register(registry);
+        FunctionCounter.builder("chat.wire.cbor.bytes", cborBytes, LongAdder::sum).baseUnit("bytes").tag("format", "cbor").register(registry);
+    }
+}
@@ -7,7 +7,7 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "chat_clear_records")
+@Table(name = "chat_clear_records", indexes = @Index(name = "idx_clear_records_username_room_id", columnList = "username, room_id"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -7,4 +7,5 @@ import java.util.List;
 public interface ChatClearRecordRepository extends JpaRepository<ChatClearRecord, Long> {
     Optional<ChatClearRecord> findByUsernameAndRoomId(String username, String roomId);
     List<ChatClearRecord> findByUsername(String username);
+    List<ChatClearRecord> findByRoomId(String roomId);
 }
\ No newline at end of file
@@ -3,10 +3,15 @@ package com.chatapp.realtime;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.annotation.SendToUser;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.CacheControl;
+import org.springframework.data.domain.Limit;
 import lombok.RequiredArgsConstructor;
 import org.springframework.transaction.annotation.Transactional;
+import jakarta.annotation.PostConstruct;
 import java.util.List;
 import java.time.LocalDateTime;
 import java.util.Optional;
@@ -16,64 +21,152 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.Set;
 import java.util.HashSet;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.core.type.TypeReference;
-import java.text.Normalizer;
-import java.util.regex.Pattern;
+import java.util.Collections;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.net.URI;
+import java.security.Principal;
+import java.io.IOException;
 
 @RestController
 @RequiredArgsConstructor
 public class ChatController {
 
+    private static final int MAX_HISTORY_PAGE_SIZE = 200;
+    private static final int MAX_SEARCH_PAGE_SIZE = 100;
+
     private final SimpMessagingTemplate messagingTemplate;
     private final MessageRepository messageRepository;
     private final ChatClearRecordRepository chatClearRecordRepository;
+    private final MessageHiddenRepository messageHiddenRepository;
+    private final SnowflakeIdGenerator idGenerator;
+    private final MessageWriteBehindQueue messageWriteBehind;
+    private final ReadReceiptService readReceiptService;
+    private final ReactionService reactionService;
+    private final BlobStore blobStore;
+    private final ConversationSummaryService conversationSummaryService;
+    private final MessageSearchIndex messageSearchIndex;
+    private final NotificationService notificationService;
+    private final TypingIndicatorService typingIndicatorService;
+    private final RecentMessageCache recentMessageCache;
+    private final ChatMetrics chatMetrics;
+    private final RoomSequencer roomSequencer;
+    private final MessageReplayService messageReplayService;
+    private final MessageArchive messageArchive;
+    private final RoomService roomService;
+
+    // Chế độ write-behind: tóm tắt hội thoại (gộp theo phòng) và chỉ mục tìm kiếm được ghi theo lô trên luồng ghi,
+    // chỉ cho các tin đã thực sự vào DB
+    @PostConstruct
+    void subscribeWriteBehind() {
+        if (!messageWriteBehind.isEnabled()) return;
+        messageWriteBehind.onWritten(conversationSummaryService::onMessagesSent);
+        messageWriteBehind.onWritten(messageSearchIndex::indexAll);
+    }
 
     // Xử lý gửi tin nhắn từ WebSocket
     @MessageMapping("/chat.sendMessage")
-    public void sendMessage(@Payload ChatMessage chatMessage) {
-        // 1. Lưu tin nhắn vào Database
+    public void sendMessage(@Payload ChatMessage chatMessage, Principal principal) throws IOException {
+        // Chỉ thành viên mới gửi được vào phòng (phòng 1-1 chưa có thì được tạo ở tin đầu tiên)
+        if (!bindSender(chatMessage, principal) || roomService.resolve(chatMessage.getRoomId(), chatMessage.getSender()).isEmpty()) {
+            return;
+        }
+        // Client cũ gửi ảnh base64 trong khung STOMP -> chuyển vào kho blob, chỉ giữ đường dẫn tham chiếu
+        if ("IMAGE".equals(chatMessage.getType()) && chatMessage.getContent() != null && chatMessage.getContent().startsWith("data:")) {
+            chatMessage.setContent(blobStore.storeDataUrl(chatMessage.getContent()));
+        }
+        // Tin ảnh chỉ được tham chiếu tới kho blob của server
+        if ("IMAGE".equals(chatMessage.getType()) && !BlobStore.isBlobUrl(chatMessage.getContent())) {
+            return;
+        }
+        chatMessage.setId(idGenerator.nextId()); // Cấp ID ngay để client có thể thu hồi/thả cảm xúc trước khi tin được ghi
         chatMessage.setStatus("SENT"); // Mặc định là Đã gửi
         chatMessage.setTimestamp(LocalDateTime.now()); // Đảm bảo có thời gian gửi
-        messageRepository.save(chatMessage);
+        chatMessage.setSeq(roomSequencer.next(chatMessage.getRoomId())); // Số thứ tự trong phòng, cấp trên làn của phòng
+        long stage = System.nanoTime(); // Đo thời gian từng bước (chat.send.stage)
+
+        // 1. Lưu tin nhắn vào Database (chế độ mặc định: ghi đồng bộ trước khi broadcast)
+        if (!messageWriteBehind.isEnabled()) {
+            messageRepository.save(chatMessage);
+            stage = chatMetrics.recordSendStage("persist", stage);
+        }
 
         // 2. Gửi tin nhắn đến ĐÚNG topic của phòng đó (ví dụ: /topic/nam_tuan)
         // Client nào đang subscribe topic này mới nhận được tin nhắn
         messagingTemplate.convertAndSend("/topic/" + chatMessage.getRoomId(), chatMessage);
+        stage = chatMetrics.recordSendStage("broadcast", stage);
         
-        sendNotificationToPartner(chatMessage);
+        notificationService.notifyMembers(chatMessage);
+        typingIndicatorService.clear(chatMessage.getRoomId(), chatMessage.getSender());
+        stage = chatMetrics.recordSendStage("notify", stage);
+
+        recentMessageCache.onMessageSent(chatMessage);
+        stage = chatMetrics.recordSendStage("cache", stage);
+        // Chế độ mặc định: cập nhật dòng tóm tắt hội thoại (danh sách chat) và chỉ mục tìm kiếm ngay trên làn của phòng
+        // (write-behind: làm theo lô trên luồng ghi, xem subscribeWriteBehind)
+        if (!messageWriteBehind.isEnabled()) {
+            conversationSummaryService.onMessageSent(chatMessage);
+            stage = chatMetrics.recordSendStage("summary", stage);
+            if (MessageSearchIndex.isIndexable(chatMessage)) {
+                messageSearchIndex.index(chatMessage);
+                stage = chatMetrics.recordSendStage("search-index", stage);
+            }
+        }
+
+        // Chế độ write-behind: broadcast xong mới đưa vào hàng đợi ghi theo lô
+        if (messageWriteBehind.isEnabled()) {
+            messageWriteBehind.enqueue(chatMessage);
+            chatMetrics.recordSendStage("enqueue", stage);
+        }
     }
 
     // Xử lý thông báo "Đã xem"
     @MessageMapping("/chat.read")
-    public void markAsRead(@Payload ChatMessage chatMessage) {
+    public void markAsRead(@Payload ChatMessage chatMessage, Principal principal) {
         // chatMessage ở đây đóng vai trò là sự kiện READ, sender là người vừa đọc tin nhắn
-        
-        // 1. Cập nhật DB: Đánh dấu các tin nhắn trong phòng (mà không phải do mình gửi) thành READ
-        List<ChatMessage> messages = messageRepository.findByRoomId(chatMessage.getRoomId());
-        for (ChatMessage msg : messages) {
-            if (!msg.getSender().equals(chatMessage.getSender()) && !"READ".equals(msg.getStatus())) {
-                msg.setStatus("READ");
-                messageRepository.save(msg);
-            }
+        // (id nếu có là ID tin nhắn cuối cùng mà người đọc đã thấy)
+        if (!bindSender(chatMessage, principal) || !roomService.isMember(chatMessage.getRoomId(), chatMessage.getSender())) {
+            return;
         }
 
-        // 2. Gửi sự kiện READ cho client để cập nhật UI
-        messagingTemplate.convertAndSend("/topic/" + chatMessage.getRoomId(), chatMessage);
-        
-        sendNotificationToPartner(chatMessage);
+        // 1. Cập nhật DB: Nâng mốc "đã xem" của người đọc trong phòng (1 câu UPSERT, không phụ thuộc số tin trong phòng)
+        long mark = readReceiptService.markRead(chatMessage.getRoomId(), chatMessage.getSender(), chatMessage.getId());
+        // Write-behind: tin vừa đọc có thể chưa được ghi, lô của nó sẽ cộng lại số tin chưa đọc sau khi ta xóa -> ghi trước
+        messageWriteBehind.flushIfPending(mark);
+        conversationSummaryService.onRead(chatMessage.getRoomId(), chatMessage.getSender(), mark);
+        recentMessageCache.onRead(chatMessage.getRoomId(), chatMessage.getSender(), mark);
+
+        // 2. Gửi sự kiện READ gọn (người đọc + mốc đã xem) cho client để cập nhật UI
+        messagingTemplate.convertAndSend("/topic/" + chatMessage.getRoomId(),
+                new ReadEvent(chatMessage.getRoomId(), chatMessage.getSender(), mark));
+        // Thông báo mang mốc đã chốt, không mang id client gửi lên (có thể lớn hơn tin mới nhất hoặc thiếu)
+        notificationService.notifyMembers(new NotificationEvent.Item("READ", mark, chatMessage.getRoomId(),
+                chatMessage.getSender(), null, LocalDateTime.now()));
+    }
+
+    // Client vừa kết nối lại gửi seq lớn nhất đã thấy của từng phòng -> chỉ trả về phần tin bị lỡ cho đúng phiên đó
+    @MessageMapping("/chat.resume")
+    @SendToUser(destinations = "/queue/replay", broadcast = false)
+    public ReplayEvent resume(@Payload ResumeRequest request, Principal principal) {
+        if (principal == null) return new ReplayEvent(List.of());
+        return messageReplayService.replay(principal.getName(), request.getRooms());
     }
 
     // Xử lý thông báo "Đang soạn tin"
     @MessageMapping("/chat.typing")
-    public void typing(@Payload ChatMessage chatMessage) {
-        messagingTemplate.convertAndSend("/topic/" + chatMessage.getRoomId(), chatMessage);
+    public void typing(@Payload ChatMessage chatMessage, Principal principal) {
+        if (!bindSender(chatMessage, principal) || !roomService.isMember(chatMessage.getRoomId(), chatMessage.getSender())) {
+            return;
+        }
+        // Không broadcast từng khung: chỉ báo START/STOP khi trạng thái thay đổi (xem TypingIndicatorService)
+        typingIndicatorService.onTyping(chatMessage.getRoomId(), chatMessage.getSender());
     }
 
     // Xử lý Thu hồi tin nhắn (Unsend for everyone)
     @MessageMapping("/chat.revoke")
-    public void revokeMessage(@Payload ChatMessage chatMessage) {
-        Optional<ChatMessage> msgOpt = messageRepository.findById(chatMessage.getId());
+    public void revokeMessage(@Payload ChatMessage chatMessage, Principal principal) {
+        if (!bindSender(chatMessage, principal)) return;
+        Optional<ChatMessage> msgOpt = findMessageById(chatMessage.getId());
         if (msgOpt.isPresent()) {
             ChatMessage msg = msgOpt.get();
             // Chỉ người gửi mới được thu hồi
@@ -81,6 +174,9 @@ public class ChatController {
                 msg.setType("REVOKED");
                 msg.setContent("Tin nhắn đã bị thu hồi");
                 messageRepository.save(msg);
+                conversationSummaryService.onRevoked(msg);
+                recentMessageCache.onRevoked(msg);
+                messageSearchIndex.remove(msg.getId());
                 
                 // Gửi thông báo cập nhật cho mọi người
                 messagingTemplate.convertAndSend("/topic/" + msg.getRoomId(), msg);
@@ -90,68 +186,172 @@ public class ChatController {
 
     // Xử lý Thả cảm xúc (Reaction)
     @MessageMapping("/chat.react")
-    public void reactToMessage(@Payload ChatMessage chatMessage) {
-        Optional<ChatMessage> msgOpt = messageRepository.findById(chatMessage.getId());
-        if (msgOpt.isPresent()) {
+    public void reactToMessage(@Payload ChatMessage chatMessage, Principal principal) {
+        // chatMessage.getContent() chứa emoji (ví dụ: "👍")
+        if (!ReactionService.isValidEmoji(chatMessage.getContent()) || !bindSender(chatMessage, principal)) return;
+        Optional<ChatMessage> msgOpt = findMessageById(chatMessage.getId());
+        // Chỉ thành viên của phòng chứa tin mới thả cảm xúc được
+        if (msgOpt.isPresent() && roomService.isMember(msgOpt.get().getRoomId(), chatMessage.getSender())) {
             ChatMessage msg = msgOpt.get();
-            try {
-                ObjectMapper mapper = new ObjectMapper();
-                Map<String, String> reactions = new HashMap<>();
-                if (msg.getReactions() != null && !msg.getReactions().isEmpty()) {
-                    reactions = mapper.readValue(msg.getReactions(), new TypeReference<Map<String, String>>(){});
-                }
-                
-                // chatMessage.getContent() chứa emoji (ví dụ: "👍")
-                // Cập nhật cảm xúc (ghi đè nếu đã có, không xóa khi chọn trùng)
-                reactions.put(chatMessage.getSender(), chatMessage.getContent());
-                
-                msg.setReactions(mapper.writeValueAsString(reactions));
-                messageRepository.save(msg);
-                
-                // Gửi tin nhắn cập nhật về client với type là REACT
-                msg.setType("REACT");
-                messagingTemplate.convertAndSend("/topic/" + msg.getRoomId(), msg);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+            // Cập nhật cảm xúc (ghi đè nếu đã có, không xóa khi chọn trùng) - 1 câu UPSERT trên dòng của người thả
+            Map<String, Long> counts = reactionService.react(msg.getId(), chatMessage.getSender(), chatMessage.getContent());
+
+            // Gửi sự kiện REACT gọn nhẹ (ai thả gì + số lượt mới), không gửi lại cả tin nhắn
+            messagingTemplate.convertAndSend("/topic/" + msg.getRoomId(),
+                    new ReactionEvent(msg.getId(), msg.getRoomId(), chatMessage.getSender(), chatMessage.getContent(), counts));
         }
     }
 
     // API Xóa tin nhắn phía người dùng (Remove for you)
     @DeleteMapping("/api/messages/single/{messageId}")
     public ResponseEntity<?> deleteMessageForUser(@PathVariable Long messageId, @RequestParam String username) {
-        Optional<ChatMessage> msgOpt = messageRepository.findById(messageId);
+        Optional<ChatMessage> msgOpt = findMessageById(messageId);
+        if (msgOpt.isPresent() && !roomService.isMember(msgOpt.get().getRoomId(), username)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Bạn không ở trong phòng này");
+        }
         if (msgOpt.isPresent()) {
-            ChatMessage msg = msgOpt.get();
-            String currentDeleted = msg.getDeletedBy() == null ? "" : msg.getDeletedBy();
-            // Thêm username vào danh sách đã xóa (ngăn cách bằng dấu phẩy)
-            msg.setDeletedBy(currentDeleted + username + ",");
-            messageRepository.save(msg);
+            // Thêm 1 dòng (tin nhắn, người gỡ) - không sửa lại dòng tin nhắn
+            messageHiddenRepository.hide(messageId, username);
+            conversationSummaryService.onHiddenForUser(username, msgOpt.get());
+            recentMessageCache.onHidden(msgOpt.get().getRoomId(), messageId, username);
             return ResponseEntity.ok("Đã xóa tin nhắn phía bạn");
         }
+        if (isArchivedId(messageId)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Tin nhắn đã được lưu trữ, không thể sửa");
+        }
         return ResponseEntity.badRequest().body("Tin nhắn không tồn tại");
     }
 
-    // API lấy lịch sử tin nhắn của một phòng cụ thể
+    // API lấy lịch sử tin nhắn của một phòng cụ thể (toàn bộ, đã lọc mốc xóa chat và tin "Gỡ ở phía bạn" trong SQL)
+    // Các API đọc theo ?username= chỉ trả dữ liệu phòng mà username là thành viên (AuthTokenInterceptor đã buộc username
+    // khớp người giữ token)
     @GetMapping("/api/messages/{roomId}")
     public ResponseEntity<List<ChatMessage>> getChatHistory(@PathVariable String roomId, @RequestParam String username) {
-        // Kiểm tra xem user này đã từng xóa lịch sử chat chưa
-        Optional<ChatClearRecord> record = chatClearRecordRepository.findByUsernameAndRoomId(username, roomId);
-        if (record.isPresent()) {
-            // Nếu có, chỉ trả về tin nhắn SAU thời điểm xóa
-            List<ChatMessage> messages = messageRepository.findByRoomIdAndTimestampAfter(roomId, record.get().getClearedAt());
-            return ResponseEntity.ok(filterDeletedMessages(messages, username));
+        if (!roomService.isMember(roomId, username)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
-        // Nếu chưa xóa bao giờ, trả về toàn bộ
-        List<ChatMessage> messages = messageRepository.findByRoomId(roomId);
-        return ResponseEntity.ok(filterDeletedMessages(messages, username));
+        List<ChatMessage> messages = messageRepository.findVisibleHistory(roomId, username);
+        readReceiptService.applyStatus(messages);
+        reactionService.applyReactions(messages);
+        return ResponseEntity.ok(messages);
     }
 
-    // Helper: Lọc bỏ các tin nhắn mà user này đã chọn "Xóa ở phía bạn"
-    private List<ChatMessage> filterDeletedMessages(List<ChatMessage> messages, String username) {
-        return messages.stream()
-                .filter(m -> m.getDeletedBy() == null || !m.getDeletedBy().contains(username + ","))
-                .collect(Collectors.toList());
+    // API lấy lịch sử theo trang (keyset): ?before=<id> để lấy tin cũ hơn, ?after=<id> để lấy tin mới hơn,
+    // không truyền gì thì lấy trang mới nhất. Tin IMAGE chỉ trả về đường dẫn ảnh.
+    @GetMapping("/api/messages/{roomId}/page")
+    public ResponseEntity<Map<String, Object>> getChatHistoryPage(@PathVariable String roomId,
+                                                                  @RequestParam String username,
+                                                                  @RequestParam(required = false) Long before,
+                                                                  @RequestParam(required = false) Long after,
+                                                                  @RequestParam(defaultValue = "50") int limit) {
+        if (!roomService.isMember(roomId, username)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        int pageSize = Math.max(1, Math.min(limit, MAX_HISTORY_PAGE_SIZE));
+        // Lấy dư 1 dòng để biết còn trang tiếp theo hay không; phòng đang được xem thì đọc từ bộ đệm tin gần nhất
+        Optional<List<ChatMessageView>> cached = after != null
+                ? recentMessageCache.pageAfter(roomId, username, after, pageSize + 1)
+                : recentMessageCache.pageBefore(roomId, username, before, pageSize + 1);
+        List<ChatMessageView> page = cached.orElseGet(() -> after != null
+                ? messageRepository.findPageAfter(roomId, username, after, Limit.of(pageSize + 1))
+                : messageRepository.findPageBefore(roomId, username, before != null ? before : Long.MAX_VALUE, Limit.of(pageSize + 1)));
+        // Phần cũ hơn cửa sổ nóng đã được chuyển sang kho lưu trữ: trang thiếu thì đọc tiếp từ đó
+        List<ChatMessageView> archived = after != null
+                ? messageArchive.pageAfter(roomId, username, after, pageSize + 1)
+                : page.size() > pageSize ? List.of()
+                : messageArchive.pageBefore(roomId, username,
+                        page.isEmpty() ? (before != null ? before : Long.MAX_VALUE) : page.get(page.size() - 1).getId(),
+                        pageSize + 1 - page.size());
+        if (!archived.isEmpty()) {
+            List<ChatMessageView> merged = new ArrayList<>(archived.size() + page.size());
+            if (after != null) {
+                // Cũ -> mới: tin lưu trữ đứng trước; bỏ phần trùng nếu tháng đang lưu trữ dở vẫn còn dòng trong DB
+                long firstHot = page.isEmpty() ? Long.MAX_VALUE : page.get(0).getId();
+                archived.stream().filter(m -> m.getId() < firstHot).forEach(merged::add);
+                merged.addAll(page);
+            } else {
+                merged.addAll(page);
+                merged.addAll(archived);
+            }
+            page = merged.size() > pageSize + 1 ? merged.subList(0, pageSize + 1) : merged;
+        }
+
+        boolean hasMore = page.size() > pageSize;
+        List<ChatMessageView> messages = new ArrayList<>(hasMore ? page.subList(0, pageSize) : page);
+        if (after == null) {
+            Collections.reverse(messages); // Trả về theo thứ tự gửi (cũ -> mới)
+        }
+        for (ChatMessageView view : messages) {
+            // Ảnh base64 cũ chưa chuyển sang kho blob: trả về đường dẫn tải riêng
+            if ("IMAGE".equals(view.getType()) && view.getContent() == null) {
+                view.setContent("/api/messages/single/" + view.getId() + "/image");
+            }
+        }
+        if (cached.isEmpty() || !archived.isEmpty()) {
+            readReceiptService.applyViewStatus(messages); // Bộ đệm đã gán status theo mốc đã xem
+        }
+        if (archived.isEmpty()) {
+            reactionService.applyViewReactions(messages);
+        } else {
+            // Tin lưu trữ mang sẵn số lượt cảm xúc trong segment (dòng đếm trong DB đã bị xóa cùng tháng)
+            Set<Long> archivedIds = archived.stream().map(ChatMessageView::getId).collect(Collectors.toSet());
+            reactionService.applyViewReactions(messages.stream().filter(m -> !archivedIds.contains(m.getId())).toList());
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("messages", messages);
+        result.put("hasMore", hasMore);
+        result.put("oldestId", messages.isEmpty() ? null : messages.get(0).getId());
+        result.put("newestId", messages.isEmpty() ? null : messages.get(messages.size() - 1).getId());
+        return ResponseEntity.ok(result);
+    }
+
+    // API tải ảnh của một tin nhắn IMAGE (ảnh base64 cũ: giải mã thành file ảnh; ảnh trong kho blob: chuyển hướng)
+    // Thẻ <img> không gửi được header nên token đi qua ?token= (xem AuthTokenInterceptor); chỉ thành viên phòng xem được
+    @GetMapping("/api/messages/single/{messageId}/image")
+    public ResponseEntity<byte[]> getMessageImage(@PathVariable Long messageId,
+                                                  @RequestAttribute(name = AuthTokenInterceptor.AUTH_USER, required = false) String authUser,
+                                                  @RequestParam(required = false) String username) {
+        Optional<ChatMessage> msgOpt = findMessageById(messageId);
+        if (msgOpt.isEmpty() || !"IMAGE".equals(msgOpt.get().getType()) || msgOpt.get().getContent() == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!roomService.isMember(msgOpt.get().getRoomId(), authUser != null ? authUser : username)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        String content = msgOpt.get().getContent();
+        int comma = content.indexOf(',');
+        if (!content.startsWith("data:") || comma < 0) {
+            // Ảnh trong kho blob -> chuyển hướng; nội dung khác (URL ngoài, chuỗi lạ) không chuyển hướng tới (open redirect)
+            if (!BlobStore.isBlobUrl(content)) return ResponseEntity.notFound().build();
+            return ResponseEntity.status(HttpStatus.FOUND).location(URI.create(content)).build();
+        }
+        String mediaType = content.substring(5, comma).split(";")[0];
+        byte[] bytes = Base64.getMimeDecoder().decode(content.substring(comma + 1));
+        return BlobController.legacyImage(mediaType)
+                .cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().immutable())
+                .body(bytes);
+    }
+
+    // Helper: Người gửi của khung STOMP luôn là Principal của phiên (gắn ở khung CONNECT từ token), không tin trường sender
+    // trong nội dung. Phiên không có danh tính (client cũ không gửi username, require-token=false) thì bỏ khung
+    private static boolean bindSender(ChatMessage chatMessage, Principal principal) {
+        if (principal == null) return false;
+        chatMessage.setSender(principal.getName());
+        return true;
+    }
+
+    // Helper: Tìm tin nhắn theo ID (ép ghi trước nếu tin còn nằm trong hàng đợi write-behind).
+    // Tin của tháng đã chuyển sang kho lưu trữ không còn trong DB và là chỉ đọc: khung STOMP thu hồi / thả cảm xúc
+    // trên tin đó bị bỏ qua như tin không tồn tại, API REST trả 409 (isArchivedId)
+    private Optional<ChatMessage> findMessageById(Long messageId) {
+        if (messageId == null) return Optional.empty();
+        messageWriteBehind.flushIfPending(messageId);
+        return messageRepository.findById(messageId);
+    }
+
+    private boolean isArchivedId(Long messageId) {
+        return messageId != null && messageArchive.isEnabled() && messageArchive.isArchived(MessageArchiver.monthOf(messageId));
     }
 
     // API Xóa lịch sử chat (Chỉ ẩn với người dùng hiện tại)
@@ -162,133 +362,101 @@ public class ChatController {
         ChatClearRecord record = recordOpt.orElse(new ChatClearRecord(null, username, roomId, null));
         record.setClearedAt(LocalDateTime.now()); // Cập nhật mốc thời gian xóa là hiện tại
         chatClearRecordRepository.save(record);
+        conversationSummaryService.onCleared(username, roomId);
+        recentMessageCache.onCleared(roomId, username, record.getClearedAt());
         
         return ResponseEntity.ok("Đã xóa đoạn chat (phía bạn)");
     }
 
     // API Tìm kiếm tin nhắn (Trả về danh sách username và số lượng tin nhắn khớp)
+    // Tra chỉ mục ngược không dấu, chỉ trong các phòng user đang có hội thoại; lọc tin đã gỡ / đã xóa ngay trong SQL
     @GetMapping("/api/messages/search")
     public ResponseEntity<List<Map<String, Object>>> searchMessages(@RequestParam String username, @RequestParam String keyword) {
-        // 1. Lấy tất cả tin nhắn liên quan đến user này (thay vì tìm bằng DB để xử lý tiếng Việt chính xác hơn)
-        List<ChatMessage> msgs = messageRepository.findByRoomIdContaining(username);
-        
-        // Lấy danh sách mốc thời gian xóa chat của user để lọc tin nhắn cũ
-        List<ChatClearRecord> clearRecords = chatClearRecordRepository.findByUsername(username);
-        Map<String, LocalDateTime> clearMap = clearRecords.stream().collect(Collectors.toMap(ChatClearRecord::getRoomId, ChatClearRecord::getClearedAt));
-
-        String normalizedKeyword = normalizeString(keyword);
-
-        // 2. Lọc và đếm số lượng tin nhắn khớp theo từng đối tác
-        Map<String, Integer> partnerMatchCounts = new HashMap<>();
-        
-        for (ChatMessage msg : msgs) {
-            // Chỉ tìm trong tin nhắn văn bản (CHAT), bỏ qua IMAGE (base64), TYPING, READ...
-            if (!"CHAT".equals(msg.getType())) {
-                continue;
-            }
+        List<String> tokens = MessageSearchIndex.tokenize(keyword);
+        // roomId -> cột partner của dòng tóm tắt (username đối phương, hoặc khóa nhóm)
+        Map<String, String> partners = conversationSummaryService.findByUsername(username).stream()
+                .filter(s -> roomService.isMember(s.getRoomId(), username)) // Đã rời nhóm thì không tìm trong nhóm đó nữa
+                .collect(Collectors.toMap(ConversationSummary::getRoomId, ConversationSummary::getPartner, (a, b) -> a));
+        if (tokens.isEmpty() || partners.isEmpty()) {
+            return ResponseEntity.ok(List.of());
+        }
 
-            // Bỏ qua tin nhắn đã xóa phía người dùng (Remove for you)
-            if (msg.getDeletedBy() != null && msg.getDeletedBy().contains(username + ",")) {
-                continue;
-            }
+        List<Object[]> counts = messageRepository.countSearchMatches(username, partners.keySet(),
+                MessageSearchIndex.selectiveTerm(tokens) + "%", "%" + String.join(" ", tokens) + "%");
 
-            // Kiểm tra nội dung có khớp từ khóa không (Bỏ dấu tiếng Việt)
-            String content = msg.getContent();
-            if (content == null || !normalizeString(content).contains(normalizedKeyword)) {
-                continue;
-            }
-
-            String roomId = msg.getRoomId();
-            // Kiểm tra xem user hiện tại có trong phòng chat này không (roomId dạng user1_user2)
-            if (roomId != null && roomId.contains(username)) {
-                String[] parts = roomId.split("_");
-                if (parts.length == 2) {
-                    String partner = null;
-                    if (parts[0].equals(username)) partner = parts[1];
-                    else if (parts[1].equals(username)) partner = parts[0];
-                    
-                    if (partner != null) {
-                        // Kiểm tra nếu tin nhắn nằm trước mốc thời gian xóa lịch sử
-                        if (clearMap.containsKey(roomId) && msg.getTimestamp().isBefore(clearMap.get(roomId))) {
-                            continue;
-                        }
-
-                        partnerMatchCounts.put(partner, partnerMatchCounts.getOrDefault(partner, 0) + 1);
-                    }
-                }
-            }
-        }
-        
-        // Chuyển đổi sang List Map để trả về JSON
+        // Chuyển đổi sang List Map để trả về JSON (roomId -> username đối phương)
         List<Map<String, Object>> results = new ArrayList<>();
-        for (Map.Entry<String, Integer> entry : partnerMatchCounts.entrySet()) {
+        for (Object[] row : counts) {
+            String partner = partners.get((String) row[0]);
+            if (partner == null) continue;
             Map<String, Object> item = new HashMap<>();
-            item.put("username", entry.getKey());
-            item.put("count", entry.getValue());
+            item.put("username", partner);
+            item.put("count", ((Number) row[1]).intValue());
             results.add(item);
         }
         
         return ResponseEntity.ok(results);
     }
 
-    // API Lấy tin nhắn mới nhất cho danh sách chat (Messenger Style)
-    @GetMapping("/api/messages/latest-summaries")
-    public ResponseEntity<Map<String, ChatMessage>> getLatestMessages(@RequestParam String username) {
-        // 1. Lấy tất cả tin nhắn liên quan đến user này
-        List<ChatMessage> allMsgs = messageRepository.findByRoomIdContaining(username);
-        
-        // Lấy danh sách mốc thời gian xóa chat
-        List<ChatClearRecord> clearRecords = chatClearRecordRepository.findByUsername(username);
-        Map<String, LocalDateTime> clearMap = clearRecords.stream()
-            .collect(Collectors.toMap(ChatClearRecord::getRoomId, ChatClearRecord::getClearedAt));
-            
-        // Map roomId -> Latest Message
-        Map<String, ChatMessage> latestMap = new HashMap<>();
-        
-        for (ChatMessage msg : allMsgs) {
-            // Bỏ qua tin nhắn đã xóa phía người dùng
-             if (msg.getDeletedBy() != null && msg.getDeletedBy().contains(username + ",")) {
-                continue;
-            }
-            
-            // Bỏ qua tin nhắn trước mốc xóa lịch sử
-            if (clearMap.containsKey(msg.getRoomId()) && msg.getTimestamp().isBefore(clearMap.get(msg.getRoomId()))) {
-                continue;
-            }
-            
-            String roomId = msg.getRoomId();
-            if (!latestMap.containsKey(roomId) || msg.getTimestamp().isAfter(latestMap.get(roomId).getTimestamp())) {
-                latestMap.put(roomId, msg);
-            }
-        }
-        
-        // Chuyển đổi key từ roomId sang username đối phương
-        Map<String, ChatMessage> result = new HashMap<>();
-        for (Map.Entry<String, ChatMessage> entry : latestMap.entrySet()) {
-            String[] parts = entry.getKey().split("_");
-            if (parts.length == 2) {
-                String partner = parts[0].equals(username) ? parts[1] : parts[0];
-                result.put(partner, entry.getValue());
-            }
-        }
-        
+    // API lấy các tin nhắn khớp từ khóa (mới nhất trước), có thể giới hạn theo 1 đối phương; ?before=<id> để lấy trang tiếp
+    @GetMapping("/api/messages/search/hits")
+    public ResponseEntity<Map<String, Object>> searchMessageHits(@RequestParam String username,
+                                                                 @RequestParam String keyword,
+                                                                 @RequestParam(required = false) String partner,
+                                                                 @RequestParam(required = false) Long before,
+                                                                 @RequestParam(defaultValue = "20") int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_SEARCH_PAGE_SIZE));
+        List<String> tokens = MessageSearchIndex.tokenize(keyword);
+        List<String> roomIds = searchableRoomIds(username, partner);
+        List<ChatMessageView> page = tokens.isEmpty() || roomIds.isEmpty() ? List.of()
+                : messageRepository.findSearchHits(username, roomIds, MessageSearchIndex.selectiveTerm(tokens) + "%",
+                        "%" + String.join(" ", tokens) + "%", before != null ? before : Long.MAX_VALUE, Limit.of(pageSize + 1));
+
+        boolean hasMore = page.size() > pageSize;
+        List<ChatMessageView> messages = new ArrayList<>(hasMore ? page.subList(0, pageSize) : page);
+        readReceiptService.applyViewStatus(messages);
+        reactionService.applyViewReactions(messages);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("messages", messages);
+        result.put("hasMore", hasMore);
+        result.put("oldestId", messages.isEmpty() ? null : messages.get(messages.size() - 1).getId());
         return ResponseEntity.ok(result);
     }
 
-    // Helper: Chuẩn hóa chuỗi (Bỏ dấu tiếng Việt, về chữ thường)
-    private String normalizeString(String input) {
-        if (input == null) return "";
-        String nfdNormalizedString = Normalizer.normalize(input, Normalizer.Form.NFD);
-        Pattern pattern = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
-        return pattern.matcher(nfdNormalizedString).replaceAll("").toLowerCase().replace("đ", "d");
+    // Helper: Các phòng mà user còn tin nhắn hiển thị (lấy từ bảng tóm tắt hội thoại)
+    private List<String> searchableRoomIds(String username, String partner) {
+        return conversationSummaryService.findByUsername(username).stream()
+                .filter(s -> partner == null || partner.equals(s.getPartner()))
+                .filter(s -> roomService.isMember(s.getRoomId(), username))
+                .map(ConversationSummary::getRoomId)
+                .collect(Collectors.toList());
     }
 
-    // Helper: Gửi thông báo cập nhật danh sách chat cho đối phương
-    private void sendNotificationToPartner(ChatMessage msg) {
-        String[] parts = msg.getRoomId().split("_");
-        if (parts.length == 2) {
-            String partner = parts[0].equals(msg.getSender()) ? parts[1] : parts[0];
-            messagingTemplate.convertAndSend("/topic/notifications/" + partner, msg);
+    // API Lấy tin nhắn mới nhất cho danh sách chat (Messenger Style)
+    // Đọc thẳng từ bảng conversation_summary (1 truy vấn theo index), giữ nguyên dạng JSON cũ: đối phương -> tin nhắn mới nhất
+    @GetMapping("/api/messages/latest-summaries")
+    public ResponseEntity<Map<String, Map<String, Object>>> getLatestMessages(@RequestParam String username) {
+        Map<String, Map<String, Object>> result = new HashMap<>();
+        for (ConversationSummary summary : conversationSummaryService.findByUsername(username)) {
+            if (summary.getLastMessageId() == null) continue;
+            // Tin của mình: đã xem khi mốc của đối phương vượt qua; tin của đối phương: đã xem khi hết tin chưa đọc
+            boolean read = username.equals(summary.getLastSender())
+                    ? summary.getPartnerReadMessageId() != null && summary.getPartnerReadMessageId() >= summary.getLastMessageId()
+                    : summary.getUnreadCount() == 0;
+
+            Map<String, Object> item = new HashMap<>();
+            item.put("id", summary.getLastMessageId());
+            item.put("roomId", summary.getRoomId());
+            item.put("sender", summary.getLastSender());
+            item.put("content", summary.getLastPreview());
+            item.put("type", summary.getLastType());
+            item.put("timestamp", summary.getLastTimestamp());
+            item.put("status", read ? "READ" : "SENT");
+            item.put("unreadCount", summary.getUnreadCount());
+            item.put("group", RoomService.isGroupKey(summary.getPartner()));
+            result.put(summary.getPartner(), item);
         }
+        return ResponseEntity.ok(result);
     }
-}
\ No newline at end of file
+}
@@ -4,31 +4,50 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import java.time.LocalDateTime;
+import java.util.Map;
 
 @Entity
-@Table(name = "chat_messages")
+@Table(name = "chat_messages", indexes = {
+        @Index(name = "idx_chat_messages_room_id_id", columnList = "room_id, id"), // Index cho phân trang theo phòng
+        @Index(name = "idx_chat_messages_room_id_seq", columnList = "room_id, seq") // Phát lại khoảng tin bị lỡ khi kết nối lại
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-public class ChatMessage {
-    @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+public class ChatMessage implements Persistable<Long> {
+    @Id // ID do server cấp sẵn (SnowflakeIdGenerator), không dùng AUTO_INCREMENT
     private Long id;
 
     private String roomId;
     private String sender;
     
-    @Column(columnDefinition = "LONGTEXT") // Quan trọng: Cho phép lưu chuỗi Base64 dài của ảnh
+    @Column(columnDefinition = "LONGTEXT") // Tin IMAGE chỉ lưu đường dẫn /api/blobs/<sha256>; LONGTEXT giữ lại cho dữ liệu cũ
     private String content;
     
     private String type; // CHAT, JOIN, LEAVE, IMAGE, READ, TYPING
     private LocalDateTime timestamp;
-    private String status; // SENT, READ
+    private String status; // SENT, READ - suy ra từ bảng read_receipts khi trả về client, cột cũ chỉ còn giữ giá trị SENT
+    private Long seq; // Số thứ tự tăng dần trong phòng (1, 2, 3...) do RoomSequencer cấp - client dùng để phát hiện tin bị lỡ
 
-    @Column(columnDefinition = "TEXT")
-    private String deletedBy; // Lưu danh sách username đã xóa tin nhắn này phía họ (ngăn cách bởi dấu phẩy)
+    @Transient
+    private Map<String, Long> reactions; // Số lượt theo emoji (lưu ở bảng message_reactions), gán khi trả về client
 
-    @Column(columnDefinition = "TEXT")
-    private String reactions; // Lưu JSON danh sách cảm xúc: {"username": "emoji"}
-}
\ No newline at end of file
+    @Transient
+    @JsonIgnore
+    private boolean newEntity = true; // ID được gán trước nên cần cờ này để save() gọi INSERT thay vì merge
+
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return newEntity;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.newEntity = false;
+    }
+}
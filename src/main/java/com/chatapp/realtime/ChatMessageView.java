@@ -0,0 +1,28 @@
+package com.chatapp.realtime;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+// Bản rút gọn của ChatMessage cho API lịch sử phân trang: không kéo theo ảnh base64 cũ
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatMessageView {
+    private Long id;
+    private String roomId;
+    private String sender;
+    private String content; // Với tin IMAGE: đường dẫn ảnh (/api/blobs/...) thay vì dữ liệu base64
+    private String type;
+    private LocalDateTime timestamp;
+    private String status;
+    private Long seq;
+    private Map<String, Long> reactions; // Số lượt theo emoji, gán từ ReactionService
+
+    // Dùng trong câu JPQL "SELECT new ChatMessageView(...)"
+    public ChatMessageView(Long id, String roomId, String sender, String content, String type, LocalDateTime timestamp, String status, Long seq) {
+        this(id, roomId, sender, content, type, timestamp, status, seq, null);
+    }
+}
@@ -0,0 +1,215 @@
+package com.chatapp.realtime;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.annotation.support.SimpAnnotationMethodMessageHandler;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// Số liệu Micrometer cho đường STOMP (xuất qua /actuator/prometheus):
+// - chat.stomp.handler: thời gian xử lý của từng @MessageMapping (theo destination /app/...)
+// - chat.stomp.inbound.size / chat.broker.outbound.size: kích thước khung gửi lên / gửi xuống
+// - chat.broker.outbound.messages: số khung broker phát tới từng phiên (fan-out) theo loại destination
+// - chat.send.stage: thời gian từng bước của chat.sendMessage (ghi DB, broadcast, thông báo, tóm tắt, chỉ mục)
+// - chat.websocket.sessions / chat.websocket.subscriptions: số phiên / số đăng ký đang mở
+// REST (http.server.requests), repository JPA (spring.data.repository.invocations), Hikari, Tomcat, JVM do Spring Boot tự đo.
+// Meter được tạo một lần và giữ trong map theo tag -> đường nóng chỉ tra map + ghi số, không dựng Tags mỗi khung.
+@Component
+public class ChatMetrics {
+
+    // Destination do client gửi lên: chặn số giá trị tag để client lạ không làm phình số chuỗi thời gian
+    private static final int MAX_TAG_VALUES = 64;
+    private static final String OTHER = "other";
+    private static final String APP_PREFIX = "/app/";
+
+    private static final ThreadLocal<long[]> HANDLER_START = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer> handlerTimers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> inboundSizes = new ConcurrentHashMap<>();
+    private final Map<String, Counter> outboundMessages = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> outboundSizes = new ConcurrentHashMap<>();
+    private final Map<String, Timer> sendStages = new ConcurrentHashMap<>();
+
+    // Phiên -> số đăng ký đang mở (sự kiện ngắt kết nối có thể đến nhiều lần cho cùng phiên)
+    private final Map<String, AtomicInteger> sessionSubscriptions = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriptions = new AtomicInteger();
+
+    private final ExecutorChannelInterceptor inbound = new ExecutorChannelInterceptor() {
+        @Override
+        public Message<?> preSend(Message<?> message, MessageChannel channel) {
+            MessageHeaders headers = message.getHeaders();
+            if (SimpMessageHeaderAccessor.getMessageType(headers) == SimpMessageType.MESSAGE && message.getPayload() instanceof byte[] payload) {
+                meter(inboundSizes, appDestination(headers), ChatMetrics.this::newInboundSize).record(payload.length);
+            }
+            return message;
+        }
+
+        @Override
+        public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+            if (handler instanceof SimpAnnotationMethodMessageHandler) {
+                HANDLER_START.get()[0] = System.nanoTime();
+            }
+            return message;
+        }
+
+        @Override
+        public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+            if (!(handler instanceof SimpAnnotationMethodMessageHandler)) return;
+            MessageHeaders headers = message.getHeaders();
+            String destination = SimpMessageHeaderAccessor.getDestination(headers);
+            if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE
+                    || destination == null || !destination.startsWith(APP_PREFIX)) {
+                return;
+            }
+            long elapsed = System.nanoTime() - HANDLER_START.get()[0];
+            meter(handlerTimers, destination, ChatMetrics.this::newHandlerTimer).record(elapsed, TimeUnit.NANOSECONDS);
+        }
+    };
+
+    private final ChannelInterceptor outbound = new ChannelInterceptor() {
+        @Override
+        public Message<?> preSend(Message<?> message, MessageChannel channel) {
+            MessageHeaders headers = message.getHeaders();
+            if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE) return message;
+            String tag = destinationTag(SimpMessageHeaderAccessor.getDestination(headers));
+            meter(outboundMessages, tag, ChatMetrics.this::newOutboundCounter).increment();
+            if (message.getPayload() instanceof byte[] payload) {
+                meter(outboundSizes, tag, ChatMetrics.this::newOutboundSize).record(payload.length);
+            }
+            return message;
+        }
+    };
+
+    public ChatMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("chat.websocket.sessions", sessionSubscriptions, Map::size)
+                .description("Số phiên STOMP đang mở trên node này")
+                .register(registry);
+        Gauge.builder("chat.websocket.subscriptions", subscriptions, AtomicInteger::get)
+                .description("Số đăng ký (SUBSCRIBE) đang mở trên node này")
+                .register(registry);
+    }
+
+    public ExecutorChannelInterceptor inboundInterceptor() {
+        return inbound;
+    }
+
+    // Gắn sau CborWireFormat để đo đúng số byte thực gửi đi
+    public ChannelInterceptor outboundInterceptor() {
+        return outbound;
+    }
+
+    // Ghi thời gian 1 bước của chat.sendMessage tính từ startNanos, trả về thời điểm hiện tại để đo bước kế tiếp
+    public long recordSendStage(String stage, long startNanos) {
+        long now = System.nanoTime();
+        sendStages.computeIfAbsent(stage, s -> Timer.builder("chat.send.stage")
+                        .description("Thời gian từng bước xử lý tin nhắn gửi lên")
+                        .tag("stage", s)
+                        .register(registry))
+                .record(now - startNanos, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (sessionId != null) sessionSubscriptions.putIfAbsent(sessionId, new AtomicInteger());
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        AtomicInteger open = sessionSubscriptions.remove(event.getSessionId());
+        if (open != null) subscriptions.addAndGet(-open.get());
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        AtomicInteger open = sessionSubscriptions.get(SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders()));
+        if (open != null) {
+            open.incrementAndGet();
+            subscriptions.incrementAndGet();
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        AtomicInteger open = sessionSubscriptions.get(SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders()));
+        if (open != null && open.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+            subscriptions.decrementAndGet();
+        }
+    }
+
+    // Gom destination theo loại: mỗi phòng một topic -> không dùng roomId làm tag
+    static String destinationTag(String destination) {
+        if (destination == null) return "none";
+        if (destination.startsWith("/topic/presence")) return "/topic/presence";
+        if (destination.startsWith("/topic/")) return "/topic/{roomId}";
+        if (destination.startsWith("/user/")) return destination;
+        // Đích cá nhân sau khi phân giải: /queue/notifications-user<sessionId>
+        int user = destination.indexOf("-user");
+        if (destination.startsWith("/queue/") && user > 0) return "/user" + destination.substring(0, user);
+        return OTHER;
+    }
+
+    private static String appDestination(MessageHeaders headers) {
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        return destination != null && destination.startsWith(APP_PREFIX) ? destination : OTHER;
+    }
+
+    private <M> M meter(Map<String, M> meters, String tag, Function<String, M> factory) {
+        M meter = meters.get(tag);
+        if (meter != null) return meter;
+        return meters.computeIfAbsent(meters.size() >= MAX_TAG_VALUES ? OTHER : tag, factory);
+    }
+
+    private Timer newHandlerTimer(String destination) {
+        return Timer.builder("chat.stomp.handler")
+                .description("Thời gian xử lý khung STOMP của @MessageMapping")
+                .tag("destination", destination)
+                .register(registry);
+    }
+
+    private DistributionSummary newInboundSize(String destination) {
+        return DistributionSummary.builder("chat.stomp.inbound.size")
+                .description("Kích thước nội dung khung SEND từ client")
+                .baseUnit("bytes")
+                .tag("destination", destination)
+                .register(registry);
+    }
+
+    private Counter newOutboundCounter(String destination) {
+        return Counter.builder("chat.broker.outbound.messages")
+                .description("Số khung MESSAGE broker gửi tới các phiên")
+                .tag("destination", destination)
+                .register(registry);
+    }
+
+    private DistributionSummary newOutboundSize(String destination) {
+        return DistributionSummary.builder("chat.broker.outbound.size")
+                .description("Kích thước nội dung khung MESSAGE gửi tới client")
+                .baseUnit("bytes")
+                .tag("destination", destination)
+                .register(registry);
+    }
+}
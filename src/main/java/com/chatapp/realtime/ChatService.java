@@ -12,9 +12,11 @@ import java.util.List;
 public class ChatService {
 
     private final ChatRepository chatRepository;
+    private final SnowflakeIdGenerator idGenerator;
 
     public ChatMessage saveMessage(ChatMessage message) {
         if (message == null) return null;
+        if (message.getId() == null) message.setId(idGenerator.nextId());
         message.setTimestamp(LocalDateTime.now()); 
         return chatRepository.save(message);
     }
@@ -0,0 +1,11 @@
+package com.chatapp.realtime;
+
+import java.util.function.Consumer;
+
+// Kênh pub/sub giữa các node (Redis, hoặc bản chạy trong 1 JVM để thử nghiệm)
+public interface ClusterBus {
+
+    void publish(ClusterEnvelope envelope);
+
+    void subscribe(Consumer<ClusterEnvelope> listener);
+}
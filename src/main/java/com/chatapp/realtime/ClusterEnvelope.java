@@ -0,0 +1,16 @@
+package com.chatapp.realtime;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Một tin broadcast được chuyển sang các node khác trong cụm: đích /topic/..., kiểu nội dung và nội dung đã chuyển sang JSON
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClusterEnvelope {
+    private String origin; // ID của node phát, để node đó bỏ qua tin của chính mình
+    private String destination;
+    private String contentType;
+    private String payload;
+}
@@ -0,0 +1,109 @@
+package com.chatapp.realtime;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+// Chế độ cluster (chat.broker.mode=cluster): mỗi node vẫn dùng simple broker trong JVM cho client của mình,
+// nhưng mọi tin gửi tới /topic/** và /user/** trên brokerChannel được phát lên ClusterBus, và tin từ node khác được
+// đưa lại vào brokerChannel cục bộ. Nhờ vậy phòng chat, /topic/presence và /user/{user}/queue/notifications chạy
+// được trên N node (tin /user/ được mỗi node tự dịch sang phiên cục bộ của người nhận, node không có phiên thì bỏ qua).
+// Ngoài ra là kênh nội bộ giữa các node (publishInternal / onInternal: xóa mục cache, số phiên Online...) -
+// các tin này không đi vào broker.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "chat.broker.mode", havingValue = "cluster")
+@RequiredArgsConstructor
+public class ClusterFanout implements ChannelInterceptor {
+
+    // Đánh dấu tin đến từ node khác để không phát lại lên cụm (tránh vòng lặp)
+    static final String ORIGIN_HEADER = "chatClusterOrigin";
+    // Đích của tin nội bộ: "internal:<kênh>"; xóa cache dùng kênh "cache-evict:<tên cache>", payload là khóa
+    static final String INTERNAL_PREFIX = "internal:";
+    private static final String EVICT_CHANNEL = "cache-evict:";
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ClusterBus clusterBus;
+    // SimpMessagingTemplate được tạo sau cấu hình broker -> lấy lười để tránh phụ thuộc vòng
+    private final ObjectProvider<SimpMessagingTemplate> messagingTemplate;
+    private final Map<String, BiConsumer<String, String>> internalListeners = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void subscribe() {
+        clusterBus.subscribe(this::deliverLocally);
+        log.info("Bật chế độ cluster broker, node {}", nodeId);
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    // Gửi tới các node khác (không gửi lại cho chính node này)
+    public void publishInternal(String channel, String payload) {
+        clusterBus.publish(new ClusterEnvelope(nodeId, INTERNAL_PREFIX + channel, null, payload));
+    }
+
+    // listener nhận (node phát, payload)
+    public void onInternal(String channel, BiConsumer<String, String> listener) {
+        internalListeners.put(channel, listener);
+    }
+
+    // Báo các node khác bỏ khóa key khỏi cache cục bộ tên cache (node phát tự xóa trước khi gọi)
+    public void evict(String cache, String key) {
+        publishInternal(EVICT_CHANNEL + cache, key);
+    }
+
+    public void onEvict(String cache, Consumer<String> listener) {
+        onInternal(EVICT_CHANNEL + cache, (origin, key) -> listener.accept(key));
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        String destination = accessor.getDestination();
+        if (accessor.getMessageType() == SimpMessageType.MESSAGE && destination != null
+                && (destination.startsWith("/topic/") || destination.startsWith("/user/"))
+                && accessor.getHeader(ORIGIN_HEADER) == null && message.getPayload() instanceof byte[] payload) {
+            MimeType contentType = accessor.getContentType();
+            clusterBus.publish(new ClusterEnvelope(nodeId, destination,
+                    contentType != null ? contentType.toString() : null, new String(payload, StandardCharsets.UTF_8)));
+        }
+        return message;
+    }
+
+    private void deliverLocally(ClusterEnvelope envelope) {
+        if (nodeId.equals(envelope.getOrigin())) return;
+        if (envelope.getDestination().startsWith(INTERNAL_PREFIX)) {
+            BiConsumer<String, String> listener = internalListeners.get(envelope.getDestination().substring(INTERNAL_PREFIX.length()));
+            if (listener != null) listener.accept(envelope.getOrigin(), envelope.getPayload());
+            return;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setHeader(ORIGIN_HEADER, envelope.getOrigin());
+        if (envelope.getContentType() != null) {
+            accessor.setContentType(MimeType.valueOf(envelope.getContentType()));
+        }
+        accessor.setLeaveMutable(true);
+        MessageHeaders headers = accessor.getMessageHeaders();
+        Message<byte[]> message = MessageBuilder.createMessage(envelope.getPayload().getBytes(StandardCharsets.UTF_8), headers);
+        messagingTemplate.getObject().send(envelope.getDestination(), message);
+    }
+}
@@ -0,0 +1,38 @@
+package com.chatapp.realtime;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+// Bảng tóm tắt hội thoại cho danh sách chat: mỗi người dùng có 1 dòng cho mỗi đối phương,
+// được cập nhật dần khi gửi / thu hồi / đã xem / xóa đoạn chat thay vì quét lại toàn bộ tin nhắn
+@Entity
+@Table(name = "conversation_summary", uniqueConstraints = @UniqueConstraint(name = "uk_conversation_summary_username_partner", columnNames = {"username", "partner"}),
+        indexes = @Index(name = "idx_conversation_summary_room_id", columnList = "room_id"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationSummary {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String username;
+    private String partner;
+    private String roomId;
+
+    // Tin nhắn mới nhất mà username còn nhìn thấy trong phòng
+    private Long lastMessageId;
+    private String lastSender;
+    private String lastType;
+    @Column(length = 255)
+    private String lastPreview;
+    private LocalDateTime lastTimestamp;
+
+    // Số tin của đối phương mà username chưa xem
+    private int unreadCount;
+    // Mốc đã xem của đối phương (để biết tin cuối của username đã được xem chưa)
+    private Long partnerReadMessageId;
+}
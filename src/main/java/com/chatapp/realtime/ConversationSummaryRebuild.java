@@ -0,0 +1,55 @@
+package com.chatapp.realtime;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import java.util.Optional;
+
+// Dựng bảng conversation_summary từ lịch sử tin nhắn có sẵn.
+// Chỉ chạy khi bảng còn trống (lần đầu nâng cấp); muốn dựng lại thì xóa trắng bảng rồi khởi động lại.
+// Chạy sau các bước chuyển dữ liệu cũ (mốc đã xem, tin đã gỡ, phòng + thành viên) để tin cuối và số tin chưa đọc được tính đúng.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ConversationSummaryRebuild {
+
+    private final ConversationSummaryRepository summaryRepository;
+    private final ConversationSummaryService summaryService;
+    private final MessageRepository messageRepository;
+    private final RoomService roomService;
+
+    @Value("${chat.summary.backfill:true}")
+    private boolean enabled;
+
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        if (!enabled || summaryRepository.count() > 0) return;
+        int rooms = rebuildAll();
+        if (rooms > 0) {
+            log.info("Đã dựng bảng tóm tắt hội thoại cho {} phòng chat", rooms);
+        }
+    }
+
+    public int rebuildAll() {
+        int rooms = 0;
+        for (String roomId : messageRepository.findDistinctRoomIds()) {
+            Optional<RoomService.Membership> membership = roomService.find(roomId);
+            if (membership.isEmpty()) continue;
+            try {
+                for (String member : membership.get().members()) {
+                    summaryService.refresh(member, roomId);
+                }
+                rooms++;
+            } catch (RuntimeException e) {
+                log.warn("Không thể dựng tóm tắt cho phòng {}: {}", roomId, e.getMessage());
+            }
+        }
+        return rooms;
+    }
+}
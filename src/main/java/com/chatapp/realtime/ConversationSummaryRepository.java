@@ -0,0 +1,48 @@
+package com.chatapp.realtime;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.List;
+import java.util.Optional;
+
+public interface ConversationSummaryRepository extends JpaRepository<ConversationSummary, Long> {
+    // Danh sách chat của 1 người: 1 lần đọc trên index (username, partner)
+    List<ConversationSummary> findByUsername(String username);
+
+    Optional<ConversationSummary> findByUsernameAndPartner(String username, String partner);
+
+    // Thu hồi: chỉ ảnh hưởng các dòng đang hiển thị đúng tin đó
+    @Modifying
+    @Transactional
+    @Query("UPDATE ConversationSummary s SET s.lastType = :type, s.lastPreview = :preview "
+            + "WHERE s.roomId = :roomId AND s.lastMessageId = :messageId")
+    int updateLastMessage(@Param("roomId") String roomId, @Param("messageId") Long messageId,
+                          @Param("type") String type, @Param("preview") String preview);
+
+    // Người đọc đã xem tới tin cuối cùng -> hết tin chưa đọc
+    @Modifying
+    @Transactional
+    @Query("UPDATE ConversationSummary s SET s.unreadCount = 0 "
+            + "WHERE s.roomId = :roomId AND s.username = :reader AND s.lastMessageId <= :mark")
+    int clearUnread(@Param("roomId") String roomId, @Param("reader") String reader, @Param("mark") long mark);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE ConversationSummary s SET s.unreadCount = :unread WHERE s.roomId = :roomId AND s.username = :reader")
+    int setUnread(@Param("roomId") String roomId, @Param("reader") String reader, @Param("unread") int unread);
+
+    // Nâng mốc đã xem của người đọc trên dòng của những người còn lại trong phòng (không bao giờ lùi)
+    @Modifying
+    @Transactional
+    @Query("UPDATE ConversationSummary s SET s.partnerReadMessageId = :mark WHERE s.roomId = :roomId AND s.username <> :reader "
+            + "AND (s.partnerReadMessageId IS NULL OR s.partnerReadMessageId < :mark)")
+    int raisePartnerRead(@Param("roomId") String roomId, @Param("reader") String reader, @Param("mark") long mark);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ConversationSummary s WHERE s.roomId = :roomId AND s.username = :username")
+    int deleteByRoomIdAndUsername(@Param("roomId") String roomId, @Param("username") String username);
+}
@@ -0,0 +1,181 @@
+package com.chatapp.realtime;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import lombok.RequiredArgsConstructor;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Duy trì bảng conversation_summary theo từng sự kiện (gửi, thu hồi, đã xem, gỡ/xóa đoạn chat),
+// nhờ đó API danh sách chat chỉ cần đọc đúng các dòng của người dùng.
+@Service
+@RequiredArgsConstructor
+public class ConversationSummaryService {
+
+    private static final int PREVIEW_LENGTH = 255;
+    private static final String REVOKED_PREVIEW = "Tin nhắn đã bị thu hồi";
+
+    // Ghi nhận tin mới cho 1 người tham gia phòng. Chỉ ghi đè "tin mới nhất" nếu tin này mới hơn
+    // (last_message_id gán cuối cùng vì MySQL tính các phép gán theo thứ tự từ trái sang phải)
+    private static final String UPSERT_SQL = "INSERT INTO conversation_summary (username, partner, room_id, last_message_id, "
+            + "last_sender, last_type, last_preview, last_timestamp, unread_count) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE "
+            + "unread_count = unread_count + VALUES(unread_count), "
+            + "last_sender = CASE WHEN COALESCE(last_message_id, 0) < VALUES(last_message_id) THEN VALUES(last_sender) ELSE last_sender END, "
+            + "last_type = CASE WHEN COALESCE(last_message_id, 0) < VALUES(last_message_id) THEN VALUES(last_type) ELSE last_type END, "
+            + "last_preview = CASE WHEN COALESCE(last_message_id, 0) < VALUES(last_message_id) THEN VALUES(last_preview) ELSE last_preview END, "
+            + "last_timestamp = CASE WHEN COALESCE(last_message_id, 0) < VALUES(last_message_id) THEN VALUES(last_timestamp) ELSE last_timestamp END, "
+            + "last_message_id = CASE WHEN COALESCE(last_message_id, 0) < VALUES(last_message_id) THEN VALUES(last_message_id) ELSE last_message_id END";
+
+    private final ConversationSummaryRepository summaryRepository;
+    private final MessageRepository messageRepository;
+    private final ReadReceiptRepository readReceiptRepository;
+    private final RoomService roomService;
+    private final JdbcTemplate jdbcTemplate;
+
+    public List<ConversationSummary> findByUsername(String username) {
+        return summaryRepository.findByUsername(username);
+    }
+
+    // Tin mới: cập nhật dòng của mọi thành viên, người nhận được cộng thêm 1 tin chưa đọc.
+    // Cả phòng đi chung 1 lô JDBC thay vì 1 câu UPSERT cho mỗi thành viên trên làn của phòng
+    // (rewriteBatchedStatements=true: driver MySQL gộp lô thành 1 câu INSERT nhiều dòng ... ON DUPLICATE KEY UPDATE)
+    public void onMessageSent(ChatMessage msg) {
+        onMessagesSent(List.of(msg));
+    }
+
+    // Nhiều tin cùng lúc (lô write-behind): gộp theo phòng -> mỗi thành viên chỉ 1 dòng UPSERT,
+    // mang tin mới nhất của phòng trong lô và số tin người đó chưa đọc trong lô
+    public void onMessagesSent(Collection<ChatMessage> messages) {
+        Map<String, List<ChatMessage>> byRoom = new LinkedHashMap<>();
+        for (ChatMessage msg : messages) {
+            byRoom.computeIfAbsent(msg.getRoomId(), k -> new ArrayList<>()).add(msg);
+        }
+        List<SummaryRow> rows = new ArrayList<>();
+        for (List<ChatMessage> roomMessages : byRoom.values()) {
+            ChatMessage last = roomMessages.get(0);
+            for (ChatMessage msg : roomMessages) {
+                if (msg.getId() > last.getId()) last = msg;
+            }
+            Optional<RoomService.Membership> membership = roomService.find(last.getRoomId());
+            if (membership.isEmpty()) continue;
+            String preview = preview(last.getContent(), PREVIEW_LENGTH);
+            for (String user : membership.get().members()) {
+                String partner = partnerColumn(membership.get(), user);
+                if (partner == null) continue;
+                int unread = 0;
+                for (ChatMessage msg : roomMessages) {
+                    if (!user.equals(msg.getSender())) unread++;
+                }
+                rows.add(new SummaryRow(user, partner, last, preview, unread));
+            }
+        }
+        if (rows.isEmpty()) return;
+        jdbcTemplate.batchUpdate(UPSERT_SQL, rows, rows.size(), (ps, row) -> {
+            ChatMessage last = row.last();
+            ps.setString(1, row.username());
+            ps.setString(2, row.partner());
+            ps.setString(3, last.getRoomId());
+            ps.setLong(4, last.getId());
+            ps.setString(5, last.getSender());
+            ps.setString(6, last.getType());
+            ps.setString(7, row.preview());
+            ps.setTimestamp(8, last.getTimestamp() == null ? null : Timestamp.valueOf(last.getTimestamp()));
+            ps.setInt(9, row.unread());
+        });
+    }
+
+    public void onRevoked(ChatMessage msg) {
+        summaryRepository.updateLastMessage(msg.getRoomId(), msg.getId(), "REVOKED", REVOKED_PREVIEW);
+    }
+
+    // Đã xem tới mốc mark: xóa số tin chưa đọc của người đọc, nâng mốc đã xem trên dòng của đối phương
+    public void onRead(String roomId, String reader, long mark) {
+        if (summaryRepository.clearUnread(roomId, reader, mark) == 0) {
+            // Mốc nằm trước tin cuối cùng (hiếm): đếm lại phần còn lại trên index (room_id, id)
+            summaryRepository.setUnread(roomId, reader, (int) messageRepository.countUnread(roomId, reader, mark));
+        }
+        summaryRepository.raisePartnerRead(roomId, reader, mark);
+    }
+
+    // "Gỡ ở phía bạn": chỉ khi tin bị gỡ đang là tin cuối của người đó mới cần tính lại dòng tóm tắt
+    public void onHiddenForUser(String username, ChatMessage msg) {
+        String partner = summaryPartner(msg.getRoomId(), username);
+        if (partner == null) return;
+        summaryRepository.findByUsernameAndPartner(username, partner)
+                .filter(s -> msg.getId().equals(s.getLastMessageId()))
+                .ifPresent(s -> refresh(username, msg.getRoomId()));
+    }
+
+    // "Xóa đoạn chat": mọi tin cũ đều bị ẩn với người này -> không còn gì để tóm tắt
+    public void onCleared(String username, String roomId) {
+        summaryRepository.deleteByRoomIdAndUsername(roomId, username);
+    }
+
+    // Tính lại toàn bộ dòng tóm tắt của username trong phòng từ lịch sử (dùng khi dựng lại bảng)
+    public void refresh(String username, String roomId) {
+        String partner = summaryPartner(roomId, username);
+        if (partner == null) return;
+        List<ChatMessageView> latest = messageRepository.findPageBefore(roomId, username, Long.MAX_VALUE, Limit.of(1));
+        if (latest.isEmpty()) {
+            summaryRepository.deleteByRoomIdAndUsername(roomId, username);
+            return;
+        }
+        ChatMessageView last = latest.get(0);
+
+        long ownMark = 0;
+        Long partnerMark = null;
+        for (ReadReceipt receipt : readReceiptRepository.findByRoomId(roomId)) {
+            if (receipt.getReader().equals(username)) ownMark = receipt.getLastReadMessageId();
+            // Nhóm: mốc xa nhất của những người còn lại (như raisePartnerRead)
+            else if (partnerMark == null || receipt.getLastReadMessageId() > partnerMark) partnerMark = receipt.getLastReadMessageId();
+        }
+
+        ConversationSummary summary = summaryRepository.findByUsernameAndPartner(username, partner)
+                .orElseGet(ConversationSummary::new);
+        summary.setUsername(username);
+        summary.setPartner(partner);
+        summary.setRoomId(roomId);
+        summary.setLastMessageId(last.getId());
+        summary.setLastSender(last.getSender());
+        summary.setLastType(last.getType());
+        summary.setLastPreview(preview(last.getContent(), PREVIEW_LENGTH));
+        summary.setLastTimestamp(last.getTimestamp());
+        summary.setUnreadCount((int) messageRepository.countUnread(roomId, username, ownMark));
+        summary.setPartnerReadMessageId(partnerMark);
+        summaryRepository.save(summary);
+    }
+
+    // Cột partner của dòng tóm tắt: phòng 1-1 là người còn lại, nhóm là khóa phòng (group-<id>); người ngoài phòng: null
+    public String summaryPartner(String roomId, String username) {
+        return roomService.find(roomId).map(m -> partnerColumn(m, username)).orElse(null);
+    }
+
+    private static String partnerColumn(RoomService.Membership membership, String username) {
+        if (!membership.isMember(username)) return null;
+        if (membership.isGroup()) return membership.roomKey();
+        for (String member : membership.members()) {
+            if (!member.equals(username)) return member;
+        }
+        return null;
+    }
+
+    // Chỉ giữ đoạn đầu của nội dung; ảnh base64 cũ không cần xem trước
+    static String preview(String content, int maxLength) {
+        if (content == null || content.startsWith("data:")) return null;
+        if (content.length() <= maxLength) return content;
+        // Không cắt đôi emoji (cặp surrogate)
+        int end = Character.isHighSurrogate(content.charAt(maxLength - 1)) ? maxLength - 1 : maxLength;
+        return content.substring(0, end);
+    }
+
+    private record SummaryRow(String username, String partner, ChatMessage last, String preview, int unread) {
+    }
+}
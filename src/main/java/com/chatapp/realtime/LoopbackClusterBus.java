@@ -0,0 +1,56 @@
+package com.chatapp.realtime;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
+
+// Kênh cụm chạy trong bộ nhớ: mỗi ApplicationContext có 1 bus riêng, các bus được nối với nhau bằng connect
+// (test chạy nhiều node trong 1 JVM). Bus chưa nối thì chỉ có node của chính nó. Đóng context thì bus tự tách khỏi các bus khác
+// -> người nghe của context đã đóng không bị giữ lại.
+@Component
+@ConditionalOnExpression("'${chat.broker.mode:simple}' == 'cluster' and '${chat.broker.cluster.transport:redis}' == 'loopback'")
+public class LoopbackClusterBus implements ClusterBus, DisposableBean {
+
+    private final List<Consumer<ClusterEnvelope>> listeners = new CopyOnWriteArrayList<>();
+    private final Set<LoopbackClusterBus> peers = new CopyOnWriteArraySet<>();
+
+    // Nối 2 chiều: tin phát trên bus này tới được người nghe của peer và ngược lại
+    public void connect(LoopbackClusterBus peer) {
+        if (peer == this) return;
+        peers.add(peer);
+        peer.peers.add(this);
+    }
+
+    @Override
+    public void publish(ClusterEnvelope envelope) {
+        deliver(envelope);
+        for (LoopbackClusterBus peer : peers) {
+            peer.deliver(envelope);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<ClusterEnvelope> listener) {
+        listeners.add(listener);
+    }
+
+    private void deliver(ClusterEnvelope envelope) {
+        for (Consumer<ClusterEnvelope> listener : listeners) {
+            listener.accept(envelope);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        for (LoopbackClusterBus peer : peers) {
+            peer.peers.remove(this);
+        }
+        peers.clear();
+        listeners.clear();
+    }
+}
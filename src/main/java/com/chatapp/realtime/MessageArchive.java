@@ -0,0 +1,321 @@
+package com.chatapp.realtime;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Service;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// Kho lưu trữ tin nhắn cũ nằm ngoài MySQL (MessageArchiver chuyển các tháng nguội sang đây).
+// Mỗi tháng gồm 2 file trong chat.archive.dir:
+// - chat-messages-YYYY-MM.seg: các khối nối tiếp nhau, mỗi khối chứa tối đa chunk-size tin của 1 phòng, tăng dần theo id
+//   (CBOR rồi nén Deflate)
+// - chat-messages-YYYY-MM.idx: chỉ mục phòng -> các khối (vị trí, độ dài, id đầu/cuối, seq cuối).
+//   File .idx được ghi sau cùng (file tạm + move nguyên tử): có .idx nghĩa là tháng đó đã lưu trữ xong.
+// Chỉ mục của mọi tháng được nạp vào bộ nhớ khi khởi động; khối đã giải nén được giữ trong cache LRU.
+// Trang lịch sử đi quá phần còn trong DB thì đọc tiếp ở đây, lọc theo người xem giống MessageRepository.VISIBLE_TO_USER.
+// Tháng đã lưu trữ là chỉ đọc: ai đã gỡ tin và số lượt cảm xúc được chụp vào segment, các dòng phụ trong DB bị xóa theo.
+@Slf4j
+@Service
+public class MessageArchive implements MeterBinder {
+
+    private static final String PREFIX = "chat-messages-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final TypeReference<List<ArchivedMessage>> MESSAGE_LIST = new TypeReference<>() {};
+
+    private final ChatClearRecordRepository chatClearRecordRepository;
+    private final ObjectMapper cborMapper;
+    private final Path root;
+    private final boolean enabled;
+    private final Cache<ChunkRef, List<ArchivedMessage>> chunkCache;
+
+    // Phòng -> các khối đã lưu trữ, tăng dần theo id. Thêm tháng thì thay cả danh sách -> đọc không cần khóa
+    private final Map<String, List<ChunkRef>> rooms = new ConcurrentHashMap<>();
+    private final Set<YearMonth> months = ConcurrentHashMap.newKeySet();
+    private final AtomicLong archivedMessages = new AtomicLong();
+    private final LongAdder pageReads = new LongAdder();
+
+    public MessageArchive(ChatClearRecordRepository chatClearRecordRepository,
+                          Jackson2ObjectMapperBuilder builder,
+                          @Value("${chat.archive.enabled:false}") boolean enabled,
+                          @Value("${chat.archive.dir:./data/archive}") String dir,
+                          @Value("${chat.archive.chunk-cache-size:512}") long chunkCacheSize) {
+        this.chatClearRecordRepository = chatClearRecordRepository;
+        this.cborMapper = builder.build().copyWith(new CBORFactory());
+        this.root = Paths.get(dir).toAbsolutePath().normalize();
+        this.enabled = enabled;
+        this.chunkCache = Caffeine.newBuilder().maximumSize(chunkCacheSize).recordStats().build();
+        if (enabled) loadIndexes();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isArchived(YearMonth month) {
+        return months.contains(month);
+    }
+
+    // Trang cũ hơn beforeId trong kho lưu trữ, mới nhất trước (cùng thứ tự với MessageRepository.findPageBefore).
+    // status luôn là SENT - người gọi tính lại bằng ReadReceiptService.applyViewStatus như với trang đọc từ DB
+    public List<ChatMessageView> pageBefore(String roomId, String username, long beforeId, int limit) {
+        return page(roomId, username, beforeId, limit, true);
+    }
+
+    // Trang mới hơn afterId trong kho lưu trữ, cũ nhất trước (cùng thứ tự với MessageRepository.findPageAfter).
+    // reactions đã được gán từ segment - người gọi không gán lại từ ReactionService
+    public List<ChatMessageView> pageAfter(String roomId, String username, long afterId, int limit) {
+        return page(roomId, username, afterId, limit, false);
+    }
+
+    // seq lớn nhất của phòng đã nằm trong kho lưu trữ (0 nếu không có) - bộ cấp số thứ tự không được cấp lại từ đầu
+    public long maxSeq(String roomId) {
+        List<ChunkRef> refs = enabled && roomId != null ? rooms.get(roomId) : null;
+        if (refs == null) return 0;
+        long max = 0;
+        for (ChunkRef ref : refs) max = Math.max(max, ref.chunk().lastSeq());
+        return max;
+    }
+
+    private List<ChatMessageView> page(String roomId, String username, long cursor, int limit, boolean older) {
+        List<ChunkRef> refs = enabled && roomId != null ? rooms.get(roomId) : null;
+        if (refs == null || limit <= 0) return List.of();
+        // Con trỏ nằm ngoài khoảng đã lưu trữ (trường hợp thường gặp) -> không tốn truy vấn nào
+        if (older ? refs.get(0).chunk().firstId() >= cursor : refs.get(refs.size() - 1).chunk().lastId() <= cursor) {
+            return List.of();
+        }
+        pageReads.increment();
+        LocalDateTime cleared = chatClearRecordRepository.findByUsernameAndRoomId(username, roomId)
+                .map(ChatClearRecord::getClearedAt).orElse(null);
+        List<ChatMessageView> result = new ArrayList<>(limit);
+        int step = older ? -1 : 1;
+        try {
+            for (int i = older ? refs.size() - 1 : 0; i >= 0 && i < refs.size() && result.size() < limit; i += step) {
+                Chunk chunk = refs.get(i).chunk();
+                if (older ? chunk.firstId() >= cursor : chunk.lastId() <= cursor) continue;
+                List<ArchivedMessage> messages = read(refs.get(i));
+                boolean beforeClear = false;
+                for (int j = older ? messages.size() - 1 : 0; j >= 0 && j < messages.size(); j += step) {
+                    ArchivedMessage m = messages.get(j);
+                    if (older ? m.id() >= cursor : m.id() <= cursor) continue;
+                    if (cleared != null && !cleared.isBefore(m.timestamp())) {
+                        // Đi ngược về quá khứ: mọi tin cũ hơn cũng nằm trước mốc "Xóa đoạn chat"
+                        beforeClear = older;
+                        if (older) break;
+                        continue;
+                    }
+                    if (m.hiddenBy() != null && m.hiddenBy().contains(username)) continue;
+                    result.add(view(roomId, m));
+                    if (result.size() >= limit) break;
+                }
+                if (beforeClear) break;
+            }
+        } catch (UncheckedIOException e) {
+            // File lưu trữ hỏng / bị xóa: trả phần đã đọc được thay vì làm hỏng cả trang
+            log.error("Không đọc được kho lưu trữ của phòng {}", roomId, e);
+        }
+        return result;
+    }
+
+    private static ChatMessageView view(String roomId, ArchivedMessage m) {
+        ChatMessageView view = new ChatMessageView(m.id(), roomId, m.sender(), m.content(), m.type(), m.timestamp(), "SENT", m.seq());
+        view.setReactions(m.reactions());
+        return view;
+    }
+
+    private List<ArchivedMessage> read(ChunkRef ref) {
+        return chunkCache.get(ref, r -> {
+            try (FileChannel channel = FileChannel.open(r.segment(), StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate(r.chunk().length());
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, r.chunk().offset() + buffer.position()) < 0) throw new EOFException(r.segment().toString());
+                }
+                try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(buffer.array()))) {
+                    return List.copyOf(cborMapper.readValue(in, MESSAGE_LIST));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void loadIndexes() {
+        if (!Files.isDirectory(root)) return;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root, PREFIX + "*" + INDEX_SUFFIX)) {
+            for (Path indexFile : files) {
+                String name = indexFile.getFileName().toString();
+                Path segment = root.resolve(name.substring(0, name.length() - INDEX_SUFFIX.length()) + SEGMENT_SUFFIX);
+                register(segment, cborMapper.readValue(indexFile.toFile(), SegmentIndex.class));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Không đọc được chỉ mục kho lưu trữ " + root, e);
+        }
+        if (!months.isEmpty()) {
+            log.info("Đã nạp kho lưu trữ tin nhắn: {} tháng, {} phòng, {} tin", months.size(), rooms.size(), archivedMessages.get());
+        }
+    }
+
+    private synchronized void register(Path segment, SegmentIndex index) {
+        index.rooms().forEach((roomId, chunks) -> rooms.compute(roomId, (k, old) -> {
+            List<ChunkRef> merged = old == null ? new ArrayList<>() : new ArrayList<>(old);
+            chunks.forEach(chunk -> merged.add(new ChunkRef(segment, chunk)));
+            merged.sort(Comparator.comparingLong(ref -> ref.chunk().firstId()));
+            return List.copyOf(merged);
+        }));
+        months.add(YearMonth.parse(index.month()));
+        archivedMessages.addAndGet(index.messages());
+    }
+
+    public SegmentWriter openSegment(YearMonth month) throws IOException {
+        Files.createDirectories(root);
+        return new SegmentWriter(month);
+    }
+
+    private static String fileName(YearMonth month, String suffix) {
+        return PREFIX + month + suffix;
+    }
+
+    // Ghi ra file tạm, fsync rồi mới move nguyên tử sang tên thật
+    private static void writeDurably(Path tmp, Path target, byte[] data) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+            out.write(data);
+            out.getFD().sync();
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Ghi 1 tháng: gọi writeChunk theo từng phòng (tăng dần theo id), xong thì commit; đóng mà chưa commit thì bỏ file tạm
+    public final class SegmentWriter implements Closeable {
+        private final YearMonth month;
+        private final Path tmpSegment;
+        private final FileOutputStream file;
+        private final OutputStream out;
+        private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        private final Map<String, List<Chunk>> index = new LinkedHashMap<>();
+        private long offset;
+        private long messages;
+        private boolean committed;
+
+        private SegmentWriter(YearMonth month) throws IOException {
+            this.month = month;
+            this.tmpSegment = root.resolve(fileName(month, SEGMENT_SUFFIX + TMP_SUFFIX));
+            this.file = new FileOutputStream(tmpSegment.toFile());
+            this.out = new BufferedOutputStream(file, 64 * 1024);
+        }
+
+        public void writeChunk(String roomId, List<ArchivedMessage> batch) throws IOException {
+            if (batch.isEmpty()) return;
+            deflater.reset();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+            try (DeflaterOutputStream compressed = new DeflaterOutputStream(bytes, deflater)) {
+                cborMapper.writeValue(compressed, batch);
+            }
+            byte[] data = bytes.toByteArray();
+            out.write(data);
+            ArchivedMessage first = batch.get(0);
+            ArchivedMessage last = batch.get(batch.size() - 1);
+            index.computeIfAbsent(roomId, k -> new ArrayList<>())
+                    .add(new Chunk(offset, data.length, first.id(), last.id(), last.seq() != null ? last.seq() : 0, batch.size()));
+            offset += data.length;
+            messages += batch.size();
+        }
+
+        public long messages() {
+            return messages;
+        }
+
+        public void commit() throws IOException {
+            out.flush();
+            file.getFD().sync();
+            out.close();
+            Path segment = root.resolve(fileName(month, SEGMENT_SUFFIX));
+            Files.move(tmpSegment, segment, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            SegmentIndex segmentIndex = new SegmentIndex(month.toString(), messages, index);
+            writeDurably(root.resolve(fileName(month, INDEX_SUFFIX + TMP_SUFFIX)), root.resolve(fileName(month, INDEX_SUFFIX)),
+                    cborMapper.writeValueAsBytes(segmentIndex));
+            committed = true;
+            register(segment, segmentIndex);
+        }
+
+        @Override
+        public void close() throws IOException {
+            deflater.end();
+            if (committed) return;
+            out.close();
+            Files.deleteIfExists(tmpSegment);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (!enabled) return;
+        Gauge.builder("chat.archive.messages", archivedMessages, AtomicLong::get).register(registry);
+        Gauge.builder("chat.archive.months", months, Set::size).register(registry);
+        FunctionCounter.builder("chat.archive.page.reads", pageReads, LongAdder::sum).register(registry);
+        CaffeineCacheMetrics.monitor(registry, chunkCache, "message-archive-chunks");
+    }
+
+    // 1 tin trong kho lưu trữ (phòng được suy ra từ chỉ mục, status tính lại theo mốc đã xem khi đọc).
+    // hiddenBy: những người đã "Gỡ ở phía bạn"; reactions: số lượt theo emoji. Trường null không được ghi ra file
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record ArchivedMessage(long id, Long seq, String sender, String content, String type, LocalDateTime timestamp,
+                                  List<String> hiddenBy, Map<String, Long> reactions) {
+
+        ArchivedMessage withViewerData(List<String> hiddenBy, Map<String, Long> reactions) {
+            return new ArchivedMessage(id, seq, sender, content, type, timestamp, hiddenBy, reactions);
+        }
+    }
+
+    record Chunk(long offset, int length, long firstId, long lastId, long lastSeq, int count) {
+    }
+
+    record SegmentIndex(String month, long messages, Map<String, List<Chunk>> rooms) {
+    }
+
+    private record ChunkRef(Path segment, Chunk chunk) {
+    }
+}
@@ -0,0 +1,295 @@
+package com.chatapp.realtime;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import lombok.extern.slf4j.Slf4j;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Chia chat_messages theo tháng (theo ID Snowflake, giờ UTC) và chuyển các tháng nguội sang MessageArchive:
+// - chat.storage.partitioning.enabled (chỉ MySQL): PARTITION BY RANGE (id), mỗi tháng 1 phân vùng pYYYYMM,
+//   luôn tạo sẵn trước ahead-months tháng; xóa tháng đã lưu trữ = DROP PARTITION thay vì DELETE hàng triệu dòng
+// - chat.archive.enabled: tháng cũ hơn hot-months được ghi ra file segment, xong mới xóa khỏi DB.
+//   Tháng đã có file .idx thì bỏ qua bước ghi -> dừng giữa chừng chạy lại chỉ làm nốt phần xóa.
+//   Người đã gỡ tin và số lượt cảm xúc được ghi kèm vào segment; dòng phụ của tháng (chỉ mục tìm kiếm, cảm xúc, tin đã gỡ)
+//   bị xóa theo cùng khoảng id trước chat_messages - dừng giữa chừng thì lượt sau vẫn còn thấy tháng đó để xóa tiếp.
+//   Tháng đã lưu trữ là chỉ đọc: thu hồi / thả cảm xúc / gỡ tin trên các tin đó không còn tìm thấy tin trong DB.
+@Slf4j
+@Component
+public class MessageArchiver implements SmartLifecycle {
+
+    private static final String TABLE = "chat_messages";
+    private static final int DELETE_BATCH = 5000;
+    private static final DateTimeFormatter PARTITION_FORMAT = DateTimeFormatter.ofPattern("'p'yyyyMM");
+    private static final String MONTH_START_SQL = "SELECT MIN(id) FROM chat_messages WHERE id >= ?";
+    private static final String ROOMS_SQL = "SELECT DISTINCT room_id FROM chat_messages WHERE id >= ? AND id < ? AND room_id IS NOT NULL";
+    private static final String CHUNK_SQL = "SELECT id, seq, sender, content, type, timestamp FROM chat_messages "
+            + "WHERE room_id = ? AND id > ? AND id < ? ORDER BY id LIMIT ?";
+    // Bảng phụ khóa theo message_id (đứng đầu khóa chính hoặc có chỉ mục riêng)
+    private static final List<String> DEPENDENT_TABLES = List.of(
+            "message_search_terms", "message_search_docs", "message_reactions", "message_reaction_counts", "message_hidden");
+    private static final String PARTITIONS_SQL = "SELECT PARTITION_NAME FROM information_schema.PARTITIONS "
+            + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'chat_messages' AND PARTITION_NAME IS NOT NULL";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MessageArchive messageArchive;
+    private final BlobStore blobStore;
+    private final MessageHiddenRepository messageHiddenRepository;
+    private final MessageReactionCountRepository reactionCountRepository;
+    private final boolean archiveEnabled;
+    private final int hotMonths;
+    private final int chunkSize;
+    private final boolean partitioning;
+    private final int aheadMonths;
+    private final long initialDelaySeconds;
+    private final long intervalMinutes;
+
+    private volatile ScheduledExecutorService scheduler;
+
+    public MessageArchiver(JdbcTemplate jdbcTemplate, MessageArchive messageArchive, BlobStore blobStore,
+                           MessageHiddenRepository messageHiddenRepository, MessageReactionCountRepository reactionCountRepository,
+                           @Value("${chat.archive.enabled:false}") boolean archiveEnabled,
+                           @Value("${chat.archive.hot-months:6}") int hotMonths,
+                           @Value("${chat.archive.chunk-size:256}") int chunkSize,
+                           @Value("${chat.storage.partitioning.enabled:false}") boolean partitioning,
+                           @Value("${chat.storage.partitioning.ahead-months:3}") int aheadMonths,
+                           @Value("${chat.archive.initial-delay-seconds:60}") long initialDelaySeconds,
+                           @Value("${chat.archive.check-interval-minutes:360}") long intervalMinutes) {
+        if (hotMonths < 1) throw new IllegalArgumentException("chat.archive.hot-months phải >= 1");
+        this.jdbcTemplate = jdbcTemplate;
+        this.messageArchive = messageArchive;
+        this.blobStore = blobStore;
+        this.messageHiddenRepository = messageHiddenRepository;
+        this.reactionCountRepository = reactionCountRepository;
+        this.archiveEnabled = archiveEnabled;
+        this.hotMonths = hotMonths;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.partitioning = partitioning;
+        this.aheadMonths = Math.max(1, aheadMonths);
+        this.initialDelaySeconds = initialDelaySeconds;
+        this.intervalMinutes = intervalMinutes;
+    }
+
+    // 1 lượt: tạo phân vùng cho các tháng sắp tới rồi lưu trữ các tháng nguội
+    public void runOnce() {
+        if (partitioning) ensurePartitions();
+        if (archiveEnabled) archiveColdMonths();
+    }
+
+    void archiveColdMonths() {
+        YearMonth cutoff = YearMonth.now(ZoneOffset.UTC).minusMonths(hotMonths);
+        // Nhảy thẳng tới tháng tiếp theo còn dữ liệu, không duyệt từng tháng trống
+        Long next = jdbcTemplate.queryForObject(MONTH_START_SQL, Long.class, 0L);
+        while (next != null && isRunning()) {
+            YearMonth month = monthOf(next);
+            if (!month.isBefore(cutoff)) break;
+            archiveMonth(month);
+            next = jdbcTemplate.queryForObject(MONTH_START_SQL, Long.class, firstIdOf(month.plusMonths(1)));
+        }
+    }
+
+    private void archiveMonth(YearMonth month) {
+        long from = firstIdOf(month);
+        long to = firstIdOf(month.plusMonths(1));
+        if (!messageArchive.isArchived(month)) {
+            long started = System.nanoTime();
+            long messages;
+            try (MessageArchive.SegmentWriter writer = messageArchive.openSegment(month)) {
+                for (String roomId : jdbcTemplate.queryForList(ROOMS_SQL, String.class, from, to)) {
+                    // Duyệt theo khóa (room_id, id) -> mỗi khối là 1 truy vấn dùng chỉ mục, không kéo cả tháng lên RAM
+                    long after = from - 1;
+                    while (true) {
+                        List<MessageArchive.ArchivedMessage> chunk = jdbcTemplate.query(CHUNK_SQL, this::mapRow, roomId, after, to, chunkSize);
+                        if (chunk.isEmpty()) break;
+                        writer.writeChunk(roomId, withViewerData(chunk));
+                        after = chunk.get(chunk.size() - 1).id();
+                        if (chunk.size() < chunkSize) break;
+                    }
+                }
+                writer.commit();
+                messages = writer.messages();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Không ghi được kho lưu trữ tháng " + month, e);
+            }
+            log.info("Đã lưu trữ {} tin nhắn tháng {} trong {} ms", messages, month,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        }
+        // Dòng không có room_id không ai đọc được (VISIBLE_TO_USER luôn lọc theo phòng) -> bị xóa cùng tháng
+        long deleted = removeMonth(month, from, to);
+        log.info("Đã xóa tháng {} khỏi {} ({} dòng)", month, TABLE, deleted < 0 ? "DROP PARTITION" : deleted);
+    }
+
+    // Gỡ tin / cảm xúc của cả khối: 2 truy vấn theo khóa chính (message_id, ...)
+    private List<MessageArchive.ArchivedMessage> withViewerData(List<MessageArchive.ArchivedMessage> chunk) {
+        List<Long> ids = chunk.stream().map(MessageArchive.ArchivedMessage::id).toList();
+        Map<Long, List<String>> hiddenBy = new HashMap<>();
+        for (MessageHidden hidden : messageHiddenRepository.findByMessageIdIn(ids)) {
+            hiddenBy.computeIfAbsent(hidden.getMessageId(), k -> new ArrayList<>()).add(hidden.getUsername());
+        }
+        Map<Long, Map<String, Long>> reactions = new HashMap<>();
+        for (MessageReactionCount count : reactionCountRepository.findPositive(ids)) {
+            reactions.computeIfAbsent(count.getMessageId(), k -> new HashMap<>()).put(count.getEmoji(), count.getReactionCount());
+        }
+        if (hiddenBy.isEmpty() && reactions.isEmpty()) return chunk;
+        List<MessageArchive.ArchivedMessage> result = new ArrayList<>(chunk.size());
+        for (MessageArchive.ArchivedMessage m : chunk) {
+            result.add(m.withViewerData(hiddenBy.get(m.id()), reactions.get(m.id())));
+        }
+        return result;
+    }
+
+    // Trả về số dòng chat_messages đã xóa, -1 nếu bỏ cả phân vùng
+    private long removeMonth(YearMonth month, long from, long to) {
+        for (String table : DEPENDENT_TABLES) {
+            long rows = deleteRange(table, "message_id", from, to);
+            if (rows > 0) log.info("Đã xóa {} dòng {} của tháng {}", rows, table, month);
+        }
+        if (partitioning) {
+            String partition = partitionName(month);
+            if (partitions().contains(partition)) {
+                jdbcTemplate.execute("ALTER TABLE " + TABLE + " DROP PARTITION " + partition);
+                return -1;
+            }
+        }
+        return deleteRange(TABLE, "id", from, to);
+    }
+
+    // Xóa theo lô nhỏ để không giữ khóa / phình undo log
+    private long deleteRange(String table, String idColumn, long from, long to) {
+        long deleted = 0;
+        int batch;
+        do {
+            batch = jdbcTemplate.update("DELETE FROM " + table + " WHERE " + idColumn + " >= ? AND " + idColumn + " < ? LIMIT " + DELETE_BATCH,
+                    from, to);
+            deleted += batch;
+        } while (batch > 0 && isRunning());
+        return deleted;
+    }
+
+    void ensurePartitions() {
+        List<String> existing = partitions();
+        YearMonth last = YearMonth.now(ZoneOffset.UTC).plusMonths(aheadMonths);
+        List<String> definitions = new ArrayList<>();
+        if (existing.isEmpty()) {
+            // Lần đầu: chuyển bảng sang phân vùng theo tháng (MySQL sao chép lại cả bảng -> nên chạy lúc vắng)
+            Long minId = jdbcTemplate.queryForObject(MONTH_START_SQL, Long.class, 0L);
+            YearMonth first = minId == null ? YearMonth.now(ZoneOffset.UTC) : monthOf(minId);
+            for (YearMonth m = first; !m.isAfter(last); m = m.plusMonths(1)) definitions.add(partitionDefinition(m));
+            definitions.add("PARTITION pmax VALUES LESS THAN MAXVALUE");
+            log.info("Chia bảng {} thành {} phân vùng theo tháng ({} -> {})", TABLE, definitions.size(), first, last);
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " PARTITION BY RANGE (id) (" + String.join(", ", definitions) + ")");
+            return;
+        }
+        YearMonth newest = existing.stream()
+                .filter(name -> name.matches("p\\d{6}"))
+                .map(name -> YearMonth.parse(name, PARTITION_FORMAT))
+                .max(YearMonth::compareTo)
+                .orElse(null);
+        if (newest == null || !existing.contains("pmax")) {
+            log.warn("Bảng {} đang được phân vùng theo cách khác ({}), bỏ qua", TABLE, existing);
+            return;
+        }
+        for (YearMonth m = newest.plusMonths(1); !m.isAfter(last); m = m.plusMonths(1)) definitions.add(partitionDefinition(m));
+        if (definitions.isEmpty()) return;
+        // pmax chỉ chứa ID của tương lai xa (luôn trống) -> tách ra gần như tức thì
+        definitions.add("PARTITION pmax VALUES LESS THAN MAXVALUE");
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " REORGANIZE PARTITION pmax INTO (" + String.join(", ", definitions) + ")");
+        log.info("Đã thêm phân vùng {} tháng tới {}", definitions.size() - 1, last);
+    }
+
+    private List<String> partitions() {
+        try {
+            return jdbcTemplate.queryForList(PARTITIONS_SQL, String.class);
+        } catch (DataAccessException e) {
+            throw new IllegalStateException("chat.storage.partitioning.enabled chỉ dùng được với MySQL", e);
+        }
+    }
+
+    private MessageArchive.ArchivedMessage mapRow(ResultSet rs, int rowNum) throws SQLException {
+        long seq = rs.getLong("seq");
+        Long seqOrNull = rs.wasNull() ? null : seq;
+        String content = rs.getString("content");
+        // Ảnh base64 chưa kịp chuyển (BlobMigration tắt) -> đưa vào kho blob, file lưu trữ chỉ giữ đường dẫn
+        if (content != null && content.startsWith("data:")) {
+            try {
+                content = blobStore.storeDataUrl(content);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Không thể chuyển ảnh của tin id={} sang kho blob: {}", rs.getLong("id"), e.getMessage());
+            }
+        }
+        Timestamp timestamp = rs.getTimestamp("timestamp");
+        return new MessageArchive.ArchivedMessage(rs.getLong("id"), seqOrNull, rs.getString("sender"), content,
+                rs.getString("type"), timestamp == null ? null : timestamp.toLocalDateTime(), null, null);
+    }
+
+    private static String partitionDefinition(YearMonth month) {
+        return "PARTITION " + partitionName(month) + " VALUES LESS THAN (" + firstIdOf(month.plusMonths(1)) + ")";
+    }
+
+    private static String partitionName(YearMonth month) {
+        return month.format(PARTITION_FORMAT);
+    }
+
+    static long firstIdOf(YearMonth month) {
+        return SnowflakeIdGenerator.firstIdAt(month.atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli());
+    }
+
+    static YearMonth monthOf(long id) {
+        return YearMonth.from(Instant.ofEpochMilli(SnowflakeIdGenerator.timestampOf(id)).atOffset(ZoneOffset.UTC));
+    }
+
+    @Override
+    public void start() {
+        if (scheduler != null || (!archiveEnabled && !partitioning)) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "message-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> runSafely(this::runOnce),
+                initialDelaySeconds, TimeUnit.MINUTES.toSeconds(intervalMinutes), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void stop() {
+        ScheduledExecutorService current = scheduler;
+        if (current == null) return;
+        scheduler = null; // Lượt đang chạy thấy isRunning() = false thì dừng sau lô hiện tại
+        current.shutdown();
+        try {
+            current.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return scheduler != null;
+    }
+
+    private static void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            log.error("Lỗi khi lưu trữ tin nhắn cũ", e);
+        }
+    }
+}
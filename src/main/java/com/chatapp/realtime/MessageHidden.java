@@ -0,0 +1,31 @@
+package com.chatapp.realtime;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.io.Serializable;
+
+// Tin nhắn bị "Gỡ ở phía bạn": mỗi dòng là 1 cặp (tin nhắn, người đã gỡ).
+// Khóa chính (message_id, username) vừa chống trùng vừa là index cho điều kiện NOT EXISTS khi đọc lịch sử.
+@Entity
+@Table(name = "message_hidden")
+@IdClass(MessageHidden.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageHidden {
+    @Id
+    private Long messageId;
+
+    @Id
+    private String username;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long messageId;
+        private String username;
+    }
+}
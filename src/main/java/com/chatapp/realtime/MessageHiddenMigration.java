@@ -0,0 +1,66 @@
+package com.chatapp.realtime;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Chuyển dữ liệu cũ: cột chat_messages.deleted_by ("user1,user2,") -> các dòng trong bảng message_hidden.
+// Dòng đã chuyển được đặt deleted_by = NULL nên chạy lại nhiều lần cũng không sao.
+// CSDL mới (không có cột deleted_by) thì bỏ qua.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MessageHiddenMigration {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${chat.hidden.migrate-legacy:true}")
+    private boolean enabled;
+
+    // Chạy trước khi dựng bảng tóm tắt hội thoại (tin đã gỡ không được tính là tin cuối)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateDeletedBy() {
+        if (!enabled) return;
+        int migrated = 0;
+        try {
+            long lastId = 0;
+            while (true) {
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList("SELECT id, deleted_by FROM chat_messages "
+                        + "WHERE id > ? AND deleted_by IS NOT NULL ORDER BY id LIMIT " + BATCH_SIZE, lastId);
+                if (rows.isEmpty()) break;
+                List<Object[]> hidden = new ArrayList<>();
+                List<Object[]> cleared = new ArrayList<>();
+                for (Map<String, Object> row : rows) {
+                    long id = ((Number) row.get("id")).longValue();
+                    lastId = id;
+                    for (String username : ((String) row.get("deleted_by")).split(",")) {
+                        if (!username.isBlank()) hidden.add(new Object[]{id, username.trim()});
+                    }
+                    cleared.add(new Object[]{id});
+                }
+                jdbcTemplate.batchUpdate("INSERT IGNORE INTO message_hidden (message_id, username) VALUES (?, ?)", hidden);
+                jdbcTemplate.batchUpdate("UPDATE chat_messages SET deleted_by = NULL WHERE id = ?", cleared);
+                migrated += hidden.size();
+            }
+        } catch (DataAccessException e) {
+            log.debug("Bỏ qua chuyển cột deleted_by: {}", e.getMessage());
+            return;
+        }
+        if (migrated > 0) {
+            log.info("Đã chuyển {} lượt \"Gỡ ở phía bạn\" từ cột deleted_by sang bảng message_hidden", migrated);
+        }
+    }
+}
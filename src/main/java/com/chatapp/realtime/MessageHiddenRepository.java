@@ -0,0 +1,19 @@
+package com.chatapp.realtime;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.Collection;
+import java.util.List;
+
+public interface MessageHiddenRepository extends JpaRepository<MessageHidden, MessageHidden.Key> {
+    // Gỡ tin phía user: đúng 1 câu INSERT, gỡ lại lần nữa không báo lỗi
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT IGNORE INTO message_hidden (message_id, username) VALUES (:messageId, :username)", nativeQuery = true)
+    int hide(@Param("messageId") long messageId, @Param("username") String username);
+
+    List<MessageHidden> findByMessageIdIn(Collection<Long> messageIds);
+}
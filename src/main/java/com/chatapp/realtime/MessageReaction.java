@@ -0,0 +1,33 @@
+package com.chatapp.realtime;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.io.Serializable;
+
+// Cảm xúc của 1 người trên 1 tin nhắn (mỗi người 1 cảm xúc, thả lại thì ghi đè)
+@Entity
+@Table(name = "message_reactions")
+@IdClass(MessageReaction.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageReaction {
+    @Id
+    private Long messageId;
+
+    @Id
+    private String username;
+
+    @Column(length = 32)
+    private String emoji;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long messageId;
+        private String username;
+    }
+}
@@ -0,0 +1,33 @@
+package com.chatapp.realtime;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.io.Serializable;
+
+// Số lượt của 1 emoji trên 1 tin nhắn, cộng / trừ ngay khi có người thả hoặc đổi cảm xúc (không GROUP BY lại)
+@Entity
+@Table(name = "message_reaction_counts")
+@IdClass(MessageReactionCount.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageReactionCount {
+    @Id
+    private Long messageId;
+
+    @Id
+    @Column(length = 32)
+    private String emoji;
+
+    private long reactionCount;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long messageId;
+        private String emoji;
+    }
+}
@@ -0,0 +1,35 @@
+package com.chatapp.realtime;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.Collection;
+import java.util.List;
+
+public interface MessageReactionCountRepository extends JpaRepository<MessageReactionCount, MessageReactionCount.Key> {
+    // Số lượt đang > 0 của các tin nhắn: đọc theo khóa chính (message_id, emoji), không đếm lại message_reactions
+    @Query("SELECT c FROM MessageReactionCount c WHERE c.messageId IN :messageIds AND c.reactionCount > 0")
+    List<MessageReactionCount> findPositive(@Param("messageIds") Collection<Long> messageIds);
+
+    // +1 cho emoji: 1 câu UPSERT trên đúng dòng đếm, an toàn khi nhiều node cùng ghi
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO message_reaction_counts (message_id, emoji, reaction_count) VALUES (:messageId, :emoji, 1) "
+            + "ON DUPLICATE KEY UPDATE reaction_count = reaction_count + 1", nativeQuery = true)
+    int increment(@Param("messageId") long messageId, @Param("emoji") String emoji);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE MessageReactionCount c SET c.reactionCount = c.reactionCount - 1 "
+            + "WHERE c.messageId = :messageId AND c.emoji = :emoji AND c.reactionCount > 0")
+    int decrement(@Param("messageId") long messageId, @Param("emoji") String emoji);
+
+    // Dựng lại toàn bộ bảng đếm từ message_reactions (lần đầu nâng cấp hoặc sau khi chuyển cột JSON cũ)
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO message_reaction_counts (message_id, emoji, reaction_count) "
+            + "SELECT message_id, emoji, COUNT(*) FROM message_reactions GROUP BY message_id, emoji", nativeQuery = true)
+    int seedFromReactions();
+}
@@ -0,0 +1,29 @@
+package com.chatapp.realtime;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.Optional;
+
+public interface MessageReactionRepository extends JpaRepository<MessageReaction, MessageReaction.Key> {
+    // Lần đầu người này thả cảm xúc cho tin: 1 dòng được thêm; đã có dòng thì trả về 0
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT IGNORE INTO message_reactions (message_id, username, emoji) VALUES (:messageId, :username, :emoji)",
+            nativeQuery = true)
+    int insertIgnore(@Param("messageId") long messageId, @Param("username") String username, @Param("emoji") String emoji);
+
+    // Khóa đúng dòng (tin nhắn, người thả) để biết emoji cũ cần trừ khi đổi cảm xúc
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM MessageReaction r WHERE r.messageId = :messageId AND r.username = :username")
+    Optional<MessageReaction> findForUpdate(@Param("messageId") long messageId, @Param("username") String username);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE MessageReaction r SET r.emoji = :emoji WHERE r.messageId = :messageId AND r.username = :username")
+    int updateEmoji(@Param("messageId") long messageId, @Param("username") String username, @Param("emoji") String emoji);
+}
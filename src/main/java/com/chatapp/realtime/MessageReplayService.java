@@ -0,0 +1,115 @@
+package com.chatapp.realtime;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+// Phát lại tin bị lỡ khi client kết nối lại: client gửi seq lớn nhất đã thấy của từng phòng, server chỉ trả phần thiếu
+// - Phòng đang có trong RecentMessageCache và bộ đệm phủ hết khoảng thiếu: đọc từ bộ nhớ
+// - Còn lại: 1 truy vấn theo khoảng trên index (room_id, seq) thay vì tải lại toàn bộ lịch sử phòng
+// - Lỡ quá max-replay tin (hoặc mốc của client không hợp lệ): báo reloadRequired để client tải trang mới nhất
+@Service
+public class MessageReplayService implements MeterBinder {
+
+    private final RoomSequencer roomSequencer;
+    private final RecentMessageCache recentMessageCache;
+    private final MessageRepository messageRepository;
+    private final MessageWriteBehindQueue messageWriteBehind;
+    private final ReadReceiptService readReceiptService;
+    private final ReactionService reactionService;
+    private final MessageArchive messageArchive;
+    private final RoomService roomService;
+    private final int maxReplay;
+    private final int maxRooms;
+
+    private final LongAdder upToDate = new LongAdder();
+    private final LongAdder fromCache = new LongAdder();
+    private final LongAdder fromDatabase = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+
+    public MessageReplayService(RoomSequencer roomSequencer, RecentMessageCache recentMessageCache,
+                                MessageRepository messageRepository, MessageWriteBehindQueue messageWriteBehind,
+                                ReadReceiptService readReceiptService, ReactionService reactionService,
+                                MessageArchive messageArchive, RoomService roomService,
+                                @Value("${chat.resume.max-replay:500}") int maxReplay,
+                                @Value("${chat.resume.max-rooms:50}") int maxRooms) {
+        this.roomSequencer = roomSequencer;
+        this.recentMessageCache = recentMessageCache;
+        this.messageRepository = messageRepository;
+        this.messageWriteBehind = messageWriteBehind;
+        this.readReceiptService = readReceiptService;
+        this.reactionService = reactionService;
+        this.messageArchive = messageArchive;
+        this.roomService = roomService;
+        this.maxReplay = maxReplay;
+        this.maxRooms = maxRooms;
+    }
+
+    public ReplayEvent replay(String username, Map<String, Long> lastSeen) {
+        List<ReplayEvent.Room> rooms = new ArrayList<>();
+        if (lastSeen == null) return new ReplayEvent(rooms);
+        for (Map.Entry<String, Long> entry : lastSeen.entrySet()) {
+            if (rooms.size() >= maxRooms) break;
+            // Chỉ phát lại phòng mà người này tham gia
+            if (!roomService.isMember(entry.getKey(), username)) continue;
+            rooms.add(replayRoom(entry.getKey(), username, entry.getValue() != null ? entry.getValue() : 0));
+        }
+        return new ReplayEvent(rooms);
+    }
+
+    private ReplayEvent.Room replayRoom(String roomId, String username, long afterSeq) {
+        long latest = roomSequencer.latest(roomId);
+        // Phần bị lỡ đã nằm trong kho lưu trữ (mốc rất cũ) -> để client tải lại qua API phân trang
+        if (afterSeq < 0 || afterSeq > latest || latest - afterSeq > maxReplay || messageArchive.maxSeq(roomId) > afterSeq) {
+            reloads.increment();
+            return new ReplayEvent.Room(roomId, afterSeq, latest, true, List.of());
+        }
+        if (afterSeq == latest) {
+            upToDate.increment();
+            return new ReplayEvent.Room(roomId, afterSeq, latest, false, List.of());
+        }
+
+        List<ChatMessageView> messages;
+        Optional<List<ChatMessageView>> cached = recentMessageCache.replay(roomId, username, afterSeq, maxReplay);
+        if (cached.isPresent()) {
+            fromCache.increment();
+            messages = new ArrayList<>(cached.get());
+        } else {
+            // Tin còn trong hàng đợi write-behind phải xuống DB trước khi đọc
+            if (messageWriteBehind.isEnabled()) messageWriteBehind.flush();
+            messages = new ArrayList<>(messageRepository.findVisibleAfterSeq(roomId, username, afterSeq, Limit.of(maxReplay)));
+            readReceiptService.applyViewStatus(messages); // Bộ đệm đã gán status theo mốc đã xem
+            fromDatabase.increment();
+        }
+        for (ChatMessageView view : messages) {
+            // Ảnh base64 cũ chưa chuyển sang kho blob: trả về đường dẫn tải riêng (như API phân trang)
+            if ("IMAGE".equals(view.getType()) && view.getContent() == null) {
+                view.setContent("/api/messages/single/" + view.getId() + "/image");
+            }
+        }
+        reactionService.applyViewReactions(messages);
+        replayed.add(messages.size());
+        // Tin mới được cấp số trong lúc đọc: báo mốc lớn nhất thực sự đã trả về
+        Long last = messages.isEmpty() ? null : messages.get(messages.size() - 1).getSeq();
+        long newest = last != null ? Math.max(latest, last) : latest;
+        return new ReplayEvent.Room(roomId, afterSeq, newest, false, messages);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("chat.resume.rooms", upToDate, LongAdder::sum).tag("result", "up-to-date").register(registry);
+        FunctionCounter.builder("chat.resume.rooms", fromCache, LongAdder::sum).tag("result", "cache").register(registry);
+        FunctionCounter.builder("chat.resume.rooms", fromDatabase, LongAdder::sum).tag("result", "database").register(registry);
+        FunctionCounter.builder("chat.resume.rooms", reloads, LongAdder::sum).tag("result", "reload").register(registry);
+        FunctionCounter.builder("chat.resume.messages", replayed, LongAdder::sum).register(registry);
+    }
+}
@@ -1,22 +1,87 @@
 package com.chatapp.realtime;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Collection;
 import java.util.List;
 import java.time.LocalDateTime;
 
 public interface MessageRepository extends JpaRepository<ChatMessage, Long> {
+    // Điều kiện tin nhắn còn hiển thị với :username - lọc ngay trong SQL thay vì lọc bằng Java
+    // 1. Không nằm trước mốc "Xóa đoạn chat" của user
+    // 2. Không bị user "Gỡ ở phía bạn" (anti-join trên khóa chính (message_id, username) của bảng message_hidden)
+    String VISIBLE_TO_USER = " AND NOT EXISTS (SELECT 1 FROM ChatClearRecord c WHERE c.roomId = m.roomId "
+            + "AND c.username = :username AND c.clearedAt >= m.timestamp) "
+            + "AND NOT EXISTS (SELECT 1 FROM MessageHidden h WHERE h.messageId = m.id AND h.username = :username) ";
+
+    String VIEW_COLUMNS = "SELECT new com.chatapp.realtime.ChatMessageView(m.id, m.roomId, m.sender, "
+            + "CASE WHEN m.type = 'IMAGE' AND m.content LIKE 'data:%' THEN NULL ELSE m.content END, "
+            + "m.type, m.timestamp, m.status, m.seq) "
+            + "FROM ChatMessage m ";
+
+    // Tìm kiếm qua chỉ mục ngược: tra tiền tố 1 từ trong message_search_terms (chỉ trong các phòng của user),
+    // rồi kiểm tra cả cụm từ khóa trên nội dung đã chuẩn hóa
+    String SEARCH_MATCH = " m.type = 'CHAT' AND m.id IN (SELECT t.messageId FROM MessageSearchTerm t "
+            + "WHERE t.term LIKE :termPrefix AND t.roomId IN :roomIds) "
+            + "AND EXISTS (SELECT 1 FROM MessageSearchDoc d WHERE d.messageId = m.id AND d.normalizedText LIKE :phrase) ";
+
     // Tìm tin nhắn theo phòng chat
     List<ChatMessage> findByRoomId(String roomId);
 
     // Tìm tin nhắn trong phòng nhưng chỉ lấy những tin sau mốc thời gian nhất định
     List<ChatMessage> findByRoomIdAndTimestampAfter(String roomId, LocalDateTime timestamp);
 
+    // Toàn bộ lịch sử phòng mà :username còn nhìn thấy, theo thứ tự gửi
+    @Query("SELECT m FROM ChatMessage m WHERE m.roomId = :roomId" + VISIBLE_TO_USER + "ORDER BY m.id")
+    List<ChatMessage> findVisibleHistory(@Param("roomId") String roomId, @Param("username") String username);
+
+    // Phân trang theo khóa (keyset) trên index (room_id, id): trang cũ hơn beforeId, mới nhất trước
+    @Query(VIEW_COLUMNS + "WHERE m.roomId = :roomId AND m.id < :beforeId" + VISIBLE_TO_USER + "ORDER BY m.id DESC")
+    List<ChatMessageView> findPageBefore(@Param("roomId") String roomId, @Param("username") String username,
+                                         @Param("beforeId") Long beforeId, Limit limit);
+
+    // Các tin mới nhất của cả phòng (chưa lọc theo người xem) - dùng để nạp bộ đệm RecentMessageCache
+    @Query(VIEW_COLUMNS + "WHERE m.roomId = :roomId ORDER BY m.id DESC")
+    List<ChatMessageView> findRecentInRoom(@Param("roomId") String roomId, Limit limit);
+
+    // Trang mới hơn afterId, cũ nhất trước
+    @Query(VIEW_COLUMNS + "WHERE m.roomId = :roomId AND m.id > :afterId" + VISIBLE_TO_USER + "ORDER BY m.id ASC")
+    List<ChatMessageView> findPageAfter(@Param("roomId") String roomId, @Param("username") String username,
+                                        @Param("afterId") Long afterId, Limit limit);
+
+    // Các tin sau số thứ tự afterSeq mà :username còn nhìn thấy, theo thứ tự trong phòng (dùng index (room_id, seq))
+    @Query(VIEW_COLUMNS + "WHERE m.roomId = :roomId AND m.seq > :afterSeq" + VISIBLE_TO_USER + "ORDER BY m.seq ASC")
+    List<ChatMessageView> findVisibleAfterSeq(@Param("roomId") String roomId, @Param("username") String username,
+                                              @Param("afterSeq") long afterSeq, Limit limit);
+
+    // Số thứ tự lớn nhất đã cấp trong phòng (0 nếu phòng chưa có tin)
+    @Query("SELECT COALESCE(MAX(m.seq), 0) FROM ChatMessage m WHERE m.roomId = :roomId")
+    long findMaxSeq(@Param("roomId") String roomId);
+
+    // Số tin của người khác gửi sau mốc đã xem afterId mà :username còn nhìn thấy (dùng index (room_id, id))
+    @Query("SELECT COUNT(m) FROM ChatMessage m WHERE m.roomId = :roomId AND m.id > :afterId AND m.sender <> :username" + VISIBLE_TO_USER)
+    long countUnread(@Param("roomId") String roomId, @Param("username") String username, @Param("afterId") Long afterId);
+
+    // Danh sách phòng đã có tin nhắn (dùng khi dựng lại bảng tóm tắt hội thoại)
+    @Query("SELECT DISTINCT m.roomId FROM ChatMessage m")
+    List<String> findDistinctRoomIds();
+
+    // Số tin khớp từ khóa theo từng phòng: mỗi phần tử là [roomId, count]
+    @Query("SELECT m.roomId, COUNT(m) FROM ChatMessage m WHERE" + SEARCH_MATCH + VISIBLE_TO_USER + "GROUP BY m.roomId")
+    List<Object[]> countSearchMatches(@Param("username") String username, @Param("roomIds") Collection<String> roomIds,
+                                      @Param("termPrefix") String termPrefix, @Param("phrase") String phrase);
+
+    // Các tin khớp từ khóa, mới nhất trước, phân trang theo khóa beforeId
+    @Query(VIEW_COLUMNS + "WHERE" + SEARCH_MATCH + "AND m.id < :beforeId" + VISIBLE_TO_USER + "ORDER BY m.id DESC")
+    List<ChatMessageView> findSearchHits(@Param("username") String username, @Param("roomIds") Collection<String> roomIds,
+                                         @Param("termPrefix") String termPrefix, @Param("phrase") String phrase,
+                                         @Param("beforeId") Long beforeId, Limit limit);
+
     // Xóa tin nhắn theo phòng chat
     void deleteByRoomId(String roomId);
 
     // Tìm kiếm tin nhắn chứa nội dung (không phân biệt hoa thường)
     List<ChatMessage> findByContentContainingIgnoreCase(String content);
-
-    // Tìm tin nhắn theo RoomId chứa chuỗi (để lấy tất cả tin nhắn của user)
-    List<ChatMessage> findByRoomIdContaining(String partialRoomId);
-}
\ No newline at end of file
+}
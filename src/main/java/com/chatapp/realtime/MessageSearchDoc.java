@@ -0,0 +1,20 @@
+package com.chatapp.realtime;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Nội dung tin nhắn đã chuẩn hóa (bỏ dấu, chữ thường, các từ cách nhau 1 dấu cách) để kiểm tra khớp cả cụm từ khóa
+@Entity
+@Table(name = "message_search_docs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageSearchDoc {
+    @Id
+    private Long messageId;
+
+    @Column(columnDefinition = "TEXT")
+    private String normalizedText;
+}
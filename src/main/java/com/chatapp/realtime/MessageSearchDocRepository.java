@@ -0,0 +1,6 @@
+package com.chatapp.realtime;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface MessageSearchDocRepository extends JpaRepository<MessageSearchDoc, Long> {
+}
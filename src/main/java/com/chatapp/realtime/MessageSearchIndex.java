@@ -0,0 +1,96 @@
+package com.chatapp.realtime;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import lombok.RequiredArgsConstructor;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+// Chỉ mục tìm kiếm tin nhắn tiếng Việt không dấu: tách từ sau khi bỏ dấu (đ -> d), ghi vào bảng message_search_terms.
+// Được cập nhật ngay khi gửi / thu hồi tin nhắn; tin "Gỡ ở phía bạn" và mốc xóa đoạn chat được lọc lúc truy vấn.
+@Service
+@RequiredArgsConstructor
+public class MessageSearchIndex {
+
+    private static final int MAX_TERM_LENGTH = 64;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final String INSERT_TERM_SQL = "INSERT INTO message_search_terms (term, message_id, room_id) VALUES (?, ?, ?)";
+    private static final String INSERT_DOC_SQL = "INSERT INTO message_search_docs (message_id, normalized_text) VALUES (?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Chỉ tìm trong tin nhắn văn bản (CHAT), bỏ qua IMAGE, TYPING, READ...
+    public static boolean isIndexable(ChatMessage msg) {
+        return "CHAT".equals(msg.getType()) && msg.getContent() != null && msg.getId() != null;
+    }
+
+    public void index(ChatMessage msg) {
+        indexAll(List.of(msg));
+    }
+
+    // Ghi chỉ mục cho nhiều tin cùng lúc bằng JDBC batch
+    @Transactional
+    public void indexAll(Collection<ChatMessage> messages) {
+        List<Object[]> terms = new ArrayList<>();
+        List<Object[]> docs = new ArrayList<>();
+        for (ChatMessage msg : messages) {
+            if (!isIndexable(msg)) continue;
+            List<String> tokens = tokenize(msg.getContent());
+            if (tokens.isEmpty()) continue;
+            for (String term : new LinkedHashSet<>(tokens)) {
+                terms.add(new Object[]{term, msg.getId(), msg.getRoomId()});
+            }
+            docs.add(new Object[]{msg.getId(), String.join(" ", tokens)});
+        }
+        if (docs.isEmpty()) return;
+        jdbcTemplate.batchUpdate(INSERT_DOC_SQL, docs);
+        jdbcTemplate.batchUpdate(INSERT_TERM_SQL, terms);
+    }
+
+    // Tin bị thu hồi không còn nội dung để tìm
+    @Transactional
+    public void remove(Long messageId) {
+        jdbcTemplate.update("DELETE FROM message_search_terms WHERE message_id = ?", messageId);
+        jdbcTemplate.update("DELETE FROM message_search_docs WHERE message_id = ?", messageId);
+    }
+
+    @Transactional
+    public void clear() {
+        jdbcTemplate.update("DELETE FROM message_search_terms");
+        jdbcTemplate.update("DELETE FROM message_search_docs");
+    }
+
+    // Chuẩn hóa chuỗi: bỏ dấu tiếng Việt, về chữ thường
+    public static String normalize(String input) {
+        if (input == null) return "";
+        String decomposed = Normalizer.normalize(input, Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase().replace("đ", "d");
+    }
+
+    // Tách từ trên chuỗi đã chuẩn hóa (giữ thứ tự, có thể trùng lặp)
+    public static List<String> tokenize(String input) {
+        List<String> tokens = new ArrayList<>();
+        for (String token : NON_WORD.split(normalize(input))) {
+            if (token.isEmpty()) continue;
+            tokens.add(token.length() > MAX_TERM_LENGTH ? token.substring(0, MAX_TERM_LENGTH) : token);
+        }
+        return tokens;
+    }
+
+    // Từ dài nhất thường hiếm nhất -> dùng làm tiền tố tra chỉ mục, các từ còn lại được kiểm tra bằng cụm từ
+    public static String selectiveTerm(List<String> tokens) {
+        String best = tokens.get(0);
+        for (String token : tokens) {
+            if (token.length() > best.length()) best = token;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,66 @@
+package com.chatapp.realtime;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import java.util.List;
+
+// Dựng chỉ mục tìm kiếm từ các tin nhắn CHAT có sẵn.
+// - Mặc định chỉ chạy khi chỉ mục còn trống (lần đầu nâng cấp).
+// - Dựng lại từ đầu: khởi động với --chat.search.rebuild=true
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MessageSearchRebuild {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MessageSearchIndex messageSearchIndex;
+    private final MessageSearchDocRepository messageSearchDocRepository;
+
+    @Value("${chat.search.backfill:true}")
+    private boolean backfill;
+
+    @Value("${chat.search.rebuild:false}")
+    private boolean rebuild;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIndex() {
+        if (rebuild) {
+            messageSearchIndex.clear();
+        } else if (!backfill || messageSearchDocRepository.count() > 0) {
+            return;
+        }
+        int indexed = rebuildAll();
+        if (indexed > 0) {
+            log.info("Đã đánh chỉ mục tìm kiếm cho {} tin nhắn", indexed);
+        }
+    }
+
+    // Duyệt theo khóa id tăng dần, mỗi lô ghi chỉ mục bằng 1 JDBC batch
+    public int rebuildAll() {
+        int indexed = 0;
+        long lastId = 0;
+        while (true) {
+            List<ChatMessage> batch = jdbcTemplate.query("SELECT id, room_id, content FROM chat_messages "
+                    + "WHERE id > ? AND type = 'CHAT' ORDER BY id LIMIT " + BATCH_SIZE, (rs, i) -> {
+                ChatMessage msg = new ChatMessage();
+                msg.setId(rs.getLong("id"));
+                msg.setRoomId(rs.getString("room_id"));
+                msg.setContent(rs.getString("content"));
+                msg.setType("CHAT");
+                return msg;
+            }, lastId);
+            if (batch.isEmpty()) break;
+            messageSearchIndex.indexAll(batch);
+            indexed += batch.size();
+            lastId = batch.get(batch.size() - 1).getId();
+        }
+        return indexed;
+    }
+}
@@ -0,0 +1,34 @@
+package com.chatapp.realtime;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.io.Serializable;
+
+// Chỉ mục ngược: mỗi dòng là 1 từ (đã bỏ dấu) xuất hiện trong 1 tin nhắn.
+// Khóa chính (term, message_id) cho phép tìm theo tiền tố từ bằng range scan.
+@Entity
+@Table(name = "message_search_terms", indexes = @Index(name = "idx_message_search_terms_message_id", columnList = "message_id"))
+@IdClass(MessageSearchTerm.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageSearchTerm {
+    @Id
+    @Column(length = 64)
+    private String term;
+
+    @Id
+    private Long messageId;
+
+    private String roomId;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String term;
+        private Long messageId;
+    }
+}
@@ -0,0 +1,49 @@
+package com.chatapp.realtime;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import java.util.ArrayList;
+import java.util.List;
+
+// Cấp số thứ tự (seq) cho tin nhắn cũ chưa có: theo thứ tự id trong từng phòng, tiếp sau số lớn nhất đã có.
+// Chỉ đụng tới dòng seq IS NULL nên chạy lại nhiều lần cũng không sao.
+// Chạy khi các bean vừa khởi tạo xong (trước khi mở cổng WebSocket) để tin mới không nhận số trùng với tin cũ.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MessageSequenceMigration implements SmartInitializingSingleton {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        List<String> roomIds = jdbcTemplate.queryForList("SELECT DISTINCT room_id FROM chat_messages WHERE seq IS NULL", String.class);
+        long migrated = 0;
+        for (String roomId : roomIds) {
+            if (roomId == null) continue;
+            long seq = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(seq), 0) FROM chat_messages WHERE room_id = ?", Long.class, roomId);
+            while (true) {
+                List<Long> ids = jdbcTemplate.queryForList("SELECT id FROM chat_messages WHERE room_id = ? AND seq IS NULL "
+                        + "ORDER BY id LIMIT " + BATCH_SIZE, Long.class, roomId);
+                if (ids.isEmpty()) break;
+                List<Object[]> updates = new ArrayList<>(ids.size());
+                for (Long id : ids) {
+                    updates.add(new Object[]{++seq, id});
+                }
+                jdbcTemplate.batchUpdate("UPDATE chat_messages SET seq = ? WHERE id = ?", updates);
+                migrated += ids.size();
+            }
+        }
+        // Bảng dùng chung giữa các node có thể cũ hơn dữ liệu (từng chạy chế độ simple): chỉ được tăng, không lùi
+        jdbcTemplate.update("UPDATE room_sequences SET last_seq = GREATEST(last_seq, "
+                + "(SELECT COALESCE(MAX(m.seq), 0) FROM chat_messages m WHERE m.room_id = room_sequences.room_id))");
+        if (migrated > 0) {
+            log.info("Đã cấp số thứ tự cho {} tin nhắn cũ trong {} phòng", migrated, roomIds.size());
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.chatapp.realtime;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import lombok.extern.slf4j.Slf4j;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// Chế độ ghi trễ (write-behind): tin nhắn được broadcast trước, sau đó gom lại và ghi xuống MySQL theo lô JDBC.
+// - Một hàng đợi FIFO duy nhất + một luồng ghi => thứ tự tin nhắn trong từng phòng được giữ nguyên.
+// - Lô được ghi khi đủ batch-size hoặc hết cửa sổ flush-interval-ms.
+// - Hàng đợi đầy: luồng gọi tự flush hộ (backpressure) thay vì làm rơi tin nhắn.
+// - Khi tắt ứng dụng: ghi nốt toàn bộ tin còn trong hàng đợi.
+// - Việc phụ theo sau (chỉ mục tìm kiếm...) đăng ký qua onWritten, chạy theo lô trên luồng ghi với đúng các tin đã vào DB.
+@Slf4j
+@Component
+public class MessageWriteBehindQueue implements SmartLifecycle, MeterBinder {
+
+    // flushIfPending chờ luồng ghi tối đa chừng này (một lô JDBC bình thường xong trong vài chục ms)
+    private static final long PENDING_WAIT_MS = 5000;
+
+    private static final String INSERT_SQL = "INSERT INTO chat_messages "
+            + "(id, room_id, sender, content, type, timestamp, status, seq) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long offerTimeoutMs;
+    private final boolean virtualThreads;
+
+    private final BlockingQueue<ChatMessage> queue;
+    // Tin đã broadcast nhưng chưa ghi xuống DB (để thu hồi/thả cảm xúc có thể ép ghi trước)
+    private final Map<Long, ChatMessage> pending = new ConcurrentHashMap<>();
+    // Chỉ một luồng được lấy tin ra khỏi hàng đợi và ghi tại một thời điểm (giữ thứ tự ghi)
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchNanos = new LongAdder();
+    private final LongAdder batchRows = new LongAdder();
+    private final List<Consumer<List<ChatMessage>>> writtenListeners = new CopyOnWriteArrayList<>();
+
+    private volatile boolean running = false;
+    private Thread flusher;
+
+    public MessageWriteBehindQueue(JdbcTemplate jdbcTemplate,
+                                   @Value("${chat.persistence.write-behind.enabled:false}") boolean enabled,
+                                   @Value("${chat.persistence.write-behind.capacity:10000}") int capacity,
+                                   @Value("${chat.persistence.write-behind.batch-size:200}") int batchSize,
+                                   @Value("${chat.persistence.write-behind.flush-interval-ms:50}") long flushIntervalMs,
+                                   @Value("${chat.persistence.write-behind.offer-timeout-ms:100}") long offerTimeoutMs,
+                                   @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.virtualThreads = virtualThreads;
+        this.queue = new LinkedBlockingQueue<>(capacity);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Nhận từng lô tin vừa ghi thành công (dòng bị bỏ ở bước ghi từng dòng không có trong lô).
+    // Chạy trên luồng ghi, trước khi tin rời khỏi pending: flushIfPending chờ luôn cả phần việc này.
+    // Danh sách chỉ dùng được trong lúc gọi (luồng ghi dùng lại nó cho lô sau)
+    public void onWritten(Consumer<List<ChatMessage>> listener) {
+        writtenListeners.add(listener);
+    }
+
+    // Đưa tin nhắn (đã có ID) vào hàng đợi ghi
+    public void enqueue(ChatMessage message) {
+        pending.put(message.getId(), message);
+        try {
+            while (!queue.offer(message, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                // Hàng đợi đầy: luồng gửi tự ghi bớt để làm chậm nguồn phát (backpressure)
+                log.warn("Hàng đợi write-behind đầy ({} tin), flush đồng bộ trên luồng gửi", queue.size());
+                flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            flush();
+            writeBatch(List.of(message));
+        }
+    }
+
+    // Nếu tin nhắn chưa được ghi thì ghi ngay (dùng trước khi đọc/sửa tin nhắn đó từ DB).
+    // Hàng đợi rỗng mà tin vẫn chưa ghi nghĩa là luồng ghi đã lấy tin ra và đang gom lô: chờ tới khi lô đó ghi xong
+    public void flushIfPending(Long messageId) {
+        if (messageId == null || !pending.containsKey(messageId)) return;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PENDING_WAIT_MS);
+        while (true) {
+            flush();
+            if (!pending.containsKey(messageId)) return;
+            if (System.nanoTime() - deadline > 0) {
+                log.warn("Tin nhắn id={} vẫn chưa được ghi sau {} ms", messageId, PENDING_WAIT_MS);
+                return;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            if (Thread.currentThread().isInterrupted()) return;
+        }
+    }
+
+    // Ghi toàn bộ tin đang chờ xuống DB
+    public void flush() {
+        flushLock.lock();
+        try {
+            List<ChatMessage> batch = new ArrayList<>(batchSize);
+            while (queue.drainTo(batch, batchSize) > 0) {
+                writeBatch(batch);
+                batch.clear();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void runFlusher() {
+        List<ChatMessage> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                ChatMessage first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                flushLock.lock();
+                try {
+                    batch.add(first);
+                    // Gom thêm cho đến khi đủ lô hoặc hết cửa sổ thời gian
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                    while (batch.size() < batchSize) {
+                        queue.drainTo(batch, batchSize - batch.size());
+                        long remaining = deadline - System.nanoTime();
+                        if (batch.size() >= batchSize || remaining <= 0) {
+                            break;
+                        }
+                        ChatMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                    writeBatch(batch);
+                    batch.clear();
+                } finally {
+                    flushLock.unlock();
+                }
+            } catch (InterruptedException e) {
+                // stop() ngắt luồng; phần còn lại được ghi trong stop()
+                if (!batch.isEmpty()) {
+                    writeBatch(batch);
+                    batch.clear();
+                }
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                // Không bỏ lô đã lấy ra khỏi hàng đợi: ghi lại từng dòng, dòng nào vẫn lỗi thì mới mất dòng đó
+                log.error("Lỗi không mong muốn trong luồng write-behind, ghi lại {} tin theo từng dòng", batch.size(), e);
+                flushLock.lock();
+                try {
+                    notifyWritten(writeRows(batch));
+                } finally {
+                    batch.forEach(m -> pending.remove(m.getId()));
+                    batch.clear();
+                    flushLock.unlock();
+                }
+            }
+        }
+    }
+
+    private void writeBatch(List<ChatMessage> batch) {
+        if (batch.isEmpty()) return;
+        long start = System.nanoTime();
+        try {
+            List<ChatMessage> written = batch;
+            try {
+                jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), this::bind);
+            } catch (RuntimeException e) {
+                // Lô lỗi: ghi từng dòng để chỉ mất đúng dòng hỏng, không mất cả lô
+                log.error("Ghi lô {} tin nhắn thất bại, chuyển sang ghi từng dòng", batch.size(), e);
+                written = writeRows(batch);
+            }
+            batches.increment();
+            batchRows.add(batch.size());
+            batchNanos.add(System.nanoTime() - start);
+            notifyWritten(written);
+        } finally {
+            batch.forEach(m -> pending.remove(m.getId()));
+        }
+    }
+
+    // Trả về các tin đã nằm trong DB
+    private List<ChatMessage> writeRows(List<ChatMessage> batch) {
+        List<ChatMessage> written = new ArrayList<>(batch.size());
+        for (ChatMessage msg : batch) {
+            try {
+                jdbcTemplate.update(INSERT_SQL, ps -> bind(ps, msg));
+                written.add(msg);
+            } catch (DuplicateKeyException alreadyWritten) {
+                // ID Snowflake là duy nhất: trùng khóa nghĩa là lô lỗi vẫn kịp ghi dòng này (driver chạy tiếp sau câu lỗi)
+                written.add(msg);
+            } catch (RuntimeException rowError) {
+                log.error("Không thể lưu tin nhắn id={} phòng={}", msg.getId(), msg.getRoomId(), rowError);
+            }
+        }
+        return written;
+    }
+
+    // Lỗi của việc phụ không làm hỏng lô tin đã nằm trong DB (và không kích hoạt ghi lại từng dòng)
+    private void notifyWritten(List<ChatMessage> written) {
+        if (written.isEmpty()) return;
+        for (Consumer<List<ChatMessage>> listener : writtenListeners) {
+            try {
+                listener.accept(written);
+            } catch (RuntimeException e) {
+                log.error("Lỗi khi xử lý tiếp lô {} tin đã ghi", written.size(), e);
+            }
+        }
+    }
+
+    private void bind(PreparedStatement ps, ChatMessage msg) throws SQLException {
+        ps.setLong(1, msg.getId());
+        ps.setString(2, msg.getRoomId());
+        ps.setString(3, msg.getSender());
+        ps.setString(4, msg.getContent());
+        ps.setString(5, msg.getType());
+        ps.setTimestamp(6, msg.getTimestamp() == null ? null : Timestamp.valueOf(msg.getTimestamp()));
+        ps.setString(7, msg.getStatus());
+        ps.setObject(8, msg.getSeq(), Types.BIGINT);
+    }
+
+    // Số liệu Micrometer: độ dài hàng đợi, số tin chưa ghi, thời gian và số dòng của các lô đã ghi
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (!enabled) return;
+        Gauge.builder("chat.persistence.write-behind.queue", queue, BlockingQueue::size).register(registry);
+        Gauge.builder("chat.persistence.write-behind.pending", pending, Map::size).register(registry);
+        FunctionTimer.builder("chat.persistence.write-behind.batch", this, q -> q.batches.sum(), q -> q.batchNanos.sum(), TimeUnit.NANOSECONDS)
+                .register(registry);
+        FunctionCounter.builder("chat.persistence.write-behind.rows", batchRows, LongAdder::sum).register(registry);
+    }
+
+    @Override
+    public void start() {
+        if (!enabled || running) return;
+        running = true;
+        // Chế độ luồng ảo: luồng ghi chờ JDBC không chiếm luồng hệ điều hành (khóa flushLock là ReentrantLock nên không bị ghim)
+        flusher = virtualThreads
+                ? Thread.ofVirtual().name("message-write-behind").unstarted(this::runFlusher)
+                : Thread.ofPlatform().name("message-write-behind").daemon(true).unstarted(this::runFlusher);
+        flusher.start();
+        log.info("Bật chế độ write-behind: batch={} interval={}ms", batchSize, flushIntervalMs);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) return;
+        running = false;
+        flusher.interrupt();
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Ghi nốt những tin còn lại trước khi DataSource bị đóng
+        flush();
+        log.info("Đã ghi xong hàng đợi write-behind khi tắt ứng dụng");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Dừng sau broker và các handler @MessageMapping (phase thấp hơn dừng muộn hơn)
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 1;
+    }
+}
@@ -0,0 +1,33 @@
+package com.chatapp.realtime;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Khung gửi tới /user/queue/notifications: mọi thông báo của một người trong cùng cửa sổ gom, mỗi mục chỉ mang
+// id, phòng, người gửi và đoạn xem trước (không gửi lại cả ChatMessage)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationEvent {
+    private String type;
+    private List<Item> items;
+
+    public NotificationEvent(List<Item> items) {
+        this("NOTIFICATIONS", items);
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+        private String type; // CHAT, IMAGE, READ, FRIEND_REQUEST...
+        private Long id;
+        private String roomId;
+        private String sender;
+        private String preview;
+        private LocalDateTime timestamp;
+    }
+}
@@ -0,0 +1,129 @@
+package com.chatapp.realtime;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.stereotype.Service;
+import lombok.extern.slf4j.Slf4j;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Thông báo cá nhân (cập nhật danh sách chat, đã xem, kết bạn) gửi qua user destination /user/queue/notifications:
+// chỉ các phiên của đúng người nhận (theo Principal) nhận được, broker không phải so khớp một topic riêng cho từng người.
+// Thông báo tới cùng một người trong cửa sổ coalesce-window-ms được gom thành 1 khung; cùng phòng thì chỉ giữ tin mới nhất.
+@Slf4j
+@Service
+public class NotificationService implements SmartLifecycle {
+
+    public static final String DESTINATION = "/queue/notifications";
+    private static final int PREVIEW_LENGTH = 100;
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final SimpUserRegistry userRegistry;
+    private final RoomService roomService;
+    private final long windowMs;
+    // Chế độ cluster: người nhận có thể đang kết nối ở node khác -> không lọc theo registry cục bộ
+    private final boolean localRegistryOnly;
+
+    // Người nhận -> các thông báo chờ gửi (khóa theo loại + phòng để thông báo sau ghi đè thông báo trước)
+    private final Map<String, Map<String, NotificationEvent.Item>> pending = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    public NotificationService(SimpMessagingTemplate messagingTemplate, SimpUserRegistry userRegistry, RoomService roomService,
+                               @Value("${chat.notifications.coalesce-window-ms:200}") long windowMs,
+                               @Value("${chat.broker.mode:simple}") String brokerMode) {
+        this.messagingTemplate = messagingTemplate;
+        this.userRegistry = userRegistry;
+        this.roomService = roomService;
+        this.windowMs = windowMs;
+        this.localRegistryOnly = !"cluster".equals(brokerMode);
+    }
+
+    // Tin nhắn / sự kiện đã xem: báo cho mọi thành viên khác trong phòng (danh sách lấy từ cache thành viên của RoomService)
+    public void notifyMembers(ChatMessage msg) {
+        notifyMembers(new NotificationEvent.Item(msg.getType(), msg.getId(), msg.getRoomId(), msg.getSender(),
+                "READ".equals(msg.getType()) ? null : ConversationSummaryService.preview(msg.getContent(), PREVIEW_LENGTH),
+                msg.getTimestamp()));
+    }
+
+    // Mục đã dựng sẵn (vd. READ với mốc đã xem do server chốt): người gửi của mục không nhận lại
+    public void notifyMembers(NotificationEvent.Item item) {
+        List<String> recipients = roomService.recipients(item.getRoomId(), item.getSender());
+        if (recipients.isEmpty()) return;
+        // Mục không bị sửa sau khi tạo nên dùng chung cho mọi người nhận trong nhóm
+        for (String recipient : recipients) {
+            notify(recipient, item);
+        }
+    }
+
+    public void notify(String recipient, NotificationEvent.Item item) {
+        // Người nhận không có phiên nào đang mở: danh sách chat sẽ được tải lại khi họ đăng nhập
+        if (localRegistryOnly && userRegistry.getUser(recipient) == null) return;
+        String key = coalesceKey(item);
+        pending.compute(recipient, (r, items) -> {
+            if (items == null) items = new LinkedHashMap<>();
+            NotificationEvent.Item previous = items.get(key);
+            // Sự kiện đến trễ (id nhỏ hơn) không được đè lên sự kiện mới hơn
+            if (previous == null || previous.getId() == null || item.getId() == null || item.getId() >= previous.getId()) {
+                items.remove(key); // Đưa xuống cuối để giữ thứ tự theo thời gian
+                items.put(key, item);
+            }
+            return items;
+        });
+    }
+
+    // Tin mới / đã xem / được thêm vào nhóm: mỗi phòng giữ 1 mục; kết bạn...: mỗi người gửi giữ 1 mục theo loại
+    private static String coalesceKey(NotificationEvent.Item item) {
+        return switch (item.getType()) {
+            case "CHAT", "IMAGE", "REVOKED" -> "M:" + item.getRoomId();
+            case "READ" -> "R:" + item.getRoomId();
+            case "ROOM_ADDED" -> "A:" + item.getRoomId();
+            default -> item.getType() + ":" + item.getSender();
+        };
+    }
+
+    void flush() {
+        for (String recipient : pending.keySet()) {
+            Map<String, NotificationEvent.Item> items = pending.remove(recipient);
+            if (items == null || items.isEmpty()) continue;
+            messagingTemplate.convertAndSendToUser(recipient, DESTINATION, new NotificationEvent(new ArrayList<>(items.values())));
+        }
+    }
+
+    @Override
+    public void start() {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "notification-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.error("Lỗi khi gửi thông báo", e);
+            }
+        }, windowMs, windowMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (scheduler == null) return;
+        scheduler.shutdown();
+        scheduler = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return scheduler != null;
+    }
+}
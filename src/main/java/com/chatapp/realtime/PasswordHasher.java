@@ -0,0 +1,147 @@
+package com.chatapp.realtime;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+import lombok.extern.slf4j.Slf4j;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+// Băm / kiểm tra mật khẩu (BCrypt) trên pool riêng có giới hạn: mỗi lần băm tốn cỡ 100 ms CPU nên không chạy trên
+// luồng request hay làn STOMP. Pool có số luồng cố định + hàng đợi có giới hạn; hàng đợi đầy thì từ chối ngay (503)
+// thay vì để một đợt đăng nhập dồn dập chiếm hết CPU của luồng chat. Luồng request chỉ chờ kết quả (tối đa timeout-ms).
+// Mật khẩu cũ lưu dạng văn bản thường vẫn đăng nhập được và được băm lại sau lần đăng nhập đúng đầu tiên.
+@Slf4j
+@Service
+public class PasswordHasher implements DisposableBean, MeterBinder {
+
+    // Giới hạn của BCrypt: phần sau 72 byte bị bỏ qua nên không nhận mật khẩu dài hơn
+    private static final int MAX_PASSWORD_BYTES = 72;
+
+    public enum Result { MISMATCH, MATCH, MATCH_NEEDS_REHASH }
+
+    // Pool băm đang đầy hoặc chờ quá lâu -> controller trả 503 kèm Retry-After
+    public static class BusyException extends RuntimeException {
+        BusyException(String message) {
+            super(message);
+        }
+    }
+
+    private final BCryptPasswordEncoder encoder;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMs;
+    // Người dùng không tồn tại vẫn tốn 1 lần so khớp như thật -> không đoán được username qua thời gian phản hồi
+    private final String dummyHash;
+
+    private final LongAdder hashCount = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    public PasswordHasher(@Value("${chat.auth.bcrypt-strength:10}") int strength,
+                          @Value("${chat.auth.hash.threads:0}") int threads,
+                          @Value("${chat.auth.hash.queue-capacity:64}") int queueCapacity,
+                          @Value("${chat.auth.hash.timeout-ms:5000}") long timeoutMs) {
+        this.encoder = new BCryptPasswordEncoder(strength);
+        // Mặc định nửa số lõi: đăng nhập dồn dập vẫn để lại CPU cho làn STOMP và luồng gửi khung ra
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("auth-hash-", 0).daemon(true).factory());
+        this.timeoutMs = timeoutMs;
+        this.dummyHash = encoder.encode("dummy-password");
+        log.info("Pool băm mật khẩu: {} luồng, hàng đợi {}, BCrypt cost {}", poolSize, queueCapacity, strength);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionTimer.builder("chat.auth.hash", this, h -> h.hashCount.sum(), h -> h.hashNanos.sum(), TimeUnit.NANOSECONDS)
+                .register(registry);
+        Gauge.builder("chat.auth.hash.queue", executor, e -> e.getQueue().size()).register(registry);
+        FunctionCounter.builder("chat.auth.hash.rejected", rejected, LongAdder::sum).tag("reason", "queue-full").register(registry);
+        FunctionCounter.builder("chat.auth.hash.rejected", timedOut, LongAdder::sum).tag("reason", "timeout").register(registry);
+    }
+
+    // Mật khẩu đặt mới (đăng ký / đổi mật khẩu) có dùng được không
+    public static boolean acceptable(String raw) {
+        return raw != null && !raw.isBlank() && raw.getBytes(StandardCharsets.UTF_8).length <= MAX_PASSWORD_BYTES;
+    }
+
+    public String hash(String raw) {
+        return call(() -> encoder.encode(raw));
+    }
+
+    // stored: giá trị cột password (null nếu không có người dùng này)
+    public Result verify(String raw, String stored) {
+        if (raw == null || raw.getBytes(StandardCharsets.UTF_8).length > MAX_PASSWORD_BYTES) return Result.MISMATCH;
+        if (stored != null && !isHashed(stored)) {
+            // Dữ liệu cũ: so sánh thời gian hằng, không cần tới pool
+            boolean equal = MessageDigest.isEqual(raw.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+            return equal ? Result.MATCH_NEEDS_REHASH : Result.MISMATCH;
+        }
+        return call(() -> {
+            if (stored == null) {
+                encoder.matches(raw, dummyHash);
+                return Result.MISMATCH;
+            }
+            if (!encoder.matches(raw, stored)) return Result.MISMATCH;
+            // Đã tăng cost trong cấu hình: băm lại theo cost mới
+            return encoder.upgradeEncoding(stored) ? Result.MATCH_NEEDS_REHASH : Result.MATCH;
+        });
+    }
+
+    public static boolean isHashed(String stored) {
+        return stored.startsWith("$2a$") || stored.startsWith("$2b$") || stored.startsWith("$2y$");
+    }
+
+    private <T> T call(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long start = System.nanoTime();
+                try {
+                    return task.call();
+                } finally {
+                    hashCount.increment();
+                    hashNanos.add(System.nanoTime() - start);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new BusyException("Máy chủ đang bận xử lý đăng nhập, vui lòng thử lại sau");
+        }
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timedOut.increment();
+            throw new BusyException("Máy chủ đang bận xử lý đăng nhập, vui lòng thử lại sau");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new BusyException("Yêu cầu bị hủy");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) throw runtime;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
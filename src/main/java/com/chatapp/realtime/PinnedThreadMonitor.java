@@ -0,0 +1,93 @@
+package com.chatapp.realtime;
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Chế độ luồng ảo: theo dõi sự kiện JFR jdk.VirtualThreadPinned (luồng ảo bị ghim vào luồng mang khi chặn trong
+// synchronized / native). Mỗi chỗ bị ghim (khung lệnh đầu tiên thuộc ứng dụng) được cảnh báo 1 lần trong log,
+// tổng số lần và thời gian bị ghim xuất ra Micrometer (chat.threads.pinned) để phát hiện chỗ cần đổi sang ReentrantLock.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class PinnedThreadMonitor implements SmartLifecycle, MeterBinder {
+
+    private static final String EVENT = "jdk.VirtualThreadPinned";
+    private static final String APP_PACKAGE = "com.chatapp.";
+    private static final int MAX_REPORTED_SITES = 100;
+
+    private final long thresholdMs;
+    private final LongAdder pinnedCount = new LongAdder();
+    private final LongAdder pinnedNanos = new LongAdder();
+    private final Set<String> reportedSites = ConcurrentHashMap.newKeySet();
+
+    private RecordingStream stream;
+
+    public PinnedThreadMonitor(@Value("${chat.threads.pinned-threshold-ms:20}") long thresholdMs) {
+        this.thresholdMs = thresholdMs;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionTimer.builder("chat.threads.pinned", this, m -> m.pinnedCount.sum(), m -> m.pinnedNanos.sum(), TimeUnit.NANOSECONDS)
+                .register(registry);
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedCount.increment();
+        pinnedNanos.add(event.getDuration().toNanos());
+        String site = siteOf(event);
+        if (reportedSites.size() < MAX_REPORTED_SITES && reportedSites.add(site)) {
+            log.warn("Luồng ảo bị ghim {} ms tại {} (luồng {})", event.getDuration().toMillis(), site,
+                    event.getThread() != null ? event.getThread().getJavaName() : "?");
+        }
+    }
+
+    // Khung lệnh đầu tiên thuộc ứng dụng; không có thì lấy khung trên cùng
+    private static String siteOf(RecordedEvent event) {
+        if (event.getStackTrace() == null) return "?";
+        List<RecordedFrame> frames = event.getStackTrace().getFrames();
+        RecordedFrame site = frames.stream()
+                .filter(f -> f.getMethod() != null && f.getMethod().getType().getName().startsWith(APP_PACKAGE))
+                .findFirst()
+                .orElse(frames.isEmpty() ? null : frames.get(0));
+        if (site == null || site.getMethod() == null) return "?";
+        return site.getMethod().getType().getName() + "." + site.getMethod().getName() + ":" + site.getLineNumber();
+    }
+
+    @Override
+    public void start() {
+        if (stream != null) return;
+        stream = new RecordingStream();
+        stream.enable(EVENT).withThreshold(Duration.ofMillis(thresholdMs)).withStackTrace();
+        stream.onEvent(EVENT, this::onPinned);
+        stream.startAsync();
+        log.info("Bật chế độ luồng ảo, theo dõi luồng bị ghim lâu hơn {} ms", thresholdMs);
+    }
+
+    @Override
+    public void stop() {
+        if (stream == null) return;
+        stream.close();
+        stream = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return stream != null;
+    }
+}
@@ -0,0 +1,29 @@
+package com.chatapp.realtime;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Sự kiện PRESENCE gửi lên /topic/presence: gom mọi thay đổi Online/Offline trong một nhịp thành 1 khung
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PresenceEvent {
+    private String type;
+    private List<Change> users;
+
+    public PresenceEvent(List<Change> users) {
+        this("PRESENCE", users);
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Change {
+        private String username;
+        private String status; // ONLINE, OFFLINE
+        private LocalDateTime lastActive; // Chỉ có khi OFFLINE
+    }
+}
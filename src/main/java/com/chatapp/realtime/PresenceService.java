@@ -0,0 +1,371 @@
+package com.chatapp.realtime;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import lombok.extern.slf4j.Slf4j;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Trạng thái Online/Offline giữ trong bộ nhớ, tính theo số phiên STOMP đang mở của mỗi người (nhiều tab = nhiều phiên).
+// - Kết nối/ngắt kết nối (kể cả rớt mạng, đóng tab) chỉ đổi bộ đếm, không chạm DB.
+// - Mỗi nhịp broadcast-interval-ms gom các thay đổi thành 1 khung /topic/presence; Offline phải kéo dài quá
+//   offline-grace-ms mới được báo (tải lại trang = ngắt rồi nối lại ngay -> không nhấp nháy).
+// - status/last_active được ghi xuống bảng users theo lô mỗi persist-interval-ms và khi tắt ứng dụng.
+// - Chế độ cluster: mỗi node đếm phiên của mình và báo số phiên đã đổi cho các node khác qua ClusterFanout (gom theo nhịp
+//   broadcast, kèm bản đầy đủ mỗi cluster-sync-ms). Online = còn phiên ở bất kỳ node nào; Offline do node có phiên cuối
+//   cùng báo. Node im lặng quá 3 nhịp đồng bộ (hoặc báo rời cụm khi tắt) bị bỏ, người chỉ còn phiên ở node đó được báo
+//   Offline (có thể trùng giữa các node còn lại - client nhận lặp không sao).
+@Slf4j
+@Service
+public class PresenceService implements SmartLifecycle, MeterBinder {
+
+    public static final String USERNAME_HEADER = "username";
+    private static final String ONLINE = "ONLINE";
+    private static final String OFFLINE = "OFFLINE";
+    private static final String PERSIST_SQL = "UPDATE users SET status = ?, last_active = ? WHERE username = ?";
+    // Kênh nội bộ của ClusterFanout; payload: dòng đầu là loại, mỗi dòng sau "số-phiên|username"
+    private static final String CLUSTER_CHANNEL = "presence";
+    private static final String SYNC = "SYNC";   // Toàn bộ số phiên của node phát (người vắng mặt = 0 phiên)
+    private static final String DELTA = "DELTA"; // Chỉ những người vừa đổi số phiên
+    private static final String LEAVE = "LEAVE"; // Node phát đang tắt
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final long broadcastIntervalMs;
+    private final long offlineGraceNanos;
+    private final long persistIntervalMs;
+    private final long clusterSyncNanos;
+    private final ObjectProvider<ClusterFanout> clusterFanout;
+
+    private final Map<String, Presence> presences = new ConcurrentHashMap<>();
+    private final Map<String, String> sessionUsers = new ConcurrentHashMap<>();
+    // Người có thay đổi chưa được broadcast
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    // Thay đổi đã broadcast nhưng chưa ghi DB (ghi đè nhau, chỉ giữ trạng thái cuối)
+    private final Map<String, PresenceEvent.Change> unsaved = new ConcurrentHashMap<>();
+    // Tăng mỗi khi có người chuyển Online <-> Offline (một phần ETag của danh bạ)
+    private final AtomicLong version = new AtomicLong();
+    // Chế độ cluster: số phiên trên từng node khác; người đổi số phiên cục bộ chưa báo cho cụm;
+    // người chỉ còn phiên ở node vừa rời cụm (cần xét báo Offline)
+    private final Map<String, RemoteNode> remoteNodes = new ConcurrentHashMap<>();
+    private final Set<String> localChanged = ConcurrentHashMap.newKeySet();
+    private final Set<String> orphaned = ConcurrentHashMap.newKeySet();
+    private long lastSyncAt;
+
+    private ScheduledExecutorService scheduler;
+    private ClusterFanout fanout;
+
+    public PresenceService(SimpMessagingTemplate messagingTemplate, JdbcTemplate jdbcTemplate, ObjectProvider<ClusterFanout> clusterFanout,
+                           @Value("${chat.presence.broadcast-interval-ms:500}") long broadcastIntervalMs,
+                           @Value("${chat.presence.offline-grace-ms:3000}") long offlineGraceMs,
+                           @Value("${chat.presence.persist-interval-ms:10000}") long persistIntervalMs,
+                           @Value("${chat.presence.cluster-sync-ms:15000}") long clusterSyncMs) {
+        this.messagingTemplate = messagingTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.clusterFanout = clusterFanout;
+        this.broadcastIntervalMs = broadcastIntervalMs;
+        this.offlineGraceNanos = TimeUnit.MILLISECONDS.toNanos(offlineGraceMs);
+        this.persistIntervalMs = persistIntervalMs;
+        this.clusterSyncNanos = TimeUnit.MILLISECONDS.toNanos(clusterSyncMs);
+    }
+
+    // Client gửi header "username" trong khung CONNECT
+    @EventListener
+    public void onConnect(SessionConnectEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String username = event.getUser() != null ? event.getUser().getName() : accessor.getFirstNativeHeader(USERNAME_HEADER);
+        String sessionId = accessor.getSessionId();
+        if (username == null || username.isBlank() || sessionId == null) return;
+        if (sessionUsers.putIfAbsent(sessionId, username) != null) return;
+        presences.compute(username, (u, p) -> {
+            if (p == null) {
+                p = new Presence();
+                // Đang Online ở node khác thì node đó đã báo, không báo lại
+                if (remoteSessions(u) > 0) p.broadcasted = ONLINE;
+            }
+            if (p.sessions++ == 0) version.incrementAndGet();
+            return p;
+        });
+        dirty.add(username);
+        localChanged.add(username);
+    }
+
+    // Sự kiện ngắt có thể đến nhiều lần cho cùng phiên -> chỉ phiên còn trong sessionUsers mới được trừ
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        String username = sessionUsers.remove(event.getSessionId());
+        if (username == null) return;
+        presences.computeIfPresent(username, (u, p) -> {
+            if (--p.sessions == 0) {
+                p.offlineSince = System.nanoTime();
+                p.lastActive = LocalDateTime.now();
+                version.incrementAndGet();
+            }
+            return p;
+        });
+        dirty.add(username);
+        localChanged.add(username);
+    }
+
+    public boolean isOnline(String username) {
+        Presence p = presences.get(username);
+        return p != null && p.sessions > 0 || remoteSessions(username) > 0;
+    }
+
+    private int remoteSessions(String username) {
+        if (remoteNodes.isEmpty()) return 0;
+        int total = 0;
+        for (RemoteNode node : remoteNodes.values()) {
+            total += node.sessions.getOrDefault(username, 0);
+        }
+        return total;
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    // Ghép trạng thái trong bộ nhớ lên bản ghi đọc từ DB (DB có thể chậm hơn tối đa một nhịp ghi)
+    public void applyPresence(User user) {
+        user.setStatus(statusOf(user.getUsername()));
+        LocalDateTime lastActive = unsavedLastActive(user.getUsername());
+        if (lastActive != null) user.setLastActive(lastActive);
+    }
+
+    public void applyPresence(UserDirectoryEntry entry) {
+        entry.setStatus(statusOf(entry.getUsername()));
+        LocalDateTime lastActive = unsavedLastActive(entry.getUsername());
+        if (lastActive != null) entry.setLastActive(lastActive);
+    }
+
+    private String statusOf(String username) {
+        return isOnline(username) ? ONLINE : OFFLINE;
+    }
+
+    private LocalDateTime unsavedLastActive(String username) {
+        PresenceEvent.Change change = unsaved.get(username);
+        return change != null ? change.getLastActive() : null;
+    }
+
+    // Gom các thay đổi đã "lắng" thành một khung duy nhất
+    void broadcastChanges() {
+        if (dirty.isEmpty() && orphaned.isEmpty()) return;
+        long now = System.nanoTime();
+        List<PresenceEvent.Change> changes = new ArrayList<>();
+        for (String username : dirty) {
+            dirty.remove(username);
+            presences.computeIfPresent(username, (u, p) -> {
+                String current = p.sessions > 0 || remoteSessions(u) > 0 ? ONLINE : OFFLINE;
+                if (OFFLINE.equals(current) && now - p.offlineSince < offlineGraceNanos) {
+                    dirty.add(u); // Chưa hết thời gian chờ, xét lại ở nhịp sau
+                    return p;
+                }
+                if (!current.equals(p.broadcasted)) {
+                    PresenceEvent.Change change = new PresenceEvent.Change(u, current, OFFLINE.equals(current) ? p.lastActive : null);
+                    changes.add(change);
+                    unsaved.put(u, change);
+                    p.broadcasted = current;
+                }
+                return p.sessions > 0 ? p : null; // Hết phiên cục bộ -> bỏ khỏi bảng (còn phiên ở node khác thì node đó báo)
+            });
+        }
+        for (String username : orphaned) {
+            orphaned.remove(username);
+            if (isOnline(username)) continue;
+            PresenceEvent.Change change = new PresenceEvent.Change(username, OFFLINE, LocalDateTime.now());
+            changes.add(change);
+            unsaved.put(username, change);
+        }
+        if (!changes.isEmpty()) {
+            version.incrementAndGet(); // lastActive mới có hiệu lực từ lúc này
+            messagingTemplate.convertAndSend("/topic/presence", new PresenceEvent(changes));
+        }
+    }
+
+    // Chế độ cluster: báo số phiên cục bộ đã đổi cho các node khác (định kỳ gửi bản đầy đủ) và bỏ các node đã im lặng
+    void syncCluster() {
+        if (fanout == null) return;
+        long now = System.nanoTime();
+        boolean full = lastSyncAt == 0 || now - lastSyncAt >= clusterSyncNanos;
+        List<String> users = new ArrayList<>();
+        for (String username : localChanged) {
+            localChanged.remove(username);
+            users.add(username);
+        }
+        if (full) {
+            users = new ArrayList<>(presences.keySet());
+            lastSyncAt = now;
+        } else if (users.isEmpty()) {
+            return;
+        }
+        StringBuilder payload = new StringBuilder(full ? SYNC : DELTA);
+        for (String username : users) {
+            Presence p = presences.get(username);
+            int sessions = p != null ? p.sessions : 0;
+            if (full && sessions == 0) continue;
+            payload.append('\n').append(sessions).append('|').append(username);
+        }
+        fanout.publishInternal(CLUSTER_CHANNEL, payload.toString());
+
+        remoteNodes.entrySet().removeIf(e -> {
+            if (now - e.getValue().seenAt <= 3 * clusterSyncNanos) return false;
+            log.warn("Node {} không gửi trạng thái Online quá lâu, bỏ các phiên của node đó", e.getKey());
+            orphan(e.getValue());
+            return true;
+        });
+    }
+
+    private void onRemote(String origin, String payload) {
+        String[] lines = payload.split("\n");
+        if (LEAVE.equals(lines[0])) {
+            RemoteNode node = remoteNodes.remove(origin);
+            if (node != null) orphan(node);
+            return;
+        }
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            int sep = lines[i].indexOf('|');
+            if (sep > 0) counts.put(lines[i].substring(sep + 1), Integer.parseInt(lines[i].substring(0, sep)));
+        }
+        RemoteNode node = remoteNodes.computeIfAbsent(origin, n -> new RemoteNode());
+        synchronized (node) {
+            node.seenAt = System.nanoTime();
+            if (SYNC.equals(lines[0])) {
+                for (String username : node.sessions.keySet()) counts.putIfAbsent(username, 0);
+            }
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                String username = entry.getKey();
+                int sessions = entry.getValue();
+                Integer previous = sessions > 0 ? node.sessions.put(username, sessions) : node.sessions.remove(username);
+                if ((previous == null || previous == 0) != (sessions == 0)) {
+                    version.incrementAndGet();
+                    // Phiên cuối ở node đó đã đóng: người vẫn còn bảng cục bộ ở đây thì xét lại ở nhịp sau
+                    if (sessions == 0 && presences.containsKey(username)) dirty.add(username);
+                }
+            }
+        }
+    }
+
+    private void orphan(RemoteNode node) {
+        synchronized (node) {
+            orphaned.addAll(node.sessions.keySet());
+            node.sessions.clear();
+        }
+        version.incrementAndGet();
+    }
+
+    // Ghi lô các thay đổi đã broadcast xuống bảng users
+    void persistChanges() {
+        if (unsaved.isEmpty()) return;
+        List<PresenceEvent.Change> batch = new ArrayList<>(unsaved.size());
+        for (String username : unsaved.keySet()) {
+            PresenceEvent.Change change = unsaved.remove(username);
+            if (change != null) batch.add(change);
+        }
+        try {
+            jdbcTemplate.batchUpdate(PERSIST_SQL, batch, batch.size(), (ps, c) -> {
+                ps.setString(1, c.getStatus());
+                ps.setTimestamp(2, c.getLastActive() == null ? null : Timestamp.valueOf(c.getLastActive()));
+                ps.setString(3, c.getUsername());
+            });
+        } catch (RuntimeException e) {
+            // Trả lại để ghi ở nhịp sau, không đè lên thay đổi mới hơn
+            log.error("Ghi trạng thái của {} người dùng thất bại", batch.size(), e);
+            batch.forEach(c -> unsaved.putIfAbsent(c.getUsername(), c));
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("chat.presence.online", presences, p -> p.values().stream().filter(x -> x.sessions > 0).count()).register(registry);
+        Gauge.builder("chat.presence.sessions", sessionUsers, Map::size).register(registry);
+        Gauge.builder("chat.presence.pending", dirty, Set::size).tag("stage", "broadcast").register(registry);
+        Gauge.builder("chat.presence.pending", unsaved, Map::size).tag("stage", "persist").register(registry);
+    }
+
+    @Override
+    public void start() {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "presence-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> runSafely(this::broadcastChanges), broadcastIntervalMs, broadcastIntervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(() -> runSafely(this::persistChanges), persistIntervalMs, persistIntervalMs, TimeUnit.MILLISECONDS);
+        fanout = clusterFanout.getIfAvailable();
+        if (fanout != null) {
+            fanout.onInternal(CLUSTER_CHANNEL, this::onRemote);
+            scheduler.scheduleWithFixedDelay(() -> runSafely(this::syncCluster), 0, broadcastIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (scheduler == null) return;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler = null;
+        // Các node khác báo Offline thay cho những người chỉ có phiên ở node này
+        if (fanout != null) runSafely(() -> fanout.publishInternal(CLUSTER_CHANNEL, LEAVE));
+        // Ghi nốt trước khi DataSource bị đóng; người còn Online sẽ được đưa về OFFLINE ở lần khởi động sau
+        persistChanges();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return scheduler != null;
+    }
+
+    // Dừng sau broker để bắt được các phiên bị ngắt khi tắt ứng dụng
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 1;
+    }
+
+    private static void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            log.error("Lỗi trong luồng presence", e);
+        }
+    }
+
+    // Chỉ được sửa bên trong compute của presences
+    private static final class Presence {
+        volatile int sessions;
+        String broadcasted = OFFLINE;
+        long offlineSince;
+        LocalDateTime lastActive;
+    }
+
+    private static final class RemoteNode {
+        final Map<String, Integer> sessions = new ConcurrentHashMap<>();
+        volatile long seenAt = System.nanoTime();
+    }
+}
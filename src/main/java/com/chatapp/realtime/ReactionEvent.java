@@ -0,0 +1,23 @@
+package com.chatapp.realtime;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.Map;
+
+// Sự kiện REACT gửi qua WebSocket: ai vừa thả cảm xúc gì và số lượt mới theo emoji (không kèm nội dung tin nhắn)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReactionEvent {
+    private String type;
+    private Long id;
+    private String roomId;
+    private String sender;
+    private String emoji;
+    private Map<String, Long> reactions;
+
+    public ReactionEvent(Long id, String roomId, String sender, String emoji, Map<String, Long> reactions) {
+        this("REACT", id, roomId, sender, emoji, reactions);
+    }
+}
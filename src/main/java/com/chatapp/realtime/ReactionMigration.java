@@ -0,0 +1,84 @@
+package com.chatapp.realtime;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Chuyển dữ liệu cũ: cột JSON chat_messages.reactions ({"username": "emoji"}) -> các dòng trong bảng message_reactions.
+// Dòng đã chuyển được đặt reactions = NULL nên chạy lại nhiều lần cũng không sao.
+// CSDL mới (không có cột reactions) thì bỏ qua.
+// Sau đó dựng bảng đếm message_reaction_counts nếu vừa chuyển thêm cảm xúc hoặc bảng đếm còn trống (lần đầu nâng cấp).
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReactionMigration {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final ReactionService reactionService;
+
+    @Value("${chat.reactions.migrate-legacy:true}")
+    private boolean enabled;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        int migrated = enabled ? migrateReactionsJson() : 0;
+        if (migrated > 0 || reactionService.countsMissing()) {
+            int rows = reactionService.rebuildCounts();
+            log.info("Đã dựng bảng message_reaction_counts: {} dòng", rows);
+        }
+    }
+
+    private int migrateReactionsJson() {
+        int migrated = 0;
+        try {
+            long lastId = 0;
+            while (true) {
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList("SELECT id, reactions FROM chat_messages "
+                        + "WHERE id > ? AND reactions IS NOT NULL ORDER BY id LIMIT " + BATCH_SIZE, lastId);
+                if (rows.isEmpty()) break;
+                List<Object[]> reactions = new ArrayList<>();
+                List<Object[]> cleared = new ArrayList<>();
+                for (Map<String, Object> row : rows) {
+                    long id = ((Number) row.get("id")).longValue();
+                    lastId = id;
+                    String json = (String) row.get("reactions");
+                    try {
+                        if (!json.isBlank()) {
+                            Map<String, String> byUser = objectMapper.readValue(json, new TypeReference<Map<String, String>>(){});
+                            byUser.forEach((username, emoji) -> {
+                                if (ReactionService.isValidEmoji(emoji)) reactions.add(new Object[]{id, username, emoji});
+                            });
+                        }
+                    } catch (JsonProcessingException e) {
+                        log.warn("Bỏ qua cảm xúc không đọc được của tin nhắn id={}", id);
+                    }
+                    cleared.add(new Object[]{id});
+                }
+                jdbcTemplate.batchUpdate("INSERT IGNORE INTO message_reactions (message_id, username, emoji) VALUES (?, ?, ?)", reactions);
+                jdbcTemplate.batchUpdate("UPDATE chat_messages SET reactions = NULL WHERE id = ?", cleared);
+                migrated += reactions.size();
+            }
+        } catch (DataAccessException e) {
+            log.debug("Bỏ qua chuyển cột reactions: {}", e.getMessage());
+            return 0;
+        }
+        if (migrated > 0) {
+            log.info("Đã chuyển {} cảm xúc từ cột JSON reactions sang bảng message_reactions", migrated);
+        }
+        return migrated;
+    }
+}
@@ -0,0 +1,172 @@
+package com.chatapp.realtime;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+// Cảm xúc lưu theo dòng (message_id, username, emoji); số lượt theo emoji nằm sẵn trong message_reaction_counts,
+// được cộng / trừ trong cùng giao dịch với dòng cảm xúc (không khóa trong JVM, không GROUP BY lại).
+// Số lượt của từng tin được cache (LRU) để vẽ lịch sử; thả cảm xúc thì xóa mục cache của tin đó trên mọi node
+// (chế độ cluster: báo qua ClusterFanout). Lần đọc DB nào bị một lần xóa cache chen vào giữa thì không được ghi vào cache
+// (có thể là số cũ, đọc trước khi giao dịch kia commit).
+@Service
+public class ReactionService implements MeterBinder {
+
+    static final String CACHE_NAME = "reaction-counts";
+    private static final int MAX_EMOJI_LENGTH = 16;
+
+    private final MessageReactionRepository reactionRepository;
+    private final MessageReactionCountRepository countRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectProvider<ClusterFanout> clusterFanout;
+    private final Map<Long, Map<String, Long>> countsCache;
+    // Tăng mỗi lần xóa cache; đổi giá trị trong lúc đọc DB -> kết quả vừa đọc không được cache
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ReactionService(MessageReactionRepository reactionRepository, MessageReactionCountRepository countRepository,
+                           PlatformTransactionManager transactionManager, ObjectProvider<ClusterFanout> clusterFanout,
+                           @Value("${chat.reactions.cache-size:10000}") int cacheSize) {
+        this.reactionRepository = reactionRepository;
+        this.countRepository = countRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.clusterFanout = clusterFanout;
+        this.countsCache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Map<String, Long>> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    @PostConstruct
+    void subscribeEvictions() {
+        clusterFanout.ifAvailable(fanout -> fanout.onEvict(CACHE_NAME, key -> invalidate(Long.valueOf(key))));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("chat.reactions.cache.size", countsCache, Map::size).register(registry);
+    }
+
+    public static boolean isValidEmoji(String emoji) {
+        return emoji != null && !emoji.isBlank() && emoji.length() <= MAX_EMOJI_LENGTH;
+    }
+
+    // Thả (hoặc đổi) cảm xúc, trả về số lượt mới theo từng emoji của tin nhắn
+    public Map<String, Long> react(Long messageId, String username, String emoji) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (reactionRepository.insertIgnore(messageId, username, emoji) > 0) {
+                countRepository.increment(messageId, emoji);
+                return;
+            }
+            // Đổi cảm xúc: khóa dòng của chính người này, trừ emoji cũ / cộng emoji mới
+            String previous = reactionRepository.findForUpdate(messageId, username).map(MessageReaction::getEmoji).orElse(null);
+            if (emoji.equals(previous)) return;
+            reactionRepository.updateEmoji(messageId, username, emoji);
+            if (previous != null) countRepository.decrement(messageId, previous);
+            countRepository.increment(messageId, emoji);
+        });
+        evict(messageId);
+        return countsFor(List.of(messageId)).getOrDefault(messageId, Map.of());
+    }
+
+    // Số lượt theo emoji của nhiều tin: lấy từ cache, phần còn thiếu đọc 1 lần từ bảng đếm
+    public Map<Long, Map<String, Long>> countsFor(Collection<Long> messageIds) {
+        Map<Long, Map<String, Long>> result = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long id : messageIds) {
+            Map<String, Long> cached = countsCache.get(id);
+            if (cached != null) result.put(id, cached);
+            else missing.add(id);
+        }
+        if (!missing.isEmpty()) {
+            long stamp = evictions.get();
+            Map<Long, Map<String, Long>> loaded = loadCounts(missing);
+            // Cùng khóa với countsCache (synchronizedMap) -> không lọt vào giữa "tăng evictions" và "xóa" của invalidate
+            synchronized (countsCache) {
+                boolean fresh = evictions.get() == stamp;
+                for (Long id : missing) {
+                    Map<String, Long> counts = loaded.getOrDefault(id, Map.of());
+                    Map<String, Long> previous = fresh ? countsCache.putIfAbsent(id, counts) : null;
+                    result.put(id, previous != null ? previous : counts);
+                }
+            }
+        }
+        return result;
+    }
+
+    public void evictAll() {
+        synchronized (countsCache) {
+            evictions.incrementAndGet();
+            countsCache.clear();
+        }
+    }
+
+    // Dựng lại bảng đếm từ các dòng cảm xúc (ReactionMigration, lúc khởi động)
+    public int rebuildCounts() {
+        Integer seeded = transactionTemplate.execute(status -> {
+            countRepository.deleteAllInBatch();
+            return countRepository.seedFromReactions();
+        });
+        evictAll();
+        return seeded != null ? seeded : 0;
+    }
+
+    public boolean countsMissing() {
+        return countRepository.count() == 0 && reactionRepository.count() > 0;
+    }
+
+    private void evict(Long messageId) {
+        invalidate(messageId);
+        clusterFanout.ifAvailable(fanout -> fanout.evict(CACHE_NAME, messageId.toString()));
+    }
+
+    private void invalidate(Long messageId) {
+        synchronized (countsCache) {
+            evictions.incrementAndGet();
+            countsCache.remove(messageId);
+        }
+    }
+
+    public void applyReactions(Collection<ChatMessage> messages) {
+        apply(messages, ChatMessage::getId, ChatMessage::setReactions);
+    }
+
+    public void applyViewReactions(Collection<ChatMessageView> views) {
+        apply(views, ChatMessageView::getId, ChatMessageView::setReactions);
+    }
+
+    private <T> void apply(Collection<T> items, Function<T, Long> idOf, BiConsumer<T, Map<String, Long>> setReactions) {
+        if (items.isEmpty()) return;
+        Map<Long, Map<String, Long>> counts = countsFor(items.stream().map(idOf).toList());
+        for (T item : items) {
+            Map<String, Long> itemCounts = counts.get(idOf.apply(item));
+            setReactions.accept(item, itemCounts == null || itemCounts.isEmpty() ? null : itemCounts);
+        }
+    }
+
+    private Map<Long, Map<String, Long>> loadCounts(Collection<Long> messageIds) {
+        Map<Long, Map<String, Long>> result = new HashMap<>();
+        for (MessageReactionCount row : countRepository.findPositive(messageIds)) {
+            result.computeIfAbsent(row.getMessageId(), k -> new HashMap<>()).put(row.getEmoji(), row.getReactionCount());
+        }
+        result.replaceAll((id, counts) -> Collections.unmodifiableMap(counts));
+        return result;
+    }
+}
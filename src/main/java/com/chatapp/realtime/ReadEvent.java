@@ -0,0 +1,20 @@
+package com.chatapp.realtime;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Sự kiện READ gửi vào topic của phòng: người đọc và mốc ID tin nhắn đã xem tới
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReadEvent {
+    private String type;
+    private String roomId;
+    private String sender;
+    private Long id;
+
+    public ReadEvent(String roomId, String sender, Long id) {
+        this("READ", roomId, sender, id);
+    }
+}
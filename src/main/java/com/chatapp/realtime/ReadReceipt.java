@@ -0,0 +1,24 @@
+package com.chatapp.realtime;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+// Mốc "đã xem" của một người trong một phòng: mọi tin nhắn có id <= lastReadMessageId coi như đã đọc
+@Entity
+@Table(name = "read_receipts", uniqueConstraints = @UniqueConstraint(name = "uk_read_receipt_room_reader", columnNames = {"room_id", "reader"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReadReceipt {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String roomId;
+    private String reader;
+    private Long lastReadMessageId;
+    private LocalDateTime readAt;
+}
@@ -0,0 +1,58 @@
+package com.chatapp.realtime;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import java.time.LocalDateTime;
+
+// Chuyển dữ liệu cũ: cột chat_messages.status = 'READ' -> mốc đã xem trong bảng read_receipts.
+// Chỉ chạy khi bảng read_receipts còn trống, nên chạy lại nhiều lần cũng không sao.
+// Sau khi chuyển xong, cột status không còn được đọc để xác định đã xem (chỉ giữ cho dữ liệu cũ).
+// Mỗi lần khởi động còn hạ các mốc lớn hơn ID có thể cấp tới hiện tại (client cũ gửi id tùy ý trong khung READ).
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReadReceiptMigration {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReadReceiptRepository readReceiptRepository;
+    private final SnowflakeIdGenerator idGenerator;
+
+    @Value("${chat.read-receipts.migrate-legacy-status:true}")
+    private boolean enabled;
+
+    // Chạy trước các bước dựng dữ liệu phụ thuộc vào mốc đã xem (bảng tóm tắt hội thoại)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateLegacyStatus() {
+        int clamped = readReceiptRepository.clampFutureMarks(idGenerator.currentWatermark());
+        if (clamped > 0) {
+            log.warn("Đã hạ {} mốc đã xem lớn hơn mọi ID tin nhắn có thể có", clamped);
+        }
+        if (!enabled || readReceiptRepository.count() > 0) return;
+
+        // Tin mới nhất đã được xem của mỗi người gửi trong mỗi phòng
+        int[] migrated = {0};
+        jdbcTemplate.query("SELECT room_id, sender, MAX(id) AS last_id FROM chat_messages "
+                + "WHERE status = 'READ' GROUP BY room_id, sender", rs -> {
+            String roomId = rs.getString("room_id");
+            String sender = rs.getString("sender");
+            long lastId = rs.getLong("last_id");
+            // Phòng 1-1 dạng user1_user2: người đã xem là người còn lại (suy ra từ người gửi, username có thể chứa dấu _)
+            String reader = RoomService.directPartner(roomId, sender);
+            if (reader != null) {
+                readReceiptRepository.upsertMark(roomId, reader, lastId, LocalDateTime.now());
+                migrated[0]++;
+            }
+        });
+        if (migrated[0] > 0) {
+            log.info("Đã chuyển {} mốc đã xem từ cột status cũ sang bảng read_receipts", migrated[0]);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.chatapp.realtime;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface ReadReceiptRepository extends JpaRepository<ReadReceipt, Long> {
+    List<ReadReceipt> findByRoomId(String roomId);
+
+    List<ReadReceipt> findByRoomIdIn(Collection<String> roomIds);
+
+    // UPSERT 1 câu lệnh: mốc chỉ được tăng, không bao giờ lùi (sự kiện READ đến trễ không làm mất trạng thái)
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO read_receipts (room_id, reader, last_read_message_id, read_at) "
+            + "VALUES (:roomId, :reader, :messageId, :readAt) "
+            + "ON DUPLICATE KEY UPDATE last_read_message_id = GREATEST(last_read_message_id, VALUES(last_read_message_id)), "
+            + "read_at = VALUES(read_at)", nativeQuery = true)
+    int upsertMark(@Param("roomId") String roomId, @Param("reader") String reader,
+                   @Param("messageId") long messageId, @Param("readAt") LocalDateTime readAt);
+
+    // Sửa mốc "ở tương lai" do client cũ gửi id tùy ý (trước khi markRead chặn trên)
+    @Modifying
+    @Transactional
+    @Query("UPDATE ReadReceipt r SET r.lastReadMessageId = :watermark WHERE r.lastReadMessageId > :watermark")
+    int clampFutureMarks(@Param("watermark") long watermark);
+}
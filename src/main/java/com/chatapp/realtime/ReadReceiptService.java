@@ -0,0 +1,77 @@
+package com.chatapp.realtime;
+
+import org.springframework.stereotype.Service;
+import lombok.RequiredArgsConstructor;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Trạng thái SENT/READ được suy ra từ mốc đã xem của từng người trong phòng,
+// thay vì cập nhật cột status trên từng dòng tin nhắn.
+@Service
+@RequiredArgsConstructor
+public class ReadReceiptService {
+
+    private final ReadReceiptRepository readReceiptRepository;
+    private final SnowflakeIdGenerator idGenerator;
+
+    // Ghi nhận "reader đã xem phòng roomId tới tin lastSeenMessageId" - đúng 1 câu UPSERT
+    // Nếu client không gửi ID tin cuối cùng đã thấy thì coi như đã xem mọi tin gửi tới thời điểm này.
+    // ID do client gửi bị chặn trên bởi ID lớn nhất có thể đã được cấp: mốc chỉ tăng nên một khung id rất lớn
+    // sẽ làm mọi tin sau này trong phòng hiện "đã xem" vĩnh viễn. Người đọc phải là thành viên (ChatController kiểm tra).
+    // Trả về mốc đã ghi nhận
+    public long markRead(String roomId, String reader, Long lastSeenMessageId) {
+        long mark = clampMark(lastSeenMessageId, idGenerator.currentWatermark());
+        readReceiptRepository.upsertMark(roomId, reader, mark, LocalDateTime.now());
+        return mark;
+    }
+
+    static long clampMark(Long lastSeenMessageId, long watermark) {
+        return lastSeenMessageId != null ? Math.max(0, Math.min(lastSeenMessageId, watermark)) : watermark;
+    }
+
+    // Gán status cho danh sách tin nhắn (có thể thuộc nhiều phòng) theo mốc đã xem
+    public void applyStatus(Collection<ChatMessage> messages) {
+        apply(messages, ChatMessage::getRoomId, ChatMessage::getSender, ChatMessage::getId, ChatMessage::setStatus);
+    }
+
+    public void applyViewStatus(Collection<ChatMessageView> views) {
+        apply(views, ChatMessageView::getRoomId, ChatMessageView::getSender, ChatMessageView::getId, ChatMessageView::setStatus);
+    }
+
+    private <T> void apply(Collection<T> items, Function<T, String> roomOf, Function<T, String> senderOf,
+                           Function<T, Long> idOf, BiConsumer<T, String> setStatus) {
+        if (items.isEmpty()) return;
+        List<String> roomIds = items.stream().map(roomOf).distinct().collect(Collectors.toList());
+        List<ReadReceipt> receipts = roomIds.size() == 1
+                ? readReceiptRepository.findByRoomId(roomIds.get(0))
+                : readReceiptRepository.findByRoomIdIn(roomIds);
+
+        Map<String, List<ReadReceipt>> receiptsByRoom = new HashMap<>();
+        for (ReadReceipt receipt : receipts) {
+            receiptsByRoom.computeIfAbsent(receipt.getRoomId(), k -> new ArrayList<>()).add(receipt);
+        }
+
+        for (T item : items) {
+            List<ReadReceipt> roomReceipts = receiptsByRoom.getOrDefault(roomOf.apply(item), List.of());
+            setStatus.accept(item, isReadByOthers(idOf.apply(item), senderOf.apply(item), roomReceipts) ? "READ" : "SENT");
+        }
+    }
+
+    // Tin nhắn được coi là đã xem khi có người khác (không phải người gửi) có mốc >= id tin nhắn
+    private boolean isReadByOthers(Long messageId, String sender, List<ReadReceipt> receipts) {
+        if (messageId == null) return false;
+        for (ReadReceipt receipt : receipts) {
+            if (!receipt.getReader().equals(sender) && receipt.getLastReadMessageId() >= messageId) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,444 @@
+package com.chatapp.realtime;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import lombok.extern.slf4j.Slf4j;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Bộ đệm N tin gần nhất của từng phòng "nóng" để mở đoạn chat không phải truy vấn MySQL.
+// - Phòng được nạp khi có người mở trang mới nhất (N tin cuối + mốc xóa chat + tin đã gỡ + mốc đã xem của phòng),
+//   sau đó được cập nhật theo sự kiện: gửi tin, thu hồi, đã xem, gỡ phía bạn, xóa đoạn chat.
+// - Trang lịch sử được phục vụ từ bộ đệm nếu đủ tin (đã lọc theo người xem); thiếu thì quay về DB như cũ.
+// - Các phòng được xếp theo LRU, vượt ngân sách bộ nhớ max-bytes thì bỏ phòng lâu không dùng nhất.
+// Số lượt cảm xúc không lưu ở đây: ReactionService đã có cache riêng và được cập nhật khi thả cảm xúc.
+@Slf4j
+@Service
+public class RecentMessageCache implements MeterBinder {
+
+    private static final String REVOKED_CONTENT = "Tin nhắn đã bị thu hồi";
+
+    private final MessageRepository messageRepository;
+    private final MessageHiddenRepository messageHiddenRepository;
+    private final ChatClearRecordRepository chatClearRecordRepository;
+    private final ReadReceiptRepository readReceiptRepository;
+    private final MessageWriteBehindQueue messageWriteBehind;
+    private final boolean enabled;
+    private final int perRoom;
+    private final long maxBytes;
+
+    // Thứ tự truy cập (LRU); chỉ đọc/sửa khi giữ khóa rooms
+    private final LinkedHashMap<String, RoomBuffer> rooms = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public RecentMessageCache(MessageRepository messageRepository,
+                              MessageHiddenRepository messageHiddenRepository,
+                              ChatClearRecordRepository chatClearRecordRepository,
+                              ReadReceiptRepository readReceiptRepository,
+                              MessageWriteBehindQueue messageWriteBehind,
+                              @Value("${chat.history.cache.enabled:true}") boolean enabled,
+                              @Value("${chat.history.cache.per-room:100}") int perRoom,
+                              @Value("${chat.history.cache.max-bytes:67108864}") long maxBytes,
+                              @Value("${chat.broker.mode:simple}") String brokerMode) {
+        this.messageRepository = messageRepository;
+        this.messageHiddenRepository = messageHiddenRepository;
+        this.chatClearRecordRepository = chatClearRecordRepository;
+        this.readReceiptRepository = readReceiptRepository;
+        this.messageWriteBehind = messageWriteBehind;
+        // Nhiều node (relay/cluster): tin gửi ở node khác không cập nhật bộ đệm của node này -> tắt
+        this.enabled = enabled && "simple".equals(brokerMode);
+        this.perRoom = perRoom;
+        this.maxBytes = maxBytes;
+    }
+
+    // Trang cũ hơn beforeId, mới nhất trước (cùng thứ tự với MessageRepository.findPageBefore), status đã được gán.
+    // Trang mới nhất (beforeId = null) mà phòng chưa có trong bộ đệm thì nạp phòng vào.
+    public Optional<List<ChatMessageView>> pageBefore(String roomId, String username, Long beforeId, int limit) {
+        if (!enabled || limit > perRoom) return Optional.empty();
+        RoomBuffer buffer = beforeId == null ? getOrLoad(roomId) : get(roomId);
+        long before = beforeId != null ? beforeId : Long.MAX_VALUE;
+        List<ChatMessageView> result = null;
+        if (buffer != null) {
+            synchronized (buffer) {
+                if (buffer.ready()) result = buffer.pageBefore(username, before, limit);
+            }
+        }
+        return record(result);
+    }
+
+    // Trang mới hơn afterId, cũ nhất trước (cùng thứ tự với MessageRepository.findPageAfter)
+    public Optional<List<ChatMessageView>> pageAfter(String roomId, String username, long afterId, int limit) {
+        if (!enabled) return Optional.empty();
+        RoomBuffer buffer = get(roomId);
+        List<ChatMessageView> result = null;
+        if (buffer != null) {
+            synchronized (buffer) {
+                if (buffer.ready()) result = buffer.pageAfter(username, afterId, limit);
+            }
+        }
+        return record(result);
+    }
+
+    // Các tin có seq > afterSeq, cũ nhất trước (cùng thứ tự với MessageRepository.findVisibleAfterSeq) - phát lại khi kết nối lại.
+    // Không nạp phòng: phòng không có sẵn trong bộ đệm thì đọc DB theo index (room_id, seq).
+    public Optional<List<ChatMessageView>> replay(String roomId, String username, long afterSeq, int limit) {
+        if (!enabled) return Optional.empty();
+        RoomBuffer buffer = get(roomId);
+        List<ChatMessageView> result = null;
+        if (buffer != null) {
+            synchronized (buffer) {
+                if (buffer.ready()) result = buffer.replay(username, afterSeq, limit);
+            }
+        }
+        return record(result);
+    }
+
+    private Optional<List<ChatMessageView>> record(List<ChatMessageView> result) {
+        if (result == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(result);
+    }
+
+    public void onMessageSent(ChatMessage msg) {
+        LocalDateTime timestamp = toMicros(msg.getTimestamp());
+        patch(msg.getRoomId(), b -> b.append(new Entry(msg.getId(), seqOf(msg.getSeq()), msg.getSender(), msg.getContent(), msg.getType(), timestamp)));
+    }
+
+    public void onRevoked(ChatMessage msg) {
+        patch(msg.getRoomId(), b -> b.revoke(msg.getId()));
+    }
+
+    public void onRead(String roomId, String reader, long mark) {
+        patch(roomId, b -> b.readMarks.merge(reader, mark, Math::max));
+    }
+
+    public void onHidden(String roomId, Long messageId, String username) {
+        patch(roomId, b -> b.hide(messageId, username));
+    }
+
+    public void onCleared(String roomId, String username, LocalDateTime clearedAt) {
+        LocalDateTime mark = toMicros(clearedAt);
+        patch(roomId, b -> b.clearedAt.merge(username, mark, (a, c) -> a.isAfter(c) ? a : c));
+    }
+
+    // Phòng đang được nạp: ghi lại thay đổi để áp dụng sau khi nạp xong (không mất sự kiện xảy ra giữa chừng)
+    private void patch(String roomId, Consumer<RoomBuffer> change) {
+        if (!enabled || roomId == null) return;
+        RoomBuffer buffer;
+        synchronized (rooms) {
+            buffer = rooms.get(roomId);
+        }
+        if (buffer == null) return;
+        synchronized (buffer) {
+            if (buffer.evicted) return;
+            if (!buffer.ready()) {
+                buffer.pending.add(change);
+                return;
+            }
+            change.accept(buffer);
+            updateBytes(buffer);
+        }
+        enforceBudget();
+    }
+
+    private RoomBuffer get(String roomId) {
+        synchronized (rooms) {
+            return rooms.get(roomId);
+        }
+    }
+
+    private RoomBuffer getOrLoad(String roomId) {
+        RoomBuffer buffer;
+        synchronized (rooms) {
+            buffer = rooms.get(roomId);
+            if (buffer != null) return buffer;
+            buffer = new RoomBuffer(roomId, perRoom);
+            rooms.put(roomId, buffer);
+        }
+        load(buffer);
+        enforceBudget();
+        return buffer;
+    }
+
+    private void load(RoomBuffer buffer) {
+        try {
+            // Tin còn trong hàng đợi write-behind phải xuống DB trước khi đọc
+            if (messageWriteBehind.isEnabled()) messageWriteBehind.flush();
+            List<ChatMessageView> recent = messageRepository.findRecentInRoom(buffer.roomId, Limit.of(perRoom));
+            List<Long> ids = recent.stream().map(ChatMessageView::getId).toList();
+            List<MessageHidden> hidden = ids.isEmpty() ? List.of() : messageHiddenRepository.findByMessageIdIn(ids);
+            List<ChatClearRecord> clears = chatClearRecordRepository.findByRoomId(buffer.roomId);
+            List<ReadReceipt> receipts = readReceiptRepository.findByRoomId(buffer.roomId);
+            loads.increment();
+
+            synchronized (buffer) {
+                if (buffer.evicted) return;
+                for (int i = recent.size() - 1; i >= 0; i--) {
+                    ChatMessageView v = recent.get(i);
+                    buffer.append(new Entry(v.getId(), seqOf(v.getSeq()), v.getSender(), contentOf(v), v.getType(), v.getTimestamp()));
+                }
+                // Ít hơn N tin: bộ đệm chứa toàn bộ phòng
+                buffer.coverageFrom = recent.size() < perRoom ? 0 : recent.get(recent.size() - 1).getId();
+                hidden.forEach(h -> buffer.hide(h.getMessageId(), h.getUsername()));
+                clears.forEach(c -> buffer.clearedAt.merge(c.getUsername(), c.getClearedAt(), (a, b) -> a.isAfter(b) ? a : b));
+                receipts.forEach(r -> buffer.readMarks.merge(r.getReader(), r.getLastReadMessageId(), Math::max));
+                buffer.pending.forEach(change -> change.accept(buffer));
+                buffer.pending = null;
+                updateBytes(buffer);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Không nạp được bộ đệm tin nhắn của phòng {}", buffer.roomId, e);
+            evict(buffer);
+        }
+    }
+
+    // Cột datetime(6) làm tròn phần nano giây -> bộ đệm phải giữ đúng giá trị như sau khi ghi DB
+    private static LocalDateTime toMicros(LocalDateTime time) {
+        return time != null ? time.plusNanos(500).truncatedTo(ChronoUnit.MICROS) : null;
+    }
+
+    private static long seqOf(Long seq) {
+        return seq != null ? seq : 0;
+    }
+
+    // Ảnh base64 cũ không được giữ trong bộ nhớ: trả về đường dẫn tải riêng như API phân trang
+    private static String contentOf(ChatMessageView v) {
+        if ("IMAGE".equals(v.getType()) && v.getContent() == null) {
+            return "/api/messages/single/" + v.getId() + "/image";
+        }
+        return v.getContent();
+    }
+
+    private void updateBytes(RoomBuffer buffer) {
+        long now = buffer.estimateBytes();
+        totalBytes.addAndGet(now - buffer.bytes);
+        buffer.bytes = now;
+    }
+
+    private void enforceBudget() {
+        if (totalBytes.get() <= maxBytes) return;
+        List<RoomBuffer> victims = new ArrayList<>();
+        synchronized (rooms) {
+            long projected = totalBytes.get();
+            Iterator<RoomBuffer> it = rooms.values().iterator();
+            while (projected > maxBytes && it.hasNext()) {
+                RoomBuffer eldest = it.next();
+                projected -= eldest.bytes;
+                victims.add(eldest);
+                it.remove();
+            }
+        }
+        victims.forEach(this::evict);
+    }
+
+    private void evict(RoomBuffer buffer) {
+        synchronized (rooms) {
+            rooms.remove(buffer.roomId, buffer);
+        }
+        synchronized (buffer) {
+            if (buffer.evicted) return;
+            buffer.evicted = true;
+            totalBytes.addAndGet(-buffer.bytes);
+            buffer.bytes = 0;
+        }
+        evictions.increment();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("chat.history.cache.requests", hits, LongAdder::sum).tag("result", "hit").register(registry);
+        FunctionCounter.builder("chat.history.cache.requests", misses, LongAdder::sum).tag("result", "miss").register(registry);
+        FunctionCounter.builder("chat.history.cache.loads", loads, LongAdder::sum).register(registry);
+        FunctionCounter.builder("chat.history.cache.evictions", evictions, LongAdder::sum).register(registry);
+        Gauge.builder("chat.history.cache.rooms", rooms, r -> {
+            synchronized (r) {
+                return r.size();
+            }
+        }).register(registry);
+        Gauge.builder("chat.history.cache.size", totalBytes, AtomicLong::get).baseUnit("bytes").register(registry);
+    }
+
+    private static final class Entry {
+        final long id;
+        final long seq;
+        final String sender;
+        String content;
+        String type;
+        final LocalDateTime timestamp;
+        Set<String> hiddenFor; // Thường rỗng -> chỉ tạo khi có người gỡ
+
+        Entry(long id, long seq, String sender, String content, String type, LocalDateTime timestamp) {
+            this.id = id;
+            this.seq = seq;
+            this.sender = sender;
+            this.content = content;
+            this.type = type;
+            this.timestamp = timestamp;
+        }
+
+        long estimateBytes() {
+            return 96 + 2L * (length(sender) + length(content) + length(type)) + (hiddenFor == null ? 0 : 64L * hiddenFor.size());
+        }
+    }
+
+    // Mọi trường chỉ được đọc/sửa khi giữ khóa của chính bộ đệm
+    private static final class RoomBuffer {
+        final String roomId;
+        final int capacity;
+        final Deque<Entry> entries = new ArrayDeque<>(); // Tăng dần theo id
+        // Mọi tin có id >= coverageFrom của phòng đều có trong bộ đệm; 0 = có toàn bộ phòng
+        long coverageFrom = Long.MAX_VALUE;
+        final Map<String, LocalDateTime> clearedAt = new HashMap<>();
+        final Map<String, Long> readMarks = new HashMap<>();
+        List<Consumer<RoomBuffer>> pending = new ArrayList<>(); // null = đã nạp xong
+        boolean evicted;
+        long bytes;
+
+        RoomBuffer(String roomId, int capacity) {
+            this.roomId = roomId;
+            this.capacity = capacity;
+        }
+
+        boolean ready() {
+            return pending == null && !evicted;
+        }
+
+        void append(Entry entry) {
+            Entry last = entries.peekLast();
+            if (last == null || entry.id > last.id) {
+                entries.addLast(entry);
+            } else if (find(entry.id) == null) {
+                // Hiếm: tin đến không theo thứ tự id (nạp xong mới áp dụng sự kiện gửi)
+                List<Entry> sorted = new ArrayList<>(entries);
+                sorted.add(entry);
+                sorted.sort((a, b) -> Long.compare(a.id, b.id));
+                entries.clear();
+                entries.addAll(sorted);
+            }
+            while (entries.size() > capacity) {
+                entries.pollFirst();
+                coverageFrom = entries.peekFirst().id;
+            }
+        }
+
+        void revoke(Long id) {
+            Entry entry = find(id);
+            if (entry != null) {
+                entry.type = "REVOKED";
+                entry.content = REVOKED_CONTENT;
+            }
+        }
+
+        void hide(Long id, String username) {
+            Entry entry = find(id);
+            if (entry == null) return;
+            if (entry.hiddenFor == null) entry.hiddenFor = new HashSet<>(2);
+            entry.hiddenFor.add(username);
+        }
+
+        Entry find(Long id) {
+            if (id == null) return null;
+            Iterator<Entry> it = entries.descendingIterator(); // Tin được thao tác thường là tin mới
+            while (it.hasNext()) {
+                Entry e = it.next();
+                if (e.id == id) return e;
+                if (e.id < id) return null;
+            }
+            return null;
+        }
+
+        // Cùng điều kiện với MessageRepository.VISIBLE_TO_USER
+        boolean visibleTo(Entry e, String username) {
+            LocalDateTime cleared = clearedAt.get(username);
+            if (cleared != null && !cleared.isBefore(e.timestamp)) return false;
+            return e.hiddenFor == null || !e.hiddenFor.contains(username);
+        }
+
+        List<ChatMessageView> pageBefore(String username, long beforeId, int limit) {
+            List<ChatMessageView> result = new ArrayList<>(limit);
+            Iterator<Entry> it = entries.descendingIterator();
+            while (it.hasNext() && result.size() < limit) {
+                Entry e = it.next();
+                if (e.id < beforeId && visibleTo(e, username)) result.add(view(e));
+            }
+            // Chưa đủ trang mà bộ đệm không chứa phần cũ hơn của phòng -> phải hỏi DB
+            if (result.size() < limit && coverageFrom != 0) return null;
+            return result;
+        }
+
+        List<ChatMessageView> pageAfter(String username, long afterId, int limit) {
+            // Có thể còn tin trong khoảng (afterId, coverageFrom) mà bộ đệm không giữ
+            if (coverageFrom != 0 && afterId + 1 < coverageFrom) return null;
+            List<ChatMessageView> result = new ArrayList<>(limit);
+            for (Entry e : entries) {
+                if (result.size() >= limit) break;
+                if (e.id > afterId && visibleTo(e, username)) result.add(view(e));
+            }
+            return result;
+        }
+
+        // Trong phòng, seq tăng cùng chiều với id (cùng được cấp trên làn của phòng) -> duyệt theo thứ tự id
+        List<ChatMessageView> replay(String username, long afterSeq, int limit) {
+            Entry first = entries.peekFirst();
+            // Khoảng cần phát lại bắt đầu trước tin cũ nhất đang giữ (hoặc tin chưa có seq) -> phải hỏi DB
+            if (coverageFrom != 0 && (first == null || first.seq == 0 || first.seq > afterSeq + 1)) return null;
+            List<ChatMessageView> result = new ArrayList<>(Math.min(limit, entries.size()));
+            for (Entry e : entries) {
+                if (result.size() >= limit) break;
+                if (e.seq > afterSeq && visibleTo(e, username)) result.add(view(e));
+            }
+            return result;
+        }
+
+        private ChatMessageView view(Entry e) {
+            return new ChatMessageView(e.id, roomId, e.sender, e.content, e.type, e.timestamp, isReadByOthers(e) ? "READ" : "SENT",
+                    e.seq != 0 ? e.seq : null, null);
+        }
+
+        // Cùng quy tắc với ReadReceiptService: có người khác (không phải người gửi) đã xem tới id này
+        private boolean isReadByOthers(Entry e) {
+            for (Map.Entry<String, Long> mark : readMarks.entrySet()) {
+                if (!mark.getKey().equals(e.sender) && mark.getValue() >= e.id) return true;
+            }
+            return false;
+        }
+
+        long estimateBytes() {
+            long total = 256 + 2L * roomId.length() + 96L * (clearedAt.size() + readMarks.size());
+            for (Entry e : entries) total += e.estimateBytes();
+            return total;
+        }
+    }
+
+    private static int length(String s) {
+        return s == null ? 0 : s.length();
+    }
+}
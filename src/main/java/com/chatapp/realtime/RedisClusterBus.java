@@ -0,0 +1,79 @@
+package com.chatapp.realtime;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+// Kênh cụm qua Redis pub/sub: mỗi tin broadcast được PUBLISH lên 1 channel, mọi node SUBSCRIBE channel đó.
+// Chỉ ở chế độ này Redis mới là phụ thuộc thật -> health indicator Redis tự động của Spring bị tắt (application.properties),
+// bean này báo tình trạng Redis trong /actuator/health thay cho nó
+@Slf4j
+@Component
+@ConditionalOnExpression("'${chat.broker.mode:simple}' == 'cluster' and '${chat.broker.cluster.transport:redis}' == 'redis'")
+public class RedisClusterBus implements ClusterBus, DisposableBean, HealthIndicator {
+
+    private final RedisConnectionFactory connectionFactory;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final ChannelTopic topic;
+    private final RedisMessageListenerContainer container;
+
+    public RedisClusterBus(RedisConnectionFactory connectionFactory, StringRedisTemplate redisTemplate, ObjectMapper objectMapper,
+                           @Value("${chat.broker.cluster.channel:chat-broadcast}") String channel) {
+        this.connectionFactory = connectionFactory;
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.topic = new ChannelTopic(channel);
+        this.container = new RedisMessageListenerContainer();
+        this.container.setConnectionFactory(connectionFactory);
+        this.container.afterPropertiesSet();
+        this.container.start();
+    }
+
+    @Override
+    public void publish(ClusterEnvelope envelope) {
+        try {
+            redisTemplate.convertAndSend(topic.getTopic(), objectMapper.writeValueAsString(envelope));
+        } catch (JsonProcessingException e) {
+            log.error("Không thể đóng gói tin gửi tới {}", envelope.getDestination(), e);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<ClusterEnvelope> listener) {
+        container.addMessageListener((message, pattern) -> {
+            try {
+                listener.accept(objectMapper.readValue(new String(message.getBody(), StandardCharsets.UTF_8), ClusterEnvelope.class));
+            } catch (Exception e) {
+                log.warn("Bỏ qua tin cụm không hợp lệ: {}", e.getMessage());
+            }
+        }, topic);
+    }
+
+    @Override
+    public Health health() {
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            return Health.up().withDetail("ping", connection.ping()).withDetail("channel", topic.getTopic()).build();
+        } catch (RuntimeException e) {
+            return Health.down(e).withDetail("channel", topic.getTopic()).build();
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        container.destroy();
+    }
+}
@@ -0,0 +1,31 @@
+package com.chatapp.realtime;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+// Trả lời khung /app/chat.resume (chỉ gửi tới đúng phiên vừa kết nối lại qua /user/queue/replay):
+// với mỗi phòng là các tin có seq > mốc client đã thấy, hoặc reloadRequired khi khoảng bị lỡ quá lớn
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplayEvent {
+    private String type;
+    private List<Room> rooms;
+
+    public ReplayEvent(List<Room> rooms) {
+        this("REPLAY", rooms);
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Room {
+        private String roomId;
+        private Long afterSeq; // Mốc client gửi lên
+        private Long latestSeq; // Số thứ tự lớn nhất của phòng tại thời điểm phát lại
+        private boolean reloadRequired; // true: bỏ qua messages, tải lại trang lịch sử mới nhất
+        private List<ChatMessageView> messages; // Cũ nhất trước, đã lọc theo người xem
+    }
+}
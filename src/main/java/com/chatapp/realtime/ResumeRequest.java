@@ -0,0 +1,12 @@
+package com.chatapp.realtime;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.Map;
+
+// Khung /app/chat.resume client gửi ngay sau khi kết nối lại: phòng -> seq lớn nhất đã nhận được
+@Data
+@NoArgsConstructor
+public class ResumeRequest {
+    private Map<String, Long> rooms;
+}
@@ -0,0 +1,31 @@
+package com.chatapp.realtime;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+// Phòng chat có khóa số nguyên. roomKey là tên phòng dùng trên đường truyền (/topic/<roomKey>) và trong các bảng cũ:
+// phòng 1-1 giữ dạng "user1_user2" như client vẫn tạo, nhóm có dạng "group-<id>" (không chứa dấu _)
+@Entity
+@Table(name = "rooms", uniqueConstraints = @UniqueConstraint(name = "uk_rooms_room_key", columnNames = "room_key"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Room {
+    public static final String DIRECT = "DIRECT";
+    public static final String GROUP = "GROUP";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(length = 191)
+    private String roomKey;
+
+    private String type; // DIRECT, GROUP
+    private String name; // Tên nhóm (phòng 1-1 để trống)
+    private String createdBy;
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,125 @@
+package com.chatapp.realtime;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import lombok.RequiredArgsConstructor;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/rooms")
+@RequiredArgsConstructor
+public class RoomController {
+
+    private final RoomService roomService;
+    private final NotificationService notificationService;
+
+    // API Danh sách phòng của user (1 lần tra index (user_id, room_id)), kèm thành viên lấy từ cache
+    @GetMapping
+    public ResponseEntity<List<Map<String, Object>>> getRooms(@RequestParam String username) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Room room : roomService.roomsOf(username)) {
+            roomService.find(room.getRoomKey()).ifPresent(m -> result.add(toJson(m)));
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    // API Thông tin 1 phòng (chỉ thành viên xem được)
+    @GetMapping("/{roomKey}")
+    public ResponseEntity<?> getRoom(@PathVariable String roomKey, @RequestParam String username) {
+        Optional<RoomService.Membership> membership = roomService.find(roomKey).filter(m -> m.isMember(username));
+        if (membership.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(toJson(membership.get()));
+    }
+
+    // API Tạo nhóm: body {creator, name, members: [...]}
+    @PostMapping
+    public ResponseEntity<?> createGroup(@RequestBody Map<String, Object> request,
+                                         @RequestAttribute(name = AuthTokenInterceptor.AUTH_USER, required = false) String authUser) {
+        String creator = (String) request.get("creator");
+        if (impersonates(authUser, creator)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Token không thuộc người dùng này");
+        }
+        String name = (String) request.get("name");
+        List<String> members = new ArrayList<>();
+        if (request.get("members") instanceof List<?> list) {
+            for (Object member : list) {
+                if (member instanceof String username && !username.isBlank()) members.add(username);
+            }
+        }
+        if (creator == null || name == null || name.isBlank()) {
+            return ResponseEntity.badRequest().body("Thiếu người tạo hoặc tên nhóm");
+        }
+        try {
+            RoomService.Membership group = roomService.createGroup(creator, name.trim(), members);
+            notifyAdded(group, creator, group.members());
+            return ResponseEntity.ok(toJson(group));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // API Thêm thành viên vào nhóm: body {actor, username}
+    @PostMapping("/{roomKey}/members")
+    public ResponseEntity<?> addMember(@PathVariable String roomKey, @RequestBody Map<String, String> request,
+                                       @RequestAttribute(name = AuthTokenInterceptor.AUTH_USER, required = false) String authUser) {
+        String actor = request.get("actor");
+        if (impersonates(authUser, actor)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Token không thuộc người dùng này");
+        }
+        String username = request.get("username");
+        try {
+            Optional<RoomService.Membership> group = roomService.addMember(roomKey, actor, username);
+            if (group.isEmpty()) {
+                return ResponseEntity.badRequest().body("Không thể thêm thành viên");
+            }
+            notifyAdded(group.get(), actor, List.of(username));
+            return ResponseEntity.ok(toJson(group.get()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // API Rời nhóm / mời ra khỏi nhóm
+    @DeleteMapping("/{roomKey}/members/{username}")
+    public ResponseEntity<String> removeMember(@PathVariable String roomKey, @PathVariable String username, @RequestParam String actor,
+                                               @RequestAttribute(name = AuthTokenInterceptor.AUTH_USER, required = false) String authUser) {
+        if (impersonates(authUser, actor)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Token không thuộc người dùng này");
+        }
+        if (!roomService.removeMember(roomKey, actor, username)) {
+            return ResponseEntity.badRequest().body("Không thể xóa thành viên");
+        }
+        return ResponseEntity.ok("Đã xóa thành viên khỏi nhóm");
+    }
+
+    // Báo cho người vừa được thêm để client đăng ký topic của nhóm
+    private void notifyAdded(RoomService.Membership group, String actor, List<String> added) {
+        NotificationEvent.Item item = new NotificationEvent.Item("ROOM_ADDED", null, group.roomKey(), actor, group.name(), LocalDateTime.now());
+        for (String username : added) {
+            if (!username.equals(actor)) notificationService.notify(username, item);
+        }
+    }
+
+    // Người thực hiện ghi trong body / ?actor= phải là người giữ token (nếu request có token)
+    private static boolean impersonates(String authUser, String actor) {
+        return authUser != null && !authUser.equals(actor);
+    }
+
+    private static Map<String, Object> toJson(RoomService.Membership membership) {
+        Map<String, Object> item = new HashMap<>();
+        item.put("id", membership.id());
+        item.put("roomId", membership.roomKey());
+        item.put("type", membership.type());
+        item.put("name", membership.name());
+        item.put("members", membership.members());
+        return item;
+    }
+}
@@ -0,0 +1,276 @@
+package com.chatapp.realtime;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.stereotype.Component;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import lombok.extern.slf4j.Slf4j;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Executor cho clientInboundChannel: băm roomId của khung STOMP lên N "làn", mỗi làn 1 luồng + hàng đợi có giới hạn.
+// Khung không ghi roomId (CONNECT, SUBSCRIBE, DISCONNECT...) đi theo làn của phiên. Thứ tự được bảo đảm:
+// - Cùng phòng -> cùng làn -> các khung của phòng được xử lý theo thứ tự vào làn.
+// - Cùng phiên -> xử lý lần lượt đúng thứ tự gửi lên: khung cần sang làn khác phải chờ các khung trước đó của phiên
+//   (đang chạy / đang xếp hàng ở làn cũ) xong rồi mới được đưa vào làn mới (vd. SUBSCRIBE rồi gửi tin ngay).
+//   Khung bị bỏ (đang soạn tin khi làn dồn, làn đầy) thì mất, các khung còn lại vẫn giữ thứ tự.
+// - Khác phòng và khác phiên: không có thứ tự nào giữa chúng.
+// - Một phòng chậm (MySQL chậm) chỉ chặn làn của nó, các phòng khác vẫn chạy.
+// - Làn đang dồn ứ: bỏ bớt sự kiện tạm thời (đang soạn tin) thay vì để chúng chặn tin thật.
+// - Làn đầy hẳn: luồng nhận của phiên WebSocket phải chờ (backpressure), quá thời gian thì từ chối khung đó.
+// Chế độ luồng ảo (spring.threads.virtual.enabled): mỗi làn là 1 luồng ảo, chờ JDBC không giữ luồng hệ điều hành
+// nên có thể tăng số làn (ít phòng phải chung làn hơn); số truy vấn đồng thời vẫn bị giới hạn bởi pool Hikari.
+// Bean này cũng chính là clientInboundChannelExecutor của Spring -> @Primary để tiêm theo kiểu không bị trùng
+@Slf4j
+@Primary
+@Component
+public class RoomLaneExecutor implements TaskExecutor, DisposableBean, MeterBinder {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final JsonFactory CBOR_FACTORY = new CBORFactory();
+
+    private final Lane[] lanes;
+    private final Set<String> sheddableDestinations;
+    private final int shedThreshold;
+    private final long offerTimeoutMs;
+    private final int queueCapacity;
+    // Phiên đang có khung chưa xử lý xong: làn hiện tại + các khung phải chờ để sang làn khác
+    private final Map<String, SessionOrder> sessionOrders = new ConcurrentHashMap<>();
+    // Spring gọi bindTo/destroy cho cả bean @Component lẫn executor đã đăng ký vào kênh inbound (cùng 1 đối tượng)
+    // -> chỉ chạy lần đầu, tránh đăng ký trùng gauge và tắt làn 2 lần
+    private final AtomicBoolean bound = new AtomicBoolean();
+    private final AtomicBoolean destroyed = new AtomicBoolean();
+
+    private enum Admit { DIRECT, DEFERRED, FULL }
+
+    public RoomLaneExecutor(@Value("${chat.ws.inbound.lanes:8}") int laneCount,
+                            @Value("${chat.ws.inbound.queue-capacity:1000}") int queueCapacity,
+                            @Value("${chat.ws.inbound.shed-threshold:100}") int shedThreshold,
+                            @Value("${chat.ws.inbound.offer-timeout-ms:5000}") long offerTimeoutMs,
+                            @Value("${chat.ws.inbound.shed-destinations:/app/chat.typing}") Set<String> sheddableDestinations,
+                            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(i, queueCapacity, virtualThreads);
+        }
+        this.shedThreshold = shedThreshold;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.queueCapacity = queueCapacity;
+        this.sheddableDestinations = sheddableDestinations;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        Message<?> message = task instanceof MessageHandlingRunnable r ? r.getMessage() : null;
+        SimpMessageHeaderAccessor accessor = message != null ? SimpMessageHeaderAccessor.wrap(message) : null;
+        Lane lane = lanes[Math.floorMod(laneKey(message, accessor).hashCode(), lanes.length)];
+
+        // Sự kiện tạm thời: làn đang dồn thì bỏ luôn, người dùng không mất gì quan trọng
+        String destination = accessor != null ? accessor.getDestination() : null;
+        if (destination != null && sheddableDestinations.contains(destination) && lane.executor.getQueue().size() >= shedThreshold) {
+            lane.shed.increment();
+            return;
+        }
+
+        String sessionId = accessor != null ? accessor.getSessionId() : null;
+        long enqueuedAt = System.nanoTime();
+        Frame frame = new Frame(lane, () -> {
+            try {
+                task.run();
+            } finally {
+                lane.record(System.nanoTime() - enqueuedAt);
+                if (sessionId != null) onFrameDone(sessionId);
+            }
+        });
+        Admit admit = sessionId != null ? admit(sessionId, frame) : Admit.DIRECT;
+        if (admit == Admit.DEFERRED) {
+            lane.deferred.increment();
+            return;
+        }
+        if (admit == Admit.FULL) {
+            lane.rejected.increment();
+            throw new RejectedExecutionException("Phiên " + sessionId + " có quá nhiều khung chờ đổi làn, bỏ khung gửi tới " + destination);
+        }
+        boolean queued = false;
+        try {
+            queued = lane.executor.getQueue().offer(frame.task)
+                    || lane.executor.getQueue().offer(frame.task, offerTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Không vào được làn: coi như đã xong để các khung sau của phiên không chờ mãi
+            if (!queued && sessionId != null) onFrameDone(sessionId);
+        }
+        if (!queued) {
+            lane.rejected.increment();
+            throw new RejectedExecutionException("Làn " + lane.index + " quá tải, bỏ khung gửi tới " + destination);
+        }
+    }
+
+    // Khung được vào thẳng làn nếu phiên không còn khung nào đang chờ / đang chạy ở làn khác
+    private Admit admit(String sessionId, Frame frame) {
+        Admit[] result = new Admit[1];
+        sessionOrders.compute(sessionId, (id, order) -> {
+            if (order == null) order = new SessionOrder();
+            if (order.deferred.isEmpty() && (order.inFlight == 0 || order.lane == frame.lane)) {
+                order.lane = frame.lane;
+                order.inFlight++;
+                result[0] = Admit.DIRECT;
+            } else if (order.deferred.size() >= queueCapacity) {
+                result[0] = Admit.FULL;
+            } else {
+                order.deferred.add(frame);
+                result[0] = Admit.DEFERRED;
+            }
+            return order;
+        });
+        return result[0];
+    }
+
+    // Một khung của phiên đã xong: hết khung ở làn hiện tại thì chuyển các khung đang chờ sang làn của chúng
+    // (không chờ chỗ trống: luồng làn không được chặn vì làn khác; làn đích đầy thì khung bị bỏ)
+    private void onFrameDone(String sessionId) {
+        sessionOrders.computeIfPresent(sessionId, (id, order) -> {
+            if (--order.inFlight > 0) return order;
+            while (!order.deferred.isEmpty()) {
+                Frame next = order.deferred.peek();
+                if (order.inFlight > 0 && next.lane != order.lane) break;
+                order.deferred.poll();
+                if (next.lane.executor.getQueue().offer(next.task)) {
+                    order.lane = next.lane;
+                    order.inFlight++;
+                } else {
+                    next.lane.rejected.increment();
+                    log.warn("Làn {} đầy, bỏ khung đang chờ đổi làn của phiên {}", next.lane.index, id);
+                }
+            }
+            return order.inFlight == 0 ? null : order;
+        });
+    }
+
+    // Khóa làn: roomId trong nội dung tin gửi lên /app/**; các khung khác (CONNECT, SUBSCRIBE...) theo phiên
+    private static String laneKey(Message<?> message, SimpMessageHeaderAccessor accessor) {
+        if (message == null) return "";
+        if (message.getPayload() instanceof byte[] payload && payload.length > 0) {
+            String roomId = readRoomId(CborWireFormat.isCbor(accessor.getContentType()) ? CBOR_FACTORY : JSON_FACTORY, payload);
+            if (roomId != null) return roomId;
+        }
+        String sessionId = accessor.getSessionId();
+        return sessionId != null ? sessionId : "";
+    }
+
+    // Đọc trường roomId ở cấp ngoài cùng của JSON/CBOR bằng streaming parser (không dựng cả object)
+    // Chạy trên mọi khung gửi lên -> có benchmark riêng (benchmarks/RoomIdBenchmark)
+    static String readRoomId(JsonFactory factory, byte[] payload) {
+        return readStringField(factory, payload, "roomId");
+    }
+
+    // Trường chuỗi bất kỳ ở cấp ngoài cùng (StompFlowControl đọc "type" của khung gửi xuống)
+    static String readStringField(JsonFactory factory, byte[] payload, String name) {
+        try (JsonParser parser = factory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) return null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (name.equals(field)) {
+                    return value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                }
+                parser.skipChildren();
+            }
+        } catch (IOException e) {
+            // Không đọc được -> chia làn theo phiên
+        }
+        return null;
+    }
+
+    // Cùng số liệu cho Micrometer: độ sâu hàng đợi, số khung theo kết quả, độ trễ (chờ + xử lý) của từng làn
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (!bound.compareAndSet(false, true)) return;
+        for (Lane lane : lanes) {
+            Tags tags = Tags.of("lane", String.valueOf(lane.index));
+            Gauge.builder("chat.ws.inbound.queue.depth", lane.executor, e -> e.getQueue().size()).tags(tags).register(registry);
+            FunctionCounter.builder("chat.ws.inbound.frames", lane.processed, LongAdder::sum).tags(tags).tag("outcome", "processed").register(registry);
+            FunctionCounter.builder("chat.ws.inbound.frames", lane.shed, LongAdder::sum).tags(tags).tag("outcome", "shed").register(registry);
+            FunctionCounter.builder("chat.ws.inbound.frames", lane.rejected, LongAdder::sum).tags(tags).tag("outcome", "rejected").register(registry);
+            // Khung phải chờ các khung trước của cùng phiên ở làn khác (vẫn được xử lý, chỉ chậm hơn)
+            FunctionCounter.builder("chat.ws.inbound.frames", lane.deferred, LongAdder::sum).tags(tags).tag("outcome", "deferred").register(registry);
+            FunctionTimer.builder("chat.ws.inbound.latency", lane, l -> l.processed.sum(), l -> l.totalLatencyNanos.sum(), TimeUnit.NANOSECONDS)
+                    .tags(tags).register(registry);
+        }
+    }
+
+    public int laneCount() {
+        return lanes.length;
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        if (!destroyed.compareAndSet(false, true)) return;
+        for (Lane lane : lanes) {
+            lane.executor.shutdown();
+        }
+        for (Lane lane : lanes) {
+            if (!lane.executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                log.warn("Làn {} còn {} khung chưa xử lý khi tắt ứng dụng", lane.index, lane.executor.getQueue().size());
+            }
+        }
+    }
+
+    private static final class Lane {
+        final int index;
+        final ThreadPoolExecutor executor;
+        final LongAdder processed = new LongAdder();
+        final LongAdder shed = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder deferred = new LongAdder();
+        final LongAdder totalLatencyNanos = new LongAdder();
+
+        Lane(int index, int queueCapacity, boolean virtualThreads) {
+            this.index = index;
+            Thread.Builder threads = virtualThreads
+                    ? Thread.ofVirtual().name("ws-inbound-lane-" + index)
+                    : Thread.ofPlatform().name("ws-inbound-lane-" + index).daemon(true);
+            this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queueCapacity), threads.factory());
+            this.executor.prestartAllCoreThreads();
+        }
+
+        void record(long latencyNanos) {
+            processed.increment();
+            totalLatencyNanos.add(latencyNanos);
+        }
+    }
+
+    private record Frame(Lane lane, Runnable task) {
+    }
+
+    // Chỉ được sửa bên trong compute của sessionOrders
+    private static final class SessionOrder {
+        Lane lane;
+        int inFlight;
+        final ArrayDeque<Frame> deferred = new ArrayDeque<>();
+    }
+}
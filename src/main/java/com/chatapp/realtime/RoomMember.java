@@ -0,0 +1,27 @@
+package com.chatapp.realtime;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+// Thành viên phòng: khóa (user_id, room_id) để "mọi phòng của user X" là 1 lần tra index thay vì LIKE '%username%'.
+// username được chép sẵn (không đổi sau khi đăng ký) để phát tán tới từng thành viên không cần join bảng users.
+@Entity
+@Table(name = "room_members",
+        uniqueConstraints = @UniqueConstraint(name = "uk_room_members_user_id_room_id", columnNames = {"user_id", "room_id"}),
+        indexes = @Index(name = "idx_room_members_room_id", columnList = "room_id"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomMember {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Integer roomId; // rooms.id
+    private Long userId; // users.id
+    private String username;
+    private LocalDateTime joinedAt;
+}
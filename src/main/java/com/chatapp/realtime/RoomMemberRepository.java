@@ -0,0 +1,28 @@
+package com.chatapp.realtime;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface RoomMemberRepository extends JpaRepository<RoomMember, Long> {
+    // Danh sách thành viên để phát tán (index room_id)
+    @Query("SELECT m.username FROM RoomMember m WHERE m.roomId = :roomId ORDER BY m.id")
+    List<String> findUsernamesByRoomId(@Param("roomId") Integer roomId);
+
+    // Thêm thành viên: đúng 1 câu INSERT, thêm lại lần nữa không báo lỗi
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT IGNORE INTO room_members (room_id, user_id, username, joined_at) VALUES (:roomId, :userId, :username, :joinedAt)",
+            nativeQuery = true)
+    int addMember(@Param("roomId") Integer roomId, @Param("userId") Long userId, @Param("username") String username,
+                  @Param("joinedAt") LocalDateTime joinedAt);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM RoomMember m WHERE m.roomId = :roomId AND m.userId = :userId")
+    int removeMember(@Param("roomId") Integer roomId, @Param("userId") Long userId);
+}
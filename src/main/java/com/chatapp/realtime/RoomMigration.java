@@ -0,0 +1,89 @@
+package com.chatapp.realtime;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Chuyển dữ liệu cũ: mỗi room_id dạng "user1_user2" đã có tin nhắn -> 1 dòng rooms + 2 dòng room_members.
+// Tách khóa theo người gửi (không split theo "_") nên username có dấu _ vẫn đúng; user đã bị xóa thì bỏ qua phòng.
+// Chỉ chạy khi bảng rooms còn trống, phòng mới sau đó được tạo khi có tin đầu tiên.
+// Mỗi lần khởi động còn báo các khóa phòng 1-1 ứng với nhiều cặp người dùng (username cũ có dấu _, xem RoomService.isValidUsername).
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RoomMigration {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RoomRepository roomRepository;
+    private final RoomService roomService;
+
+    @Value("${chat.rooms.backfill:true}")
+    private boolean enabled;
+
+    // Sau các bước chuyển cột cũ (HIGHEST_PRECEDENCE), trước khi dựng bảng tóm tắt hội thoại (LOWEST_PRECEDENCE)
+    @Order(0)
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        if (enabled && roomRepository.count() == 0) {
+            createRooms();
+        }
+        reportAmbiguousDirectKeys();
+    }
+
+    private void createRooms() {
+        Set<String> done = new HashSet<>();
+        jdbcTemplate.query("SELECT DISTINCT room_id, sender FROM chat_messages WHERE room_id IS NOT NULL AND sender IS NOT NULL", rs -> {
+            String roomId = rs.getString("room_id");
+            if (done.contains(roomId)) return;
+            try {
+                if (roomService.resolve(roomId, rs.getString("sender")).isPresent()) done.add(roomId);
+            } catch (RuntimeException e) {
+                log.warn("Không thể tạo phòng {}: {}", roomId, e.getMessage());
+            }
+        });
+        if (!done.isEmpty()) {
+            log.info("Đã tạo {} phòng 1-1 từ lịch sử tin nhắn", done.size());
+        }
+    }
+
+    // Không tự sửa: phòng đã thuộc về cặp nhắn trước, cặp còn lại phải đổi username (đăng ký mới đã chặn dấu _)
+    void reportAmbiguousDirectKeys() {
+        Integer underscoreUsers = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM users WHERE username LIKE '%!_%' ESCAPE '!'", Integer.class);
+        if (underscoreUsers == null || underscoreUsers == 0) return;
+        Map<String, Boolean> exists = new HashMap<>();
+        int ambiguous = 0;
+        // Khóa có ít nhất 2 dấu _ mới tách được theo nhiều cách
+        for (String roomKey : jdbcTemplate.queryForList("SELECT room_key FROM rooms WHERE type = ? AND room_key LIKE '%!_%!_%' ESCAPE '!'",
+                String.class, Room.DIRECT)) {
+            List<String> pairs = RoomService.directPairs(roomKey).stream()
+                    .filter(pair -> userExists(pair[0], exists) && userExists(pair[1], exists))
+                    .map(pair -> pair[0] + " + " + pair[1])
+                    .toList();
+            if (pairs.size() > 1) {
+                ambiguous++;
+                log.warn("Khóa phòng 1-1 {} trùng giữa các cặp {}: chỉ cặp đang giữ phòng nhắn được cho nhau", roomKey, pairs);
+            }
+        }
+        if (ambiguous > 0) {
+            log.warn("{} phòng 1-1 có khóa trùng do username chứa dấu _, cần đổi tên một trong các tài khoản", ambiguous);
+        }
+    }
+
+    private boolean userExists(String username, Map<String, Boolean> exists) {
+        return exists.computeIfAbsent(username, u -> {
+            Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users WHERE username = ?", Integer.class, u);
+            return count != null && count > 0;
+        });
+    }
+}
@@ -0,0 +1,15 @@
+package com.chatapp.realtime;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.List;
+import java.util.Optional;
+
+public interface RoomRepository extends JpaRepository<Room, Integer> {
+    Optional<Room> findByRoomKey(String roomKey);
+
+    // Mọi phòng của 1 người: tra index (user_id, room_id) rồi đọc phòng theo khóa chính
+    @Query("SELECT r FROM RoomMember m JOIN Room r ON r.id = m.roomId WHERE m.userId = :userId ORDER BY r.id")
+    List<Room> findByMemberUserId(@Param("userId") Long userId);
+}
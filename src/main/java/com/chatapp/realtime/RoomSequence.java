@@ -0,0 +1,21 @@
+package com.chatapp.realtime;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Số thứ tự tin nhắn lớn nhất đã cấp của mỗi phòng - dùng chung giữa các node (chat.broker.mode=relay/cluster)
+@Entity
+@Table(name = "room_sequences")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomSequence {
+    @Id
+    private String roomId;
+
+    private Long lastSeq;
+}
@@ -0,0 +1,74 @@
+package com.chatapp.realtime;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Cấp số thứ tự tăng dần theo từng phòng cho tin nhắn (ChatMessage.seq).
+// - simple (1 node): bộ đếm trong bộ nhớ, lần đầu gặp phòng thì lấy MAX(seq) từ DB (index (room_id, seq)).
+//   Tin của một phòng luôn được xử lý trên cùng một làn (RoomLaneExecutor) nên thứ tự broadcast trùng thứ tự seq.
+// - relay/cluster (nhiều node): tăng dòng của phòng trong bảng room_sequences (khóa dòng trong 1 giao dịch ngắn).
+// Số thứ tự có thể có lỗ (tin cấp số xong nhưng không lưu được); client chỉ dựa vào "seq > mốc đã thấy".
+@Service
+public class RoomSequencer {
+
+    private static final String INCREMENT_SQL = "UPDATE room_sequences SET last_seq = last_seq + 1 WHERE room_id = ?";
+    private static final String SEED_SQL = "INSERT IGNORE INTO room_sequences (room_id, last_seq) "
+            + "SELECT ?, GREATEST(COALESCE(MAX(seq), 0), ?) FROM chat_messages WHERE room_id = ?";
+    private static final String SELECT_SQL = "SELECT last_seq FROM room_sequences WHERE room_id = ?";
+
+    private final MessageRepository messageRepository;
+    private final MessageArchive messageArchive;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean shared;
+
+    // Không giới hạn: mỗi phòng chỉ tốn 1 AtomicLong, và bỏ bớt thì phải đọc lại DB trong khi write-behind còn tin chưa ghi
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    public RoomSequencer(MessageRepository messageRepository, MessageArchive messageArchive, JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                         @Value("${chat.broker.mode:simple}") String brokerMode) {
+        this.messageRepository = messageRepository;
+        this.messageArchive = messageArchive;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.shared = !"simple".equals(brokerMode);
+    }
+
+    public long next(String roomId) {
+        if (!shared) return counter(roomId).incrementAndGet();
+        Long seq = transactionTemplate.execute(status -> {
+            if (jdbcTemplate.update(INCREMENT_SQL, roomId) == 0) {
+                // Phòng chưa có dòng: khởi tạo từ số lớn nhất đã ghi (INSERT IGNORE vì node khác có thể vừa tạo)
+                jdbcTemplate.update(SEED_SQL, roomId, messageArchive.maxSeq(roomId), roomId);
+                jdbcTemplate.update(INCREMENT_SQL, roomId);
+            }
+            return jdbcTemplate.queryForObject(SELECT_SQL, Long.class, roomId);
+        });
+        return seq != null ? seq : 0;
+    }
+
+    // Số thứ tự lớn nhất đã cấp trong phòng (0 nếu chưa có tin)
+    public long latest(String roomId) {
+        if (!shared) return counter(roomId).get();
+        List<Long> rows = jdbcTemplate.queryForList(SELECT_SQL, Long.class, roomId);
+        return rows.isEmpty() || rows.get(0) == null ? maxStoredSeq(roomId) : rows.get(0);
+    }
+
+    private AtomicLong counter(String roomId) {
+        AtomicLong counter = counters.get(roomId);
+        if (counter != null) return counter;
+        return counters.computeIfAbsent(roomId, id -> new AtomicLong(maxStoredSeq(id)));
+    }
+
+    // Phòng có thể đã được chuyển hết sang kho lưu trữ (MessageArchiver) -> không được đếm lại từ 0
+    private long maxStoredSeq(String roomId) {
+        return Math.max(messageRepository.findMaxSeq(roomId), messageArchive.maxSeq(roomId));
+    }
+}
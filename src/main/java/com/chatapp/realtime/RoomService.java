@@ -0,0 +1,227 @@
+package com.chatapp.realtime;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+// Phòng và thành viên: thay cho việc tách chuỗi "user1_user2" ở mọi nơi cần biết ai ở trong phòng.
+// Danh sách thành viên của từng phòng được cache trong bộ nhớ (Caffeine: giới hạn số phòng + TTL) để phát tán tin
+// không cần truy vấn DB; thêm / bớt thành viên trên node này thì xóa ngay, node khác nhận thay đổi sau tối đa ttl-seconds.
+// Phòng 1-1 được tạo khi có tin đầu tiên: người gửi là 1 phía nên phía còn lại suy ra được kể cả khi username có dấu _.
+@Service
+public class RoomService implements MeterBinder {
+
+    public static final String GROUP_PREFIX = "group-";
+
+    private final RoomRepository roomRepository;
+    private final RoomMemberRepository roomMemberRepository;
+    private final UserProfileCache userProfileCache;
+    private final Cache<String, Membership> memberships;
+    private final int maxGroupSize;
+
+    // Ảnh chụp bất biến của 1 phòng, dùng chung giữa các luồng
+    public record Membership(int id, String roomKey, String type, String name, List<String> members) {
+        public boolean isGroup() {
+            return Room.GROUP.equals(type);
+        }
+
+        public boolean isMember(String username) {
+            return username != null && members.contains(username);
+        }
+    }
+
+    public RoomService(RoomRepository roomRepository, RoomMemberRepository roomMemberRepository, UserProfileCache userProfileCache,
+                       @Value("${chat.rooms.cache.max-size:50000}") long maxSize,
+                       @Value("${chat.rooms.cache.ttl-seconds:60}") long ttlSeconds,
+                       @Value("${chat.rooms.max-group-size:256}") int maxGroupSize) {
+        this.roomRepository = roomRepository;
+        this.roomMemberRepository = roomMemberRepository;
+        this.userProfileCache = userProfileCache;
+        this.maxGroupSize = maxGroupSize;
+        this.memberships = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, memberships, "room-memberships");
+    }
+
+    // Phòng đã tồn tại (không tạo mới). Không cache kết quả "không tồn tại" để phòng vừa tạo ở node khác dùng được ngay
+    public Optional<Membership> find(String roomKey) {
+        if (roomKey == null) return Optional.empty();
+        Membership cached = memberships.getIfPresent(roomKey);
+        if (cached != null) return Optional.of(cached);
+        Optional<Membership> loaded = roomRepository.findByRoomKey(roomKey).map(this::load);
+        loaded.ifPresent(m -> memberships.put(roomKey, m));
+        return loaded;
+    }
+
+    // Phòng của tin nhắn username gửi: phòng 1-1 chưa có thì tạo. Rỗng nếu username không thuộc phòng
+    public Optional<Membership> resolve(String roomKey, String username) {
+        Optional<Membership> existing = find(roomKey);
+        if (existing.isPresent()) {
+            return existing.filter(m -> m.isMember(username));
+        }
+        if (isGroupKey(roomKey)) return Optional.empty();
+        String partner = directPartner(roomKey, username);
+        if (partner == null) return Optional.empty();
+        Optional<User> self = userProfileCache.find(username);
+        Optional<User> other = userProfileCache.find(partner);
+        if (self.isEmpty() || other.isEmpty()) return Optional.empty();
+
+        Room room;
+        try {
+            room = roomRepository.save(new Room(null, roomKey, Room.DIRECT, null, username, LocalDateTime.now()));
+        } catch (DataIntegrityViolationException e) {
+            // Phía kia (hoặc node khác) vừa tạo cùng phòng
+            room = roomRepository.findByRoomKey(roomKey).orElseThrow(() -> e);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        roomMemberRepository.addMember(room.getId(), self.get().getId(), username, now);
+        roomMemberRepository.addMember(room.getId(), other.get().getId(), partner, now);
+        memberships.invalidate(roomKey);
+        return find(roomKey).filter(m -> m.isMember(username));
+    }
+
+    public boolean isMember(String roomKey, String username) {
+        return find(roomKey).map(m -> m.isMember(username)).orElse(false);
+    }
+
+    // Những người cần được báo khi sender gửi tin / đã xem trong phòng
+    public List<String> recipients(String roomKey, String sender) {
+        Optional<Membership> membership = find(roomKey);
+        if (membership.isEmpty()) return List.of();
+        List<String> result = new ArrayList<>(membership.get().members().size());
+        for (String member : membership.get().members()) {
+            if (!member.equals(sender)) result.add(member);
+        }
+        return result;
+    }
+
+    // Phòng 1-1: người còn lại; nhóm hoặc người ngoài phòng: null
+    public String partnerOf(String roomKey, String username) {
+        Optional<Membership> membership = find(roomKey);
+        if (membership.isEmpty() || membership.get().isGroup() || !membership.get().isMember(username)) return null;
+        for (String member : membership.get().members()) {
+            if (!member.equals(username)) return member;
+        }
+        return null;
+    }
+
+    // Mọi phòng của username: 1 lần tra index (user_id, room_id)
+    public List<Room> roomsOf(String username) {
+        return userProfileCache.find(username)
+                .map(user -> roomRepository.findByMemberUserId(user.getId()))
+                .orElse(List.of());
+    }
+
+    // Tạo nhóm: người tạo luôn là thành viên; username không tồn tại bị bỏ qua
+    @Transactional
+    public Membership createGroup(String creator, String name, Collection<String> members) {
+        Set<String> usernames = new LinkedHashSet<>();
+        usernames.add(creator);
+        if (members != null) usernames.addAll(members);
+        if (usernames.size() > maxGroupSize) {
+            throw new IllegalArgumentException("Nhóm tối đa " + maxGroupSize + " thành viên");
+        }
+        User owner = userProfileCache.find(creator).orElseThrow(() -> new IllegalArgumentException("User not found"));
+
+        // Khóa nhóm lấy theo id tự tăng nên cần ghi 2 lần trong cùng giao dịch
+        Room room = roomRepository.save(new Room(null, null, Room.GROUP, name, owner.getUsername(), LocalDateTime.now()));
+        room.setRoomKey(GROUP_PREFIX + room.getId());
+        roomRepository.save(room);
+        LocalDateTime now = room.getCreatedAt();
+        for (String username : usernames) {
+            userProfileCache.find(username).ifPresent(user ->
+                    roomMemberRepository.addMember(room.getId(), user.getId(), user.getUsername(), now));
+        }
+        return find(room.getRoomKey()).orElseThrow();
+    }
+
+    // Chỉ thành viên nhóm mới thêm được người khác; phòng 1-1 cố định 2 người
+    public Optional<Membership> addMember(String roomKey, String actor, String username) {
+        Optional<Membership> membership = find(roomKey).filter(m -> m.isGroup() && m.isMember(actor));
+        if (membership.isEmpty()) return Optional.empty();
+        if (membership.get().isMember(username)) return membership;
+        if (membership.get().members().size() >= maxGroupSize) {
+            throw new IllegalArgumentException("Nhóm tối đa " + maxGroupSize + " thành viên");
+        }
+        Optional<User> user = userProfileCache.find(username);
+        if (user.isEmpty()) return Optional.empty();
+        roomMemberRepository.addMember(membership.get().id(), user.get().getId(), user.get().getUsername(), LocalDateTime.now());
+        memberships.invalidate(roomKey);
+        return find(roomKey);
+    }
+
+    // Rời nhóm (actor = username) hoặc mời người khác ra khỏi nhóm
+    public boolean removeMember(String roomKey, String actor, String username) {
+        Optional<Membership> membership = find(roomKey).filter(m -> m.isGroup() && m.isMember(actor) && m.isMember(username));
+        if (membership.isEmpty()) return false;
+        Optional<User> user = userProfileCache.find(username);
+        if (user.isEmpty()) return false;
+        roomMemberRepository.removeMember(membership.get().id(), user.get().getId());
+        memberships.invalidate(roomKey);
+        return true;
+    }
+
+    private Membership load(Room room) {
+        return new Membership(room.getId(), room.getRoomKey(), room.getType(), room.getName(),
+                List.copyOf(roomMemberRepository.findUsernamesByRoomId(room.getId())));
+    }
+
+    // Username mới không được chứa "_": khóa phòng 1-1 nối 2 username bằng "_" nên ("a", "b_c") và ("a_b", "c")
+    // cùng ra khóa "a_b_c" - cặp nào nhắn trước giữ phòng, tin của cặp kia bị từ chối
+    public static boolean isValidUsername(String username) {
+        return username != null && !username.isEmpty() && username.indexOf('_') < 0;
+    }
+
+    public static boolean isGroupKey(String roomKey) {
+        return roomKey != null && roomKey.startsWith(GROUP_PREFIX) && roomKey.indexOf('_') < 0;
+    }
+
+    // Khóa phòng 1-1 là 2 username sắp xếp rồi nối bằng "_": biết 1 phía thì phía còn lại là phần còn lại của khóa
+    static String directPartner(String roomKey, String username) {
+        if (roomKey == null || username == null || username.isEmpty()) return null;
+        String partner = null;
+        if (roomKey.startsWith(username + "_")) {
+            partner = roomKey.substring(username.length() + 1);
+            if (partner.compareTo(username) < 0) partner = null; // Khóa không đúng thứ tự sắp xếp
+        } else if (roomKey.endsWith("_" + username)) {
+            partner = roomKey.substring(0, roomKey.length() - username.length() - 1);
+            if (partner.compareTo(username) > 0) partner = null;
+        }
+        return partner == null || partner.isEmpty() ? null : partner;
+    }
+
+    // Mọi cách tách khóa phòng 1-1 thành cặp username đúng thứ tự sắp xếp (nhiều hơn 1 cặp chỉ khi username có dấu _)
+    static List<String[]> directPairs(String roomKey) {
+        List<String[]> pairs = new ArrayList<>();
+        if (roomKey == null) return pairs;
+        for (int i = roomKey.indexOf('_'); i >= 0; i = roomKey.indexOf('_', i + 1)) {
+            String first = roomKey.substring(0, i);
+            String second = roomKey.substring(i + 1);
+            if (!first.isEmpty() && !second.isEmpty() && first.compareTo(second) < 0) {
+                pairs.add(new String[]{first, second});
+            }
+        }
+        return pairs;
+    }
+}
@@ -0,0 +1,78 @@
+package com.chatapp.realtime;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.util.function.LongSupplier;
+
+// Sinh ID tin nhắn phía server (kiểu Snowflake) để client có ID ngay khi tin được broadcast,
+// kể cả khi tin chưa được ghi xuống MySQL (chế độ write-behind).
+// Bố cục 53 bit để JavaScript (Number) không bị mất độ chính xác:
+// 41 bit thời gian (ms tính từ EPOCH) | 5 bit node | 7 bit số thứ tự trong cùng 1 ms
+@Component
+public class SnowflakeIdGenerator {
+
+    private static final long EPOCH = 1704067200000L; // 2024-01-01T00:00:00Z
+    private static final int NODE_BITS = 5;
+    private static final int SEQUENCE_BITS = 7;
+    private static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long nodeId;
+    private final LongSupplier clock;
+    private long lastTimestamp = -1L;
+    private long sequence = 0L;
+
+    @Autowired // Có 2 constructor: Spring phải biết dùng constructor nào
+    public SnowflakeIdGenerator(@Value("${chat.id.node-id:0}") long nodeId) {
+        this(nodeId, System::currentTimeMillis);
+    }
+
+    // clock: đồng hồ ms (test thay bằng đồng hồ giả để mô phỏng đồng hồ bị lùi)
+    SnowflakeIdGenerator(long nodeId, LongSupplier clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("chat.id.node-id phải nằm trong khoảng 0.." + MAX_NODE_ID);
+        }
+        this.nodeId = nodeId;
+        this.clock = clock;
+    }
+
+    public synchronized long nextId() {
+        long wall = clock.getAsLong();
+        // Đồng hồ bị lùi (NTP chỉnh giờ): tiếp tục dùng mốc cũ để ID vẫn tăng dần
+        long now = Math.max(wall, lastTimestamp);
+        if (now == lastTimestamp) {
+            sequence = (sequence + 1) & SEQUENCE_MASK;
+            if (sequence == 0) {
+                // Hết số thứ tự trong ms này -> sang ms tiếp theo. Đồng hồ đúng: chờ tới ms đó (tối đa 1 ms) để ID không
+                // vượt trước thời gian thực. Đồng hồ đang bị lùi: mượn luôn ms kế tiếp, không quay vòng chờ cả quãng bị lùi
+                now = lastTimestamp + 1;
+                if (wall >= lastTimestamp) {
+                    while (clock.getAsLong() < now) {
+                        Thread.onSpinWait();
+                    }
+                }
+            }
+        } else {
+            sequence = 0L;
+        }
+        lastTimestamp = now;
+        return ((now - EPOCH) << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+    }
+
+    // ID nhỏ nhất có thể được cấp tại thời điểm epochMillis - ranh giới phân vùng / lưu trữ theo tháng
+    public static long firstIdAt(long epochMillis) {
+        return Math.max(0, epochMillis - EPOCH) << (NODE_BITS + SEQUENCE_BITS);
+    }
+
+    // Thời điểm (ms) được mã hóa trong ID
+    public static long timestampOf(long id) {
+        return (id >> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+
+    // ID lớn nhất có thể được cấp tới thời điểm hiện tại (trên mọi node) - dùng làm mốc "đến bây giờ"
+    public long currentWatermark() {
+        long now = System.currentTimeMillis();
+        return ((now - EPOCH + 1) << (NODE_BITS + SEQUENCE_BITS)) - 1;
+    }
+}
@@ -0,0 +1,364 @@
+package com.chatapp.realtime;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import java.io.IOException;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Kiểm soát lưu lượng khung STOMP gửi lên, chạy trên luồng nhận trước khi khung vào làn (RoomLaneExecutor):
+// - Mỗi loại khung có ngân sách riêng (chat / typing / react / other) và giới hạn kích thước khung riêng.
+// - Token bucket theo 3 phạm vi: phiên, người dùng (mọi phiên của họ), phòng. Hết token thì khung bị bỏ ngay,
+//   không xếp hàng: "đang soạn tin" bị bỏ im lặng, loại khác thì người gửi nhận thông báo /user/queue/flow-control.
+//   Bucket phòng chỉ tính khung của thành viên phòng (theo Principal của phiên, không theo người gửi trong payload)
+//   -> người ngoài không làm cạn được ngân sách của phòng. Khung bị phạm vi sau từ chối được hoàn token ở phạm vi trước.
+// - Người nhận chậm: phát hiện khi 1 lần ghi xuống socket của phiên kéo dài quá slow-consumer-ms (bộ đệm gửi
+//   của Spring đang dồn). Khi đó bỏ bớt sự kiện tạm thời (đang soạn tin, trạng thái Online) gửi tới phiên đó;
+//   vượt send-buffer / send-time limit thì Spring vẫn đóng phiên như cũ.
+@Slf4j
+@Component
+public class StompFlowControl implements MeterBinder {
+
+    public static final String NOTICE_DESTINATION = "/queue/flow-control";
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final JsonFactory CBOR_FACTORY = new CBORFactory();
+    // Sự kiện bỏ được khi người nhận chậm (trường "type" của payload)
+    private static final Set<String> DEGRADABLE_TYPES = Set.of("TYPING", "PRESENCE");
+    private static final long NOTICE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    enum Budget {
+        CHAT, TYPING, REACT, OTHER;
+
+        static Budget of(String destination) {
+            return switch (destination) {
+                case "/app/chat.sendMessage", "/app/chat.revoke" -> CHAT;
+                case "/app/chat.typing" -> TYPING;
+                case "/app/chat.react" -> REACT;
+                default -> OTHER;
+            };
+        }
+    }
+
+    enum Outcome {
+        ACCEPTED, OVERSIZED, SESSION_LIMIT, USER_LIMIT, ROOM_LIMIT
+    }
+
+    // rate token/giây, burst = số token tối đa; null = không giới hạn ở phạm vi đó
+    record Limit(double rate, double burst) {
+    }
+
+    record Spec(Limit session, Limit user, Limit room, int maxFrameBytes) {
+    }
+
+    private final boolean enabled;
+    private final Map<Budget, Spec> specs = new EnumMap<>(Budget.class);
+    private final long slowConsumerNanos;
+    private final ObjectProvider<SimpMessagingTemplate> messagingTemplate;
+    private final RoomService roomService;
+
+    private final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+    private final Cache<String, TokenBucket[]> users;
+    private final Cache<String, TokenBucket[]> rooms;
+
+    private final LongAdder[][] frames = new LongAdder[Budget.values().length][Outcome.values().length];
+    private final LongAdder slowDetections = new LongAdder();
+    private final LongAdder degradedFrames = new LongAdder();
+
+    private final ChannelInterceptor inbound = new ChannelInterceptor() {
+        @Override
+        public Message<?> preSend(Message<?> message, MessageChannel channel) {
+            return onInbound(message);
+        }
+    };
+
+    private final ChannelInterceptor outbound = new ChannelInterceptor() {
+        @Override
+        public Message<?> preSend(Message<?> message, MessageChannel channel) {
+            return onOutbound(message);
+        }
+    };
+
+    public StompFlowControl(ObjectProvider<SimpMessagingTemplate> messagingTemplate, RoomService roomService,
+                            @Value("${chat.ws.flow.enabled:true}") boolean enabled,
+                            @Value("${chat.ws.flow.chat.limits:session:5/20,user:10/40,room:50/200}") String chatLimits,
+                            @Value("${chat.ws.flow.chat.max-frame-bytes:16384}") int chatMaxBytes,
+                            @Value("${chat.ws.flow.typing.limits:session:2/4,user:4/8,room:20/40}") String typingLimits,
+                            @Value("${chat.ws.flow.typing.max-frame-bytes:512}") int typingMaxBytes,
+                            @Value("${chat.ws.flow.react.limits:session:3/10,user:5/20,room:30/100}") String reactLimits,
+                            @Value("${chat.ws.flow.react.max-frame-bytes:1024}") int reactMaxBytes,
+                            @Value("${chat.ws.flow.other.limits:session:10/40,user:20/80,room:100/400}") String otherLimits,
+                            @Value("${chat.ws.flow.other.max-frame-bytes:16384}") int otherMaxBytes,
+                            @Value("${chat.ws.flow.slow-consumer-ms:2000}") long slowConsumerMs) {
+        this.messagingTemplate = messagingTemplate;
+        this.roomService = roomService;
+        this.enabled = enabled;
+        specs.put(Budget.CHAT, parseSpec(chatLimits, chatMaxBytes));
+        specs.put(Budget.TYPING, parseSpec(typingLimits, typingMaxBytes));
+        specs.put(Budget.REACT, parseSpec(reactLimits, reactMaxBytes));
+        specs.put(Budget.OTHER, parseSpec(otherLimits, otherMaxBytes));
+        this.slowConsumerNanos = TimeUnit.MILLISECONDS.toNanos(slowConsumerMs);
+        // Người dùng / phòng không gửi gì trong 10 phút thì bỏ bucket (bucket mới bắt đầu đầy nên không thiệt ai)
+        this.users = Caffeine.newBuilder().expireAfterAccess(Duration.ofMinutes(10)).build();
+        this.rooms = Caffeine.newBuilder().expireAfterAccess(Duration.ofMinutes(10)).build();
+        for (LongAdder[] row : frames) {
+            for (int i = 0; i < row.length; i++) row[i] = new LongAdder();
+        }
+    }
+
+    // "session:5/20,user:10/40,room:50/200" -> giới hạn theo phạm vi (rate/giây / burst)
+    static Spec parseSpec(String spec, int maxFrameBytes) {
+        Map<String, Limit> limits = new HashMap<>();
+        for (String part : spec.split(",")) {
+            if (part.isBlank()) continue;
+            String[] scope = part.trim().split(":");
+            String[] values = scope[1].trim().split("/");
+            double rate = Double.parseDouble(values[0].trim());
+            limits.put(scope[0].trim(), new Limit(rate, values.length > 1 ? Double.parseDouble(values[1].trim()) : Math.max(1, rate)));
+        }
+        return new Spec(limits.get("session"), limits.get("user"), limits.get("room"), maxFrameBytes);
+    }
+
+    public ChannelInterceptor inboundInterceptor() {
+        return inbound;
+    }
+
+    // Gắn trước CborWireFormat để đọc "type" trên payload JSON gốc
+    public ChannelInterceptor outboundInterceptor() {
+        return outbound;
+    }
+
+    // Bọc phiên WebSocket để đo thời gian ghi xuống socket (Spring bọc tiếp bằng ConcurrentWebSocketSessionDecorator)
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                SessionState state = sessions.computeIfAbsent(session.getId(), id -> new SessionState(System.nanoTime()));
+                super.afterConnectionEstablished(new TimedSession(session, state));
+            }
+        };
+    }
+
+    private Message<?> onInbound(Message<?> message) {
+        if (!enabled) return message;
+        MessageHeaders headers = message.getHeaders();
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE || destination == null) return message;
+        Budget budget = Budget.of(destination);
+        Spec spec = specs.get(budget);
+        long now = System.nanoTime();
+
+        Outcome outcome = Outcome.ACCEPTED;
+        byte[] payload = message.getPayload() instanceof byte[] bytes ? bytes : null;
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        Principal user = SimpMessageHeaderAccessor.getUser(headers);
+        SessionState session = sessionId != null ? sessions.computeIfAbsent(sessionId, id -> new SessionState(now)) : null;
+        TokenBucket sessionBucket = session != null ? session.buckets[budget.ordinal()] : null;
+        TokenBucket userBucket = user != null && spec.user() != null ? buckets(users, user.getName(), now)[budget.ordinal()] : null;
+        if (payload != null && payload.length > spec.maxFrameBytes()) {
+            outcome = Outcome.OVERSIZED;
+        } else if (sessionBucket != null && !sessionBucket.tryAcquire(spec.session(), now)) {
+            outcome = Outcome.SESSION_LIMIT;
+        } else if (userBucket != null && !userBucket.tryAcquire(spec.user(), now)) {
+            refund(sessionBucket, spec.session());
+            outcome = Outcome.USER_LIMIT;
+        } else {
+            TokenBucket roomBucket = roomBucket(headers, payload, user, spec, budget, now);
+            if (roomBucket != null && !roomBucket.tryAcquire(spec.room(), now)) {
+                // Khung không đi tiếp -> trả lại token đã lấy ở phiên / người dùng
+                refund(sessionBucket, spec.session());
+                refund(userBucket, spec.user());
+                outcome = Outcome.ROOM_LIMIT;
+            }
+        }
+        frames[budget.ordinal()][outcome.ordinal()].increment();
+        if (outcome == Outcome.ACCEPTED) return message;
+
+        // Từ chối ngay thay vì xếp hàng; "đang soạn tin" bỏ im lặng
+        if (budget != Budget.TYPING && user != null && session != null && session.shouldNotify(now)) {
+            SimpMessagingTemplate template = messagingTemplate.getIfAvailable();
+            if (template != null) {
+                Map<String, Object> notice = new HashMap<>();
+                notice.put("type", "FLOW_CONTROL");
+                notice.put("destination", destination);
+                notice.put("reason", outcome.name());
+                template.convertAndSendToUser(user.getName(), NOTICE_DESTINATION, notice);
+            }
+        }
+        return null;
+    }
+
+    private Message<?> onOutbound(Message<?> message) {
+        if (!enabled) return message;
+        MessageHeaders headers = message.getHeaders();
+        if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE) return message;
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        SessionState session = sessionId != null ? sessions.get(sessionId) : null;
+        if (session == null || !session.isSlow(System.nanoTime(), slowConsumerNanos)) return message;
+        if (session.slowSince == 0) {
+            session.slowSince = System.nanoTime();
+            slowDetections.increment();
+            log.debug("Phiên {} nhận chậm, tạm bỏ sự kiện đang soạn tin / trạng thái Online", sessionId);
+        }
+        if (message.getPayload() instanceof byte[] payload
+                && DEGRADABLE_TYPES.contains(RoomLaneExecutor.readStringField(JSON_FACTORY, payload, "type"))) {
+            degradedFrames.increment();
+            return null;
+        }
+        return message;
+    }
+
+    // Bucket phòng của khung; null nếu không giới hạn theo phòng, khung không ghi phòng
+    // hoặc người giữ phiên không phải thành viên (controller sẽ từ chối khung đó, không để nó tiêu ngân sách của phòng)
+    private TokenBucket roomBucket(MessageHeaders headers, byte[] payload, Principal user, Spec spec, Budget budget, long now) {
+        if (spec.room() == null || payload == null || user == null) return null;
+        String roomId = RoomLaneExecutor.readRoomId(isCbor(headers) ? CBOR_FACTORY : JSON_FACTORY, payload);
+        if (roomId == null || !roomService.isMember(roomId, user.getName())) return null;
+        return buckets(rooms, roomId, now)[budget.ordinal()];
+    }
+
+    private static void refund(TokenBucket bucket, Limit limit) {
+        if (bucket != null) bucket.refund(limit);
+    }
+
+    private static boolean isCbor(MessageHeaders headers) {
+        Object contentType = headers.get(MessageHeaders.CONTENT_TYPE);
+        if (contentType instanceof MimeType mimeType) return CborWireFormat.isCbor(mimeType);
+        return contentType instanceof String s && CborWireFormat.isCbor(MimeTypeUtils.parseMimeType(s));
+    }
+
+    private static TokenBucket[] buckets(Cache<String, TokenBucket[]> cache, String key, long now) {
+        return cache.get(key, k -> newBuckets(now));
+    }
+
+    private static TokenBucket[] newBuckets(long now) {
+        TokenBucket[] buckets = new TokenBucket[Budget.values().length];
+        for (int i = 0; i < buckets.length; i++) buckets[i] = new TokenBucket(now);
+        return buckets;
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        sessions.remove(event.getSessionId());
+    }
+
+    private long slowSessions() {
+        long now = System.nanoTime();
+        return sessions.values().stream().filter(s -> s.isSlow(now, slowConsumerNanos)).count();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (Budget budget : Budget.values()) {
+            for (Outcome outcome : Outcome.values()) {
+                FunctionCounter.builder("chat.ws.flow.frames", frames[budget.ordinal()][outcome.ordinal()], LongAdder::sum)
+                        .tag("budget", budget.name().toLowerCase())
+                        .tag("outcome", outcome.name().toLowerCase().replace('_', '-'))
+                        .register(registry);
+            }
+        }
+        Gauge.builder("chat.ws.flow.slow.sessions", this, StompFlowControl::slowSessions).register(registry);
+        FunctionCounter.builder("chat.ws.flow.slow.detections", slowDetections, LongAdder::sum).register(registry);
+        FunctionCounter.builder("chat.ws.flow.slow.dropped", degradedFrames, LongAdder::sum).register(registry);
+    }
+
+    // Token bucket nạp liên tục theo thời gian; khóa rất ngắn, không chặn I/O bên trong
+    static final class TokenBucket {
+        private double tokens = -1; // Chưa dùng lần nào: đầy theo burst ở lần đầu
+        private long updatedAt;
+
+        TokenBucket(long now) {
+            this.updatedAt = now;
+        }
+
+        synchronized boolean tryAcquire(Limit limit, long now) {
+            if (limit == null) return true;
+            tokens = tokens < 0 ? limit.burst() : Math.min(limit.burst(), tokens + (now - updatedAt) / 1e9 * limit.rate());
+            updatedAt = now;
+            if (tokens < 1) return false;
+            tokens -= 1;
+            return true;
+        }
+
+        // Hoàn lại 1 token đã lấy bằng tryAcquire (không vượt burst)
+        synchronized void refund(Limit limit) {
+            if (limit == null || tokens < 0) return;
+            tokens = Math.min(limit.burst(), tokens + 1);
+        }
+    }
+
+    private static final class SessionState {
+        final TokenBucket[] buckets;
+        volatile long writeStartedAt; // 0 = không có lần ghi nào đang diễn ra
+        volatile long slowSince;
+        private long lastNoticeAt;
+
+        SessionState(long now) {
+            this.buckets = newBuckets(now);
+        }
+
+        boolean isSlow(long now, long thresholdNanos) {
+            long started = writeStartedAt;
+            return started != 0 && now - started > thresholdNanos;
+        }
+
+        // Tối đa 1 thông báo từ chối mỗi giây cho mỗi phiên
+        synchronized boolean shouldNotify(long now) {
+            if (lastNoticeAt != 0 && now - lastNoticeAt < NOTICE_INTERVAL_NANOS) return false;
+            lastNoticeAt = now;
+            return true;
+        }
+    }
+
+    private static final class TimedSession extends WebSocketSessionDecorator {
+        private final SessionState state;
+
+        TimedSession(WebSocketSession delegate, SessionState state) {
+            super(delegate);
+            this.state = state;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            state.writeStartedAt = System.nanoTime() | 1; // Không bao giờ bằng 0
+            try {
+                super.sendMessage(message);
+            } finally {
+                state.writeStartedAt = 0;
+                state.slowSince = 0;
+            }
+        }
+    }
+}
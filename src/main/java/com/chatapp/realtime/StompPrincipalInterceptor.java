@@ -0,0 +1,53 @@
+package com.chatapp.realtime;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import java.security.Principal;
+
+// Gắn danh tính cho phiên STOMP ngay ở khung CONNECT: header "token" (cấp khi đăng nhập, kiểm tra bằng HMAC - không băm
+// mật khẩu). Khung CONNECT thiếu / sai token bị từ chối (client nhận ERROR); chat.auth.require-token=false thì client cũ
+// chỉ gửi header "username" vẫn được nhận.
+// Spring giữ Principal này cho cả phiên và đăng ký vào SimpUserRegistry -> gửi được tới /user/{username}/queue/...
+@Component
+public class StompPrincipalInterceptor implements ChannelInterceptor {
+
+    private final AuthTokenService authTokenService;
+    private final boolean requireToken;
+
+    public StompPrincipalInterceptor(AuthTokenService authTokenService,
+                                     @Value("${chat.auth.require-token:true}") boolean requireToken) {
+        this.authTokenService = authTokenService;
+        this.requireToken = requireToken;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor != null && StompCommand.CONNECT.equals(accessor.getCommand()) && accessor.getUser() == null) {
+            String token = accessor.getFirstNativeHeader(AuthTokenService.STOMP_HEADER);
+            if (token != null) {
+                String username = authTokenService.verify(token)
+                        .orElseThrow(() -> new MessageDeliveryException(message, "Token không hợp lệ hoặc đã hết hạn"));
+                accessor.setUser(new StompPrincipal(username));
+            } else if (requireToken) {
+                throw new MessageDeliveryException(message, "Thiếu token đăng nhập");
+            } else {
+                String username = accessor.getFirstNativeHeader(PresenceService.USERNAME_HEADER);
+                if (username != null && !username.isBlank()) {
+                    accessor.setUser(new StompPrincipal(username));
+                }
+            }
+        }
+        return message;
+    }
+
+    record StompPrincipal(String getName) implements Principal {
+    }
+}
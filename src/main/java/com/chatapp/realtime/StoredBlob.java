@@ -0,0 +1,23 @@
+package com.chatapp.realtime;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+// Thông tin một file trong kho blob; nội dung nằm trên đĩa, khóa là SHA-256 của nội dung
+@Entity
+@Table(name = "blobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredBlob {
+    @Id
+    @Column(length = 64)
+    private String sha256;
+
+    private String contentType;
+    private Long size;
+    private LocalDateTime createdAt;
+}
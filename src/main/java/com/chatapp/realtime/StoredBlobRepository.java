@@ -0,0 +1,6 @@
+package com.chatapp.realtime;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface StoredBlobRepository extends JpaRepository<StoredBlob, String> {
+}
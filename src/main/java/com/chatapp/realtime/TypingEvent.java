@@ -0,0 +1,20 @@
+package com.chatapp.realtime;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Sự kiện TYPING gửi vào topic của phòng: ai bắt đầu (START) / thôi (STOP) soạn tin ở phòng nào
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TypingEvent {
+    private String type;
+    private String roomId;
+    private String sender;
+    private String state; // START, STOP
+
+    public TypingEvent(String roomId, String sender, String state) {
+        this("TYPING", roomId, sender, state);
+    }
+}
@@ -0,0 +1,207 @@
+package com.chatapp.realtime;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import lombok.extern.slf4j.Slf4j;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Gom sự kiện "đang soạn tin" theo (phòng, người gửi), hoàn toàn trong bộ nhớ, không chạm DB:
+// - Khung đầu tiên -> broadcast START; các khung sau chỉ gia hạn (coalesced), khung đến dày hơn min-interval-ms bị bỏ (dropped).
+// - Không nhận thêm khung trong timeout-ms -> broadcast STOP. Gửi tin nhắn thì xóa trạng thái (client tự ẩn khi thấy tin).
+// Hết hạn được quét bằng bánh xe thời gian (timing wheel): mỗi nhịp chỉ xét một ô, gia hạn không phải dời trạng thái sang
+// ô khác (chỉ cập nhật lastSeen, lúc quét tới mới xếp lại) -> chi phí O(1) cho mỗi khung, đủ cho hàng trăm nghìn phòng.
+@Slf4j
+@Service
+public class TypingIndicatorService implements SmartLifecycle, MeterBinder {
+
+    public static final String START = "START";
+    public static final String STOP = "STOP";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final long timeoutNanos;
+    private final long minIntervalNanos;
+    private final long tickNanos;
+
+    private final Map<String, TypingState> states = new ConcurrentHashMap<>();
+    private final Bucket[] wheel;
+    private volatile long currentTick;
+    private final long startNanos;
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder stopped = new LongAdder();
+
+    private ScheduledExecutorService ticker;
+
+    public TypingIndicatorService(SimpMessagingTemplate messagingTemplate,
+                                  @Value("${chat.typing.timeout-ms:4000}") long timeoutMs,
+                                  @Value("${chat.typing.min-interval-ms:1000}") long minIntervalMs,
+                                  @Value("${chat.typing.tick-ms:250}") long tickMs,
+                                  @Value("${chat.typing.wheel-size:64}") int wheelSize) {
+        this.messagingTemplate = messagingTemplate;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMs);
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        this.wheel = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.startNanos = System.nanoTime();
+    }
+
+    public void onTyping(String roomId, String sender) {
+        if (roomId == null || sender == null) return;
+        received.increment();
+        long now = System.nanoTime();
+        boolean[] isNew = new boolean[1];
+        TypingState state = states.compute(key(roomId, sender), (k, s) -> {
+            if (s == null) {
+                isNew[0] = true;
+                return new TypingState(k, roomId, sender, now);
+            }
+            if (now - s.lastSeen < minIntervalNanos) {
+                dropped.increment(); // Client gửi quá dày: không cần gia hạn
+            } else {
+                s.lastSeen = now;
+                coalesced.increment();
+            }
+            return s;
+        });
+        if (isNew[0]) {
+            started.increment();
+            schedule(state, now + timeoutNanos);
+            messagingTemplate.convertAndSend("/topic/" + roomId, new TypingEvent(roomId, sender, START));
+        }
+    }
+
+    // Người gửi vừa gửi tin: bỏ trạng thái, không broadcast STOP (tin nhắn tới nơi là client tự ẩn chỉ báo)
+    public void clear(String roomId, String sender) {
+        if (roomId == null || sender == null || states.isEmpty()) return;
+        states.remove(key(roomId, sender));
+    }
+
+    private static String key(String roomId, String sender) {
+        return roomId + '\n' + sender;
+    }
+
+    private long tickOf(long nanos) {
+        return (nanos - startNanos + tickNanos - 1) / tickNanos;
+    }
+
+    private void schedule(TypingState state, long deadlineNanos) {
+        long tick = Math.max(tickOf(deadlineNanos), currentTick + 1);
+        Bucket bucket = wheel[(int) (tick % wheel.length)];
+        synchronized (bucket) {
+            bucket.states.add(state);
+        }
+    }
+
+    // Mỗi nhịp: lấy toàn bộ ô hiện tại, trạng thái hết hạn -> STOP, còn hạn (được gia hạn / chưa tới vòng) -> xếp lại
+    void tick() {
+        long tick = currentTick + 1;
+        long tickEnd = startNanos + tick * tickNanos;
+        if (System.nanoTime() < tickEnd) return;
+        currentTick = tick;
+        Bucket bucket = wheel[(int) (tick % wheel.length)];
+        List<TypingState> due;
+        synchronized (bucket) {
+            due = bucket.states;
+            bucket.states = new ArrayList<>();
+        }
+        for (TypingState state : due) {
+            boolean[] expired = new boolean[1];
+            states.computeIfPresent(state.key, (k, s) -> {
+                if (s != state) return s; // Đã bị xóa và tạo lại: bản mới có lịch riêng
+                if (tickEnd - s.lastSeen >= timeoutNanos) {
+                    expired[0] = true;
+                    return null;
+                }
+                return s;
+            });
+            if (expired[0]) {
+                stopped.increment();
+                messagingTemplate.convertAndSend("/topic/" + state.roomId, new TypingEvent(state.roomId, state.sender, STOP));
+            } else if (states.get(state.key) == state) {
+                schedule(state, state.lastSeen + timeoutNanos);
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("chat.typing.frames", received, LongAdder::sum).tag("outcome", "received").register(registry);
+        FunctionCounter.builder("chat.typing.frames", coalesced, LongAdder::sum).tag("outcome", "coalesced").register(registry);
+        FunctionCounter.builder("chat.typing.frames", dropped, LongAdder::sum).tag("outcome", "dropped").register(registry);
+        FunctionCounter.builder("chat.typing.transitions", started, LongAdder::sum).tag("state", "start").register(registry);
+        FunctionCounter.builder("chat.typing.transitions", stopped, LongAdder::sum).tag("state", "stop").register(registry);
+        Gauge.builder("chat.typing.active", states, Map::size).register(registry);
+    }
+
+    @Override
+    public void start() {
+        if (ticker != null) return;
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "typing-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long tickMs = TimeUnit.NANOSECONDS.toMillis(tickNanos);
+        ticker.scheduleAtFixedRate(() -> {
+            try {
+                // Bắt kịp nếu luồng bị trễ vài nhịp
+                long before;
+                do {
+                    before = currentTick;
+                    tick();
+                } while (currentTick != before);
+            } catch (RuntimeException e) {
+                log.error("Lỗi trong luồng typing-wheel", e);
+            }
+        }, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (ticker == null) return;
+        ticker.shutdownNow();
+        ticker = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return ticker != null;
+    }
+
+    private static final class Bucket {
+        List<TypingState> states = new ArrayList<>();
+    }
+
+    private static final class TypingState {
+        final String key;
+        final String roomId;
+        final String sender;
+        volatile long lastSeen;
+
+        TypingState(String key, String roomId, String sender, long lastSeen) {
+            this.key = key;
+            this.roomId = roomId;
+            this.sender = sender;
+            this.lastSeen = lastSeen;
+        }
+    }
+}
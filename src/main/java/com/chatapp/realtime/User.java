@@ -1,5 +1,6 @@
 package com.chatapp.realtime;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -20,15 +21,16 @@ public class User {
     @Column(nullable = false, unique = true)
     private String username;
 
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY) // Nhận khi đăng ký / đăng nhập, không bao giờ trả về client
     @Column(nullable = false)
-    private String password;
+    private String password; // Chuỗi BCrypt (dữ liệu cũ dạng văn bản thường được băm lại khi đăng nhập)
 
     @Column(name = "display_name")
     private String displayName;
 
     @Lob
     @Column(columnDefinition = "LONGTEXT")
-    private String avatar;
+    private String avatar; // Đường dẫn /api/blobs/<sha256> (dữ liệu cũ dạng base64 được BlobMigration chuyển đi)
 
     private String status; // ONLINE, OFFLINE
     private LocalDateTime lastActive;
@@ -0,0 +1,29 @@
+package com.chatapp.realtime;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+// Một dòng trong danh bạ /api/auth/users: không có mật khẩu, không đọc cột avatar (LONGTEXT) -
+// avatar chỉ là đường dẫn /api/auth/users/{username}/avatar, trình duyệt tự tải và cache riêng
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserDirectoryEntry {
+    private Long id;
+    private String username;
+    private String displayName;
+    private String avatar;
+    private String status;
+    private LocalDateTime lastActive;
+
+    // Dùng cho truy vấn JPQL: chỉ lấy độ dài avatar để biết người dùng có ảnh hay không
+    public UserDirectoryEntry(Long id, String username, String displayName, Integer avatarLength, String status, LocalDateTime lastActive) {
+        this(id, username, displayName, avatarLength != null && avatarLength > 0 ? avatarUrlOf(username) : null, status, lastActive);
+    }
+
+    public static String avatarUrlOf(String username) {
+        return "/api/auth/users/" + username + "/avatar";
+    }
+}
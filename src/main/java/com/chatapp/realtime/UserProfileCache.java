@@ -0,0 +1,75 @@
+package com.chatapp.realtime;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Cache hồ sơ người dùng theo username (đọc qua cache, giới hạn số phần tử + TTL), xóa khi hồ sơ thay đổi.
+// Phần tử trong cache là bản sao tách khỏi JPA; mỗi lần đọc trả về một bản sao mới nên nơi gọi sửa thoải mái.
+// Kèm số phiên bản danh bạ: tăng mỗi khi có người đăng ký / sửa hồ sơ, dùng làm ETag cho /api/auth/users.
+@Service
+public class UserProfileCache implements MeterBinder {
+
+    private final UserRepository userRepository;
+    private final Cache<String, User> profiles;
+    // Khác nhau giữa các lần khởi động / các node -> ETag cũ không bao giờ khớp nhầm
+    private final String bootId = UUID.randomUUID().toString().substring(0, 8);
+    private final AtomicLong directoryVersion = new AtomicLong();
+
+    public UserProfileCache(UserRepository userRepository,
+                            @Value("${chat.users.cache.max-size:10000}") long maxSize,
+                            @Value("${chat.users.cache.ttl-seconds:300}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        this.profiles = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+    }
+
+    // Lượt trúng / trượt / loại bỏ của Caffeine (đã bật recordStats)
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, profiles, "user-profiles");
+    }
+
+    // Không cache kết quả "không tồn tại" để người vừa đăng ký đăng nhập được ngay
+    public Optional<User> find(String username) {
+        if (username == null) return Optional.empty();
+        User cached = profiles.getIfPresent(username);
+        if (cached == null) {
+            Optional<User> loaded = userRepository.findByUsername(username);
+            if (loaded.isEmpty()) return Optional.empty();
+            cached = copyOf(loaded.get());
+            profiles.put(username, cached);
+        }
+        return Optional.of(copyOf(cached));
+    }
+
+    // Đổi mật khẩu: chỉ cần bỏ bản trong cache
+    public void invalidate(String username) {
+        profiles.invalidate(username);
+    }
+
+    // Đăng ký / sửa tên hiển thị, avatar: bỏ bản trong cache và đổi phiên bản danh bạ
+    public void changed(String username) {
+        profiles.invalidate(username);
+        directoryVersion.incrementAndGet();
+    }
+
+    public String directoryVersion() {
+        return bootId + "-" + directoryVersion.get();
+    }
+
+    private static User copyOf(User u) {
+        return new User(u.getId(), u.getUsername(), u.getPassword(), u.getDisplayName(), u.getAvatar(), u.getStatus(), u.getLastActive());
+    }
+}
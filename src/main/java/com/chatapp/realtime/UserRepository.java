@@ -1,10 +1,36 @@
 package com.chatapp.realtime;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     
     // Phương thức quan trọng để kiểm tra đăng nhập
     Optional<User> findByUsername(String username);
-}
\ No newline at end of file
+
+    // Danh bạ: lọc theo tiền tố username / tên hiển thị (tham số đã kèm %), không đọc mật khẩu và nội dung avatar
+    @Query(value = "SELECT new com.chatapp.realtime.UserDirectoryEntry(u.id, u.username, u.displayName, LENGTH(u.avatar), u.status, u.lastActive) "
+            + "FROM User u WHERE :prefix IS NULL OR u.username LIKE :prefix ESCAPE '!' OR u.displayName LIKE :prefix ESCAPE '!' "
+            + "ORDER BY u.username",
+            countQuery = "SELECT COUNT(u) FROM User u WHERE :prefix IS NULL OR u.username LIKE :prefix ESCAPE '!' OR u.displayName LIKE :prefix ESCAPE '!'")
+    Page<UserDirectoryEntry> findDirectory(@Param("prefix") String prefix, Pageable pageable);
+
+    // Chỉ ghi cột mật khẩu (băm lại khi đăng nhập), không đè trạng thái / hồ sơ bằng bản sao trong cache
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.password = :password WHERE u.username = :username")
+    int updatePassword(@Param("username") String username, @Param("password") String password);
+
+    // Đưa mọi user còn ONLINE (do lần chạy trước tắt đột ngột) về OFFLINE
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.status = 'OFFLINE', u.lastActive = :now WHERE u.status = 'ONLINE'")
+    int resetOnline(@Param("now") LocalDateTime now);
+}
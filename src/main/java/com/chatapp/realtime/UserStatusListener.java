@@ -4,26 +4,21 @@ import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import java.time.LocalDateTime;
-import java.util.List;
 
+@Slf4j
 @Component
 @RequiredArgsConstructor
 public class UserStatusListener {
 
     private final UserRepository userRepository;
 
-    // Khi ứng dụng khởi động xong, reset tất cả user về OFFLINE
+    // Khi ứng dụng khởi động xong, reset tất cả user về OFFLINE (một câu UPDATE, không nạp từng user)
+    // Trạng thái thật được PresenceService dựng lại từ các phiên WebSocket kết nối tới
     @EventListener(ApplicationReadyEvent.class)
     public void onApplicationReady() {
-        List<User> users = userRepository.findAll();
-        for (User user : users) {
-            if ("ONLINE".equals(user.getStatus())) {
-                user.setStatus("OFFLINE");
-                user.setLastActive(LocalDateTime.now());
-                userRepository.save(user);
-            }
-        }
-        System.out.println("Đã reset trạng thái tất cả người dùng về OFFLINE.");
+        int count = userRepository.resetOnline(LocalDateTime.now());
+        log.info("Đã reset trạng thái {} người dùng về OFFLINE.", count);
     }
-}
\ No newline at end of file
+}
@@ -1,35 +1,160 @@
 package com.chatapp.realtime;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.config.StompBrokerRelayRegistration;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import java.util.List;
 
 @Configuration
 @EnableWebSocketMessageBroker // Bật tính năng Message Broker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    // simple: broker trong JVM (1 node) | relay: broker STOMP bên ngoài (RabbitMQ/ActiveMQ) | cluster: simple broker + phát tán qua ClusterBus
+    @Value("${chat.broker.mode:simple}")
+    private String brokerMode;
+
+    @Value("${chat.broker.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${chat.broker.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${chat.broker.relay.login:guest}")
+    private String relayLogin;
+
+    @Value("${chat.broker.relay.passcode:guest}")
+    private String relayPasscode;
+
+    @Value("${chat.broker.relay.virtual-host:}")
+    private String relayVirtualHost;
+
+    // Luồng đẩy tin ra client: thứ tự theo từng phiên được giữ bởi setPreservePublishOrder
+    @Value("${chat.ws.outbound.threads:8}")
+    private int outboundThreads;
+
+    @Value("${chat.ws.outbound.queue-capacity:10000}")
+    private int outboundQueueCapacity;
+
+    // Chế độ luồng ảo: mỗi khung gửi ra chạy trên 1 luồng ảo, tối đa chừng này khung cùng lúc (vượt thì nơi gửi phải chờ)
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${chat.ws.outbound.virtual-concurrency-limit:2000}")
+    private int outboundVirtualConcurrencyLimit;
+
+    private final ObjectProvider<ClusterFanout> clusterFanout;
+    private final RoomLaneExecutor roomLaneExecutor;
+    private final StompPrincipalInterceptor stompPrincipalInterceptor;
+    private final CborWireFormat cborWireFormat;
+    private final ChatMetrics chatMetrics;
+    private final StompFlowControl stompFlowControl;
+
+    public WebSocketConfig(ObjectProvider<ClusterFanout> clusterFanout, RoomLaneExecutor roomLaneExecutor,
+                           StompPrincipalInterceptor stompPrincipalInterceptor, CborWireFormat cborWireFormat,
+                           ChatMetrics chatMetrics, StompFlowControl stompFlowControl) {
+        this.clusterFanout = clusterFanout;
+        this.roomLaneExecutor = roomLaneExecutor;
+        this.stompPrincipalInterceptor = stompPrincipalInterceptor;
+        this.cborWireFormat = cborWireFormat;
+        this.chatMetrics = chatMetrics;
+        this.stompFlowControl = stompFlowControl;
+    }
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         // Điểm kết nối để phía Frontend (Client) gõ cửa vào phòng chat
-        registry.addEndpoint("/ws").withSockJS();
+        // Client WebSocket thuần kết nối thẳng /ws/websocket (có thể chọn khung CBOR, xem CborWireFormat)
+        registry.addEndpoint("/ws").addInterceptors(cborWireFormat).withSockJS();
     }
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
         // Tiền tố để client gửi tin nhắn tới (ví dụ: /app/chat)
         registry.setApplicationDestinationPrefixes("/app");
+        registry.setPreservePublishOrder(true);
+        // Tin riêng cho từng người: /user/queue/... (Spring dịch sang hàng đợi riêng của từng phiên theo Principal)
+        registry.setUserDestinationPrefix("/user");
         // Chủ đề (Topic) để server đẩy tin nhắn về cho tất cả mọi người
-        registry.enableSimpleBroker("/topic");
+        if ("relay".equals(brokerMode)) {
+            // Broker ngoài giữ các subscription: client ở node nào cũng nhận được tin từ mọi node
+            StompBrokerRelayRegistration relay = registry.enableStompBrokerRelay("/topic", "/queue")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayLogin)
+                    .setClientPasscode(relayPasscode)
+                    .setSystemLogin(relayLogin)
+                    .setSystemPasscode(relayPasscode)
+                    // Người nhận đang kết nối ở node khác: chia sẻ registry phiên và chuyển tiếp tin /user/ qua broker
+                    .setUserDestinationBroadcast("/topic/unresolved-user-destination")
+                    .setUserRegistryBroadcast("/topic/simp-user-registry");
+            if (!relayVirtualHost.isEmpty()) {
+                relay.setVirtualHost(relayVirtualHost);
+            }
+        } else {
+            registry.enableSimpleBroker("/topic", "/queue");
+            ClusterFanout fanout = clusterFanout.getIfAvailable();
+            if (fanout != null) {
+                registry.configureBrokerChannel().interceptors(fanout);
+            }
+        }
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // Xử lý khung từ client theo làn băm từ roomId (xem RoomLaneExecutor)
+        registration.executor(roomLaneExecutor);
+        // Gắn Principal từ khung CONNECT (chạy trên luồng nhận, trước khi khung vào làn), bỏ khung vượt giới hạn lưu lượng
+        // trước khi xếp hàng; đo thời gian xử lý trên luồng làn
+        registration.interceptors(stompPrincipalInterceptor, cborWireFormat.inboundInterceptor(),
+                stompFlowControl.inboundInterceptor(), chatMetrics.inboundInterceptor());
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        // Bỏ sự kiện tạm thời gửi tới phiên đang nhận chậm, chuyển khung JSON sang CBOR cho các phiên đã chọn CBOR,
+        // sau đó mới đếm số khung / số byte gửi đi
+        registration.interceptors(stompFlowControl.outboundInterceptor(), cborWireFormat.outboundInterceptor(),
+                chatMetrics.outboundInterceptor());
+        if (virtualThreads) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("ws-outbound-");
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(outboundVirtualConcurrencyLimit);
+            registration.executor(executor);
+            return;
+        }
+        registration.taskExecutor()
+                .corePoolSize(outboundThreads)
+                .maxPoolSize(outboundThreads)
+                .queueCapacity(outboundQueueCapacity);
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // JSON (bỏ trường null) là mặc định; CBOR chỉ khi khung gửi lên có content-type CBOR.
+        // Đặt lên đầu danh sách: Spring Boot cũng thêm bộ chuyển đổi JSON của nó qua một configurer khác
+        messageConverters.addAll(0, List.of(new StringMessageConverter(), new ByteArrayMessageConverter(),
+                cborWireFormat.cborConverter(), cborWireFormat.jsonConverter()));
+        return false;
     }
 
     @Override
     public void configureWebSocketTransport(WebSocketTransportRegistration registry) {
-        // Tăng giới hạn kích thước tin nhắn lên 50MB (để thoải mái gửi ảnh chất lượng cao)
-        registry.setMessageSizeLimit(50 * 1024 * 1024); 
-        registry.setSendBufferSizeLimit(50 * 1024 * 1024);
-        registry.setSendTimeLimit(20000); // Tăng thời gian gửi tối đa lên 20 giây
+        // Ảnh được tải lên qua HTTP (/api/blobs), khung STOMP chỉ chứa đường dẫn nên giới hạn ở mức KB
+        registry.setMessageSizeLimit(64 * 1024);
+        registry.setSendBufferSizeLimit(512 * 1024);
+        registry.setSendTimeLimit(10000);
+        // Đo thời gian ghi xuống socket của từng phiên để phát hiện người nhận chậm (StompFlowControl)
+        registry.addDecoratorFactory(stompFlowControl::decorate);
     }
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package com.chatapp.realtime;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// ?token= chỉ được nhận ở ảnh tin nhắn cũ (thẻ <img>), mọi API khác phải gửi header Bearer
+class AuthTokenInterceptorTest {
+
+    private final AuthTokenService tokens = mock(AuthTokenService.class);
+    private final AuthTokenInterceptor interceptor = new AuthTokenInterceptor(tokens, true);
+
+    @Test
+    void queryTokenIsAcceptedOnlyOnMessageImages() throws IOException {
+        when(tokens.verify(anyString())).thenReturn(Optional.empty());
+        when(tokens.verify("t-alice")).thenReturn(Optional.of("alice"));
+
+        MockHttpServletRequest image = get("/api/messages/single/42/image");
+        image.setParameter("token", "t-alice");
+        assertThat(interceptor.preHandle(image, new MockHttpServletResponse(), null)).isTrue();
+        assertThat(image.getAttribute(AuthTokenInterceptor.AUTH_USER)).isEqualTo("alice");
+
+        MockHttpServletRequest history = get("/api/messages/room-1");
+        history.setParameter("token", "t-alice");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertThat(interceptor.preHandle(history, response, null)).isFalse();
+        assertThat(response.getStatus()).isEqualTo(401);
+
+        MockHttpServletRequest header = get("/api/messages/room-1");
+        header.addHeader(HttpHeaders.AUTHORIZATION, "Bearer t-alice");
+        assertThat(interceptor.preHandle(header, new MockHttpServletResponse(), null)).isTrue();
+    }
+
+    @Test
+    void queryTokenMatchesThePathBelowTheContextPath() {
+        MockHttpServletRequest request = get("/chat/api/messages/single/7/image");
+        request.setContextPath("/chat");
+        assertThat(AuthTokenInterceptor.acceptsQueryToken(request)).isTrue();
+
+        assertThat(AuthTokenInterceptor.acceptsQueryToken(get("/api/messages/single/7/image/extra"))).isFalse();
+        MockHttpServletRequest post = new MockHttpServletRequest("POST", "/api/messages/single/7/image");
+        assertThat(AuthTokenInterceptor.acceptsQueryToken(post)).isFalse();
+    }
+
+    private static MockHttpServletRequest get(String uri) {
+        return new MockHttpServletRequest("GET", uri);
+    }
+}
@@ -0,0 +1,98 @@
+package com.chatapp.realtime;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Token HMAC không trạng thái: hợp lệ tới khi hết hạn, sai chữ ký / đổi mật khẩu / sai bí mật đều bị từ chối
+class AuthTokenServiceTest {
+
+    private final Map<String, User> users = new HashMap<>();
+    private final UserProfileCache profiles = mock(UserProfileCache.class);
+    private final AuthTokenService tokens = new AuthTokenService(profiles, "bí-mật-dùng-cho-test", 60);
+
+    @BeforeEach
+    void users() {
+        when(profiles.find(anyString())).thenAnswer(inv -> Optional.ofNullable(users.get(inv.<String>getArgument(0))));
+        save("alice", "$2a$10$hash-cua-alice");
+    }
+
+    @Test
+    void issuedTokenVerifiesToItsUsername() {
+        assertThat(tokens.verify(tokens.issue(users.get("alice")))).contains("alice");
+
+        // Username chứa '|' vẫn tách đúng (2 trường cuối được tách từ phải sang)
+        User piped = save("a|b|c", "$2a$10$hash-khac");
+        assertThat(tokens.verify(tokens.issue(piped))).contains("a|b|c");
+    }
+
+    @Test
+    void tamperedOrForeignTokensAreRejected() {
+        String token = tokens.issue(users.get("alice"));
+        int dot = token.indexOf('.');
+        save("mallory", "$2a$10$hash-cua-alice");
+        String forgedPayload = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                new String(Base64.getUrlDecoder().decode(token.substring(0, dot)), StandardCharsets.UTF_8)
+                        .replace("alice", "mallory").getBytes(StandardCharsets.UTF_8));
+
+        assertThat(tokens.verify(forgedPayload + token.substring(dot))).isEmpty();
+        assertThat(tokens.verify(token.substring(0, token.length() - 2) + "AA")).isEmpty();
+        assertThat(new AuthTokenService(profiles, "bí-mật-khác", 60).verify(token)).isEmpty();
+        assertThat(tokens.verify(null)).isEmpty();
+        assertThat(tokens.verify("")).isEmpty();
+        assertThat(tokens.verify("không-có-dấu-chấm")).isEmpty();
+        assertThat(tokens.verify("!!!.???")).isEmpty();
+    }
+
+    @Test
+    void expiredTokenIsRejected() {
+        AuthTokenService expired = new AuthTokenService(profiles, "bí-mật-dùng-cho-test", -1);
+        String token = expired.issue(users.get("alice"));
+
+        assertThat(expired.verify(token)).isEmpty();
+    }
+
+    @Test
+    void changingPasswordOrDeletingUserInvalidatesOldTokens() {
+        String token = tokens.issue(users.get("alice"));
+
+        save("alice", "$2a$10$hash-moi");
+        assertThat(tokens.verify(token)).isEmpty();
+        assertThat(tokens.verify(tokens.issue(users.get("alice")))).contains("alice");
+
+        users.remove("alice");
+        assertThat(tokens.verify(token)).isEmpty();
+    }
+
+    @Test
+    void randomSecretWhenNoneConfigured() {
+        String token = new AuthTokenService(profiles, "", 60).issue(users.get("alice"));
+
+        assertThat(new AuthTokenService(profiles, " ", 60).verify(token)).isEmpty();
+    }
+
+    @Test
+    void bearerExtractsTokenFromAuthorizationHeader() {
+        assertThat(AuthTokenService.bearer("Bearer abc.def")).isEqualTo("abc.def");
+        assertThat(AuthTokenService.bearer("bearer  abc.def ")).isEqualTo("abc.def");
+        assertThat(AuthTokenService.bearer("Basic YWxpY2U6cHc=")).isNull();
+        assertThat(AuthTokenService.bearer("Bearer   ")).isNull();
+        assertThat(AuthTokenService.bearer(null)).isNull();
+    }
+
+    private User save(String username, String passwordHash) {
+        User user = new User(null, username, passwordHash, username, null, "OFFLINE", LocalDateTime.now());
+        users.put(username, user);
+        return user;
+    }
+}
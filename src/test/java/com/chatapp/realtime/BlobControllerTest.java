@@ -0,0 +1,186 @@
+package com.chatapp.realtime;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Kho blob trên thư mục tạm (bảng blobs giả lập bằng Map) và API tải xuống: nhận dạng loại ảnh, ETag/304, Range/206/416
+class BlobControllerTest {
+
+    private static final byte[] PNG = concat(new byte[]{(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A},
+            "phần còn lại của ảnh".getBytes(StandardCharsets.UTF_8));
+
+    @TempDir
+    Path dir;
+
+    private final Map<String, StoredBlob> rows = new HashMap<>();
+    private BlobStore blobStore;
+    private BlobController controller;
+
+    @BeforeEach
+    void setUp() {
+        StoredBlobRepository repository = mock(StoredBlobRepository.class);
+        when(repository.findById(anyString())).thenAnswer(inv -> Optional.ofNullable(rows.get(inv.<String>getArgument(0))));
+        when(repository.save(any(StoredBlob.class))).thenAnswer(inv -> {
+            StoredBlob blob = inv.getArgument(0);
+            rows.put(blob.getSha256(), blob);
+            return blob;
+        });
+        blobStore = new BlobStore(repository, dir.toString(), 1024);
+        controller = new BlobController(blobStore);
+    }
+
+    @Test
+    void parseRangeAcceptsSingleRangeForms() {
+        assertThat(BlobController.parseRange("bytes=0-9", 100)).containsExactly(0, 9);
+        assertThat(BlobController.parseRange("bytes=90-", 100)).containsExactly(90, 99);
+        assertThat(BlobController.parseRange("bytes=-10", 100)).containsExactly(90, 99);
+        // Vượt quá cuối file: cắt về byte cuối; hậu tố dài hơn file: cả file
+        assertThat(BlobController.parseRange("bytes=50-500", 100)).containsExactly(50, 99);
+        assertThat(BlobController.parseRange("bytes=-500", 100)).containsExactly(0, 99);
+    }
+
+    @Test
+    void parseRangeMarksOnlyRangesPastTheEndAsUnsatisfiable() {
+        assertThat(BlobController.parseRange("bytes=100-", 100)).isSameAs(BlobController.UNSATISFIABLE);
+        assertThat(BlobController.parseRange("bytes=150-200", 100)).isSameAs(BlobController.UNSATISFIABLE);
+        assertThat(BlobController.parseRange("bytes=-0", 100)).isSameAs(BlobController.UNSATISFIABLE);
+        assertThat(BlobController.parseRange("bytes=0-", 0)).isSameAs(BlobController.UNSATISFIABLE);
+    }
+
+    @Test
+    void parseRangeIgnoresMultiRangeAndMalformedHeaders() {
+        // null = bỏ qua header, trả cả file 200
+        assertThat(BlobController.parseRange("bytes=20-10", 100)).isNull();
+        assertThat(BlobController.parseRange("bytes=0-1,5-6", 100)).isNull();
+        assertThat(BlobController.parseRange("items=0-1", 100)).isNull();
+        assertThat(BlobController.parseRange("bytes=a-b", 100)).isNull();
+        assertThat(BlobController.parseRange("bytes=5", 100)).isNull();
+    }
+
+    @Test
+    void sniffsRasterTypesFromContentOnly() {
+        assertThat(BlobStore.sniffImageType(PNG)).isEqualTo("image/png");
+        assertThat(BlobStore.sniffImageType(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 0})).isEqualTo("image/jpeg");
+        assertThat(BlobStore.sniffImageType("GIF89a".getBytes(StandardCharsets.US_ASCII))).isEqualTo("image/gif");
+        assertThat(BlobStore.sniffImageType("RIFF\0\0\0\0WEBP".getBytes(StandardCharsets.US_ASCII))).isEqualTo("image/webp");
+        assertThat(BlobStore.sniffImageType("<svg xmlns=".getBytes(StandardCharsets.US_ASCII))).isNull();
+        assertThat(BlobStore.sniffImageType(new byte[0])).isNull();
+        assertThat(BlobStore.isRasterType("IMAGE/PNG")).isTrue();
+        assertThat(BlobStore.isRasterType("image/svg+xml")).isFalse();
+    }
+
+    @Test
+    void storeKeepsSniffedTypeAndRejectsNonRasterOrOversizedUploads() throws IOException {
+        // Client khai image/gif nhưng nội dung là PNG: loại lưu lại là loại đọc từ nội dung
+        StoredBlob blob = blobStore.store(new ByteArrayInputStream(PNG), "image/gif");
+        assertThat(blob.getContentType()).isEqualTo("image/png");
+        assertThat(blob.getSize()).isEqualTo(PNG.length);
+        assertThat(blobStore.store(new ByteArrayInputStream(PNG), "image/png").getSha256()).isEqualTo(blob.getSha256());
+
+        assertThatThrownBy(() -> blobStore.store(new ByteArrayInputStream("<svg/>".getBytes(StandardCharsets.UTF_8)), "image/svg+xml"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> blobStore.store(new ByteArrayInputStream(concat(PNG, new byte[2048])), "image/png"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void downloadServesWholeFileWithImmutableEtag() throws IOException {
+        String key = blobStore.store(new ByteArrayInputStream(PNG), "image/png").getSha256();
+
+        MockHttpServletResponse response = download(key, Map.of());
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsByteArray()).isEqualTo(PNG);
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo("\"" + key + "\"");
+        assertThat(response.getHeader(HttpHeaders.CONTENT_DISPOSITION)).isEqualTo("inline");
+        assertThat(response.getHeader(BlobStore.NOSNIFF_HEADER)).isEqualTo(BlobStore.NOSNIFF);
+    }
+
+    @Test
+    void downloadAnswers304WhenEtagMatches() throws IOException {
+        String key = blobStore.store(new ByteArrayInputStream(PNG), "image/png").getSha256();
+
+        MockHttpServletResponse response = download(key, Map.of(HttpHeaders.IF_NONE_MATCH, "\"other\", \"" + key + "\""));
+
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    void downloadServesRequestedRangeAndIgnoresRangeWhenIfRangeIsStale() throws IOException {
+        String key = blobStore.store(new ByteArrayInputStream(PNG), "image/png").getSha256();
+
+        MockHttpServletResponse partial = download(key, Map.of(HttpHeaders.RANGE, "bytes=1-3", HttpHeaders.IF_RANGE, "\"" + key + "\""));
+        assertThat(partial.getStatus()).isEqualTo(206);
+        assertThat(partial.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 1-3/" + PNG.length);
+        assertThat(partial.getContentAsByteArray()).isEqualTo("PNG".getBytes(StandardCharsets.US_ASCII));
+
+        MockHttpServletResponse whole = download(key, Map.of(HttpHeaders.RANGE, "bytes=1-3", HttpHeaders.IF_RANGE, "\"stale\""));
+        assertThat(whole.getStatus()).isEqualTo(200);
+        assertThat(whole.getContentAsByteArray()).isEqualTo(PNG);
+
+        MockHttpServletResponse unsatisfiable = download(key, Map.of(HttpHeaders.RANGE, "bytes=" + PNG.length + "-"));
+        assertThat(unsatisfiable.getStatus()).isEqualTo(416);
+        assertThat(unsatisfiable.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */" + PNG.length);
+
+        // Nhiều khoảng / sai cú pháp: bỏ qua Range, trả cả file
+        MockHttpServletResponse multi = download(key, Map.of(HttpHeaders.RANGE, "bytes=0-1,4-5"));
+        assertThat(multi.getStatus()).isEqualTo(200);
+        assertThat(multi.getHeader(HttpHeaders.CONTENT_RANGE)).isNull();
+        assertThat(multi.getContentAsByteArray()).isEqualTo(PNG);
+    }
+
+    @Test
+    void downloadUsesSendfileWhenConnectorSupportsIt() throws IOException {
+        String key = blobStore.store(new ByteArrayInputStream(PNG), "image/png").getSha256();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/blobs/" + key);
+        request.addHeader(HttpHeaders.RANGE, "bytes=-4");
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        controller.download(key, request, response);
+
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.start")).isEqualTo((long) PNG.length - 4);
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.end")).isEqualTo((long) PNG.length);
+    }
+
+    @Test
+    void downloadOfUnknownOrInvalidKeyIs404() throws IOException {
+        assertThat(download("a".repeat(64), Map.of()).getStatus()).isEqualTo(404);
+        assertThat(download("../../etc/passwd", Map.of()).getStatus()).isEqualTo(404);
+    }
+
+    private MockHttpServletResponse download(String key, Map<String, String> headers) throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/blobs/" + key);
+        headers.forEach(request::addHeader);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.download(key, request, response);
+        return response;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] out = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, out, a.length, b.length);
+        return out;
+    }
+}
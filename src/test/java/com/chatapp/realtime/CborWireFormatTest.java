@@ -0,0 +1,122 @@
+package com.chatapp.realtime;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Chọn định dạng khung theo phiên: CBOR chỉ cho phiên WebSocket thuần có "accept: application/cbor" trong CONNECT
+class CborWireFormatTest {
+
+    private static final byte[] JSON = "{\"roomId\":\"room-1\",\"content\":\"xin chào\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final CborWireFormat wireFormat = new CborWireFormat(new Jackson2ObjectMapperBuilder());
+
+    @Test
+    void isCborMatchesCodecParameterNotPlainOctetStream() {
+        assertThat(CborWireFormat.isCbor(CborWireFormat.CBOR)).isTrue();
+        assertThat(CborWireFormat.isCbor(MimeTypeUtils.parseMimeType("application/octet-stream;codec=cbor"))).isTrue();
+        assertThat(CborWireFormat.isCbor(MimeTypeUtils.APPLICATION_OCTET_STREAM)).isFalse();
+        assertThat(CborWireFormat.isCbor(MimeTypeUtils.parseMimeType("application/octet-stream;codec=gzip"))).isFalse();
+        assertThat(CborWireFormat.isCbor(MimeTypeUtils.APPLICATION_JSON)).isFalse();
+        assertThat(CborWireFormat.isCbor(null)).isFalse();
+    }
+
+    @Test
+    void rawWebSocketSessionAskingForCborReceivesTranscodedFrames() throws IOException {
+        connect("s1", "/ws/websocket", CborWireFormat.CBOR.toString());
+
+        Message<?> out = send("s1", JSON);
+
+        assertThat(SimpMessageHeaderAccessor.wrap(out).getContentType()).isEqualTo(CborWireFormat.CBOR_FRAME);
+        JsonNode decoded = new ObjectMapper(new CBORFactory()).readTree((byte[]) out.getPayload());
+        assertThat(decoded.path("content").asText()).isEqualTo("xin chào");
+    }
+
+    @Test
+    void sessionsWithoutCborStayOnJson() {
+        connect("json", "/ws/websocket", null);
+        connect("sockjs", "/ws/123/abc/xhr_streaming", CborWireFormat.CBOR.toString()); // SockJS chỉ truyền văn bản
+
+        assertThat(send("json", JSON).getPayload()).isSameAs(JSON);
+        assertThat(send("sockjs", JSON).getPayload()).isSameAs(JSON);
+    }
+
+    @Test
+    void broadcastPayloadIsTranscodedOnceForAllCborSessions() {
+        connect("a", "/ws/websocket", CborWireFormat.CBOR.toString());
+        connect("b", "/ws/websocket", CborWireFormat.CBOR.toString());
+
+        // Broker dùng chung một mảng byte cho mọi subscriber -> cùng một bản CBOR
+        assertThat(send("a", JSON).getPayload()).isSameAs(send("b", JSON).getPayload());
+    }
+
+    @Test
+    void disconnectForgetsCborChoice() {
+        connect("s1", "/ws/websocket", CborWireFormat.CBOR.toString());
+        Message<byte[]> close = MessageBuilder.createMessage(new byte[0], SimpMessageHeaderAccessor.create().getMessageHeaders());
+        wireFormat.onDisconnect(new SessionDisconnectEvent(this, close, "s1", CloseStatus.NORMAL));
+
+        assertThat(send("s1", JSON).getPayload()).isSameAs(JSON);
+    }
+
+    @Test
+    void cborConverterReadsOnlyCborFrames() {
+        MessageConverter converter = wireFormat.cborConverter();
+        byte[] cbor = (byte[]) converter.toMessage(Map.of("roomId", "room-1"),
+                headers(CborWireFormat.CBOR_FRAME)).getPayload();
+
+        assertThat(converter.fromMessage(MessageBuilder.createMessage(cbor, headers(CborWireFormat.CBOR_FRAME)), Map.class))
+                .isEqualTo(Map.of("roomId", "room-1"));
+        assertThat(converter.fromMessage(MessageBuilder.createMessage(cbor, headers(MimeTypeUtils.APPLICATION_OCTET_STREAM)), Map.class))
+                .isNull();
+    }
+
+    private void connect(String sessionId, String path, String accept) {
+        Map<String, Object> attributes = new HashMap<>();
+        wireFormat.beforeHandshake(new ServletServerHttpRequest(new MockHttpServletRequest("GET", path)),
+                new ServletServerHttpResponse(new MockHttpServletResponse()), null, attributes);
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setSessionId(sessionId);
+        accessor.setSessionAttributes(attributes);
+        if (accept != null) accessor.addNativeHeader(CborWireFormat.ACCEPT_HEADER, accept);
+        wireFormat.inboundInterceptor().preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), null);
+    }
+
+    private Message<?> send(String sessionId, byte[] payload) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+        return wireFormat.outboundInterceptor().preSend(MessageBuilder.createMessage(payload, accessor.getMessageHeaders()), null);
+    }
+
+    private static MessageHeaders headers(MimeType contentType) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(contentType);
+        return accessor.getMessageHeaders();
+    }
+}
@@ -0,0 +1,537 @@
+package com.chatapp.realtime;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.env.Environment;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.WebSocketClient;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Kiểm thử tải đầu-cuối: mở N phiên STOMP (WebSocket thuần hoặc SockJS) vào M phòng trên ứng dụng thật (cổng ngẫu nhiên, H2),
+// mỗi phiên gửi hỗn hợp gửi tin / đang soạn / đã xem / thả cảm xúc với tần suất cố định,
+// đo độ trễ từ lúc gửi tới lúc từng thành viên trong phòng nhận được (HdrHistogram), thông lượng và tỉ lệ lỗi.
+// Không chạy cùng mvn test thường: mvn -P load-test test -Dload.clients=... (xem profile load-test trong pom.xml)
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("loadtest")
+class ChatLoadTest {
+
+    private static final String LOAD_PREFIX = "load:";
+    private static final String[] EMOJIS = {"👍", "❤️", "😂", "😮"};
+    private static final String[] TEXTS = {
+            "Tối nay đi ăn phở không?", "Ok, 7h gặp ở quán cà phê nhé 👍", "Báo cáo tuần này xong chưa anh?",
+            "Trời mưa to quá, nhớ mang áo mưa", "Chúc mừng sinh nhật bạn nha 🎂", "Để mình xem lại rồi trả lời sau"
+    };
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RoomService roomService;
+
+    @Test
+    void run() throws Exception {
+        LoadConfig config = LoadConfig.fromSystemProperties();
+        LoadRun run = new LoadRun(config);
+        run.createRooms();
+        run.connectAll();
+        run.drive();
+        run.disconnectAll();
+
+        String report = run.report();
+        System.out.println(report);
+        run.writeResults(report);
+
+        assertTrue(run.connected.get() > 0, "Không mở được phiên STOMP nào");
+        assertTrue(run.sent[Action.SEND.ordinal()].sum() == 0 || run.delivered.sum() > 0, "Không nhận được tin nào");
+    }
+
+    // HISTORY: gọi REST trang lịch sử mới nhất (truy vấn JDBC chặn trên luồng Tomcat) - mặc định không có trong mix
+    enum Action {
+        SEND("/app/chat.sendMessage"), TYPING("/app/chat.typing"), READ("/app/chat.read"), REACT("/app/chat.react"), HISTORY(null);
+
+        final String destination;
+
+        Action(String destination) {
+            this.destination = destination;
+        }
+    }
+
+    // Cấu hình từ -Dload.* (mvn truyền xuống JVM chạy test)
+    record LoadConfig(int clients, int rooms, int durationSeconds, int warmupSeconds, int drainSeconds,
+                      double ratePerClient, int[] mix, String transport, int connectConcurrency, int driverThreads) {
+
+        static LoadConfig fromSystemProperties() {
+            return new LoadConfig(
+                    Integer.getInteger("load.clients", 200),
+                    Integer.getInteger("load.rooms", 100),
+                    Integer.getInteger("load.duration-seconds", 20),
+                    Integer.getInteger("load.warmup-seconds", 10),
+                    Integer.getInteger("load.drain-seconds", 3),
+                    Double.parseDouble(System.getProperty("load.rate-per-client", "1.0")),
+                    parseMix(System.getProperty("load.mix", "send=60,typing=30,read=8,react=2")),
+                    System.getProperty("load.transport", "websocket"),
+                    Integer.getInteger("load.connect-concurrency", 50),
+                    Integer.getInteger("load.driver-threads", Math.max(4, Runtime.getRuntime().availableProcessors())));
+        }
+
+        // "send=60,typing=30,read=8,react=2" -> trọng số theo thứ tự Action
+        private static int[] parseMix(String spec) {
+            int[] weights = new int[Action.values().length];
+            for (String part : spec.split(",")) {
+                String[] kv = part.trim().split("=");
+                weights[Action.valueOf(kv[0].trim().toUpperCase()).ordinal()] = Integer.parseInt(kv[1].trim());
+            }
+            return weights;
+        }
+
+        Action pick() {
+            int total = 0;
+            for (int w : mix) total += w;
+            int r = ThreadLocalRandom.current().nextInt(total);
+            for (Action action : Action.values()) {
+                r -= mix[action.ordinal()];
+                if (r < 0) return action;
+            }
+            return Action.SEND;
+        }
+    }
+
+    // Một thành viên phòng = một phiên STOMP
+    static final class Client {
+        final int index;
+        final String username;
+        final Room room;
+        volatile StompSession session;
+        volatile long lastMessageId; // Tin mới nhất đã nhận trong phòng (để gửi đã xem / thả cảm xúc)
+
+        Client(int index, String username, Room room) {
+            this.index = index;
+            this.username = username;
+            this.room = room;
+        }
+    }
+
+    static final class Room {
+        String roomId; // Phòng nhiều người: đổi thành khóa nhóm (group-<id>) sau khi tạo trên server
+        final List<Client> members = new ArrayList<>();
+        final AtomicInteger connected = new AtomicInteger();
+
+        Room(String roomId) {
+            this.roomId = roomId;
+        }
+    }
+
+    final class LoadRun {
+        final LoadConfig config;
+        final List<Client> clients = new ArrayList<>();
+        final List<Room> rooms = new ArrayList<>();
+        final WebSocketStompClient stompClient;
+
+        final AtomicInteger connected = new AtomicInteger();
+        final LongAdder connectFailures = new LongAdder();
+        final LongAdder transportErrors = new LongAdder();
+        final LongAdder errorFrames = new LongAdder();
+        final LongAdder handlerErrors = new LongAdder();
+        final LongAdder[] sent = newAdders();
+        final LongAdder[] sendErrors = newAdders();
+        final LongAdder expectedDeliveries = new LongAdder();
+        final LongAdder delivered = new LongAdder();
+        final Map<String, LongAdder> received = new HashMap<>();
+
+        // Độ trễ tính bằng nano giây, tối đa 1 phút, 3 chữ số có nghĩa
+        final Recorder deliveryLatency = new Recorder(TimeUnit.MINUTES.toNanos(1), 3);
+        final Recorder connectLatency = new Recorder(TimeUnit.MINUTES.toNanos(1), 3);
+        final Recorder historyLatency = new Recorder(TimeUnit.MINUTES.toNanos(1), 3);
+        Histogram deliveryHistogram;
+        Histogram connectHistogram;
+        Histogram historyHistogram;
+        final HttpClient httpClient = HttpClient.newHttpClient();
+
+        volatile long measureFrom = Long.MAX_VALUE; // Chỉ tính tin gửi sau khi khởi động xong
+        volatile long measureUntil = Long.MAX_VALUE;
+        long measuredNanos;
+        volatile boolean closing;
+
+        LoadRun(LoadConfig config) {
+            this.config = config;
+            for (String type : new String[]{"CHAT", "TYPING", "READ", "REACT", "OTHER"}) {
+                received.put(type, new LongAdder());
+            }
+            // Chia đều người dùng vào phòng; phòng 2 người đặt tên kiểu 1-1 "user1_user2" như ứng dụng thật
+            List<List<Integer>> membersByRoom = new ArrayList<>();
+            for (int r = 0; r < config.rooms(); r++) membersByRoom.add(new ArrayList<>());
+            for (int i = 0; i < config.clients(); i++) membersByRoom.get(i % config.rooms()).add(i);
+            for (int r = 0; r < config.rooms(); r++) {
+                List<Integer> members = membersByRoom.get(r);
+                List<String> usernames = new ArrayList<>();
+                for (int k = 0; k < members.size(); k++) usernames.add("load" + r + "u" + k);
+                Room room = new Room(usernames.size() == 2 ? String.join("_", usernames) : "load-room-" + r);
+                rooms.add(room);
+                for (int k = 0; k < members.size(); k++) {
+                    Client client = new Client(members.get(k), usernames.get(k), room);
+                    room.members.add(client);
+                    clients.add(client);
+                }
+            }
+
+            WebSocketClient webSocketClient = new StandardWebSocketClient();
+            if ("sockjs".equals(config.transport())) {
+                webSocketClient = new SockJsClient(List.of(new WebSocketTransport(webSocketClient)));
+            }
+            stompClient = new WebSocketStompClient(webSocketClient);
+            stompClient.setDefaultHeartbeat(new long[]{0, 0});
+            stompClient.setInboundMessageSizeLimit(1024 * 1024);
+        }
+
+        private static LongAdder[] newAdders() {
+            LongAdder[] adders = new LongAdder[Action.values().length];
+            for (int i = 0; i < adders.length; i++) adders[i] = new LongAdder();
+            return adders;
+        }
+
+        // Chỉ thành viên mới gửi được vào phòng: tạo user, phòng 1-1 tự tạo ở tin đầu tiên, phòng nhiều người tạo thành nhóm
+        void createRooms() {
+            List<User> users = new ArrayList<>();
+            for (Client client : clients) {
+                users.add(new User(null, client.username, "load", client.username, null, "OFFLINE", LocalDateTime.now()));
+            }
+            userRepository.saveAll(users);
+            for (Room room : rooms) {
+                if (room.members.size() == 2 || room.members.isEmpty()) continue;
+                List<String> usernames = room.members.stream().map(c -> c.username).toList();
+                room.roomId = roomService.createGroup(usernames.get(0), room.roomId, usernames).roomKey();
+            }
+        }
+
+        // Mở phiên theo lô (tối đa connect-concurrency phiên đang bắt tay cùng lúc) để tìm ngưỡng số kết nối
+        void connectAll() throws InterruptedException {
+            String url = "sockjs".equals(config.transport())
+                    ? "http://localhost:" + port + "/ws"
+                    : "ws://localhost:" + port + "/ws/websocket";
+            Semaphore permits = new Semaphore(config.connectConcurrency());
+            List<CompletableFuture<StompSession>> futures = new ArrayList<>();
+            for (Client client : clients) {
+                permits.acquire();
+                long start = System.nanoTime();
+                StompHeaders connectHeaders = new StompHeaders();
+                connectHeaders.add("username", client.username);
+                CompletableFuture<StompSession> future = stompClient.connectAsync(url, new WebSocketHttpHeaders(), connectHeaders, new SessionHandler(client));
+                futures.add(future);
+                future.whenComplete((session, error) -> {
+                    permits.release();
+                    if (error != null) {
+                        connectFailures.increment();
+                        return;
+                    }
+                    connectLatency.recordValue(Math.min(System.nanoTime() - start, TimeUnit.MINUTES.toNanos(1)));
+                    session.subscribe("/topic/" + client.room.roomId, new RoomHandler(client));
+                    client.session = session;
+                    client.room.connected.incrementAndGet();
+                    connected.incrementAndGet();
+                });
+            }
+            try {
+                CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(2, TimeUnit.MINUTES);
+            } catch (Exception e) {
+                // Đã đếm vào connectFailures, vẫn chạy tiếp với các phiên đã mở được
+            }
+            connectHistogram = connectLatency.getIntervalHistogram();
+        }
+
+        void drive() throws InterruptedException {
+            ScheduledExecutorService driver = Executors.newScheduledThreadPool(config.driverThreads(), r -> {
+                Thread thread = new Thread(r, "load-driver");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long periodMicros = Math.max(1, (long) (1_000_000 / config.ratePerClient()));
+            for (Client client : clients) {
+                if (client.session == null) continue;
+                long initialDelay = ThreadLocalRandom.current().nextLong(periodMicros); // Rải đều các phiên trong 1 chu kỳ
+                driver.scheduleAtFixedRate(() -> tick(client), initialDelay, periodMicros, TimeUnit.MICROSECONDS);
+            }
+
+            Thread.sleep(TimeUnit.SECONDS.toMillis(config.warmupSeconds()));
+            deliveryLatency.reset();
+            historyLatency.reset();
+            measureFrom = System.nanoTime();
+            Thread.sleep(TimeUnit.SECONDS.toMillis(config.durationSeconds()));
+            measureUntil = System.nanoTime();
+            measuredNanos = measureUntil - measureFrom;
+            driver.shutdownNow();
+            driver.awaitTermination(5, TimeUnit.SECONDS);
+
+            // Chờ các tin đã gửi trong cửa sổ đo tới nơi
+            Thread.sleep(TimeUnit.SECONDS.toMillis(config.drainSeconds()));
+            deliveryHistogram = deliveryLatency.getIntervalHistogram();
+            historyHistogram = historyLatency.getIntervalHistogram();
+        }
+
+        private void tick(Client client) {
+            Action action = config.pick();
+            long lastId = client.lastMessageId;
+            if ((action == Action.READ || action == Action.REACT) && lastId == 0) action = Action.SEND; // Phòng chưa có tin
+            if (action == Action.HISTORY) {
+                fetchHistory(client);
+                return;
+            }
+            Map<String, Object> payload = new HashMap<>();
+            payload.put("roomId", client.room.roomId);
+            payload.put("sender", client.username);
+            long now = System.nanoTime();
+            switch (action) {
+                case SEND -> {
+                    payload.put("type", "CHAT");
+                    payload.put("content", LOAD_PREFIX + now + ":" + TEXTS[ThreadLocalRandom.current().nextInt(TEXTS.length)]);
+                }
+                case TYPING -> payload.put("type", "TYPING");
+                case READ -> {
+                    payload.put("type", "READ");
+                    payload.put("id", lastId);
+                }
+                case REACT -> {
+                    payload.put("id", lastId);
+                    payload.put("content", EMOJIS[ThreadLocalRandom.current().nextInt(EMOJIS.length)]);
+                }
+            }
+            try {
+                StompHeaders headers = new StompHeaders();
+                headers.setDestination(action.destination);
+                headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+                client.session.send(headers, MAPPER.writeValueAsBytes(payload));
+                if (now >= measureFrom && now < measureUntil) {
+                    sent[action.ordinal()].increment();
+                    if (action == Action.SEND) expectedDeliveries.add(client.room.connected.get());
+                }
+            } catch (Exception e) {
+                if (now >= measureFrom && now < measureUntil) sendErrors[action.ordinal()].increment();
+            }
+        }
+
+        // Gọi bất đồng bộ để luồng điều khiển không bị chặn; độ trễ đo từ lúc gửi tới lúc nhận đủ phản hồi
+        private void fetchHistory(Client client) {
+            long start = System.nanoTime();
+            boolean measured = start >= measureFrom && start < measureUntil;
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/messages/"
+                    + URLEncoder.encode(client.room.roomId, StandardCharsets.UTF_8) + "/page?limit=50&username="
+                    + URLEncoder.encode(client.username, StandardCharsets.UTF_8))).GET().build();
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                if (!measured) return;
+                if (error != null || response.statusCode() != 200) {
+                    sendErrors[Action.HISTORY.ordinal()].increment();
+                    return;
+                }
+                sent[Action.HISTORY.ordinal()].increment();
+                historyLatency.recordValue(Math.min(System.nanoTime() - start, TimeUnit.MINUTES.toNanos(1)));
+            });
+        }
+
+        void disconnectAll() {
+            closing = true;
+            for (Client client : clients) {
+                StompSession session = client.session;
+                if (session != null && session.isConnected()) {
+                    try {
+                        session.disconnect();
+                    } catch (Exception e) {
+                        // Bỏ qua: đang tắt
+                    }
+                }
+            }
+            stompClient.stop();
+        }
+
+        String report() {
+            double seconds = measuredNanos / 1e9;
+            long totalSent = 0;
+            long totalErrors = 0;
+            StringBuilder sb = new StringBuilder();
+            sb.append("=== Kiểm thử tải STOMP ===\n");
+            sb.append(String.format("Chế độ: broker=%s, write-behind=%s, virtual-threads=%s, transport=%s%n",
+                    environment.getProperty("chat.broker.mode", "simple"),
+                    environment.getProperty("chat.persistence.write-behind.enabled", "false"),
+                    environment.getProperty("spring.threads.virtual.enabled", "false"),
+                    config.transport()));
+            sb.append(String.format("Phiên: yêu cầu %d, mở được %d, lỗi %d; phòng %d; đo %.1f s (khởi động %d s)%n",
+                    config.clients(), connected.get(), connectFailures.sum(), config.rooms(), seconds, config.warmupSeconds()));
+            sb.append(String.format("Thời gian kết nối (ms): p50=%.2f p99=%.2f max=%.2f%n",
+                    ms(connectHistogram, 50), ms(connectHistogram, 99), connectHistogram.getMaxValue() / 1e6));
+            for (Action action : Action.values()) {
+                long count = sent[action.ordinal()].sum();
+                long errors = sendErrors[action.ordinal()].sum();
+                totalSent += count;
+                totalErrors += errors;
+                sb.append(String.format("Gửi %-6s: %8d (%.1f/s), lỗi %d%n", action, count, count / seconds, errors));
+            }
+            long expected = expectedDeliveries.sum();
+            long got = delivered.sum();
+            sb.append(String.format("Tổng gửi: %d (%.1f/s), tỉ lệ lỗi gửi %.4f%%%n", totalSent, totalSent / seconds,
+                    totalSent + totalErrors == 0 ? 0.0 : 100.0 * totalErrors / (totalSent + totalErrors)));
+            sb.append(String.format("Tin CHAT tới nơi: %d / %d dự kiến (%.3f%%), %.1f lượt nhận/s%n", got, expected,
+                    expected == 0 ? 100.0 : 100.0 * got / expected, got / seconds));
+            sb.append("Khung nhận theo loại: ").append(receivedSummary()).append('\n');
+            sb.append(String.format("Lỗi kết nối trong khi chạy: %d, khung ERROR từ server: %d, lỗi xử lý khung: %d%n",
+                    transportErrors.sum(), errorFrames.sum(), handlerErrors.sum()));
+            sb.append(String.format("Độ trễ gửi -> nhận (ms): p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f (n=%d)%n",
+                    ms(deliveryHistogram, 50), ms(deliveryHistogram, 90), ms(deliveryHistogram, 99), ms(deliveryHistogram, 99.9),
+                    deliveryHistogram.getMaxValue() / 1e6, deliveryHistogram.getTotalCount()));
+            if (historyHistogram.getTotalCount() > 0) {
+                sb.append(String.format("Độ trễ REST lịch sử (ms): p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f (n=%d)%n",
+                        ms(historyHistogram, 50), ms(historyHistogram, 90), ms(historyHistogram, 99), ms(historyHistogram, 99.9),
+                        historyHistogram.getMaxValue() / 1e6, historyHistogram.getTotalCount()));
+            }
+            return sb.toString();
+        }
+
+        private String receivedSummary() {
+            StringBuilder sb = new StringBuilder();
+            received.forEach((type, count) -> sb.append(type).append('=').append(count.sum()).append(' '));
+            return sb.toString().trim();
+        }
+
+        private static double ms(Histogram histogram, double percentile) {
+            return histogram.getValueAtPercentile(percentile) / 1e6;
+        }
+
+        // target/load-test/<thời điểm>/: summary.txt + phân bố phần trăm dạng .hgrm (xem bằng HdrHistogram plotter)
+        void writeResults(String report) throws IOException {
+            Path dir = Path.of("target", "load-test", LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")));
+            Files.createDirectories(dir);
+            Files.writeString(dir.resolve("summary.txt"), report);
+            try (PrintStream out = new PrintStream(Files.newOutputStream(dir.resolve("delivery-latency.hgrm")))) {
+                deliveryHistogram.outputPercentileDistribution(out, 1e6); // Đơn vị: ms
+            }
+            try (PrintStream out = new PrintStream(Files.newOutputStream(dir.resolve("connect-latency.hgrm")))) {
+                connectHistogram.outputPercentileDistribution(out, 1e6);
+            }
+            if (historyHistogram.getTotalCount() > 0) {
+                try (PrintStream out = new PrintStream(Files.newOutputStream(dir.resolve("history-latency.hgrm")))) {
+                    historyHistogram.outputPercentileDistribution(out, 1e6);
+                }
+            }
+            System.out.println("Kết quả: " + dir.toAbsolutePath());
+            deliveryHistogram.outputPercentileDistribution(System.out, 1e6);
+        }
+
+        private final class SessionHandler extends StompSessionHandlerAdapter {
+            private final Client client;
+
+            SessionHandler(Client client) {
+                this.client = client;
+            }
+
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return byte[].class;
+            }
+
+            // Khung ERROR (server từ chối / giới hạn); khi đã ngắt kết nối server luôn trả "Session closed." -> bỏ qua
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                if (!closing) errorFrames.increment();
+            }
+
+            @Override
+            public void handleException(StompSession session, StompCommand command, StompHeaders headers, byte[] payload, Throwable exception) {
+                if (!closing) handlerErrors.increment();
+            }
+
+            @Override
+            public void handleTransportError(StompSession session, Throwable exception) {
+                if (closing) return;
+                transportErrors.increment();
+                if (client.session == session) client.room.connected.decrementAndGet();
+            }
+        }
+
+        private final class RoomHandler implements StompFrameHandler {
+            private final Client client;
+
+            RoomHandler(Client client) {
+                this.client = client;
+            }
+
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return byte[].class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                long now = System.nanoTime();
+                JsonNode node;
+                try {
+                    node = MAPPER.readTree((byte[]) payload);
+                } catch (IOException e) {
+                    received.get("OTHER").increment();
+                    return;
+                }
+                String type = node.path("type").asText();
+                received.getOrDefault(type, received.get("OTHER")).increment();
+                if (!"CHAT".equals(type)) return;
+
+                long id = node.path("id").asLong();
+                if (id > client.lastMessageId) client.lastMessageId = id;
+                String content = node.path("content").asText();
+                if (!content.startsWith(LOAD_PREFIX)) return;
+                long sentAt = Long.parseLong(content.substring(LOAD_PREFIX.length(), content.indexOf(':', LOAD_PREFIX.length())));
+                if (sentAt < measureFrom || sentAt >= measureUntil) return;
+                delivered.increment();
+                deliveryLatency.recordValue(Math.min(now - sentAt, TimeUnit.MINUTES.toNanos(1)));
+            }
+        }
+    }
+}
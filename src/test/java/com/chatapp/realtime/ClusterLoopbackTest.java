@@ -0,0 +1,148 @@
+package com.chatapp.realtime;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.lang.reflect.Type;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 2 node trong cùng JVM (2 ApplicationContext, chat.broker.mode=cluster, kênh cụm loopback, chung 1 DB H2):
+// tin gửi vào node 2 phải tới được người đăng ký phòng ở node 1, trạng thái Online của node 1 phải thấy được ở node 2.
+class ClusterLoopbackTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static ConfigurableApplicationContext node1;
+    private static ConfigurableApplicationContext node2;
+    private static WebSocketStompClient stompClient;
+    private static String roomId;
+
+    @BeforeAll
+    static void startNodes() {
+        node1 = startNode(1);
+        node2 = startNode(2);
+        node1.getBean(LoopbackClusterBus.class).connect(node2.getBean(LoopbackClusterBus.class));
+
+        node1.getBean(UserRepository.class).saveAll(List.of(
+                new User(null, "alice", "pw", "Alice", null, "OFFLINE", LocalDateTime.now()),
+                new User(null, "bob", "pw", "Bob", null, "OFFLINE", LocalDateTime.now())));
+        roomId = node1.getBean(RoomService.class).createGroup("alice", "cluster", List.of("alice", "bob")).roomKey();
+
+        stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        stompClient.setDefaultHeartbeat(new long[]{0, 0});
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        if (stompClient != null) stompClient.stop();
+        if (node2 != null) node2.close();
+        if (node1 != null) node1.close();
+    }
+
+    // Tham số dòng lệnh (không dùng properties(): đó chỉ là giá trị mặc định, application.properties sẽ đè lên)
+    private static ConfigurableApplicationContext startNode(int nodeId) {
+        return new SpringApplicationBuilder(RealTimeChatAppApplication.class)
+                .profiles("loadtest")
+                .run("--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:cluster-test;MODE=MySQL;DATABASE_TO_LOWER=TRUE;"
+                                + "NON_KEYWORDS=VALUE,TYPE,TIMESTAMP,STATUS;DB_CLOSE_DELAY=-1",
+                        // Node sau không được xóa bảng của node trước
+                        "--spring.jpa.hibernate.ddl-auto=update",
+                        "--chat.broker.mode=cluster",
+                        "--chat.broker.cluster.transport=loopback",
+                        "--chat.id.node-id=" + nodeId,
+                        "--chat.blobs.dir=./target/cluster-test/blobs");
+    }
+
+    @Test
+    void messageSentOnOneNodeReachesSubscriberOnTheOther() throws Exception {
+        StompSession alice = connect(node1, "alice");
+        StompSession bob = connect(node2, "bob");
+        BlockingQueue<JsonNode> received = new LinkedBlockingQueue<>();
+        alice.subscribe("/topic/" + roomId, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return byte[].class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                try {
+                    received.add(MAPPER.readTree((byte[]) payload));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+
+        // SUBSCRIBE được xử lý bất đồng bộ trên làn của node 1 -> gửi lại tới khi có tin tới (hoặc hết giờ)
+        JsonNode chat = null;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        for (int attempt = 0; chat == null && System.nanoTime() < deadline; attempt++) {
+            StompHeaders headers = new StompHeaders();
+            headers.setDestination("/app/chat.sendMessage");
+            headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+            bob.send(headers, MAPPER.writeValueAsBytes(Map.of(
+                    "roomId", roomId, "sender", "bob", "type", "CHAT", "content", "xin chào từ node 2 #" + attempt)));
+            for (JsonNode frame = received.poll(500, TimeUnit.MILLISECONDS); frame != null && chat == null;
+                 frame = received.poll(50, TimeUnit.MILLISECONDS)) {
+                if ("CHAT".equals(frame.path("type").asText())) chat = frame;
+            }
+        }
+
+        assertNotNull(chat, "Tin gửi ở node 2 không tới người đăng ký ở node 1");
+        assertEquals("bob", chat.path("sender").asText());
+        assertEquals(roomId, chat.path("roomId").asText());
+        alice.disconnect();
+        bob.disconnect();
+    }
+
+    @Test
+    void presenceOnOneNodeIsVisibleOnTheOther() throws Exception {
+        PresenceService remote = node2.getBean(PresenceService.class);
+        StompSession alice = connect(node1, "alice");
+        assertTrue(await(() -> remote.isOnline("alice")), "Node 2 không thấy phiên của alice ở node 1");
+
+        alice.disconnect();
+        assertTrue(await(() -> !remote.isOnline("alice")), "Node 2 vẫn thấy alice Online sau khi phiên ở node 1 đóng");
+    }
+
+    private static StompSession connect(ConfigurableApplicationContext node, String username) throws Exception {
+        String url = "ws://localhost:" + node.getEnvironment().getProperty("local.server.port") + "/ws/websocket";
+        StompHeaders connectHeaders = new StompHeaders();
+        connectHeaders.add(PresenceService.USERNAME_HEADER, username);
+        return stompClient.connectAsync(url, new WebSocketHttpHeaders(), connectHeaders, new StompSessionHandlerAdapter() {
+        }).get(10, TimeUnit.SECONDS);
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            if (condition.getAsBoolean()) return true;
+            Thread.sleep(50);
+        }
+        return condition.getAsBoolean();
+    }
+}
@@ -0,0 +1,108 @@
+package com.chatapp.realtime;
+
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Câu UPSERT tóm tắt hội thoại trên H2 chế độ MySQL: từng tin (làn của phòng) và cả lô gộp theo phòng (luồng write-behind)
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("loadtest")
+@TestPropertySource(properties = "spring.datasource.url=jdbc:h2:mem:conversation-summary-test;MODE=MySQL;DATABASE_TO_LOWER=TRUE;"
+        + "NON_KEYWORDS=VALUE,TYPE,TIMESTAMP,STATUS;DB_CLOSE_DELAY=-1")
+class ConversationSummaryServiceTest {
+
+    @Autowired
+    private ConversationSummaryRepository summaryRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private ReadReceiptRepository readReceiptRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private final RoomService roomService = mock(RoomService.class);
+    private ConversationSummaryService service;
+
+    @BeforeEach
+    void rooms() {
+        when(roomService.find(anyString())).thenReturn(Optional.empty());
+        when(roomService.find("alice_bob")).thenReturn(Optional.of(
+                new RoomService.Membership(1, "alice_bob", Room.DIRECT, null, List.of("alice", "bob"))));
+        when(roomService.find("group-2")).thenReturn(Optional.of(
+                new RoomService.Membership(2, "group-2", Room.GROUP, "Nhóm", List.of("alice", "bob", "carol"))));
+        service = new ConversationSummaryService(summaryRepository, messageRepository, readReceiptRepository, roomService, jdbcTemplate);
+    }
+
+    @Test
+    void singleMessageUpdatesEveryMemberAndCountsUnreadForRecipients() {
+        service.onMessageSent(message(10, "alice_bob", "alice", "chào"));
+        service.onMessageSent(message(11, "alice_bob", "alice", "có đó không"));
+
+        assertThat(row("alice", "bob")).extracting(ConversationSummary::getLastMessageId, ConversationSummary::getUnreadCount)
+                .containsExactly(11L, 0);
+        assertThat(row("bob", "alice")).extracting(ConversationSummary::getLastPreview, ConversationSummary::getUnreadCount)
+                .containsExactly("có đó không", 2);
+    }
+
+    @Test
+    void batchWritesOneRowPerMemberWithLatestMessageAndUnreadTotals() {
+        // Lô không theo thứ tự id, xen kẽ 2 phòng và 1 phòng không còn tồn tại
+        service.onMessagesSent(List.of(
+                message(21, "group-2", "bob", "b1"),
+                message(20, "group-2", "alice", "a1"),
+                message(30, "alice_bob", "bob", "riêng"),
+                message(23, "group-2", "carol", "c1"),
+                message(22, "group-2", "alice", "a2"),
+                message(40, "gone", "alice", "?")));
+
+        assertThat(row("alice", "group-2")).extracting(ConversationSummary::getLastMessageId, ConversationSummary::getLastSender,
+                ConversationSummary::getUnreadCount).containsExactly(23L, "carol", 2);
+        assertThat(row("bob", "group-2").getUnreadCount()).isEqualTo(3);
+        assertThat(row("carol", "group-2").getUnreadCount()).isEqualTo(3);
+        assertThat(row("alice", "bob")).extracting(ConversationSummary::getLastPreview, ConversationSummary::getUnreadCount)
+                .containsExactly("riêng", 1);
+        assertThat(summaryRepository.count()).isEqualTo(5);
+
+        // Lô đến sau nhưng chứa tin cũ hơn: chỉ cộng số chưa đọc, không ghi đè tin mới nhất
+        service.onMessagesSent(List.of(message(19, "group-2", "alice", "cũ")));
+        assertThat(row("bob", "group-2")).extracting(ConversationSummary::getLastMessageId, ConversationSummary::getUnreadCount)
+                .containsExactly(23L, 4);
+    }
+
+    private ConversationSummary row(String username, String partner) {
+        entityManager.clear(); // UPSERT đi thẳng qua JDBC
+        return summaryRepository.findByUsernameAndPartner(username, partner).orElseThrow();
+    }
+
+    private static ChatMessage message(long id, String roomId, String sender, String content) {
+        ChatMessage msg = new ChatMessage();
+        msg.setId(id);
+        msg.setRoomId(roomId);
+        msg.setSender(sender);
+        msg.setContent(content);
+        msg.setType("CHAT");
+        msg.setTimestamp(LocalDateTime.now());
+        return msg;
+    }
+}
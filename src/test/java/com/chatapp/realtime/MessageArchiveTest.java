@@ -0,0 +1,151 @@
+package com.chatapp.realtime;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Kho lưu trữ theo tháng trên thư mục tạm: ghi khối, đọc trang hai chiều qua nhiều khối / nhiều tháng, nạp lại chỉ mục,
+// bỏ tháng chưa commit và lọc theo người xem (tin đã gỡ, cảm xúc lấy từ chính segment)
+class MessageArchiveTest {
+
+    private static final YearMonth JAN = YearMonth.of(2024, 1);
+    private static final YearMonth FEB = YearMonth.of(2024, 2);
+
+    @TempDir
+    Path dir;
+
+    private final ChatClearRecordRepository clearRecords = mock(ChatClearRecordRepository.class);
+    private MessageArchive archive;
+
+    @BeforeEach
+    void writeTwoMonths() throws IOException {
+        when(clearRecords.findByUsernameAndRoomId(anyString(), anyString())).thenReturn(Optional.empty());
+        archive = open(true);
+        // room-1: id 1..25 (seq = id) chia khối 10 tin; tháng 1 chứa 1..15, tháng 2 chứa 16..25. room-2: 1 khối ở tháng 2
+        try (MessageArchive.SegmentWriter writer = archive.openSegment(JAN)) {
+            writer.writeChunk("room-1", messages(1, 10, JAN));
+            writer.writeChunk("room-1", messages(11, 15, JAN));
+            writer.commit();
+        }
+        try (MessageArchive.SegmentWriter writer = archive.openSegment(FEB)) {
+            List<MessageArchive.ArchivedMessage> feb = new ArrayList<>(messages(16, 25, FEB));
+            // Chụp lúc lưu trữ: bob gỡ tin 20, alice gỡ tin 19, tin 21 có cảm xúc
+            feb.set(3, feb.get(3).withViewerData(List.of("alice"), null));
+            feb.set(4, feb.get(4).withViewerData(List.of("bob"), null));
+            feb.set(5, feb.get(5).withViewerData(null, Map.of("👍", 2L)));
+            writer.writeChunk("room-1", feb);
+            writer.writeChunk("room-2", messages(100, 102, FEB));
+            writer.writeChunk("room-2", List.of());
+            assertThat(writer.messages()).isEqualTo(13);
+            writer.commit();
+        }
+    }
+
+    @Test
+    void pagesWalkAcrossChunksAndMonthsInBothDirections() {
+        assertThat(ids(archive.pageBefore("room-1", "carol", 18, 5))).containsExactly(17L, 16L, 15L, 14L, 13L);
+        assertThat(ids(archive.pageBefore("room-1", "alice", Long.MAX_VALUE, 3))).containsExactly(25L, 24L, 23L);
+        assertThat(ids(archive.pageAfter("room-1", "alice", 8, 5))).containsExactly(9L, 10L, 11L, 12L, 13L);
+        assertThat(ids(archive.pageAfter("room-1", "carol", 0, 100))).containsExactlyElementsOf(LongStream.rangeClosed(1, 25).boxed().toList());
+        // Con trỏ nằm ngoài khoảng đã lưu trữ
+        assertThat(archive.pageBefore("room-1", "alice", 1, 10)).isEmpty();
+        assertThat(archive.pageAfter("room-1", "alice", 25, 10)).isEmpty();
+        assertThat(archive.pageBefore("unknown", "alice", Long.MAX_VALUE, 10)).isEmpty();
+
+        ChatMessageView view = archive.pageBefore("room-2", "alice", Long.MAX_VALUE, 1).get(0);
+        assertThat(view.getRoomId()).isEqualTo("room-2");
+        assertThat(view.getContent()).isEqualTo("tin 102");
+        assertThat(view.getStatus()).isEqualTo("SENT");
+        assertThat(view.getTimestamp()).isEqualTo(FEB.atDay(1).atStartOfDay().plusMinutes(102));
+    }
+
+    @Test
+    void maxSeqAndMonthsSurviveReloadFromIndexFiles() {
+        MessageArchive reloaded = open(true);
+
+        assertThat(reloaded.isArchived(JAN)).isTrue();
+        assertThat(reloaded.isArchived(FEB)).isTrue();
+        assertThat(reloaded.isArchived(YearMonth.of(2024, 3))).isFalse();
+        assertThat(reloaded.maxSeq("room-1")).isEqualTo(25);
+        assertThat(reloaded.maxSeq("room-2")).isEqualTo(102);
+        assertThat(reloaded.maxSeq("unknown")).isZero();
+        assertThat(ids(reloaded.pageBefore("room-1", "alice", 12, 4))).containsExactly(11L, 10L, 9L, 8L);
+    }
+
+    @Test
+    void uncommittedMonthLeavesNoFilesAndIsNotLoaded() throws IOException {
+        YearMonth march = YearMonth.of(2024, 3);
+        try (MessageArchive.SegmentWriter writer = archive.openSegment(march)) {
+            writer.writeChunk("room-1", messages(26, 30, march));
+        }
+
+        try (Stream<Path> files = Files.list(dir)) {
+            assertThat(files.map(p -> p.getFileName().toString())).noneMatch(name -> name.contains("2024-03"));
+        }
+        assertThat(archive.isArchived(march)).isFalse();
+        assertThat(open(true).maxSeq("room-1")).isEqualTo(25);
+    }
+
+    @Test
+    void clearedAndHiddenMessagesAreFilteredPerViewer() {
+        ChatClearRecord clear = new ChatClearRecord(1L, "bob", "room-1", JAN.atDay(1).atStartOfDay().plusMinutes(12));
+        when(clearRecords.findByUsernameAndRoomId("bob", "room-1")).thenReturn(Optional.of(clear));
+
+        // bob đã xóa đoạn chat tới tin 12 và gỡ tin 20 ở phía mình; alice gỡ tin 19
+        assertThat(ids(archive.pageBefore("room-1", "bob", 22, 100))).containsExactly(21L, 19L, 18L, 17L, 16L, 15L, 14L, 13L);
+        assertThat(ids(archive.pageAfter("room-1", "bob", 0, 3))).containsExactly(13L, 14L, 15L);
+        assertThat(ids(archive.pageBefore("room-1", "alice", 22, 3))).containsExactly(21L, 20L, 18L);
+    }
+
+    @Test
+    void reactionsComeFromTheSegment() {
+        List<ChatMessageView> page = archive.pageAfter("room-1", "alice", 20, 2);
+
+        assertThat(page.get(0).getReactions()).isEqualTo(Map.of("👍", 2L));
+        assertThat(page.get(1).getReactions()).isNull();
+        assertThat(open(true).pageAfter("room-1", "alice", 20, 1).get(0).getReactions()).isEqualTo(Map.of("👍", 2L));
+    }
+
+    @Test
+    void disabledArchiveIgnoresExistingFiles() {
+        MessageArchive disabled = open(false);
+
+        assertThat(disabled.isEnabled()).isFalse();
+        assertThat(disabled.maxSeq("room-1")).isZero();
+        assertThat(disabled.pageBefore("room-1", "alice", Long.MAX_VALUE, 10)).isEmpty();
+    }
+
+    private MessageArchive open(boolean enabled) {
+        return new MessageArchive(clearRecords, new Jackson2ObjectMapperBuilder(), enabled, dir.toString(), 16);
+    }
+
+    private static List<MessageArchive.ArchivedMessage> messages(long fromId, long toId, YearMonth month) {
+        List<MessageArchive.ArchivedMessage> batch = new ArrayList<>();
+        for (long id = fromId; id <= toId; id++) {
+            LocalDateTime at = month.atDay(1).atStartOfDay().plusMinutes(id);
+            batch.add(new MessageArchive.ArchivedMessage(id, id, id % 2 == 0 ? "alice" : "bob", "tin " + id, "CHAT", at, null, null));
+        }
+        return batch;
+    }
+
+    private static List<Long> ids(List<ChatMessageView> page) {
+        return page.stream().map(ChatMessageView::getId).toList();
+    }
+}
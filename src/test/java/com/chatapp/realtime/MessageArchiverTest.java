@@ -0,0 +1,109 @@
+package com.chatapp.realtime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Chuyển tháng nguội sang kho lưu trữ trên H2 chế độ MySQL: tin đã gỡ + cảm xúc đi vào segment,
+// mọi dòng phụ theo message_id của tháng bị xóa cùng chat_messages, tháng nóng giữ nguyên
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("loadtest")
+@TestPropertySource(properties = "spring.datasource.url=jdbc:h2:mem:message-archiver-test;MODE=MySQL;DATABASE_TO_LOWER=TRUE;"
+        + "NON_KEYWORDS=VALUE,TYPE,TIMESTAMP,STATUS;DB_CLOSE_DELAY=-1")
+@Import(MessageSearchIndex.class)
+class MessageArchiverTest {
+
+    private static final List<String> DEPENDENT_TABLES = List.of(
+            "message_search_terms", "message_search_docs", "message_reactions", "message_reaction_counts", "message_hidden");
+
+    @TempDir
+    Path dir;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MessageSearchIndex searchIndex;
+
+    @Autowired
+    private MessageHiddenRepository hiddenRepository;
+
+    @Autowired
+    private MessageReactionRepository reactionRepository;
+
+    @Autowired
+    private MessageReactionCountRepository countRepository;
+
+    private MessageArchiver archiver;
+
+    @AfterEach
+    void stop() {
+        if (archiver != null) archiver.stop();
+    }
+
+    @Test
+    void coldMonthMovesViewerDataIntoSegmentAndDropsDependentRows() {
+        YearMonth cold = YearMonth.now(ZoneOffset.UTC).minusMonths(12);
+        long first = MessageArchiver.firstIdOf(cold);
+        long hot = MessageArchiver.firstIdOf(YearMonth.now(ZoneOffset.UTC)) + 1;
+        for (long id : List.of(first + 1, first + 2, hot)) {
+            insert(id, "phở bò ngon");
+            hiddenRepository.hide(id, "bob");
+            reactionRepository.insertIgnore(id, "alice", "👍");
+            countRepository.increment(id, "👍");
+        }
+
+        ChatClearRecordRepository clearRecords = mock(ChatClearRecordRepository.class);
+        when(clearRecords.findByUsernameAndRoomId(anyString(), anyString())).thenReturn(Optional.empty());
+        MessageArchive archive = new MessageArchive(clearRecords, new Jackson2ObjectMapperBuilder(), true, dir.toString(), 16);
+        archiver = new MessageArchiver(jdbcTemplate, archive, null, hiddenRepository, countRepository,
+                true, 6, 256, false, 3, 3600, 360);
+        archiver.start(); // Lượt đầu hẹn sau 1 giờ: test tự gọi archiveColdMonths
+        archiver.archiveColdMonths();
+
+        assertThat(archive.isArchived(cold)).isTrue();
+        assertThat(jdbcTemplate.queryForList("SELECT id FROM chat_messages", Long.class)).containsExactly(hot);
+        for (String table : DEPENDENT_TABLES) {
+            assertThat(jdbcTemplate.queryForList("SELECT DISTINCT message_id FROM " + table, Long.class)).as(table).containsExactly(hot);
+        }
+
+        assertThat(archive.pageBefore("room-1", "bob", Long.MAX_VALUE, 10)).isEmpty();
+        List<ChatMessageView> alice = archive.pageBefore("room-1", "alice", Long.MAX_VALUE, 10);
+        assertThat(alice).extracting(ChatMessageView::getId).containsExactly(first + 2, first + 1);
+        assertThat(alice).extracting(ChatMessageView::getReactions).containsOnly(Map.of("👍", 1L));
+    }
+
+    private void insert(long id, String content) {
+        ChatMessage msg = new ChatMessage();
+        msg.setId(id);
+        msg.setRoomId("room-1");
+        msg.setSender("alice");
+        msg.setContent(content);
+        msg.setType("CHAT");
+        msg.setTimestamp(LocalDateTime.now());
+        jdbcTemplate.update("INSERT INTO chat_messages (id, room_id, sender, content, type, timestamp, status, seq) "
+                + "VALUES (?, 'room-1', 'alice', ?, 'CHAT', ?, 'SENT', ?)", id, content, msg.getTimestamp(), id);
+        searchIndex.index(msg);
+    }
+}
@@ -0,0 +1,101 @@
+package com.chatapp.realtime;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Tách từ tiếng Việt không dấu và truy vấn qua chỉ mục ngược (H2 chế độ MySQL)
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("loadtest")
+@TestPropertySource(properties = "spring.datasource.url=jdbc:h2:mem:search-index-test;MODE=MySQL;DATABASE_TO_LOWER=TRUE;"
+        + "NON_KEYWORDS=VALUE,TYPE,TIMESTAMP,STATUS;DB_CLOSE_DELAY=-1")
+@Import(MessageSearchIndex.class)
+class MessageSearchIndexTest {
+
+    @Autowired
+    private MessageSearchIndex searchIndex;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Test
+    void normalizeStripsVietnameseDiacriticsAndCase() {
+        assertThat(MessageSearchIndex.normalize("Đường Phố HÀ NỘI")).isEqualTo("duong pho ha noi");
+        assertThat(MessageSearchIndex.normalize("Tiếng Việt: ắ ằ ẳ ẵ ặ")).isEqualTo("tieng viet: a a a a a");
+        assertThat(MessageSearchIndex.normalize(null)).isEmpty();
+    }
+
+    @Test
+    void tokenizeSplitsOnPunctuationAndKeepsOrderAndDuplicates() {
+        assertThat(MessageSearchIndex.tokenize("  Phở, phở... và CÀ-PHÊ 24/7! "))
+                .containsExactly("pho", "pho", "va", "ca", "phe", "24", "7");
+        assertThat(MessageSearchIndex.tokenize("!!! ... ")).isEmpty();
+        assertThat(MessageSearchIndex.tokenize("a".repeat(100))).singleElement().asString().hasSize(64);
+    }
+
+    @Test
+    void selectiveTermPicksFirstLongestToken() {
+        assertThat(MessageSearchIndex.selectiveTerm(List.of("di", "an", "pho", "bun"))).isEqualTo("pho");
+        assertThat(MessageSearchIndex.selectiveTerm(List.of("x"))).isEqualTo("x");
+    }
+
+    @Test
+    void onlyChatMessagesWithContentAreIndexable() {
+        assertThat(MessageSearchIndex.isIndexable(message(1L, "room-1", "CHAT", "xin chào"))).isTrue();
+        assertThat(MessageSearchIndex.isIndexable(message(2L, "room-1", "IMAGE", "/api/blobs/x"))).isFalse();
+        assertThat(MessageSearchIndex.isIndexable(message(3L, "room-1", "CHAT", null))).isFalse();
+        assertThat(MessageSearchIndex.isIndexable(message(null, "room-1", "CHAT", "x"))).isFalse();
+    }
+
+    @Test
+    void searchFindsPhraseWithoutDiacriticsOnlyInGivenRooms() {
+        ChatMessage match = save(message(10L, "room-1", "CHAT", "Tối nay đi ăn PHỞ không?"));
+        save(message(11L, "room-1", "CHAT", "phở bò thì ăn ở đâu")); // có đủ từ nhưng sai thứ tự cụm
+        save(message(12L, "room-2", "CHAT", "tối nay đi ăn phở nhé")); // phòng không được tra
+        save(message(13L, "room-1", "IMAGE", "/api/blobs/an-pho"));
+        searchIndex.indexAll(messageRepository.findAll());
+
+        List<String> tokens = MessageSearchIndex.tokenize("ăn phở");
+        List<ChatMessageView> hits = messageRepository.findSearchHits("alice", List.of("room-1"),
+                MessageSearchIndex.selectiveTerm(tokens) + "%", "%" + String.join(" ", tokens) + "%", Long.MAX_VALUE, Limit.of(10));
+
+        assertThat(hits).extracting(ChatMessageView::getId).containsExactly(match.getId());
+        assertThat(messageRepository.countSearchMatches("alice", List.of("room-1", "room-2"), "pho%", "%an pho%"))
+                .extracting(row -> row[0] + "=" + row[1]).containsExactlyInAnyOrder("room-1=1", "room-2=1");
+    }
+
+    @Test
+    void removedMessageIsNoLongerFound() {
+        save(message(20L, "room-1", "CHAT", "mật khẩu wifi là 123456"));
+        searchIndex.index(messageRepository.findById(20L).orElseThrow());
+        searchIndex.remove(20L);
+
+        assertThat(messageRepository.countSearchMatches("alice", List.of("room-1"), "khau%", "%mat khau%")).isEmpty();
+    }
+
+    private ChatMessage save(ChatMessage msg) {
+        return messageRepository.saveAndFlush(msg);
+    }
+
+    private static ChatMessage message(Long id, String roomId, String type, String content) {
+        ChatMessage msg = new ChatMessage();
+        msg.setId(id);
+        msg.setRoomId(roomId);
+        msg.setSender("bob");
+        msg.setType(type);
+        msg.setContent(content);
+        msg.setTimestamp(LocalDateTime.now());
+        msg.setStatus("SENT");
+        return msg;
+    }
+}
@@ -0,0 +1,142 @@
+package com.chatapp.realtime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Hàng đợi ghi sau trên H2 thật (bảng chat_messages tối giản): lô, fallback từng dòng, flushIfPending và ghi nốt khi tắt
+class MessageWriteBehindQueueTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private MessageWriteBehindQueue queue;
+
+    @BeforeEach
+    void createTable() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:write-behind-" + System.nanoTime() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=VALUE,TYPE,TIMESTAMP,STATUS;DB_CLOSE_DELAY=-1"));
+        jdbcTemplate.execute("CREATE TABLE chat_messages (id BIGINT PRIMARY KEY, room_id VARCHAR(64), sender VARCHAR(64),"
+                + " content VARCHAR(255) NOT NULL, type VARCHAR(16), timestamp TIMESTAMP, status VARCHAR(16), seq BIGINT)");
+    }
+
+    @AfterEach
+    void stopQueue() {
+        if (queue != null) queue.stop();
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void flushWritesQueuedMessagesInBatches() {
+        // Luồng ghi không chạy (chưa start): chỉ flush() mới ghi
+        queue = new MessageWriteBehindQueue(jdbcTemplate, true, 100, 3, 10, 100, false);
+        for (long id = 1; id <= 7; id++) {
+            queue.enqueue(message(id, "nội dung " + id));
+        }
+        assertThat(count()).isZero();
+
+        queue.flush();
+
+        assertThat(count()).isEqualTo(7);
+        assertThat(jdbcTemplate.queryForObject("SELECT seq FROM chat_messages WHERE id = 5", Long.class)).isEqualTo(5L);
+    }
+
+    @Test
+    void failingBatchFallsBackToRowsAndLosesOnlyTheBadRow() {
+        queue = new MessageWriteBehindQueue(jdbcTemplate, true, 100, 10, 10, 100, false);
+        queue.enqueue(message(1, "a"));
+        queue.enqueue(message(2, null)); // vi phạm NOT NULL -> cả lô lỗi
+        queue.enqueue(message(3, "c"));
+
+        queue.flush();
+
+        assertThat(jdbcTemplate.queryForList("SELECT id FROM chat_messages ORDER BY id", Long.class)).containsExactly(1L, 3L);
+        // Dòng hỏng không bị treo lại trong danh sách chờ (nếu còn, flushIfPending sẽ chờ tới 5 giây)
+        long start = System.nanoTime();
+        queue.flushIfPending(2L);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1_000);
+    }
+
+    @Test
+    void writtenListenersSeeOnlyRowsThatReachedTheDatabase() {
+        queue = new MessageWriteBehindQueue(jdbcTemplate, true, 100, 10, 10, 100, false);
+        List<Long> indexed = new CopyOnWriteArrayList<>();
+        queue.onWritten(batch -> {
+            throw new IllegalStateException("lỗi của việc phụ không được làm mất lô");
+        });
+        queue.onWritten(batch -> batch.forEach(m -> indexed.add(m.getId())));
+        queue.enqueue(message(1, "a"));
+        queue.enqueue(message(2, null));
+        queue.enqueue(message(3, "c"));
+        queue.flush();
+        queue.enqueue(message(4, "d"));
+        queue.flush();
+
+        assertThat(indexed).containsExactly(1L, 3L, 4L);
+        assertThat(count()).isEqualTo(3);
+    }
+
+    @Test
+    void flushIfPendingWritesTheMessageBeforeItIsRead() {
+        queue = new MessageWriteBehindQueue(jdbcTemplate, true, 100, 10, 10_000, 100, false);
+        queue.enqueue(message(42, "cần đọc ngay"));
+
+        queue.flushIfPending(42L);
+
+        assertThat(jdbcTemplate.queryForObject("SELECT content FROM chat_messages WHERE id = 42", String.class))
+                .isEqualTo("cần đọc ngay");
+    }
+
+    @Test
+    void flusherThreadWritesWithinIntervalAndStopDrainsTheRest() throws InterruptedException {
+        queue = new MessageWriteBehindQueue(jdbcTemplate, true, 1_000, 50, 20, 100, false);
+        queue.start();
+        queue.enqueue(message(1, "a"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (count() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(count()).isEqualTo(1);
+
+        for (long id = 2; id <= 200; id++) {
+            queue.enqueue(message(id, "m" + id));
+        }
+        queue.stop();
+        assertThat(count()).isEqualTo(200);
+    }
+
+    @Test
+    void fullQueueFlushesOnTheSendingThread() {
+        queue = new MessageWriteBehindQueue(jdbcTemplate, true, 2, 10, 10, 1, false);
+        for (long id = 1; id <= 5; id++) {
+            queue.enqueue(message(id, "m" + id));
+        }
+        // Hàng đợi chỉ chứa 2 tin: phần còn lại đã được ghi đồng bộ thay vì bị bỏ
+        assertThat(count()).isGreaterThanOrEqualTo(3);
+        queue.flush();
+        assertThat(count()).isEqualTo(5);
+    }
+
+    private int count() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM chat_messages", Integer.class);
+    }
+
+    private static ChatMessage message(long id, String content) {
+        ChatMessage msg = new ChatMessage();
+        msg.setId(id);
+        msg.setRoomId("room-1");
+        msg.setSender("alice");
+        msg.setContent(content);
+        msg.setType("CHAT");
+        msg.setTimestamp(LocalDateTime.now());
+        msg.setStatus("SENT");
+        msg.setSeq(id);
+        return msg;
+    }
+}
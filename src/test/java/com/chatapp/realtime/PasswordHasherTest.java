@@ -0,0 +1,99 @@
+package com.chatapp.realtime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// BCrypt trên pool riêng (cost thấp cho nhanh): so khớp, mật khẩu cũ dạng văn bản, băm lại khi tăng cost, pool quá tải
+class PasswordHasherTest {
+
+    private final List<PasswordHasher> hashers = new ArrayList<>();
+
+    @AfterEach
+    void shutdown() {
+        hashers.forEach(PasswordHasher::destroy);
+    }
+
+    @Test
+    void hashedPasswordMatchesOnlyTheOriginal() {
+        PasswordHasher hasher = hasher(4, 2, 8, 5_000);
+        String stored = hasher.hash("mật khẩu đúng");
+
+        assertThat(PasswordHasher.isHashed(stored)).isTrue();
+        assertThat(hasher.verify("mật khẩu đúng", stored)).isEqualTo(PasswordHasher.Result.MATCH);
+        assertThat(hasher.verify("mật khẩu sai", stored)).isEqualTo(PasswordHasher.Result.MISMATCH);
+        assertThat(hasher.verify(null, stored)).isEqualTo(PasswordHasher.Result.MISMATCH);
+        // Người dùng không tồn tại: vẫn so khớp với hash giả, kết quả luôn sai
+        assertThat(hasher.verify("mật khẩu đúng", null)).isEqualTo(PasswordHasher.Result.MISMATCH);
+    }
+
+    @Test
+    void legacyPlainTextPasswordMatchesAndAsksForRehash() {
+        PasswordHasher hasher = hasher(4, 1, 8, 5_000);
+
+        assertThat(PasswordHasher.isHashed("123456")).isFalse();
+        assertThat(hasher.verify("123456", "123456")).isEqualTo(PasswordHasher.Result.MATCH_NEEDS_REHASH);
+        assertThat(hasher.verify("1234567", "123456")).isEqualTo(PasswordHasher.Result.MISMATCH);
+    }
+
+    @Test
+    void raisedCostAsksForRehash() {
+        String weak = hasher(4, 1, 8, 5_000).hash("pw");
+
+        assertThat(hasher(5, 1, 8, 5_000).verify("pw", weak)).isEqualTo(PasswordHasher.Result.MATCH_NEEDS_REHASH);
+    }
+
+    @Test
+    void passwordsLongerThanBcryptLimitAreNotAcceptable() {
+        String limit = "a".repeat(72);
+        PasswordHasher hasher = hasher(4, 1, 8, 5_000);
+        String stored = hasher.hash(limit);
+
+        assertThat(PasswordHasher.acceptable(limit)).isTrue();
+        assertThat(PasswordHasher.acceptable(limit + "b")).isFalse();
+        assertThat(PasswordHasher.acceptable("ệ".repeat(25))).isFalse(); // 75 byte UTF-8
+        assertThat(PasswordHasher.acceptable("  ")).isFalse();
+        assertThat(PasswordHasher.acceptable(null)).isFalse();
+        // BCrypt bỏ qua phần sau 72 byte -> không được coi là khớp
+        assertThat(hasher.verify(limit + "b", stored)).isEqualTo(PasswordHasher.Result.MISMATCH);
+    }
+
+    @Test
+    void slowHashBeyondTimeoutFailsFastAsBusy() {
+        PasswordHasher hasher = hasher(14, 1, 8, 1);
+
+        assertThatThrownBy(() -> hasher.hash("pw")).isInstanceOf(PasswordHasher.BusyException.class);
+    }
+
+    @Test
+    void fullQueueIsRejectedImmediately() throws InterruptedException {
+        // 1 luồng + hàng đợi 1: 2 lần băm cost 14 (khoảng 1 giây mỗi lần) chiếm hết chỗ
+        PasswordHasher hasher = hasher(14, 1, 1, 30_000);
+        for (int i = 0; i < 2; i++) {
+            Thread background = new Thread(() -> {
+                try {
+                    hasher.hash("pw");
+                } catch (RuntimeException ignored) {
+                    // Pool bị đóng khi test kết thúc
+                }
+            });
+            background.setDaemon(true);
+            background.start();
+        }
+        Thread.sleep(200);
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> hasher.hash("pw")).isInstanceOf(PasswordHasher.BusyException.class);
+        assertThat(System.nanoTime() - start).isLessThan(100_000_000L);
+    }
+
+    private PasswordHasher hasher(int strength, int threads, int queueCapacity, long timeoutMs) {
+        PasswordHasher hasher = new PasswordHasher(strength, threads, queueCapacity, timeoutMs);
+        hashers.add(hasher);
+        return hasher;
+    }
+}
@@ -0,0 +1,123 @@
+package com.chatapp.realtime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+// Số lượt cảm xúc cộng / trừ theo delta trong cùng giao dịch với dòng cảm xúc (H2 chế độ MySQL, không có giao dịch của test
+// để các luồng thấy dữ liệu đã commit của nhau như trên DB thật)
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("loadtest")
+@TestPropertySource(properties = "spring.datasource.url=jdbc:h2:mem:reaction-test;MODE=MySQL;DATABASE_TO_LOWER=TRUE;"
+        + "NON_KEYWORDS=VALUE,TYPE,TIMESTAMP,STATUS;DB_CLOSE_DELAY=-1")
+class ReactionServiceTest {
+
+    @Autowired
+    private MessageReactionRepository reactionRepository;
+
+    @Autowired
+    private MessageReactionCountRepository countRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM message_reactions");
+        jdbcTemplate.update("DELETE FROM message_reaction_counts");
+    }
+
+    @Test
+    void changingEmojiMovesOneCountAndRepeatingItChangesNothing() {
+        ReactionService service = service();
+
+        service.react(1L, "alice", "👍");
+        service.react(1L, "bob", "👍");
+        assertThat(service.react(1L, "bob", "👍")).isEqualTo(Map.of("👍", 2L));
+        // Đổi cảm xúc: emoji cũ về 0 thì không còn xuất hiện
+        assertThat(service.react(1L, "alice", "❤️")).isEqualTo(Map.of("👍", 1L, "❤️", 1L));
+        assertThat(service.react(1L, "bob", "❤️")).isEqualTo(Map.of("❤️", 2L));
+        assertThat(reactionRepository.count()).isEqualTo(2);
+    }
+
+    @Test
+    void concurrentReactionsOnOneMessageAreAllCounted() throws Exception {
+        ReactionService service = service();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                String user = "user-" + (i % 20);
+                String emoji = i < 20 ? "👍" : "😂"; // 20 người thả 👍 rồi cùng đổi sang 😂
+                futures.add(pool.submit(() -> service.react(7L, user, emoji)));
+                if (i == 19) {
+                    for (Future<?> future : futures) future.get();
+                }
+            }
+            for (Future<?> future : futures) future.get();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(service.countsFor(List.of(7L))).isEqualTo(Map.of(7L, Map.of("😂", 20L)));
+    }
+
+    @Test
+    void rebuildCountsMatchesIncrementalCounts() {
+        ReactionService service = service();
+        service.react(1L, "alice", "👍");
+        service.react(1L, "bob", "😮");
+        service.react(2L, "alice", "👍");
+        service.react(1L, "bob", "👍");
+        Map<Long, Map<String, Long>> incremental = service.countsFor(List.of(1L, 2L));
+
+        jdbcTemplate.update("DELETE FROM message_reaction_counts");
+        assertThat(service.countsMissing()).isTrue();
+        service.rebuildCounts();
+
+        assertThat(service.countsMissing()).isFalse();
+        assertThat(service.countsFor(List.of(1L, 2L))).isEqualTo(incremental).isEqualTo(Map.of(1L, Map.of("👍", 2L), 2L, Map.of("👍", 1L)));
+    }
+
+    @Test
+    void reactingEvictsCachedCountsOfThatMessageOnly() {
+        ReactionService service = service();
+        service.react(1L, "alice", "👍");
+        service.react(2L, "alice", "👍");
+        service.countsFor(List.of(1L, 2L));
+
+        // Ghi thẳng vào DB (như node khác) rồi thả cảm xúc ở tin 1: chỉ tin 1 được đọc lại
+        jdbcTemplate.update("UPDATE message_reaction_counts SET reaction_count = 9");
+        service.react(1L, "bob", "👍");
+
+        assertThat(service.countsFor(List.of(1L, 2L))).isEqualTo(Map.of(1L, Map.of("👍", 10L), 2L, Map.of("👍", 1L)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private ReactionService service() {
+        return new ReactionService(reactionRepository, countRepository, transactionManager, mock(ObjectProvider.class), 100);
+    }
+}
@@ -0,0 +1,89 @@
+package com.chatapp.realtime;
+
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Câu UPSERT mốc đã xem chạy trên H2 chế độ MySQL (ON DUPLICATE KEY UPDATE ... GREATEST) và cách suy ra SENT/READ
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("loadtest")
+@TestPropertySource(properties = "spring.datasource.url=jdbc:h2:mem:read-receipt-test;MODE=MySQL;DATABASE_TO_LOWER=TRUE;"
+        + "NON_KEYWORDS=VALUE,TYPE,TIMESTAMP,STATUS;DB_CLOSE_DELAY=-1")
+class ReadReceiptServiceTest {
+
+    @Autowired
+    private ReadReceiptRepository repository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void clampMarkCapsClientIdAtWatermark() {
+        assertThat(ReadReceiptService.clampMark(50L, 100)).isEqualTo(50);
+        assertThat(ReadReceiptService.clampMark(Long.MAX_VALUE, 100)).isEqualTo(100);
+        assertThat(ReadReceiptService.clampMark(-5L, 100)).isZero();
+        // Không gửi id: coi như đã xem mọi tin tới thời điểm này
+        assertThat(ReadReceiptService.clampMark(null, 100)).isEqualTo(100);
+    }
+
+    @Test
+    void upsertInsertsOneRowPerReaderAndNeverMovesMarkBackwards() {
+        repository.upsertMark("room-1", "bob", 10, LocalDateTime.now());
+        repository.upsertMark("room-1", "bob", 30, LocalDateTime.now());
+        repository.upsertMark("room-1", "bob", 20, LocalDateTime.now()); // sự kiện READ đến trễ
+        repository.upsertMark("room-1", "carol", 5, LocalDateTime.now());
+        entityManager.clear();
+
+        List<ReadReceipt> receipts = repository.findByRoomId("room-1");
+        assertThat(receipts).hasSize(2);
+        assertThat(receipts).filteredOn(r -> r.getReader().equals("bob"))
+                .singleElement().extracting(ReadReceipt::getLastReadMessageId).isEqualTo(30L);
+    }
+
+    @Test
+    void markReadClampsFutureIdsAndDrivesMessageStatus() {
+        SnowflakeIdGenerator ids = new SnowflakeIdGenerator(0);
+        ReadReceiptService service = new ReadReceiptService(repository, ids);
+        long sent = ids.nextId();
+        long later = ids.nextId();
+
+        long mark = service.markRead("room-2", "bob", Long.MAX_VALUE);
+        entityManager.clear();
+
+        assertThat(mark).isLessThan(Long.MAX_VALUE).isGreaterThanOrEqualTo(later);
+        ChatMessage fromAlice = message(sent, "alice");
+        ChatMessage fromBob = message(later, "bob");
+        service.applyStatus(List.of(fromAlice, fromBob));
+        assertThat(fromAlice.getStatus()).isEqualTo("READ");
+        // Mốc của chính người gửi không làm tin của họ thành "đã xem"
+        assertThat(fromBob.getStatus()).isEqualTo("SENT");
+    }
+
+    @Test
+    void clampFutureMarksRepairsMarksAboveWatermark() {
+        repository.upsertMark("room-3", "bob", Long.MAX_VALUE, LocalDateTime.now());
+        repository.upsertMark("room-3", "carol", 7, LocalDateTime.now());
+
+        assertThat(repository.clampFutureMarks(100)).isEqualTo(1);
+        entityManager.clear();
+        assertThat(repository.findByRoomId("room-3")).extracting(ReadReceipt::getLastReadMessageId)
+                .containsExactlyInAnyOrder(100L, 7L);
+    }
+
+    private static ChatMessage message(long id, String sender) {
+        ChatMessage msg = new ChatMessage();
+        msg.setId(id);
+        msg.setRoomId("room-2");
+        msg.setSender(sender);
+        return msg;
+    }
+}
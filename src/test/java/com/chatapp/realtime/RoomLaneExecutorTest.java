@@ -0,0 +1,168 @@
+package com.chatapp.realtime;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoomLaneExecutorTest {
+
+    private static final int LANES = 4;
+
+    private final RoomLaneExecutor executor = new RoomLaneExecutor(LANES, 100, 100, 1000, Set.of("/app/chat.typing"), false);
+    private final List<String> ran = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        executor.destroy();
+    }
+
+    @Test
+    void bindingAndDestroyingTwiceIsHarmless() throws InterruptedException {
+        // Cùng 1 bean vừa là @Component vừa là executor của kênh inbound -> Spring gọi 2 lần
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        executor.bindTo(registry);
+        int meters = registry.getMeters().size();
+        executor.bindTo(registry);
+        assertThat(registry.getMeters()).hasSize(meters);
+        assertThat(registry.find("chat.ws.inbound.queue.depth").gauges()).hasSize(LANES);
+
+        executor.destroy();
+        executor.destroy(); // @AfterEach gọi thêm lần nữa
+    }
+
+    @Test
+    void readsRoomIdFromTopLevelFieldOnly() {
+        assertThat(RoomLaneExecutor.readRoomId(new com.fasterxml.jackson.core.JsonFactory(),
+                json("{\"meta\":{\"roomId\":\"inner\"},\"roomId\":\"outer\"}"))).isEqualTo("outer");
+        assertThat(RoomLaneExecutor.readRoomId(new com.fasterxml.jackson.core.JsonFactory(), json("{\"roomId\":42}"))).isNull();
+        assertThat(RoomLaneExecutor.readRoomId(new com.fasterxml.jackson.core.JsonFactory(), json("not json"))).isNull();
+    }
+
+    @Test
+    void frameOfSameSessionWaitsForEarlierFrameOnAnotherLane() throws InterruptedException {
+        CountDownLatch subscribeStarted = new CountDownLatch(1);
+        CountDownLatch releaseSubscribe = new CountDownLatch(1);
+        CountDownLatch sendDone = new CountDownLatch(1);
+        String room = roomOnOtherLane("s1");
+
+        executor.execute(frame("s1", null, () -> {
+            subscribeStarted.countDown();
+            await(releaseSubscribe);
+            ran.add("subscribe");
+        }));
+        assertThat(subscribeStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        executor.execute(frame("s1", room, () -> {
+            ran.add("send");
+            sendDone.countDown();
+        }));
+
+        // Làn của phòng đang rảnh nhưng khung gửi tin vẫn phải chờ SUBSCRIBE của cùng phiên
+        assertThat(sendDone.await(200, TimeUnit.MILLISECONDS)).isFalse();
+        releaseSubscribe.countDown();
+        assertThat(sendDone.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(ran).containsExactly("subscribe", "send");
+    }
+
+    @Test
+    void otherSessionsAreNotHeldBackByASlowSession() throws InterruptedException {
+        CountDownLatch releaseSlow = new CountDownLatch(1);
+        CountDownLatch otherDone = new CountDownLatch(1);
+        String room = roomOnOtherLane("s1");
+
+        executor.execute(frame("s1", null, () -> await(releaseSlow)));
+        executor.execute(frame("s2", room, otherDone::countDown));
+
+        assertThat(otherDone.await(5, TimeUnit.SECONDS)).isTrue();
+        releaseSlow.countDown();
+    }
+
+    @Test
+    void framesOfOneRoomRunInArrivalOrderAcrossSessions() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(20);
+        for (int i = 0; i < 20; i++) {
+            String label = "m" + i;
+            executor.execute(frame("s" + (i % 3), "room-a", () -> {
+                ran.add(label);
+                done.countDown();
+            }));
+        }
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(ran).containsExactly("m0", "m1", "m2", "m3", "m4", "m5", "m6", "m7", "m8", "m9",
+                "m10", "m11", "m12", "m13", "m14", "m15", "m16", "m17", "m18", "m19");
+    }
+
+    @Test
+    void sessionKeepsItsOrderWhenHoppingBetweenRooms() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(30);
+        String[] rooms = {"room-a", "room-b", "room-c", null};
+        for (int i = 0; i < 30; i++) {
+            String label = "f" + i;
+            executor.execute(frame("s1", rooms[i % rooms.length], () -> {
+                ran.add(label);
+                done.countDown();
+            }));
+        }
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        for (int i = 0; i < 30; i++) {
+            assertThat(ran.get(i)).isEqualTo("f" + i);
+        }
+    }
+
+    // Phòng có làn khác làn của phiên (cùng cách băm với RoomLaneExecutor)
+    private static String roomOnOtherLane(String sessionId) {
+        for (int i = 0; ; i++) {
+            String room = "room-" + i;
+            if (Math.floorMod(room.hashCode(), LANES) != Math.floorMod(sessionId.hashCode(), LANES)) return room;
+        }
+    }
+
+    private static MessageHandlingRunnable frame(String sessionId, String roomId, Runnable body) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setDestination(roomId != null ? "/app/chat.sendMessage" : "/topic/x");
+        byte[] payload = roomId != null ? json("{\"roomId\":\"" + roomId + "\"}") : new byte[0];
+        Message<byte[]> message = MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+        return new MessageHandlingRunnable() {
+            @Override
+            public Message<?> getMessage() {
+                return message;
+            }
+
+            @Override
+            public MessageHandler getMessageHandler() {
+                return m -> body.run();
+            }
+
+            @Override
+            public void run() {
+                body.run();
+            }
+        };
+    }
+
+    private static byte[] json(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.chatapp.realtime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Khởi tạo và cấp số thứ tự theo phòng trên H2 chế độ MySQL: bộ đếm trong bộ nhớ (simple) và dòng room_sequences dùng chung (cluster).
+// Không chạy trong giao dịch của test: các node phải thấy dòng của nhau như trên DB thật
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("loadtest")
+@TestPropertySource(properties = "spring.datasource.url=jdbc:h2:mem:room-sequencer-test;MODE=MySQL;DATABASE_TO_LOWER=TRUE;"
+        + "NON_KEYWORDS=VALUE,TYPE,TIMESTAMP,STATUS;DB_CLOSE_DELAY=-1")
+class RoomSequencerTest {
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final MessageArchive archive = mock(MessageArchive.class);
+
+    @BeforeEach
+    void storedMessages() {
+        // room-1 còn tin tới seq 7 trong DB; room-2 đã chuyển hết sang kho lưu trữ (tới seq 40)
+        jdbcTemplate.update("INSERT INTO chat_messages (id, room_id, sender, type, seq) VALUES (1, 'room-1', 'alice', 'CHAT', 5), "
+                + "(2, 'room-1', 'bob', 'CHAT', 7), (3, 'room-3', 'bob', 'CHAT', 3)");
+        when(archive.maxSeq(anyString())).thenReturn(0L);
+        when(archive.maxSeq("room-2")).thenReturn(40L);
+        when(archive.maxSeq("room-3")).thenReturn(12L);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM chat_messages");
+        jdbcTemplate.update("DELETE FROM room_sequences");
+    }
+
+    @Test
+    void simpleModeContinuesFromHighestStoredOrArchivedSeq() {
+        RoomSequencer sequencer = sequencer("simple");
+
+        assertThat(sequencer.latest("room-1")).isEqualTo(7);
+        assertThat(sequencer.next("room-1")).isEqualTo(8);
+        assertThat(sequencer.next("room-2")).isEqualTo(41);
+        assertThat(sequencer.next("room-3")).isEqualTo(13);
+        assertThat(sequencer.next("new-room")).isEqualTo(1);
+        assertThat(sequencer.latest("room-1")).isEqualTo(8);
+    }
+
+    @Test
+    void clusterModeSeedsSharedRowFromStoredOrArchivedSeq() {
+        RoomSequencer sequencer = sequencer("cluster");
+
+        assertThat(sequencer.latest("room-1")).isEqualTo(7); // chưa có dòng: đọc từ tin đã lưu
+        assertThat(sequencer.next("room-1")).isEqualTo(8);
+        assertThat(sequencer.next("room-2")).isEqualTo(41);
+        assertThat(sequencer.next("room-3")).isEqualTo(13);
+        assertThat(sequencer.next("new-room")).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT last_seq FROM room_sequences WHERE room_id = 'room-1'", Long.class))
+                .isEqualTo(8);
+    }
+
+    @Test
+    void nodesSharingTheRowNeverHandOutTheSameSeq() throws Exception {
+        List<RoomSequencer> nodes = List.of(sequencer("cluster"), sequencer("cluster"));
+        Set<Long> issued = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                RoomSequencer node = nodes.get(t % 2);
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        assertThat(issued.add(node.next("room-1"))).isTrue();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(issued).containsExactlyInAnyOrderElementsOf(LongStream.rangeClosed(8, 207).boxed().toList());
+        assertThat(nodes.get(1).latest("room-1")).isEqualTo(207);
+    }
+
+    private RoomSequencer sequencer(String brokerMode) {
+        return new RoomSequencer(messageRepository, archive, jdbcTemplate, transactionManager, brokerMode);
+    }
+}
@@ -0,0 +1,38 @@
+package com.chatapp.realtime;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Khóa phòng 1-1 "user1_user2": tách theo người gửi, và vì sao username mới không được chứa dấu _
+class RoomServiceTest {
+
+    @Test
+    void newUsernamesMustNotContainUnderscore() {
+        assertThat(RoomService.isValidUsername("nguyenvana")).isTrue();
+        assertThat(RoomService.isValidUsername("nguyen_van_a")).isFalse();
+        assertThat(RoomService.isValidUsername("")).isFalse();
+        assertThat(RoomService.isValidUsername(null)).isFalse();
+    }
+
+    @Test
+    void directPartnerIsTheRestOfTheSortedKey() {
+        assertThat(RoomService.directPartner("alice_bob", "alice")).isEqualTo("bob");
+        assertThat(RoomService.directPartner("alice_bob", "bob")).isEqualTo("alice");
+        assertThat(RoomService.directPartner("bob_alice", "bob")).isNull(); // sai thứ tự sắp xếp
+        assertThat(RoomService.directPartner("alice_bob", "carol")).isNull();
+        assertThat(RoomService.directPartner("group-1", "alice")).isNull();
+    }
+
+    @Test
+    void underscoreUsernamesMakeOneKeyFitTwoPairs() {
+        assertThat(RoomService.directPairs("a_b_c")).containsExactly(new String[]{"a", "b_c"}, new String[]{"a_b", "c"});
+        // Cả 2 cặp đều tự nhận là chủ của cùng một khóa
+        assertThat(RoomService.directPartner("a_b_c", "a")).isEqualTo("b_c");
+        assertThat(RoomService.directPartner("a_b_c", "a_b")).isEqualTo("c");
+
+        assertThat(RoomService.directPairs("alice_bob")).containsExactly(new String[]{"alice", "bob"});
+        assertThat(RoomService.directPairs("c_b_a")).isEmpty();
+        assertThat(RoomService.directPairs("group-1")).isEmpty();
+    }
+}
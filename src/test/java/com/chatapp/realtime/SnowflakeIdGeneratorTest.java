@@ -0,0 +1,73 @@
+package com.chatapp.realtime;
+
+import org.junit.jupiter.api.Test;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnowflakeIdGeneratorTest {
+
+    private static final long T0 = 1_750_000_000_000L;
+
+    private final AtomicLong clock = new AtomicLong(T0);
+    private final SnowflakeIdGenerator generator = new SnowflakeIdGenerator(3, clock::get);
+
+    @Test
+    void idsIncreaseAndCarryTimestampAndNode() {
+        long first = generator.nextId();
+        long second = generator.nextId();
+        clock.addAndGet(5);
+        long third = generator.nextId();
+
+        assertThat(second).isGreaterThan(first);
+        assertThat(third).isGreaterThan(second);
+        assertThat(SnowflakeIdGenerator.timestampOf(first)).isEqualTo(T0);
+        assertThat(SnowflakeIdGenerator.timestampOf(third)).isEqualTo(T0 + 5);
+        assertThat((first >> 7) & 31).isEqualTo(3);
+    }
+
+    @Test
+    void clockRegressionKeepsIdsIncreasing() {
+        long before = generator.nextId();
+        clock.addAndGet(-2_000); // NTP kéo lùi 2 giây
+        long after = generator.nextId();
+
+        assertThat(after).isGreaterThan(before);
+        assertThat(SnowflakeIdGenerator.timestampOf(after)).isEqualTo(T0);
+    }
+
+    @Test
+    void sequenceOverflowWhileClockIsBehindBorrowsNextMillisecondInsteadOfSpinning() {
+        generator.nextId();
+        clock.addAndGet(-60_000);
+        long previous = 0;
+        // 128 ID / ms: đủ để hết số thứ tự vài lần trong khi đồng hồ đứng yên ở quá khứ
+        for (int i = 0; i < 1_000; i++) {
+            long id = generator.nextId();
+            assertThat(id).isGreaterThan(previous);
+            previous = id;
+        }
+        assertThat(SnowflakeIdGenerator.timestampOf(previous)).isBetween(T0 + 1, T0 + 10);
+    }
+
+    @Test
+    void firstIdAtIsALowerBoundForIdsIssuedFromThatMoment() {
+        long id = generator.nextId();
+        assertThat(SnowflakeIdGenerator.firstIdAt(T0)).isLessThanOrEqualTo(id);
+        assertThat(SnowflakeIdGenerator.firstIdAt(T0 + 1)).isGreaterThan(id);
+        assertThat(SnowflakeIdGenerator.firstIdAt(0)).isZero();
+    }
+
+    @Test
+    void watermarkCoversEveryIdIssuedUpToNow() {
+        long id = new SnowflakeIdGenerator(31).nextId();
+        assertThat(new SnowflakeIdGenerator(0).currentWatermark()).isGreaterThanOrEqualTo(id);
+    }
+
+    @Test
+    void rejectsNodeIdOutsideFiveBits() {
+        assertThatThrownBy(() -> new SnowflakeIdGenerator(32)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new SnowflakeIdGenerator(-1)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,186 @@
+package com.chatapp.realtime;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Token bucket theo phiên / người dùng / phòng trên khung STOMP gửi lên. Tốc độ nạp rất nhỏ (0.01 token/giây)
+// để kết quả chỉ phụ thuộc vào burst, không phụ thuộc thời gian chạy test
+class StompFlowControlTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final SimpMessagingTemplate template = mock(SimpMessagingTemplate.class);
+    private final RoomService roomService = mock(RoomService.class);
+
+    @BeforeEach
+    void members() {
+        when(roomService.isMember(anyString(), anyString())).thenReturn(false);
+        when(roomService.isMember("room-1", "alice")).thenReturn(true);
+        when(roomService.isMember("room-2", "alice")).thenReturn(true);
+        when(roomService.isMember("room-1", "carol")).thenReturn(true);
+    }
+
+    @Test
+    void parseSpecReadsScopesRatesAndBursts() {
+        StompFlowControl.Spec spec = StompFlowControl.parseSpec(" session:5/20, user:0.5 ,room:50/200,", 1024);
+
+        assertThat(spec.session()).isEqualTo(new StompFlowControl.Limit(5, 20));
+        // Thiếu burst: burst = rate nhưng ít nhất 1 token
+        assertThat(spec.user()).isEqualTo(new StompFlowControl.Limit(0.5, 1));
+        assertThat(spec.room()).isEqualTo(new StompFlowControl.Limit(50, 200));
+        assertThat(spec.maxFrameBytes()).isEqualTo(1024);
+        assertThat(StompFlowControl.parseSpec("session:2/4", 512).user()).isNull();
+    }
+
+    @Test
+    void tokenBucketStartsFullRefillsAtRateAndCapsAtBurst() {
+        StompFlowControl.Limit limit = new StompFlowControl.Limit(2, 3);
+        StompFlowControl.TokenBucket bucket = new StompFlowControl.TokenBucket(0);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(bucket.tryAcquire(limit, 0)).isTrue();
+        }
+        assertThat(bucket.tryAcquire(limit, 0)).isFalse();
+        assertThat(bucket.tryAcquire(limit, SECOND / 4)).isFalse(); // mới nạp được 0.5 token
+        assertThat(bucket.tryAcquire(limit, SECOND / 2)).isTrue();
+        // Nghỉ lâu: chỉ đầy tới burst
+        long later = 100 * SECOND;
+        for (int i = 0; i < 3; i++) {
+            assertThat(bucket.tryAcquire(limit, later)).isTrue();
+        }
+        assertThat(bucket.tryAcquire(limit, later)).isFalse();
+        assertThat(bucket.tryAcquire(null, later)).isTrue();
+    }
+
+    @Test
+    void refundReturnsOneTokenWithoutExceedingBurst() {
+        StompFlowControl.Limit limit = new StompFlowControl.Limit(0.01, 2);
+        StompFlowControl.TokenBucket bucket = new StompFlowControl.TokenBucket(0);
+
+        bucket.refund(limit); // chưa dùng lần nào: không đổi gì
+        assertThat(bucket.tryAcquire(limit, 0)).isTrue();
+        assertThat(bucket.tryAcquire(limit, 0)).isTrue();
+        assertThat(bucket.tryAcquire(limit, 0)).isFalse();
+        bucket.refund(limit);
+        bucket.refund(limit);
+        bucket.refund(limit);
+        assertThat(bucket.tryAcquire(limit, 0)).isTrue();
+        assertThat(bucket.tryAcquire(limit, 0)).isTrue();
+        assertThat(bucket.tryAcquire(limit, 0)).isFalse();
+    }
+
+    @Test
+    void sessionOverBurstIsRejectedWithOneNoticePerSecond() {
+        StompFlowControl flow = flowControl("session:0.01/3,user:0.01/100,room:0.01/100");
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(send(flow, "s1", "alice", "/app/chat.sendMessage", "room-1")).isNotNull();
+        }
+        assertThat(send(flow, "s1", "alice", "/app/chat.sendMessage", "room-1")).isNull();
+        assertThat(send(flow, "s1", "alice", "/app/chat.sendMessage", "room-1")).isNull();
+        verify(template, times(1)).convertAndSendToUser(eq("alice"), eq(StompFlowControl.NOTICE_DESTINATION), any(Object.class));
+        // Phiên khác của người khác không bị ảnh hưởng
+        assertThat(send(flow, "s2", "carol", "/app/chat.sendMessage", "room-1")).isNotNull();
+    }
+
+    @Test
+    void userBudgetIsSharedAcrossSessions() {
+        StompFlowControl flow = flowControl("session:0.01/10,user:0.01/2,room:0.01/100");
+
+        assertThat(send(flow, "s1", "alice", "/app/chat.sendMessage", "room-1")).isNotNull();
+        assertThat(send(flow, "s2", "alice", "/app/chat.sendMessage", "room-1")).isNotNull();
+        assertThat(send(flow, "s3", "alice", "/app/chat.sendMessage", "room-1")).isNull();
+    }
+
+    @Test
+    void roomRejectionRefundsSessionTokens() {
+        StompFlowControl flow = flowControl("session:0.01/3,user:0.01/100,room:0.01/2");
+
+        assertThat(send(flow, "s1", "alice", "/app/chat.sendMessage", "room-1")).isNotNull();
+        assertThat(send(flow, "s1", "alice", "/app/chat.sendMessage", "room-1")).isNotNull();
+        assertThat(send(flow, "s1", "alice", "/app/chat.sendMessage", "room-1")).isNull(); // phòng hết token
+        // Token phiên đã được hoàn -> phiên vẫn còn 1 token cho phòng khác
+        assertThat(send(flow, "s1", "alice", "/app/chat.sendMessage", "room-2")).isNotNull();
+    }
+
+    @Test
+    void nonMembersDoNotDrainTheRoomBudget() {
+        StompFlowControl flow = flowControl("session:0.01/100,user:0.01/100,room:0.01/2");
+
+        for (int i = 0; i < 5; i++) {
+            // bob không phải thành viên: khung đi tiếp để controller từ chối, không tiêu token của phòng
+            assertThat(send(flow, "s-bob", "bob", "/app/chat.sendMessage", "room-1")).isNotNull();
+        }
+        assertThat(send(flow, "s1", "alice", "/app/chat.sendMessage", "room-1")).isNotNull();
+        assertThat(send(flow, "s2", "carol", "/app/chat.sendMessage", "room-1")).isNotNull();
+        assertThat(send(flow, "s1", "alice", "/app/chat.sendMessage", "room-1")).isNull();
+    }
+
+    @Test
+    void typingOverLimitIsDroppedSilentlyAndOversizedFramesAreRejected() {
+        StompFlowControl flow = flowControl("session:0.01/100,user:0.01/100,room:0.01/100");
+
+        assertThat(send(flow, "s1", "alice", "/app/chat.typing", "room-1")).isNotNull();
+        assertThat(send(flow, "s1", "alice", "/app/chat.typing", "room-1")).isNull();
+        verify(template, never()).convertAndSendToUser(anyString(), anyString(), any(Object.class));
+
+        String big = "x".repeat(200);
+        assertThat(flow.inboundInterceptor().preSend(frame("s1", "alice", "/app/chat.react", "{\"roomId\":\"room-1\",\"emoji\":\"" + big + "\"}"), null))
+                .isNull();
+    }
+
+    @Test
+    void disabledFlowControlPassesEverything() {
+        StompFlowControl flow = flowControl(false, "session:0.01/1");
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(send(flow, "s1", "alice", "/app/chat.sendMessage", "room-1")).isNotNull();
+        }
+    }
+
+    private StompFlowControl flowControl(String chatLimits) {
+        return flowControl(true, chatLimits);
+    }
+
+    @SuppressWarnings("unchecked")
+    private StompFlowControl flowControl(boolean enabled, String chatLimits) {
+        ObjectProvider<SimpMessagingTemplate> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(template);
+        return new StompFlowControl(provider, roomService, enabled,
+                chatLimits, 16384, "session:0.01/1,user:0.01/10,room:0.01/10", 512,
+                "session:0.01/10", 100, "session:10/40", 16384, 2000);
+    }
+
+    private static Message<?> send(StompFlowControl flow, String sessionId, String user, String destination, String roomId) {
+        return flow.inboundInterceptor().preSend(frame(sessionId, user, destination, "{\"roomId\":\"" + roomId + "\"}"), null);
+    }
+
+    private static Message<byte[]> frame(String sessionId, String user, String destination, String json) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setUser((Principal) () -> user);
+        accessor.setDestination(destination);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return MessageBuilder.createMessage(json.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,113 @@
+package com.chatapp.realtime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+// Gom sự kiện đang soạn tin: START một lần, gia hạn không broadcast, STOP khi hết hạn.
+// Chạy theo thời gian thật (nhịp 10 ms); timeout đủ rộng để luồng test bị trễ vài chục ms không làm sai kết quả
+class TypingIndicatorServiceTest {
+
+    private static final long TIMEOUT_MS = 300;
+
+    private final List<String> events = new CopyOnWriteArrayList<>();
+    private TypingIndicatorService service;
+
+    @AfterEach
+    void stop() {
+        if (service != null) service.stop();
+    }
+
+    @Test
+    void repeatedFramesBroadcastStartOnceThenStopAfterTimeout() throws InterruptedException {
+        service = start(64);
+        long begin = System.nanoTime();
+        service.onTyping("room-1", "alice");
+        service.onTyping("room-1", "alice");
+        service.onTyping("room-1", "alice");
+        assertThat(events).containsExactly("room-1 alice START");
+
+        assertThat(await(() -> events.size() == 2)).isTrue();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin)).isGreaterThanOrEqualTo(TIMEOUT_MS);
+        assertThat(events).containsExactly("room-1 alice START", "room-1 alice STOP");
+    }
+
+    @Test
+    void framesWithinTimeoutKeepIndicatorAlive() throws InterruptedException {
+        service = start(64);
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MS * 3);
+        while (System.nanoTime() < until) {
+            service.onTyping("room-1", "alice");
+            Thread.sleep(TIMEOUT_MS / 4);
+        }
+        assertThat(events).containsExactly("room-1 alice START");
+
+        assertThat(await(() -> events.contains("room-1 alice STOP"))).isTrue();
+    }
+
+    @Test
+    void timeoutLongerThanOneWheelTurnDoesNotExpireEarly() throws InterruptedException {
+        // 4 ô x 10 ms = 40 ms mỗi vòng, ngắn hơn nhiều so với timeout
+        service = start(4);
+        long begin = System.nanoTime();
+        service.onTyping("room-1", "alice");
+
+        assertThat(await(() -> events.size() == 2)).isTrue();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin)).isGreaterThanOrEqualTo(TIMEOUT_MS);
+    }
+
+    @Test
+    void clearAfterSendingSuppressesStopAndNextFrameStartsAgain() throws InterruptedException {
+        service = start(64);
+        service.onTyping("room-1", "alice");
+        service.onTyping("room-1", "bob");
+        service.clear("room-1", "alice");
+
+        assertThat(await(() -> events.contains("room-1 bob STOP"))).isTrue();
+        Thread.sleep(TIMEOUT_MS);
+        assertThat(events).containsExactlyInAnyOrder("room-1 alice START", "room-1 bob START", "room-1 bob STOP");
+
+        service.onTyping("room-1", "alice");
+        assertThat(events).endsWith("room-1 alice START");
+    }
+
+    @Test
+    void ignoresFramesWithoutRoomOrSender() {
+        service = start(64);
+        service.onTyping(null, "alice");
+        service.onTyping("room-1", null);
+        assertThat(events).isEmpty();
+    }
+
+    private TypingIndicatorService start(int wheelSize) {
+        SimpMessagingTemplate template = mock(SimpMessagingTemplate.class);
+        doAnswer(inv -> {
+            TypingEvent event = inv.getArgument(1);
+            String prefix = inv.<String>getArgument(0).equals("/topic/" + event.getRoomId()) ? "" : "SAI TOPIC ";
+            events.add(prefix + event.getRoomId() + " " + event.getSender() + " " + event.getState());
+            return null;
+        }).when(template).convertAndSend(anyString(), any(Object.class));
+        TypingIndicatorService typing = new TypingIndicatorService(template, TIMEOUT_MS, TIMEOUT_MS / 10, 10, wheelSize);
+        typing.start();
+        return typing;
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            if (condition.getAsBoolean()) return true;
+            Thread.sleep(5);
+        }
+        return condition.getAsBoolean();
+    }
+}